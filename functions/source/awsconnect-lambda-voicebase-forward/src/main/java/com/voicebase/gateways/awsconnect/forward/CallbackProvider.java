@@ -11,6 +11,9 @@
  */
 package com.voicebase.gateways.awsconnect.forward;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -18,6 +21,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.sdk.util.RequestSigner.SignatureParameters;
 
 /**
  * 
@@ -32,6 +38,7 @@ public class CallbackProvider {
   private String callbackMethod;
   private Set<String> includes;
   private Set<String> additionalCallbackUrls;
+  private RequestSigner signer;
 
 
   public void setIncludes(String[] includes) {
@@ -97,6 +104,56 @@ public class CallbackProvider {
     this.callbackMethod = callbackMethod;
   }
 
+  public RequestSigner getSigner() {
+    return signer;
+  }
+
+  /**
+   * @param signer signer for callback URLs, null to send callbacks to unsigned URLs
+   */
+  public void setSigner(RequestSigner signer) {
+    this.signer = signer;
+    LOGGER.info("Callback URLs {} signed", signer != null ? "are" : "aren't");
+  }
+
+  /**
+   * Append signature parameters to a callback URL.
+   * 
+   * @param url callback URL, may already have query parameters
+   * @param signature signature parameters for the media
+   * 
+   * @return signed URL
+   */
+  public static String signUrl(String url, SignatureParameters signature) {
+    StringBuilder signed = new StringBuilder(url.length() + 160).append(url)
+        .append(url.indexOf('?') >= 0 ? '&' : '?');
+    signed.append(Lambda.CALLBACK_PARAM_TIMESTAMP).append('=').append(signature.getTimestamp());
+    signed.append('&').append(Lambda.CALLBACK_PARAM_TOKEN).append('=')
+        .append(signature.getToken());
+    signed.append('&').append(Lambda.CALLBACK_PARAM_SIGNATURE).append('=')
+        .append(signature.getSignature());
+    return signed.toString();
+  }
+
+  /**
+   * Add a query parameter to a callback URL.
+   * 
+   * @param url callback URL
+   * @param name parameter name
+   * @param value parameter value, URL encoded here
+   * 
+   * @return URL with the parameter
+   */
+  public static String addParameter(String url, String name, String value) {
+    try {
+      return url + (url.indexOf('?') >= 0 ? '&' : '?') + name + '='
+          + URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is always supported
+      throw new IllegalStateException(e);
+    }
+  }
+
   public Set<String> getIncludes() {
     return includes;
   }
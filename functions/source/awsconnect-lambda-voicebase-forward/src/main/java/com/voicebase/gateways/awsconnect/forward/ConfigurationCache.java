@@ -0,0 +1,183 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.datamodel.VbConfiguration;
+
+/**
+ * Built and serialized VoiceBase configurations by fingerprint of the attributes they were built
+ * from.
+ * <p/>
+ * Contact flows tend to use a few combinations of VoiceBase attributes, so most CTRs result in
+ * a configuration that has been built and serialized before. Entries are kept in a bounded LRU
+ * map. A cache must only be used with one configuration template since the template isn't part
+ * of the fingerprint.
+ */
+public class ConfigurationCache {
+
+  // same mapper configuration as the API client
+  private static final ObjectWriter CONFIGURATION_WRITER =
+      JacksonFactory.writer(VbConfiguration.class);
+
+  private final Map<HashCode, CachedConfiguration> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of configurations kept
+   */
+  public ConfigurationCache(final int maxEntries) {
+    this.entries = new LinkedHashMap<HashCode, CachedConfiguration>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<HashCode, CachedConfiguration> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Fingerprint the contact attributes that determine the configuration: all VoiceBase
+   * attributes, independent of their order, and whether there are any attributes at all.
+   * 
+   * @param attributes contact attributes, may be null
+   * 
+   * @return fingerprint
+   */
+  static HashCode fingerprint(Map<String, ?> attributes) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    if (attributes == null || attributes.isEmpty()) {
+      return hasher.putBoolean(false).hash();
+    }
+    hasher.putBoolean(true);
+
+    List<String> names = new ArrayList<>();
+    for (String name : attributes.keySet()) {
+      if (CtrRecord.isVoicebaseAttribute(name)) {
+        names.add(name);
+      }
+    }
+    Collections.sort(names);
+
+    for (String name : names) {
+      Object value = attributes.get(name);
+      hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0);
+      if (value != null) {
+        hasher.putBoolean(true).putString(value.toString(), StandardCharsets.UTF_8);
+      } else {
+        hasher.putBoolean(false);
+      }
+      hasher.putByte((byte) 0);
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Get the configuration for the attributes, building and serializing it if not cached.
+   * 
+   * @param attributes contact attributes, may be null
+   * @param builder builds the configuration on a cache miss
+   * 
+   * @return cached configuration
+   * 
+   * @throws JsonProcessingException if the configuration can't be serialized
+   */
+  public CachedConfiguration get(Map<String, ?> attributes, Supplier<VbConfiguration> builder)
+      throws JsonProcessingException {
+    HashCode key = fingerprint(attributes);
+
+    CachedConfiguration cached;
+    synchronized (entries) {
+      cached = entries.get(key);
+    }
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+
+    misses.incrementAndGet();
+    VbConfiguration configuration = builder.get();
+    cached = new CachedConfiguration(configuration, serialize(configuration));
+    synchronized (entries) {
+      entries.put(key, cached);
+    }
+    return cached;
+  }
+
+  private static byte[] serialize(VbConfiguration configuration) throws JsonProcessingException {
+    return CONFIGURATION_WRITER.writeValueAsBytes(configuration);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ConfigurationCache [hits=");
+    builder.append(hits);
+    builder.append(", misses=");
+    builder.append(misses);
+    builder.append(", size=");
+    builder.append(size());
+    builder.append("]");
+    return builder.toString();
+  }
+
+  /**
+   * A configuration and its JSON. Shared by all requests using it, must not be modified.
+   */
+  public static final class CachedConfiguration {
+    private final VbConfiguration configuration;
+    private final byte[] json;
+
+    CachedConfiguration(VbConfiguration configuration, byte[] json) {
+      this.configuration = configuration;
+      this.json = json;
+    }
+
+    public VbConfiguration getConfiguration() {
+      return configuration;
+    }
+
+    public byte[] getJson() {
+      return json;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.v3client.datamodel.VbCallbackConfiguration;
+import com.voicebase.v3client.datamodel.VbChannelConfiguration;
+import com.voicebase.v3client.datamodel.VbHttpMethodEnum;
+import com.voicebase.v3client.datamodel.VbIncludeTypeEnum;
+import com.voicebase.v3client.datamodel.VbIngestConfiguration;
+import com.voicebase.v3client.datamodel.VbKnowledgeConfiguration;
+import com.voicebase.v3client.datamodel.VbPredictionConfiguration;
+import com.voicebase.v3client.datamodel.VbPublishConfiguration;
+import com.voicebase.v3client.datamodel.VbSpeechModelConfiguration;
+import com.voicebase.v3client.datamodel.VbTranscriptConfiguration;
+
+/**
+ * The parts of a VoiceBase configuration derived from the function environment, compiled once
+ * and shared by all requests.
+ * <p/>
+ * Instances handed out by this class are shared between requests and threads and must never be
+ * modified. A request that needs a different value creates its own instance instead (see
+ * {@link MediaProcessingRequestBuilder}). Collections are unmodifiable to catch violations early.
+ * 
+ */
+public final class ConfigurationTemplate {
+
+  private final boolean predictionsEnabled;
+  private final boolean knowledgeDiscoveryEnabled;
+  private final List<String> speechFeatures;
+  private final VbSpeechModelConfiguration speechModel;
+  private final VbIngestConfiguration ingest;
+  private final VbPublishConfiguration publish;
+  private final VbKnowledgeConfiguration knowledge;
+  private final VbPredictionConfiguration emptyPrediction;
+  private final VbTranscriptConfiguration emptyTranscript;
+  private final Map<String, Object> labs;
+  private final RequestSigner callbackSigner;
+
+  ConfigurationTemplate(boolean predictionsEnabled, boolean knowledgeDiscoveryEnabled,
+      boolean advancedPunctuationEnabled, boolean configureSpeakers, String leftSpeakerName,
+      String rightSpeakerName, CallbackProvider callbackProvider) {
+
+    this.predictionsEnabled = predictionsEnabled;
+    this.knowledgeDiscoveryEnabled = knowledgeDiscoveryEnabled;
+
+    // speakers
+    ingest = new VbIngestConfiguration();
+    if (configureSpeakers) {
+      List<VbChannelConfiguration> channels = new ArrayList<>(2);
+      channels.add(new VbChannelConfiguration().speakerName(leftSpeakerName));
+      channels.add(new VbChannelConfiguration().speakerName(rightSpeakerName));
+      ingest.channels(Collections.unmodifiableList(channels));
+    }
+
+    List<String> features = new ArrayList<>(2);
+    features.add(MediaProcessingRequestBuilder.SPEECH_FEATURE_VOICE);
+    if (advancedPunctuationEnabled) {
+      features.add(MediaProcessingRequestBuilder.SPEECH_FEATURE_ADVANCED_PUNCTUATION);
+    }
+    speechFeatures = Collections.unmodifiableList(features);
+    speechModel = new VbSpeechModelConfiguration().features(speechFeatures);
+
+    publish = new VbPublishConfiguration().callbacks(compileCallbacks(callbackProvider));
+    callbackSigner = callbackProvider.getSigner();
+
+    knowledge = new VbKnowledgeConfiguration().enableDiscovery(knowledgeDiscoveryEnabled);
+    emptyPrediction = new VbPredictionConfiguration();
+    emptyTranscript = new VbTranscriptConfiguration();
+
+    Map<String, Object> voiceActivity = new LinkedHashMap<>();
+    voiceActivity.put("enableVoiceActivity", Boolean.TRUE);
+    Map<String, Object> labsConfiguration = new LinkedHashMap<>();
+    labsConfiguration.put("voiceActivity", Collections.unmodifiableMap(voiceActivity));
+    labs = Collections.unmodifiableMap(labsConfiguration);
+  }
+
+  private static List<VbCallbackConfiguration> compileCallbacks(
+      CallbackProvider callbackProvider) {
+    List<VbIncludeTypeEnum> includes = new ArrayList<>();
+    if (callbackProvider.hasIncludes()) {
+      for (String include : callbackProvider.getIncludes()) {
+        if (!StringUtils.isEmpty(include)) {
+          VbIncludeTypeEnum includeEnum = VbIncludeTypeEnum.fromValue(include);
+          if (includeEnum != null) {
+            includes.add(includeEnum);
+          }
+        }
+      }
+    }
+    includes = Collections.unmodifiableList(includes);
+
+    VbHttpMethodEnum method = VbHttpMethodEnum.valueOf(callbackProvider.getCallbackMethod());
+
+    List<VbCallbackConfiguration> callbacks = new ArrayList<>();
+    callbacks.add(new VbCallbackConfiguration().url(callbackProvider.getCallbackUrl())
+        .method(method).include(includes));
+    if (callbackProvider.hasAdditionalCallbackUrls()) {
+      for (String callback : callbackProvider.getAdditionalCallbackUrls()) {
+        callbacks.add(new VbCallbackConfiguration().url(callback).method(method).include(includes));
+      }
+    }
+    return Collections.unmodifiableList(callbacks);
+  }
+
+  boolean isPredictionsEnabled() {
+    return predictionsEnabled;
+  }
+
+  boolean isKnowledgeDiscoveryEnabled() {
+    return knowledgeDiscoveryEnabled;
+  }
+
+  List<String> getSpeechFeatures() {
+    return speechFeatures;
+  }
+
+  VbSpeechModelConfiguration getSpeechModel() {
+    return speechModel;
+  }
+
+  VbIngestConfiguration getIngest() {
+    return ingest;
+  }
+
+  VbPublishConfiguration getPublish() {
+    return publish;
+  }
+
+  VbKnowledgeConfiguration getKnowledge() {
+    return knowledge;
+  }
+
+  VbPredictionConfiguration getEmptyPrediction() {
+    return emptyPrediction;
+  }
+
+  VbTranscriptConfiguration getEmptyTranscript() {
+    return emptyTranscript;
+  }
+
+  Map<String, Object> getLabs() {
+    return labs;
+  }
+
+  /**
+   * @return signer for callback URLs or null if they aren't signed
+   */
+  RequestSigner getCallbackSigner() {
+    return callbackSigner;
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
+
+/**
+ * Detects CTRs that have already been sent to VoiceBase.
+ * <p/>
+ * Keys are contact ID plus recording location. Recently seen keys are kept in a bounded LRU map
+ * with a time to live; an optional {@link IdempotencyStore} extends detection across containers.
+ */
+public class ContactDeduplicator {
+
+  private final long ttlMillis;
+  private final Map<String, Long> recent;
+  private final IdempotencyStore store;
+
+  /**
+   * @param maxEntries maximum number of keys kept in memory
+   * @param ttlMillis time in ms a key is considered a duplicate
+   * @param store durable store, may be null
+   */
+  public ContactDeduplicator(final int maxEntries, long ttlMillis, IdempotencyStore store) {
+    this.ttlMillis = ttlMillis;
+    this.store = store;
+    this.recent = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  static String key(Object contactId, String recordingLocation) {
+    return contactId + "|" + recordingLocation;
+  }
+
+  /**
+   * Claim a CTR for processing.
+   * 
+   * @param contactId contact ID
+   * @param recordingLocation location of the recording
+   * 
+   * @return true if the CTR hasn't been seen within the time to live, false if it is a duplicate
+   */
+  public boolean claim(Object contactId, String recordingLocation) {
+    String key = key(contactId, recordingLocation);
+    long now = System.currentTimeMillis();
+    long expiresAt = now + ttlMillis;
+
+    synchronized (recent) {
+      Long expiry = recent.get(key);
+      if (expiry != null && expiry > now) {
+        return false;
+      }
+      recent.put(key, expiresAt);
+    }
+
+    return store == null || store.putIfAbsent(key, expiresAt);
+  }
+
+  /**
+   * Release a claimed CTR so it will be processed again, e.g. after sending it failed.
+   * 
+   * @param contactId contact ID
+   * @param recordingLocation location of the recording
+   */
+  public void release(Object contactId, String recordingLocation) {
+    String key = key(contactId, recordingLocation);
+    synchronized (recent) {
+      recent.remove(key);
+    }
+    if (store != null) {
+      store.remove(key);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+/**
+ * Streaming decoder for contact trace records.
+ * <p/>
+ * Walks the JSON tokens once, picking up contact ID, recording location and the VoiceBase
+ * attributes and skipping everything else without building objects for it. The record bytes are
+ * kept for deserializing the full record later if needed.
+ */
+public class CtrDecoder {
+
+  private final ObjectMapper objectMapper;
+  private final ObjectReader mapReader;
+
+  public CtrDecoder(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    this.mapReader = objectMapper.readerFor(Lambda.MSG_JAVA_TYPE);
+  }
+
+  /**
+   * Decode a record.
+   * <p/>
+   * Heap buffers are parsed in place, other buffers are copied once. The buffer position is not
+   * changed.
+   * 
+   * @param data record data
+   * 
+   * @return decoded record
+   * 
+   * @throws IOException if the data is not a JSON object
+   */
+  public CtrRecord decode(ByteBuffer data) throws IOException {
+    byte[] raw;
+    int offset;
+    int length = data.remaining();
+    if (data.hasArray()) {
+      raw = data.array();
+      offset = data.arrayOffset() + data.position();
+    } else {
+      raw = new byte[length];
+      data.duplicate().get(raw);
+      offset = 0;
+    }
+    return decode(raw, offset, length);
+  }
+
+  CtrRecord decode(byte[] raw, int offset, int length) throws IOException {
+    String contactId = null;
+    String recordingLocation = null;
+    Map<String, String> vbAttributes = new HashMap<>();
+
+    try (JsonParser parser = objectMapper.getFactory().createParser(raw, offset, length)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Kinesis record is not a JSON object");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+
+        if (Lambda.KEY_EXTERNAL_ID.equals(field)) {
+          contactId = scalarValue(parser, value);
+        } else if (Lambda.KEY_MEDIA.equals(field) && value == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String mediaField = parser.getCurrentName();
+            JsonToken mediaValue = parser.nextToken();
+            if (Lambda.KEY_MEDIA_LOCATION.equals(mediaField)) {
+              recordingLocation = scalarValue(parser, mediaValue);
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else if (Lambda.KEY_ATTRIBUTES.equals(field) && value == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken attrValue = parser.nextToken();
+            if (CtrRecord.isVoicebaseAttribute(name)) {
+              String text = scalarValue(parser, attrValue);
+              if (text != null) {
+                vbAttributes.put(name, text);
+              }
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+
+    return new CtrRecord(contactId, recordingLocation, vbAttributes, mapReader, raw, offset,
+        length);
+  }
+
+  private static String scalarValue(JsonParser parser, JsonToken token) throws IOException {
+    if (token == null || token.isStructStart()) {
+      parser.skipChildren();
+      return null;
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    return parser.getValueAsString();
+  }
+}
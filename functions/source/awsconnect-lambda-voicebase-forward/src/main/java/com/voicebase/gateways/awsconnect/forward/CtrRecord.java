@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getVoicebaseAttributeName;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor;
+import com.voicebase.gateways.awsconnect.VoiceBaseAttributes;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+/**
+ * Amazon Connect contact trace record as far as needed to decide whether and where to forward it.
+ * <p/>
+ * Contact ID, recording location and the VoiceBase attributes are extracted up front; the full
+ * record is only deserialized into a map on first access through {@link #asMap()}.
+ */
+public class CtrRecord {
+
+  private final String contactId;
+  private final String recordingLocation;
+  private final Map<String, String> voicebaseAttributes;
+  private final VoiceBaseAttributes attributes;
+
+  private final ObjectReader mapReader;
+  private final byte[] raw;
+  private final int offset;
+  private final int length;
+  private Map<String, Object> data;
+
+  CtrRecord(String contactId, String recordingLocation, Map<String, String> voicebaseAttributes,
+      ObjectReader mapReader, byte[] raw, int offset, int length) {
+    this.contactId = contactId;
+    this.recordingLocation = recordingLocation;
+    this.voicebaseAttributes = voicebaseAttributes;
+    this.attributes = VoiceBaseAttributes.parse(voicebaseAttributes);
+    this.mapReader = mapReader;
+    this.raw = raw;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Wrap an already deserialized record.
+   * 
+   * @param dataAsMap deserialized CTR
+   * 
+   * @return record backed by the map
+   */
+  @SuppressWarnings("unchecked")
+  public static CtrRecord fromMap(Map<String, Object> dataAsMap) {
+    Object externalId = dataAsMap.get(Lambda.KEY_EXTERNAL_ID);
+    Map<String, String> vbAttributes = new HashMap<>();
+    Object attributes = dataAsMap.get(Lambda.KEY_ATTRIBUTES);
+    if (attributes instanceof Map) {
+      for (Map.Entry<String, ?> attribute : ((Map<String, ?>) attributes).entrySet()) {
+        if (isVoicebaseAttribute(attribute.getKey()) && attribute.getValue() != null) {
+          vbAttributes.put(attribute.getKey(), attribute.getValue().toString());
+        }
+      }
+    }
+    CtrRecord record = new CtrRecord(externalId != null ? externalId.toString() : null,
+        VoiceBaseAttributeExtractor.getS3RecordingLocation(dataAsMap), vbAttributes, null, null, 0,
+        0);
+    record.data = dataAsMap;
+    return record;
+  }
+
+  static boolean isVoicebaseAttribute(String name) {
+    return name != null && name.startsWith(Lambda.VB_ATTR + Lambda.VB_CONFIG_DELIMITER);
+  }
+
+  /**
+   * @return contact ID or null if this is not a CTR
+   */
+  public String getContactId() {
+    return contactId;
+  }
+
+  /**
+   * @return S3 location of the recording, from the recording section or VoiceBase attributes
+   */
+  public String getRecordingLocation() {
+    if (recordingLocation != null) {
+      return recordingLocation;
+    }
+    return voicebaseAttributes
+        .get(getVoicebaseAttributeName(Lambda.VB_ATTR_RECORDING_LOCATION));
+  }
+
+  /**
+   * @return contact attributes starting with the VoiceBase prefix
+   */
+  public Map<String, String> getVoicebaseAttributes() {
+    return Collections.unmodifiableMap(voicebaseAttributes);
+  }
+
+  /**
+   * @return VoiceBase settings parsed from the contact attributes
+   */
+  public VoiceBaseAttributes getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Get the complete record, deserializing it on first access.
+   * 
+   * @return record deserialized into a map
+   * 
+   * @throws IOException if the record can't be deserialized
+   */
+  public synchronized Map<String, Object> asMap() throws IOException {
+    if (data == null) {
+      data = mapReader.readValue(raw, offset, length);
+    }
+    return data;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("CtrRecord [contactId=");
+    builder.append(contactId);
+    builder.append(", recordingLocation=");
+    builder.append(getRecordingLocation());
+    builder.append(", voicebaseAttributes=");
+    builder.append(voicebaseAttributes);
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.voicebase.v3client.JacksonFactory;
+
+/**
+ * Spill queue keeping requests in an append-only log file in a local directory.
+ * <p/>
+ * Each entry is a line of JSON. A second file holds the offset up to which all entries have been
+ * acknowledged or released, entries after it are delivered again when the queue is reopened.
+ * Released requests and requests that aren't due yet are appended again. The log is compacted
+ * when no request is in flight.
+ * <p/>
+ * Meant for tests and single host setups, the directory must not be shared between processes.
+ */
+public class FileSpillQueue implements SpillQueue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileSpillQueue.class);
+
+  private static final String LOG_FILE = "spill.log";
+  private static final String OFFSET_FILE = "spill.offset";
+
+  private final Path log;
+  private final Path offsetFile;
+  private final ObjectWriter writer;
+  private final ObjectReader reader;
+
+  // guarded by this
+  private long readOffset;
+  private final TreeSet<Long> inFlight = new TreeSet<>();
+
+  public FileSpillQueue(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    log = directory.resolve(LOG_FILE);
+    offsetFile = directory.resolve(OFFSET_FILE);
+    writer = JacksonFactory.writer(Entry.class);
+    reader = JacksonFactory.reader(Entry.class);
+    readOffset = readCommittedOffset();
+  }
+
+  @Override
+  public synchronized void offer(SpilledRequest request) throws IOException {
+    append(new Entry(0, request));
+  }
+
+  @Override
+  public synchronized List<SpilledRequest> poll(int maxRequests) throws IOException {
+    compact();
+
+    byte[] data = readFrom(readOffset);
+    long now = System.currentTimeMillis();
+    List<SpilledRequest> requests = new ArrayList<>();
+    List<Entry> notDue = new ArrayList<>();
+    int start = 0;
+    for (int end = 0; end < data.length && requests.size() < maxRequests; end++) {
+      if (data[end] != '\n') {
+        continue;
+      }
+      long offset = readOffset + start;
+      Entry entry = null;
+      try {
+        entry = reader.readValue(data, start, end - start);
+      } catch (IOException e) {
+        LOGGER.error("Unable to read spilled request at {} of {}, dropping it", offset, log, e);
+      }
+      if (entry != null && entry.notBefore > now) {
+        notDue.add(entry);
+      } else if (entry != null) {
+        entry.request.setAttempts(entry.request.getAttempts() + 1);
+        entry.request.setReceipt(String.valueOf(offset));
+        inFlight.add(offset);
+        requests.add(entry.request);
+      }
+      start = end + 1;
+    }
+    // an incomplete last line is an append in progress or a crash, left for later
+    readOffset += start;
+
+    for (Entry entry : notDue) {
+      append(entry);
+    }
+    commit();
+    return requests;
+  }
+
+  @Override
+  public synchronized void acknowledge(SpilledRequest request) throws IOException {
+    inFlight.remove(Long.valueOf(request.getReceipt()));
+    commit();
+  }
+
+  @Override
+  public synchronized void release(SpilledRequest request, long delayMillis) throws IOException {
+    append(new Entry(System.currentTimeMillis() + Math.max(0, delayMillis), request));
+    inFlight.remove(Long.valueOf(request.getReceipt()));
+    commit();
+  }
+
+  @Override
+  public synchronized void releaseUntried(SpilledRequest request, long delayMillis)
+      throws IOException {
+    request.setAttempts(request.getAttempts() - 1);
+    release(request, delayMillis);
+  }
+
+  private void append(Entry entry) throws IOException {
+    byte[] json = writer.writeValueAsBytes(entry);
+    ByteBuffer line = ByteBuffer.allocate(json.length + 1);
+    line.put(json).put((byte) '\n').flip();
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      while (line.hasRemaining()) {
+        channel.write(line);
+      }
+      channel.force(false);
+    }
+  }
+
+  private byte[] readFrom(long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+      ByteBuffer data = ByteBuffer.allocate((int) Math.max(0, channel.size() - offset));
+      channel.position(offset);
+      while (data.hasRemaining() && channel.read(data) >= 0) {
+        // keep reading
+      }
+      return data.array();
+    } catch (NoSuchFileException e) {
+      return new byte[0];
+    }
+  }
+
+  /**
+   * Persist the offset up to which all entries are done with.
+   */
+  private void commit() throws IOException {
+    writeOffset(inFlight.isEmpty() ? readOffset : inFlight.first());
+  }
+
+  private void writeOffset(long offset) throws IOException {
+    Path tmp = offsetFile.resolveSibling(OFFSET_FILE + ".tmp");
+    Files.write(tmp, String.valueOf(offset).getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Drop entries that are done with from the log, only possible while nothing is in flight.
+   */
+  private void compact() throws IOException {
+    if (!inFlight.isEmpty() || readOffset == 0) {
+      return;
+    }
+    Path tmp = log.resolveSibling(LOG_FILE + ".tmp");
+    Files.write(tmp, readFrom(readOffset));
+    // reset the offset first, a crash in between delivers requests again rather than losing them
+    writeOffset(0);
+    Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    readOffset = 0;
+  }
+
+  private long readCommittedOffset() {
+    try {
+      return Long.parseLong(
+          new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim());
+    } catch (NoSuchFileException e) {
+      return 0;
+    } catch (IOException | NumberFormatException e) {
+      LOGGER.warn("Unable to read spill queue offset {}, delivering all requests again",
+          offsetFile, e);
+      return 0;
+    }
+  }
+
+  /**
+   * Line of the log.
+   */
+  static final class Entry {
+    public long notBefore;
+    public SpilledRequest request;
+
+    Entry() {}
+
+    Entry(long notBefore, SpilledRequest request) {
+      this.notBefore = notBefore;
+      this.request = request;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+/**
+ * Outcome of forwarding a single CTR to the VoiceBase API.
+ */
+public enum ForwardResult {
+
+  /** Media was accepted by the VoiceBase API. */
+  FORWARDED(false),
+  /** Record is not meant to be processed, e.g. not a CTR or disabled by the flow. */
+  SKIPPED(false),
+  /** Record has already been forwarded recently. */
+  DUPLICATE(false),
+  /** Sending failed for a reason that may go away, the record should be re-driven. */
+  FAILED(true),
+  /** Sending failed for a reason that may go away, the request has been queued to be resent. */
+  DEFERRED(false),
+  /** Sending failed permanently, re-driving the record won't help. */
+  REJECTED(false);
+
+  private final boolean retryable;
+
+  private ForwardResult(boolean retryable) {
+    this.retryable = retryable;
+  }
+
+  public boolean isRetryable() {
+    return retryable;
+  }
+}
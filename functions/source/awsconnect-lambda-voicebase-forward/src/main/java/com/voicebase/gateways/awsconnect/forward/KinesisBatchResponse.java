@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response of the record processor telling Lambda which Kinesis records failed and need to be
+ * re-driven. Only honored if the event source mapping has <code>ReportBatchItemFailures</code>
+ * enabled.
+ */
+public class KinesisBatchResponse {
+
+  private List<BatchItemFailure> batchItemFailures = new ArrayList<>();
+
+  public List<BatchItemFailure> getBatchItemFailures() {
+    return batchItemFailures;
+  }
+
+  public void setBatchItemFailures(List<BatchItemFailure> batchItemFailures) {
+    this.batchItemFailures = batchItemFailures;
+  }
+
+  public KinesisBatchResponse withBatchItemFailure(String sequenceNumber) {
+    batchItemFailures.add(new BatchItemFailure().withItemIdentifier(sequenceNumber));
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("KinesisBatchResponse [batchItemFailures=");
+    builder.append(batchItemFailures);
+    builder.append("]");
+    return builder.toString();
+  }
+
+  public static final class BatchItemFailure {
+
+    private String itemIdentifier;
+
+    public String getItemIdentifier() {
+      return itemIdentifier;
+    }
+
+    public void setItemIdentifier(String itemIdentifier) {
+      this.itemIdentifier = itemIdentifier;
+    }
+
+    public BatchItemFailure withItemIdentifier(String itemIdentifier) {
+      setItemIdentifier(itemIdentifier);
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return itemIdentifier;
+    }
+  }
+}
@@ -11,9 +11,21 @@
  */
 package com.voicebase.gateways.awsconnect.forward;
 
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getBooleanSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getIntSetting;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +34,7 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
 import com.amazonaws.services.lambda.runtime.events.KinesisEvent.KinesisEventRecord;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.voicebase.gateways.awsconnect.BeanFactory;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
 import com.voicebase.gateways.awsconnect.lambda.LambdaHandler;
@@ -35,12 +47,14 @@ import com.voicebase.gateways.awsconnect.lambda.LambdaHandler;
  *
  */
 public class LambdaRecordProcessor extends LambdaHandler
-    implements RequestHandler<KinesisEvent, Void> {
+    implements RequestHandler<KinesisEvent, KinesisBatchResponse> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LambdaRecordProcessor.class);
 
-  private ObjectMapper objectMapper;
+  private CtrDecoder ctrDecoder;
   private RecordingForwarder forwarder;
+  private ExecutorService forwardExecutor;
+  private boolean reportBatchItemFailures;
 
   public LambdaRecordProcessor() {
     this(System.getenv());
@@ -53,54 +67,264 @@ public class LambdaRecordProcessor extends LambdaHandler
 
   @Override
   protected void configure(Map<String, String> env) {
-    objectMapper = BeanFactory.objectMapper();
-    forwarder = new RecordingForwarder(env);
+    ctrDecoder = new CtrDecoder(BeanFactory.sharedObjectMapper());
+    forwarder = createForwarder(env);
+
+    int concurrency =
+        getIntSetting(env, Lambda.ENV_FORWARD_CONCURRENCY, Lambda.DEFAULT_FORWARD_CONCURRENCY);
+    if (concurrency > 1) {
+      LOGGER.info("Forwarding records with up to {} concurrent requests", concurrency);
+      forwardExecutor = Executors.newFixedThreadPool(concurrency,
+          new ThreadFactoryBuilder().setNameFormat("forward-%d").setDaemon(true).build());
+    }
+
+    reportBatchItemFailures = getBooleanSetting(env, Lambda.ENV_FORWARD_REPORT_BATCH_FAILURES,
+        Lambda.DEFAULT_FORWARD_REPORT_BATCH_FAILURES);
+  }
+
+  /**
+   * Decode a synthetic CTR and run it through the forwarder, see
+   * {@link RecordingForwarder#prime(CtrRecord)}.
+   */
+  @Override
+  protected void prime(Map<String, String> env) throws Exception {
+    Map<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("voicebase_enable", Lambda.VB_CONFIG_BOOLEAN_TRUE_STRING);
+    attributes.put("voicebase_language", "en-US");
+    attributes.put("voicebase_transcript_formatNumbers", Lambda.VB_CONFIG_BOOLEAN_TRUE_STRING);
+    attributes.put("voicebase_phraseSpotting_groups", "priming");
+    attributes.put("voicebase_classifier_names", "priming");
+
+    Map<String, Object> recording = new LinkedHashMap<>();
+    recording.put(Lambda.KEY_MEDIA_LOCATION, "priming/priming.wav");
+
+    Map<String, Object> ctr = new LinkedHashMap<>();
+    ctr.put(Lambda.KEY_EXTERNAL_ID, "priming");
+    ctr.put(Lambda.KEY_ATTRIBUTES, attributes);
+    ctr.put(Lambda.KEY_MEDIA, recording);
+
+    CtrRecord record =
+        ctrDecoder.decode(ByteBuffer.wrap(BeanFactory.sharedObjectMapper().writeValueAsBytes(ctr)));
+    LOGGER.debug("Primed forwarder, got media ID {}", forwarder.prime(record));
+  }
+
+  /**
+   * Called while the handler is configured, so it must not depend on the handler's fields.
+   * 
+   * @return forwarder configured from the function environment
+   */
+  RecordingForwarder createForwarder(Map<String, String> env) {
+    return new RecordingForwarder(env);
+  }
+
+  void setForwarder(RecordingForwarder forwarder) {
+    this.forwarder = forwarder;
   }
 
   @Override
-  public Void handleRequest(KinesisEvent event, Context ctx) {
+  protected void beforeCheckpoint() {
+    forwarder.closeIdleConnections();
+  }
+
+  @Override
+  protected void afterRestore() {
+    forwarder.prewarmConnections();
+  }
+
+  /**
+   * Forward all records of the batch.
+   * 
+   * @return null, or if reporting batch item failures is enabled, the sequence numbers of all
+   *         records that failed for a reason that may go away on retry.
+   */
+  @Override
+  public KinesisBatchResponse handleRequest(KinesisEvent event, Context ctx) {
 
     if (event == null || event.getRecords() == null || event.getRecords().isEmpty()) {
+      return reportBatchItemFailures ? new KinesisBatchResponse() : null;
+    }
+
+    Collection<String> failed = new ConcurrentLinkedQueue<>();
+    if (forwardExecutor == null) {
+      for (KinesisEventRecord recordEvent : event.getRecords()) {
+        if (recordEvent != null) {
+          CtrRecord record;
+          try {
+            record = readKinesisRecord(recordEvent);
+          } catch (IOException e) {
+            skipPoison(recordEvent);
+            continue;
+          }
+          try {
+            if (forwarder.forward(record).isRetryable()) {
+              failed.add(sequenceNumber(recordEvent));
+            }
+          } catch (Exception e) {
+            LOGGER.error("Error sending media to VB API", e);
+            failed.add(sequenceNumber(recordEvent));
+          }
+        }
+      }
+    } else {
+      forwardConcurrently(event.getRecords(), failed);
+    }
+
+    LOGGER.info("VoiceBase API {}", forwarder.getRetryStatistics());
+    if (forwarder.getCircuitBreaker() != null) {
+      LOGGER.info("VoiceBase API {}", forwarder.getCircuitBreaker().getStatistics());
+    }
+    if (forwarder.getConfigurationCache() != null) {
+      LOGGER.info("{}", forwarder.getConfigurationCache());
+    }
+
+    if (!reportBatchItemFailures) {
       return null;
     }
 
-    for (KinesisEventRecord recordEvent : event.getRecords()) {
+    KinesisBatchResponse response = new KinesisBatchResponse();
+    for (String sequenceNumber : failed) {
+      response.withBatchItemFailure(sequenceNumber);
+    }
+    if (!failed.isEmpty()) {
+      LOGGER.warn("{} of {} records failed, reporting for retry: {}", failed.size(),
+          event.getRecords().size(), response);
+    }
+    return response;
+  }
+
+  /**
+   * Forward records using the worker pool.
+   * <p/>
+   * Records are grouped by contact ID; groups are processed in parallel while records within a
+   * group are forwarded in the order they appear in the batch. Returns once all records have been
+   * processed.
+   * 
+   * @param records Kinesis records of the current batch
+   * @param failed collects sequence numbers of records that failed and should be retried
+   */
+  void forwardConcurrently(List<KinesisEventRecord> records, final Collection<String> failed) {
+    Map<Future<?>, List<ContactRecord>> pending = new LinkedHashMap<>();
+    for (final List<ContactRecord> group : groupByContactId(records)) {
+      pending.put(forwardExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (ContactRecord record : group) {
+            try {
+              if (forwarder.forward(record.ctr).isRetryable()) {
+                failed.add(record.sequenceNumber);
+              }
+            } catch (Exception e) {
+              LOGGER.error("Error sending media to VB API", e);
+              failed.add(record.sequenceNumber);
+            }
+          }
+        }
+      }), group);
+    }
+
+    for (Map.Entry<Future<?>, List<ContactRecord>> entry : pending.entrySet()) {
+      try {
+        entry.getKey().get();
+      } catch (InterruptedException e) {
+        LOGGER.error("Interrupted while waiting for records to be forwarded", e);
+        Thread.currentThread().interrupt();
+        // outcome unknown, have the unfinished groups retried
+        for (Map.Entry<Future<?>, List<ContactRecord>> unfinished : pending.entrySet()) {
+          if (!unfinished.getKey().isDone()) {
+            for (ContactRecord record : unfinished.getValue()) {
+              failed.add(record.sequenceNumber);
+            }
+          }
+        }
+        return;
+      } catch (ExecutionException e) {
+        LOGGER.error("Error sending media to VB API", e.getCause());
+        // the group stopped at an unknown record, have all of it retried
+        for (ContactRecord record : entry.getValue()) {
+          if (!failed.contains(record.sequenceNumber)) {
+            failed.add(record.sequenceNumber);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Deserialize records and group them by contact ID, keeping the original order within each
+   * group. Records without contact ID end up in a group of their own, records that can't be
+   * decoded are skipped.
+   * 
+   * @param records Kinesis records
+   * 
+   * @return groups of deserialized records
+   */
+  List<List<ContactRecord>> groupByContactId(List<KinesisEventRecord> records) {
+    Map<Object, List<ContactRecord>> groups = new LinkedHashMap<>();
+    for (KinesisEventRecord recordEvent : records) {
       if (recordEvent != null) {
+        CtrRecord ctr;
         try {
-          Map<String, Object> dataAsMap = readKinesisRecord(recordEvent);
-          forwarder.forwardRequest(dataAsMap);
-        } catch (Exception e) {
-          LOGGER.error("Error sending media to VB API", e);
+          ctr = readKinesisRecord(recordEvent);
+        } catch (IOException e) {
+          skipPoison(recordEvent);
+          continue;
         }
-
+        Object key = ctr.getContactId() != null ? ctr.getContactId() : new Object();
+        List<ContactRecord> group = groups.get(key);
+        if (group == null) {
+          group = new ArrayList<>();
+          groups.put(key, group);
+        }
+        group.add(new ContactRecord(sequenceNumber(recordEvent), ctr));
       }
     }
-    return null;
+    return new ArrayList<>(groups.values());
+  }
+
+  /**
+   * Drop a record that can't be decoded. It would fail the same way on every retry, so it is not
+   * reported as a batch item failure.
+   */
+  private static void skipPoison(KinesisEventRecord recordEvent) {
+    LOGGER.warn("Skipping Kinesis record {}, it can't be decoded as a CTR.",
+        sequenceNumber(recordEvent));
+  }
+
+  private static String sequenceNumber(KinesisEventRecord recordEvent) {
+    return recordEvent.getKinesis().getSequenceNumber();
   }
 
   /**
-   * Get Kinesis record and deserialize to map.
+   * Get Kinesis record and decode the parts needed for forwarding.
    * 
    * @param recordEvent
    * 
-   * @return Record deserialized into a map.
+   * @return decoded record
    * 
    * @throws IOException
    */
-  Map<String, Object> readKinesisRecord(KinesisEventRecord recordEvent) throws IOException {
-    ByteBuffer data = recordEvent.getKinesis().getData();
-    byte[] bytes = new byte[data.remaining()];
-    data.get(bytes, 0, data.remaining());
-
-    Map<String, Object> dataAsMap = null;
+  CtrRecord readKinesisRecord(KinesisEventRecord recordEvent) throws IOException {
     try {
-      dataAsMap = objectMapper.readValue(bytes, Lambda.MSG_JAVA_TYPE);
-      LOGGER.debug("Msg received: {}", dataAsMap);
+      CtrRecord record = ctrDecoder.decode(recordEvent.getKinesis().getData());
+      LOGGER.debug("Msg received: {}", record);
+      return record;
     } catch (IOException e) {
       LOGGER.error("Unable to deserialize Kinesis record.", e);
       throw e;
     }
-    return dataAsMap;
+  }
+
+  /**
+   * Decoded CTR along with the sequence number of the Kinesis record it came from.
+   */
+  static final class ContactRecord {
+    final String sequenceNumber;
+    final CtrRecord ctr;
+
+    ContactRecord(String sequenceNumber, CtrRecord ctr) {
+      this.sequenceNumber = sequenceNumber;
+      this.ctr = ctr;
+    }
   }
 
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getIntSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getLongSetting;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.gateways.awsconnect.lambda.LambdaHandler;
+import com.voicebase.sdk.util.ExponentialBackoffRetryPolicy;
+
+/**
+ * Lambda function resending requests the forward function couldn't send to the VoiceBase API,
+ * see {@link SpillDrainer}. Meant to run on a schedule, the event is ignored.
+ */
+public class LambdaSpillDrainProcessor extends LambdaHandler
+    implements RequestHandler<Map<String, Object>, Integer> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LambdaSpillDrainProcessor.class);
+
+  private SpillDrainer drainer;
+  private long timeReserve;
+
+  public LambdaSpillDrainProcessor() {
+    this(System.getenv());
+  }
+
+  LambdaSpillDrainProcessor(Map<String, String> env) {
+    super(env);
+  }
+
+  @Override
+  protected void configure(Map<String, String> env) {
+    timeReserve = getLongSetting(env, Lambda.ENV_SPILL_DRAIN_TIME_RESERVE,
+        Lambda.DEFAULT_SPILL_DRAIN_TIME_RESERVE);
+    drainer = drainer(env, new RecordingForwarder(env));
+  }
+
+  static SpillDrainer drainer(Map<String, String> env, RecordingForwarder forwarder) {
+    if (forwarder.getSpillQueue() == null) {
+      LOGGER.warn("No spill queue configured, nothing to drain.");
+      return null;
+    }
+    int attempts =
+        getIntSetting(env, Lambda.ENV_SPILL_DRAIN_ATTEMPTS, Lambda.DEFAULT_SPILL_DRAIN_ATTEMPTS);
+    ExponentialBackoffRetryPolicy backoff = new ExponentialBackoffRetryPolicy(attempts - 1,
+        getLongSetting(env, Lambda.ENV_SPILL_DRAIN_DELAY, Lambda.DEFAULT_SPILL_DRAIN_DELAY),
+        getLongSetting(env, Lambda.ENV_SPILL_DRAIN_MAX_DELAY,
+            Lambda.DEFAULT_SPILL_DRAIN_MAX_DELAY),
+        null);
+    return new SpillDrainer(forwarder, forwarder.getSpillQueue(), backoff, getIntSetting(env,
+        Lambda.ENV_SPILL_DRAIN_BATCH_SIZE, Lambda.DEFAULT_SPILL_DRAIN_BATCH_SIZE));
+  }
+
+  /**
+   * Resend queued requests until the queue is empty, the API fails again or the function is
+   * about to time out.
+   * 
+   * @return number of requests that have been sent
+   */
+  @Override
+  public Integer handleRequest(Map<String, Object> event, Context context) {
+    if (drainer == null) {
+      return 0;
+    }
+    long deadline = context != null
+        ? System.currentTimeMillis() + context.getRemainingTimeInMillis() - timeReserve
+        : Long.MAX_VALUE;
+    try {
+      return drainer.drain(deadline);
+    } catch (Exception e) {
+      LOGGER.error("Error draining spill queue", e);
+      throw new IllegalStateException("Unable to drain spill queue", e);
+    }
+  }
+}
@@ -11,9 +11,6 @@
  */
 package com.voicebase.gateways.awsconnect.forward;
 
-import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getBooleanParameter;
-import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getStringParameter;
-import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getStringParameterSet;
 import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getVoicebaseAttributeName;
 
 import java.util.ArrayList;
@@ -21,24 +18,23 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
-import org.apache.commons.configuration2.ImmutableConfiguration;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.voicebase.v3client.datamodel.VbAudioRedactorConfiguration;
 import com.voicebase.v3client.datamodel.VbCallbackConfiguration;
-import com.voicebase.v3client.datamodel.VbChannelConfiguration;
+import com.voicebase.v3client.datamodel.VbCallbackFormatEnum;
+import com.voicebase.v3client.datamodel.VbCallbackStreamEnum;
+import com.voicebase.v3client.datamodel.VbCallbackTypeEnum;
 import com.voicebase.v3client.datamodel.VbClassifierConfiguration;
 import com.voicebase.v3client.datamodel.VbConfiguration;
 import com.voicebase.v3client.datamodel.VbContentFilteringConfiguration;
 import com.voicebase.v3client.datamodel.VbDetectorConfiguration;
 import com.voicebase.v3client.datamodel.VbFormattingConfiguration;
-import com.voicebase.v3client.datamodel.VbHttpMethodEnum;
 import com.voicebase.v3client.datamodel.VbIncludeTypeEnum;
-import com.voicebase.v3client.datamodel.VbIngestConfiguration;
 import com.voicebase.v3client.datamodel.VbKnowledgeConfiguration;
 import com.voicebase.v3client.datamodel.VbMetadata;
 import com.voicebase.v3client.datamodel.VbMetricGroupConfiguration;
@@ -54,10 +50,11 @@ import com.voicebase.v3client.datamodel.VbTranscriptConfiguration;
 import com.voicebase.v3client.datamodel.VbTranscriptRedactorConfiguration;
 import com.voicebase.v3client.datamodel.VbVocabularyConfiguration;
 import com.voicebase.v3client.datamodel.VbVocabularyTermConfiguration;
-import com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor;
+import com.voicebase.gateways.awsconnect.VoiceBaseAttributes;
+import com.voicebase.gateways.awsconnect.forward.ConfigurationCache.CachedConfiguration;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner.SignatureParameters;
 import com.voicebase.sdk.v3.MediaProcessingRequest;
-import java.util.LinkedHashMap;
 
 /**
  * 
@@ -94,9 +91,13 @@ public class MediaProcessingRequestBuilder {
   private String rightSpeakerName;
 
   private CallbackProvider callbackProvider;
+  private ConfigurationTemplate template;
+  private VoiceBaseAttributes voiceBaseAttributes;
+  private ConfigurationCache configurationCache;
 
   private String externalId;
   private VbConfiguration configuration;
+  private VbConfiguration unsignedConfiguration;
   private VbMetadata metaData;
   private MediaProcessingRequest request;
 
@@ -187,6 +188,67 @@ public class MediaProcessingRequestBuilder {
     return this;
   }
 
+  public void setVoiceBaseAttributes(VoiceBaseAttributes voiceBaseAttributes) {
+    this.voiceBaseAttributes = voiceBaseAttributes;
+  }
+
+  /**
+   * Use already parsed VoiceBase attributes instead of parsing the attributes of the input data.
+   * 
+   * @param voiceBaseAttributes parsed attributes of the input data
+   * @return this builder
+   */
+  public MediaProcessingRequestBuilder withVoiceBaseAttributes(
+      VoiceBaseAttributes voiceBaseAttributes) {
+    setVoiceBaseAttributes(voiceBaseAttributes);
+    return this;
+  }
+
+  public void setConfigurationCache(ConfigurationCache configurationCache) {
+    this.configurationCache = configurationCache;
+  }
+
+  /**
+   * Reuse configurations built for the same attributes before. The cache must only be used with
+   * the template of this builder.
+   * 
+   * @param configurationCache cache of built and serialized configurations
+   * @return this builder
+   */
+  public MediaProcessingRequestBuilder withConfigurationCache(
+      ConfigurationCache configurationCache) {
+    setConfigurationCache(configurationCache);
+    return this;
+  }
+
+  public void setTemplate(ConfigurationTemplate template) {
+    this.template = template;
+  }
+
+  /**
+   * Use a pre-compiled template for the environment derived parts of the configuration. If set,
+   * speaker, feature, prediction, knowledge and callback settings of this builder are ignored.
+   * 
+   * @param template compiled template
+   * @return this builder
+   */
+  public MediaProcessingRequestBuilder withTemplate(ConfigurationTemplate template) {
+    setTemplate(template);
+    return this;
+  }
+
+  /**
+   * Compile the environment derived settings of this builder into a template that can be shared
+   * by all subsequent requests.
+   * 
+   * @return template for the current settings
+   */
+  public ConfigurationTemplate compileTemplate() {
+    return new ConfigurationTemplate(predictionsEnabled, knowledgeDiscoveryEnabled,
+        advancedPunctuationEnabled, configureSpeakers, leftSpeakerName, rightSpeakerName,
+        callbackProvider);
+  }
+
   public String getExternalId() {
     return externalId;
   }
@@ -195,6 +257,14 @@ public class MediaProcessingRequestBuilder {
     return configuration;
   }
 
+  /**
+   * @return configuration of the built request before callback URLs were signed, to sign again
+   *         when the request is resent later
+   */
+  public VbConfiguration getUnsignedConfiguration() {
+    return unsignedConfiguration;
+  }
+
   public VbMetadata getMetaData() {
     return metaData;
   }
@@ -205,16 +275,79 @@ public class MediaProcessingRequestBuilder {
 
   public MediaProcessingRequest build() {
     externalId = awsInputData.get(Lambda.KEY_EXTERNAL_ID).toString();
-    configuration = createConfiguration();
+
+    ConfigurationTemplate base = template != null ? template : compileTemplate();
+    @SuppressWarnings("unchecked")
+    Map<String, Object> attributes = (Map<String, Object>) awsInputData.get(Lambda.KEY_ATTRIBUTES);
+    VoiceBaseAttributes vbAttrs =
+        voiceBaseAttributes != null ? voiceBaseAttributes : VoiceBaseAttributes.parse(attributes);
+
+    byte[] serializedConfiguration = null;
+    if (configurationCache != null) {
+      try {
+        CachedConfiguration cached = configurationCache.get(attributes,
+            () -> createConfiguration(base, attributes, vbAttrs));
+        configuration = cached.getConfiguration();
+        serializedConfiguration = cached.getJson();
+      } catch (JsonProcessingException e) {
+        LOGGER.warn("Unable to serialize configuration for ext ID {}", externalId, e);
+        configuration = createConfiguration(base, attributes, vbAttrs);
+      }
+    } else {
+      configuration = createConfiguration(base, attributes, vbAttrs);
+    }
+
+    if (hasTextCallbacks(configuration)) {
+      // text and caption transcripts don't contain the external ID, the URL has to
+      configuration = withExternalIdInTextCallbacks(configuration, externalId);
+      serializedConfiguration = null;
+    }
+
+    unsignedConfiguration = configuration;
+    if (base.getCallbackSigner() != null) {
+      // signatures differ for every media, so the shared configuration can't be sent as is
+      configuration =
+          withSignedCallbacks(configuration, base.getCallbackSigner().createSignature());
+      serializedConfiguration = null;
+    }
+
+    if (attributes != null && !attributes.isEmpty()) {
+      expandListAttributes(base, attributes, vbAttrs);
+    }
     metaData = createMetaData();
 
     request = new MediaProcessingRequest();
     request.setConfiguration(configuration);
+    request.setSerializedConfiguration(serializedConfiguration);
     request.setMetadata(metaData);
 
     return request;
   }
 
+  /**
+   * Replace list attributes with the unique entries sent to VoiceBase.
+   */
+  private static void expandListAttributes(ConfigurationTemplate base,
+      Map<String, Object> attributes, VoiceBaseAttributes vbAttrs) {
+    putIfNotEmpty(attributes, vbAttrs.getPhraseSpottingGroups(), Lambda.VB_ATTR_KEYWORDS,
+        Lambda.VB_ATTR_KEYWORDS_GROUPS);
+    if (base.isPredictionsEnabled()) {
+      putIfNotEmpty(attributes, vbAttrs.getClassifierNames(), Lambda.VB_ATTR_CLASSIFIER,
+          Lambda.VB_ATTR_CLASSIFIER_NAMES);
+    }
+    putIfNotEmpty(attributes, vbAttrs.getVocabularyTerms(), Lambda.VB_ATTR_VOCABULARY,
+        Lambda.VB_ATTR_VOCABULARY_TERMS);
+    putIfNotEmpty(attributes, vbAttrs.getVocabularyNames(), Lambda.VB_ATTR_VOCABULARY,
+        Lambda.VB_ATTR_VOCABULARY_NAMES);
+  }
+
+  private static void putIfNotEmpty(Map<String, Object> attributes, Set<String> values,
+      String... name) {
+    if (values != null && !values.isEmpty()) {
+      attributes.put(getVoicebaseAttributeName(name), values);
+    }
+  }
+
   private VbMetadata createMetaData() {
     VbMetadata vbMetadata = new VbMetadata();
     vbMetadata.setExternalId(externalId);
@@ -225,80 +358,27 @@ public class MediaProcessingRequestBuilder {
   /**
    * Create VB configuration out of Lily message.
    * <p/>
-   * NOTE: As a side effect some of the attributes in the map are rewritten with expanded lists.
+   * Environment derived parts are taken from the template and shared. Only parts driven by flow
+   * attributes are created per request, parts of the template are never modified.
    * 
    * 
    * @return VB configuration
    */
-  private VbConfiguration createConfiguration() {
+  private VbConfiguration createConfiguration(ConfigurationTemplate base,
+      Map<String, Object> attributes, VoiceBaseAttributes vbAttrs) {
 
     VbConfiguration vbConfiguration = new VbConfiguration();
-    VbIngestConfiguration vbIngestConfiguration = new VbIngestConfiguration();
-    VbTranscriptConfiguration vbTranscriptConfiguration = new VbTranscriptConfiguration();
-    VbKnowledgeConfiguration vbKnowledgeConfiguration = new VbKnowledgeConfiguration();
-    vbKnowledgeConfiguration.enableDiscovery(knowledgeDiscoveryEnabled);
-    VbSpeechModelConfiguration vbSpeechModelConfiguration = new VbSpeechModelConfiguration();
-    VbPublishConfiguration vbPublishConfiguration = new VbPublishConfiguration();
-    VbPredictionConfiguration vbPredictionConfiguration = new VbPredictionConfiguration();
-
-    // speakers
-    if (configureSpeakers) {
-      VbChannelConfiguration leftChannelConfig =
-          new VbChannelConfiguration().speakerName(leftSpeakerName);
-      VbChannelConfiguration rightChannelConfig =
-          new VbChannelConfiguration().speakerName(rightSpeakerName);
-      vbIngestConfiguration.channels(Lists.newArrayList(leftChannelConfig, rightChannelConfig));
-    }
+    VbTranscriptConfiguration vbTranscriptConfiguration = base.getEmptyTranscript();
+    VbKnowledgeConfiguration vbKnowledgeConfiguration = base.getKnowledge();
+    VbSpeechModelConfiguration vbSpeechModelConfiguration = base.getSpeechModel();
+    VbPredictionConfiguration vbPredictionConfiguration = base.getEmptyPrediction();
+    VbPublishConfiguration vbPublishConfiguration = base.getPublish();
 
-    ArrayList<String> speechFeatures = new ArrayList<>();
-    speechFeatures.add(SPEECH_FEATURE_VOICE);
-    if (advancedPunctuationEnabled) {
-      speechFeatures.add(SPEECH_FEATURE_ADVANCED_PUNCTUATION);
-    }
-    vbSpeechModelConfiguration.features(speechFeatures);
-
-
-    // callbacks
-    List<VbIncludeTypeEnum> includes = new ArrayList<>();
-    if (callbackProvider.hasIncludes()) {
-      for (String include : callbackProvider.getIncludes()) {
-        if (!StringUtils.isEmpty(include)) {
-          VbIncludeTypeEnum includeEnum = VbIncludeTypeEnum.fromValue(include);
-          if (includeEnum != null) {
-            includes.add(includeEnum);
-          }
-        }
-      }
-    }
-
-    List<VbCallbackConfiguration> callbacks = new ArrayList<>();
-    callbacks.add((new VbCallbackConfiguration()).url(callbackProvider.getCallbackUrl())
-        .method(VbHttpMethodEnum.valueOf(callbackProvider.getCallbackMethod())).include(includes));
-    if (callbackProvider.hasAdditionalCallbackUrls()) {
-      for (String callback : callbackProvider.getAdditionalCallbackUrls()) {
-        callbacks.add(new VbCallbackConfiguration().url(callback)
-            .method(VbHttpMethodEnum.valueOf(callbackProvider.getCallbackMethod()))
-            .include(includes));
-      }
-    }
-    vbPublishConfiguration.callbacks(callbacks);
-
-    Map<String, Object> vbLabsConfiguration = new LinkedHashMap<>();
-    Map<String, Object> vbVoiceActivityConfiguration = new LinkedHashMap<>();
-    vbVoiceActivityConfiguration.put("enableVoiceActivity", Boolean.TRUE);
-    vbLabsConfiguration.put("voiceActivity", vbVoiceActivityConfiguration);
-
-    @SuppressWarnings("unchecked")
-    Map<String, Object> attributes = (Map<String, Object>) awsInputData.get(Lambda.KEY_ATTRIBUTES);
     if (attributes != null && !attributes.isEmpty()) {
-      VoiceBaseAttributeExtractor mc = new VoiceBaseAttributeExtractor(attributes);
-
-      ImmutableConfiguration vbAttrs = mc.immutableSubset(Lambda.VB_ATTR);
 
       List<VbDetectorConfiguration> detectors = new ArrayList<>();
 
-      boolean redactPCI = getBooleanParameter(vbAttrs, Lambda.VB_ATTR_PCIREDACT,
-          Lambda.DEFAULT_ENABLE_PCI_REDACTION);
+      boolean redactPCI = vbAttrs.isPciRedaction(Lambda.DEFAULT_ENABLE_PCI_REDACTION);
       if (redactPCI) {
         VbDetectorConfiguration pciDetectorConfiguration =
             new VbDetectorConfiguration().detectorName(DETECTOR_NAME_PCI)
@@ -309,8 +389,7 @@ public class MediaProcessingRequestBuilder {
         detectors.add(pciDetectorConfiguration);
       }
 
-      boolean redactNumbers = getBooleanParameter(vbAttrs, Lambda.VB_ATTR_NUMBERREDACT,
-          Lambda.DEFAULT_ENABLE_NUMBER_REDACTION);
+      boolean redactNumbers = vbAttrs.isNumberRedaction(Lambda.DEFAULT_ENABLE_NUMBER_REDACTION);
       if (redactNumbers) {
         VbDetectorConfiguration numberDetectorConfiguration =
             new VbDetectorConfiguration().detectorName(DETECTOR_NAME_NUMBER).redactor(DEFAULT_REDACTOR_CONFIG);
@@ -318,11 +397,11 @@ public class MediaProcessingRequestBuilder {
       }
 
       if (!detectors.isEmpty()) {
-        vbPredictionConfiguration.detectors(detectors);
+        vbPredictionConfiguration = new VbPredictionConfiguration().detectors(detectors);
       }
 
 
-      String priorityString = getStringParameter(vbAttrs, Lambda.VB_ATTR_PRIORIY);
+      String priorityString = vbAttrs.getPriority();
       try {
         VbPriorityEnum p = VbPriorityEnum.fromValue(priorityString);
         if (p == null) {
@@ -330,32 +409,29 @@ public class MediaProcessingRequestBuilder {
         }
         vbConfiguration.priority(p);
       } catch (Exception e) {
-        LOGGER.error("Unknown priority '{}' for ext ID {}",
-            vbAttrs.getString(Lambda.VB_ATTR_PRIORIY), awsInputData.get(Lambda.KEY_EXTERNAL_ID));
+        LOGGER.error("Unknown priority '{}' for ext ID {}", priorityString,
+            awsInputData.get(Lambda.KEY_EXTERNAL_ID));
         vbConfiguration.priority(VbPriorityEnum.NORMAL);
       }
 
-      ImmutableConfiguration transcriptAttr = vbAttrs.immutableSubset(Lambda.VB_ATTR_TRANSCRIPT);
-
-      vbTranscriptConfiguration.formatting(new VbFormattingConfiguration().enableNumberFormatting(
-          getBooleanParameter(transcriptAttr, Lambda.VB_ATTR_TRANSCRIPT_NUMBER_FORMAT)));
+      vbTranscriptConfiguration = new VbTranscriptConfiguration();
+      vbTranscriptConfiguration.formatting(
+          new VbFormattingConfiguration().enableNumberFormatting(vbAttrs.getFormatNumbers()));
 
       vbTranscriptConfiguration
-          .contentFiltering(new VbContentFilteringConfiguration().enableProfanityFiltering(
-              getBooleanParameter(transcriptAttr, Lambda.VB_ATTR_TRANSCRIPT_SWEARWORD_FILTER)));
+          .contentFiltering(new VbContentFilteringConfiguration()
+              .enableProfanityFiltering(vbAttrs.getFilterSwearWords()));
 
       // knowledge discovery
-      ImmutableConfiguration knowledgeAttr = vbAttrs.immutableSubset(Lambda.VB_ATTR_KNOWLEDGE);
-      Boolean knowledgeDiscoveryEnabledAttr =
-          getBooleanParameter(knowledgeAttr, Lambda.VB_ATTR_KNOWLEDGE_DISCOVERY);
-      if (knowledgeDiscoveryEnabledAttr != null) {
-        vbKnowledgeConfiguration.enableDiscovery(knowledgeDiscoveryEnabledAttr);
+      Boolean knowledgeDiscoveryEnabledAttr = vbAttrs.getKnowledgeDiscovery();
+      if (knowledgeDiscoveryEnabledAttr != null
+          && knowledgeDiscoveryEnabledAttr != base.isKnowledgeDiscoveryEnabled()) {
+        vbKnowledgeConfiguration =
+            new VbKnowledgeConfiguration().enableDiscovery(knowledgeDiscoveryEnabledAttr);
       }
 
       // phrase spotting
-      ImmutableConfiguration keywordAttr = vbAttrs.immutableSubset(Lambda.VB_ATTR_KEYWORDS);
-
-      Set<String> groups = getStringParameterSet(keywordAttr, Lambda.VB_ATTR_KEYWORDS_GROUPS);
+      Set<String> groups = vbAttrs.getPhraseSpottingGroups();
       if (groups != null && !groups.isEmpty()) {
 
         List<VbSpottingGroupConfiguration> spottingGroups = new ArrayList<>();
@@ -364,22 +440,18 @@ public class MediaProcessingRequestBuilder {
         }
 
         vbConfiguration.spotting(new VbSpottingConfiguration().groups(spottingGroups));
-
-        // overwrite metadata
-        attributes.put(
-            getVoicebaseAttributeName(Lambda.VB_ATTR_KEYWORDS, Lambda.VB_ATTR_KEYWORDS_GROUPS),
-            groups);
       }
 
-      vbSpeechModelConfiguration.language(getStringParameter(vbAttrs, Lambda.VB_ATTR_LANGUAGE));
+      String language = vbAttrs.getLanguage();
+      if (language != null) {
+        vbSpeechModelConfiguration = new VbSpeechModelConfiguration()
+            .features(base.getSpeechFeatures()).language(language);
+      }
 
       // classifiers
-      if (predictionsEnabled) {
+      if (base.isPredictionsEnabled()) {
 
-        ImmutableConfiguration classificationAttr =
-            vbAttrs.immutableSubset(Lambda.VB_ATTR_CLASSIFIER);
-        Set<String> classifierNames =
-            getStringParameterSet(classificationAttr, Lambda.VB_ATTR_CLASSIFIER_NAMES);
+        Set<String> classifierNames = vbAttrs.getClassifierNames();
         if (classifierNames != null && !classifierNames.isEmpty()) {
           List<VbClassifierConfiguration> classifierConfigs = new ArrayList<>();
 
@@ -387,20 +459,18 @@ public class MediaProcessingRequestBuilder {
             classifierConfigs.add(new VbClassifierConfiguration().classifierName(classifier));
           }
 
+          if (vbPredictionConfiguration == base.getEmptyPrediction()) {
+            vbPredictionConfiguration = new VbPredictionConfiguration();
+          }
           vbPredictionConfiguration.classifiers(classifierConfigs);
-
-          attributes.put(
-              getVoicebaseAttributeName(Lambda.VB_ATTR_CLASSIFIER, Lambda.VB_ATTR_CLASSIFIER_NAMES),
-              classifierNames);
         }
       }
 
       // custom vocabularies
       List<VbVocabularyConfiguration> vocabs = new ArrayList<>();
 
-      ImmutableConfiguration vocabAttr = vbAttrs.immutableSubset(Lambda.VB_ATTR_VOCABULARY);
       // vocab terms need to be unique
-      Set<String> terms = getStringParameterSet(vocabAttr, Lambda.VB_ATTR_VOCABULARY_TERMS);
+      Set<String> terms = vbAttrs.getVocabularyTerms();
       if (terms != null && !terms.isEmpty()) {
         VbVocabularyConfiguration vbVocabularyConfiguration = new VbVocabularyConfiguration();
         ArrayList<VbVocabularyTermConfiguration> vocabTermConfigs = new ArrayList<>();
@@ -409,23 +479,14 @@ public class MediaProcessingRequestBuilder {
         }
         vbVocabularyConfiguration.terms(vocabTermConfigs);
         vocabs.add(vbVocabularyConfiguration);
-
-        // overwrite metadata
-        attributes.put(
-            getVoicebaseAttributeName(Lambda.VB_ATTR_VOCABULARY, Lambda.VB_ATTR_VOCABULARY_TERMS),
-            terms);
       }
 
-      Set<String> vocabNames = getStringParameterSet(vocabAttr, Lambda.VB_ATTR_VOCABULARY_NAMES);
+      Set<String> vocabNames = vbAttrs.getVocabularyNames();
       if (vocabNames != null && !vocabNames.isEmpty()) {
 
         for (String vocab : vocabNames) {
           vocabs.add(new VbVocabularyConfiguration().vocabularyName(vocab));
         }
-        // overwrite metadata
-        attributes.put(
-            getVoicebaseAttributeName(Lambda.VB_ATTR_VOCABULARY, Lambda.VB_ATTR_VOCABULARY_NAMES),
-            vocabNames);
       }
 
       if (!vocabs.isEmpty()) {
@@ -433,8 +494,7 @@ public class MediaProcessingRequestBuilder {
       }
 
       // metrics
-      ImmutableConfiguration metricsAttrs = vbAttrs.immutableSubset(Lambda.VB_ATTR_METRICS);
-      Set<String> metricGroups = getStringParameterSet(metricsAttrs, Lambda.VB_ATTR_METRICS_GROUPS);
+      Set<String> metricGroups = vbAttrs.getMetricGroups();
       if (metricGroups != null && !metricGroups.isEmpty()) {
         List<VbMetricGroupConfiguration> metricsConfs = new ArrayList<>();
         for (String metricGroupName : metricGroups) {
@@ -445,15 +505,160 @@ public class MediaProcessingRequestBuilder {
         vbConfiguration.metrics(metricsConfs);
       }
 
+      // callbacks
+      if (vbAttrs.hasCallbackOverrides()) {
+        vbPublishConfiguration = createPublishConfiguration(base, vbAttrs);
+      }
+
     }
 
-    vbConfiguration.ingest(vbIngestConfiguration).publish(vbPublishConfiguration)
+    vbConfiguration.ingest(base.getIngest()).publish(vbPublishConfiguration)
         .transcript(vbTranscriptConfiguration).speechModel(vbSpeechModelConfiguration)
         .prediction(vbPredictionConfiguration).knowledge(vbKnowledgeConfiguration)
-        .labs(vbLabsConfiguration);
+        .labs(base.getLabs());
 
 
     return vbConfiguration;
   }
 
+  /**
+   * Shallow copy of a configuration with signature parameters added to all callback URLs.
+   * 
+   * @param configuration configuration, possibly shared, not modified
+   * @param signature signature parameters for this media
+   * 
+   * @return configuration for this request
+   */
+  static VbConfiguration withSignedCallbacks(VbConfiguration configuration,
+      SignatureParameters signature) {
+    return withCallbackUrls(configuration,
+        callback -> CallbackProvider.signUrl(callback.getUrl(), signature));
+  }
+
+  /**
+   * Shallow copy of a configuration with the external ID added to the URLs of callbacks whose
+   * body isn't JSON.
+   * 
+   * @param configuration configuration, possibly shared, not modified
+   * @param externalId external ID of this media
+   * 
+   * @return configuration for this request
+   */
+  static VbConfiguration withExternalIdInTextCallbacks(VbConfiguration configuration,
+      String externalId) {
+    return withCallbackUrls(configuration,
+        callback -> isTextCallback(callback) ? CallbackProvider.addParameter(callback.getUrl(),
+            Lambda.CALLBACK_PARAM_EXTERNAL_ID, externalId) : callback.getUrl());
+  }
+
+  private static boolean hasTextCallbacks(VbConfiguration configuration) {
+    VbPublishConfiguration publish = configuration.getPublish();
+    if (publish != null && publish.getCallbacks() != null) {
+      for (VbCallbackConfiguration callback : publish.getCallbacks()) {
+        if (isTextCallback(callback)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTextCallback(VbCallbackConfiguration callback) {
+    return callback.getFormat() != null && callback.getFormat() != VbCallbackFormatEnum.JSON;
+  }
+
+  private static VbConfiguration withCallbackUrls(VbConfiguration configuration,
+      Function<VbCallbackConfiguration, String> url) {
+    VbPublishConfiguration publish = configuration.getPublish();
+    if (publish == null || publish.getCallbacks() == null) {
+      return configuration;
+    }
+
+    List<VbCallbackConfiguration> callbacks = new ArrayList<>(publish.getCallbacks().size());
+    for (VbCallbackConfiguration callback : publish.getCallbacks()) {
+      callbacks.add(new VbCallbackConfiguration()
+          .url(url.apply(callback))
+          .method(callback.getMethod()).type(callback.getType()).include(callback.getInclude())
+          .stream(callback.getStream()).format(callback.getFormat()));
+    }
+
+    return new VbConfiguration().speechModel(configuration.getSpeechModel())
+        .additionalSpeechModels(configuration.getAdditionalSpeechModels())
+        .priority(configuration.getPriority()).ingest(configuration.getIngest())
+        .prediction(configuration.getPrediction()).metrics(configuration.getMetrics())
+        .spotting(configuration.getSpotting()).knowledge(configuration.getKnowledge())
+        .transcript(configuration.getTranscript()).vocabularies(configuration.getVocabularies())
+        .publish(new VbPublishConfiguration().callbacks(callbacks))
+        .searchability(configuration.getSearchability())
+        .encryption(configuration.getEncryption()).labs(configuration.getLabs());
+  }
+
+  /**
+   * Copy the template callbacks, keeping URL and method, and apply the callback settings of the
+   * flow. Invalid values are logged and the template value is kept. Setting a format without a
+   * type requests a transcript callback, includes only apply to analytics callbacks.
+   * 
+   * @return publish configuration for this request
+   */
+  private VbPublishConfiguration createPublishConfiguration(ConfigurationTemplate base,
+      VoiceBaseAttributes vbAttrs) {
+    List<VbIncludeTypeEnum> includes = null;
+    Set<String> includeNames = vbAttrs.getCallbackIncludes();
+    if (includeNames != null) {
+      includes = new ArrayList<>(includeNames.size());
+      for (String includeName : includeNames) {
+        VbIncludeTypeEnum include = VbIncludeTypeEnum.fromValue(includeName);
+        if (include != null) {
+          includes.add(include);
+        } else {
+          LOGGER.warn("Unknown callback include '{}' for ext ID {}", includeName, externalId);
+        }
+      }
+      includes = Collections.unmodifiableList(includes);
+    }
+
+    VbCallbackTypeEnum type = null;
+    if (vbAttrs.getCallbackType() != null) {
+      type = VbCallbackTypeEnum.fromValue(vbAttrs.getCallbackType());
+      if (type == null) {
+        LOGGER.warn("Unknown callback type '{}' for ext ID {}", vbAttrs.getCallbackType(),
+            externalId);
+      }
+    }
+
+    VbCallbackFormatEnum format = null;
+    if (vbAttrs.getCallbackFormat() != null) {
+      format = VbCallbackFormatEnum.fromValue(vbAttrs.getCallbackFormat());
+      if (format == null) {
+        LOGGER.warn("Unknown callback format '{}' for ext ID {}", vbAttrs.getCallbackFormat(),
+            externalId);
+      } else if (type == null) {
+        type = VbCallbackTypeEnum.TRANSCRIPT;
+      }
+    }
+
+    VbCallbackStreamEnum stream = null;
+    if (vbAttrs.getCallbackStream() != null) {
+      stream = VbCallbackStreamEnum.fromValue(vbAttrs.getCallbackStream());
+      if (stream == null) {
+        LOGGER.warn("Unknown callback stream '{}' for ext ID {}", vbAttrs.getCallbackStream(),
+            externalId);
+      }
+    }
+
+    List<VbCallbackConfiguration> templateCallbacks = base.getPublish().getCallbacks();
+    List<VbCallbackConfiguration> callbacks = new ArrayList<>(templateCallbacks.size());
+    for (VbCallbackConfiguration template : templateCallbacks) {
+      VbCallbackConfiguration callback = new VbCallbackConfiguration().url(template.getUrl())
+          .method(template.getMethod()).type(type != null ? type : template.getType())
+          .format(format != null ? format : template.getFormat())
+          .stream(stream != null ? stream : template.getStream());
+      if (callback.getType() == null || callback.getType() == VbCallbackTypeEnum.ANALYTICS) {
+        callback.include(includes != null ? includes : template.getInclude());
+      }
+      callbacks.add(callback);
+    }
+    return new VbPublishConfiguration().callbacks(Collections.unmodifiableList(callbacks));
+  }
+
 }
@@ -16,11 +16,10 @@ import static com.voicebase.gateways.awsconnect.ConfigUtil.getIntSetting;
 import static com.voicebase.gateways.awsconnect.ConfigUtil.getLongSetting;
 import static com.voicebase.gateways.awsconnect.ConfigUtil.getStringListSetting;
 import static com.voicebase.gateways.awsconnect.ConfigUtil.getStringSetting;
-import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getBooleanParameter;
-import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getS3RecordingLocation;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -34,8 +33,21 @@ import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
-import com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.voicebase.gateways.awsconnect.FileIdempotencyStore;
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.ApiException;
+import com.voicebase.sdk.util.CircuitBreaker;
+import com.voicebase.sdk.util.CircuitBreakerSettings;
+import com.voicebase.sdk.util.ExponentialBackoffRetryPolicy;
+import com.voicebase.sdk.util.FixedDelayRetryPolicy;
+import com.voicebase.sdk.util.HttpClientSettings;
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.sdk.util.RetryBudget;
+import com.voicebase.sdk.util.RetryPolicy;
+import com.voicebase.sdk.util.RetryStatistics;
 import com.voicebase.sdk.v3.MediaProcessingRequest;
 import com.voicebase.sdk.v3.ServiceFactory;
 import com.voicebase.sdk.v3.VoiceBaseClient;
@@ -60,8 +72,7 @@ public class RecordingForwarder {
   private String vbApiUrl;
   private String vbApiClientLogLevel;
   private String vbApiToken;
-  private long vbApiRetryDelay;
-  private int vbApiRetryAttempts;
+  private RetryPolicy vbApiRetryPolicy;
   private String callbackUrl;
   private String callbackMethod;
   private List<String> callbackIncludes;
@@ -70,6 +81,10 @@ public class RecordingForwarder {
   private final AmazonS3 s3Client;
   private VoiceBaseClient voicebaseClient;
   private CallbackProvider callbackProvider;
+  private ConfigurationTemplate configurationTemplate;
+  private ConfigurationCache configurationCache;
+  private ContactDeduplicator deduplicator;
+  private SpillQueue spillQueue;
 
 
   RecordingForwarder() {
@@ -77,43 +92,66 @@ public class RecordingForwarder {
   }
 
   public RecordingForwarder(Map<String, String> env) {
-    s3Client = AmazonS3ClientBuilder.defaultClient();
+    this(env, AmazonS3ClientBuilder.defaultClient());
+  }
+
+  RecordingForwarder(Map<String, String> env, AmazonS3 s3Client) {
+    this.s3Client = s3Client;
     configure(env);
   }
 
   public boolean forwardRequest(Map<String, Object> dataAsMap) {
-    boolean forwarded = false;
+    return forward(dataAsMap) == ForwardResult.FORWARDED;
+  }
+
+  /**
+   * Send the recording described by a CTR to the VoiceBase API.
+   * 
+   * @param dataAsMap deserialized CTR
+   * 
+   * @return outcome of the attempt, never null
+   */
+  public ForwardResult forward(Map<String, Object> dataAsMap) {
+    return forward(CtrRecord.fromMap(dataAsMap));
+  }
+
+  /**
+   * Send the recording described by a CTR to the VoiceBase API.
+   * <p/>
+   * The full record is only deserialized once it's clear it will be sent.
+   * 
+   * @param record decoded CTR
+   * 
+   * @return outcome of the attempt, never null
+   */
+  public ForwardResult forward(CtrRecord record) {
+    ForwardResult result = ForwardResult.SKIPPED;
     try {
 
-      Object externalId = dataAsMap.get(Lambda.KEY_EXTERNAL_ID);
+      String externalId = record.getContactId();
 
       if (externalId != null) {
 
-        if (!shouldProcess(dataAsMap)) {
+        if (!shouldProcess(record)) {
           LOGGER.info("CTR with ContactID {} should not be processed, skipping.", externalId);
-          return false;
+          return ForwardResult.SKIPPED;
         }
 
-        MediaProcessingRequestBuilder builder = new MediaProcessingRequestBuilder()
-            .withCallbackProvider(callbackProvider).withConfigureSpeakers(configureSpeakers)
-            .withPredictionsEnabled(predictionsEnabled)
-            .withKnowledgeDiscoveryEnabled(knowledgeEnabled)
-            .withAdvancedPunctuationEnabled(advancedPunctuationEnabld).withAwsInputData(dataAsMap)
-            .withLeftSpeakerName(leftSpeakerName).withRightSpeakerName(rightSpeakerName);
-
-        MediaProcessingRequest req = builder.build();
-
-        String s3Location = getS3RecordingLocation(dataAsMap);
+        String s3Location = record.getRecordingLocation();
 
         if (s3Location != null) {
-          String parts[] = s3Location.split("/", 2);
-          String preSignedUrl = createPresignedUrl(parts[0], parts[1], mediaUrlTtl);
-          req.setMediaUrl(preSignedUrl);
-          String mediaId =
-              voicebaseClient.uploadMedia(vbApiToken, req, vbApiRetryAttempts, vbApiRetryDelay);
-          if (mediaId != null) {
-            LOGGER.info("Call ID {} sent for processing; mediaId={}", externalId, mediaId);
-            forwarded = true;
+          if (deduplicator != null && !deduplicator.claim(externalId, s3Location)) {
+            LOGGER.info("CTR with ContactID {} already forwarded, skipping duplicate.", externalId);
+            return ForwardResult.DUPLICATE;
+          }
+
+          try {
+            result = upload(record, externalId, s3Location);
+          } finally {
+            if (deduplicator != null && result != ForwardResult.FORWARDED
+                && result != ForwardResult.DEFERRED) {
+              deduplicator.release(externalId, s3Location);
+            }
           }
         } else {
           LOGGER.warn("CTR {} doesn't contain an audio location. Skipping...", externalId);
@@ -121,21 +159,188 @@ public class RecordingForwarder {
       } else {
         LOGGER.info("Received record without contact ID, not a CTR record. Skipping...");
       }
-    } catch (SdkClientException | IllegalArgumentException e) {
+    } catch (SdkClientException e) {
       LOGGER.warn("Skipping record, unable to generate pre-signed URL.", e);
+      result = e.isRetryable() ? ForwardResult.FAILED : ForwardResult.REJECTED;
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Skipping record, unable to generate pre-signed URL.", e);
+      result = ForwardResult.REJECTED;
+    } catch (ApiException e) {
+      LOGGER.error("VB API rejected media: {} error, status {}", e.getErrorType(),
+          e.getStatusCode(), e);
+      result = e.isRetryable() ? ForwardResult.FAILED : ForwardResult.REJECTED;
+    } catch (JsonProcessingException e) {
+      LOGGER.error("Unable to deserialize CTR {}", record.getContactId(), e);
+      result = ForwardResult.REJECTED;
     } catch (IOException e) {
       LOGGER.error("Error sending media to VB API", e);
+      result = ForwardResult.FAILED;
     } catch (Exception e) {
+      // may be a bug or an outage of the spill queue or deduplication store, retry the record
       LOGGER.error("Unexpected error", e);
+      result = ForwardResult.FAILED;
     }
-    return forwarded;
+    return result;
   }
 
+  private ForwardResult upload(CtrRecord record, Object externalId, String s3Location)
+      throws IOException {
+    MediaProcessingRequestBuilder builder = new MediaProcessingRequestBuilder()
+        .withTemplate(configurationTemplate).withAwsInputData(record.asMap())
+        .withVoiceBaseAttributes(record.getAttributes())
+        .withConfigurationCache(configurationCache);
+
+    MediaProcessingRequest req = builder.build();
+
+    req.setMediaUrl(createPresignedUrl(s3Location));
+    String mediaId;
+    try {
+      mediaId = voicebaseClient.uploadMedia(vbApiToken, req, vbApiRetryPolicy);
+    } catch (IOException e) {
+      if (spill(builder, externalId, s3Location, e)) {
+        return ForwardResult.DEFERRED;
+      }
+      throw e;
+    }
+    if (mediaId != null) {
+      LOGGER.info("Call ID {} sent for processing; mediaId={}", externalId, mediaId);
+      return ForwardResult.FORWARDED;
+    }
+
+    LOGGER.warn("No media ID returned for call ID {}", externalId);
+    return ForwardResult.REJECTED;
+  }
+
+  /**
+   * Queue a request that couldn't be sent, if there is a spill queue.
+   * 
+   * @return true if the request has been queued
+   */
+  private boolean spill(MediaProcessingRequestBuilder builder, Object externalId,
+      String s3Location, IOException cause) {
+    if (spillQueue == null) {
+      return false;
+    }
+    try {
+      spillQueue.offer(SpilledRequest.of(String.valueOf(externalId), s3Location,
+          builder.getUnsignedConfiguration(), builder.getMetaData()));
+      LOGGER.warn("Unable to send call ID {} to VB API, queued to be resent: {}", externalId,
+          cause.toString());
+      return true;
+    } catch (Exception e) {
+      LOGGER.error("Unable to queue call ID {} to be resent", externalId, e);
+      return false;
+    }
+  }
+
+  /**
+   * Resend a request taken from the spill queue. The API is called once, failures are left to the
+   * caller to retry later.
+   * 
+   * @param spilled request from the spill queue
+   * 
+   * @return outcome of the attempt, {@link ForwardResult#FAILED} if it may succeed later
+   */
+  ForwardResult resend(SpilledRequest spilled) {
+    try {
+      MediaProcessingRequest req = spilled.toRequest(configurationTemplate.getCallbackSigner());
+      req.setMediaUrl(createPresignedUrl(spilled.getRecordingLocation()));
+      String mediaId = voicebaseClient.uploadMedia(vbApiToken, req);
+      if (mediaId != null) {
+        LOGGER.info("Call ID {} resent for processing; mediaId={}", spilled.getExternalId(),
+            mediaId);
+        return ForwardResult.FORWARDED;
+      }
+      LOGGER.warn("No media ID returned for call ID {}", spilled.getExternalId());
+      return ForwardResult.REJECTED;
+    } catch (SdkClientException e) {
+      LOGGER.warn("Unable to generate pre-signed URL for call ID {}", spilled.getExternalId(), e);
+      return e.isRetryable() ? ForwardResult.FAILED : ForwardResult.REJECTED;
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unable to resend call ID {}", spilled.getExternalId(), e);
+      return ForwardResult.REJECTED;
+    } catch (ApiException e) {
+      LOGGER.warn("VB API rejected media for call ID {}: {} error, status {}",
+          spilled.getExternalId(), e.getErrorType(), e.getStatusCode());
+      return e.isRetryable() ? ForwardResult.FAILED : ForwardResult.REJECTED;
+    } catch (Exception e) {
+      LOGGER.warn("Error resending call ID {} to VB API", spilled.getExternalId(), e);
+      return ForwardResult.FAILED;
+    }
+  }
+
+  /**
+   * Run a request built from the given CTR through the VoiceBase client without sending it.
+   * Neither the configuration cache nor the deduplicator are touched.
+   * 
+   * @param record representative CTR
+   * 
+   * @return media ID of the canned priming response
+   * 
+   * @throws IOException if the request can't be built
+   */
+  String prime(CtrRecord record) throws IOException {
+    MediaProcessingRequest req = new MediaProcessingRequestBuilder()
+        .withTemplate(configurationTemplate).withAwsInputData(record.asMap())
+        .withVoiceBaseAttributes(record.getAttributes()).build();
+    req.setMediaUrl("https://priming.invalid/" + record.getRecordingLocation());
+    return voicebaseClient.prime(req);
+  }
+
+  /**
+   * Close idle connections to the VoiceBase API, they won't survive a snapshot and restore.
+   */
+  void closeIdleConnections() {
+    if (voicebaseClient.getConnectionPool() != null) {
+      voicebaseClient.getConnectionPool().closeIdleConnections();
+    }
+  }
+
+  /**
+   * Open connections to the VoiceBase API if prewarming is configured.
+   */
+  void prewarmConnections() {
+    if (voicebaseClient.getConnectionPool() != null) {
+      voicebaseClient.getConnectionPool().prewarm();
+    }
+  }
+
+  /**
+   * @return retries and backoff time spent calling the VoiceBase API since this forwarder was
+   *         configured
+   */
+  public RetryStatistics getRetryStatistics() {
+    return vbApiRetryPolicy.getStatistics();
+  }
+
+  /**
+   * @return circuit breaker of this forwarder's VoiceBase API client or null if disabled
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return voicebaseClient.getCircuitBreaker();
+  }
+
+  /**
+   * @return queue of requests to resend later or null if disabled
+   */
+  public SpillQueue getSpillQueue() {
+    return spillQueue;
+  }
+
+  /**
+   * @return cache of built configurations or null if disabled
+   */
+  public ConfigurationCache getConfigurationCache() {
+    return configurationCache;
+  }
 
   boolean shouldProcess(Map<String, Object> dataAsMap) {
+    return shouldProcess(CtrRecord.fromMap(dataAsMap));
+  }
+
+  boolean shouldProcess(CtrRecord record) {
     try {
-      VoiceBaseAttributeExtractor mc = VoiceBaseAttributeExtractor.fromAwsInputData(dataAsMap);
-      if (!getBooleanParameter(mc.immutableSubset(Lambda.VB_ATTR), Lambda.VB_ATTR_ENABLE, true)) {
+      if (!record.getAttributes().isEnabled(Lambda.DEFAULT_ENABLE)) {
         LOGGER.info("VoiceBase processing disabled by flow.");
         return false;
       }
@@ -147,6 +352,12 @@ public class RecordingForwarder {
   }
 
 
+
+  private String createPresignedUrl(String s3Location) {
+    String parts[] = s3Location.split("/", 2);
+    return createPresignedUrl(parts[0], parts.length > 1 ? parts[1] : null, mediaUrlTtl);
+  }
+
   /**
    * Create a pre-signed URL for given S3 bucket, object key and time to live.
    * 
@@ -184,6 +395,120 @@ public class RecordingForwarder {
     }
   }
 
+  /**
+   * Create the retry policy for VoiceBase API calls.
+   * <p/>
+   * Uses exponential backoff with jitter and a retry budget unless fixed delays are configured.
+   * 
+   * @param env function environment
+   * 
+   * @return retry policy
+   */
+  static RetryPolicy retryPolicy(Map<String, String> env) {
+    return retryPolicy(env,
+        getIntSetting(env, Lambda.ENV_API_RETRY_ATTEMPTS, Lambda.DEFAULT_API_RETRY_ATTEMPTS));
+  }
+
+  /**
+   * @see #retryPolicy(Map)
+   */
+  static RetryPolicy retryPolicy(Map<String, String> env, int retryAttempts) {
+    long retryDelay =
+        getLongSetting(env, Lambda.ENV_API_RETRY_DELAY, Lambda.DEFAULT_API_RETRY_DELAY);
+    String backoff =
+        getStringSetting(env, Lambda.ENV_API_RETRY_BACKOFF, Lambda.DEFAULT_API_RETRY_BACKOFF);
+
+    if (StringUtils.equalsIgnoreCase(Lambda.API_RETRY_BACKOFF_FIXED, backoff)) {
+      return new FixedDelayRetryPolicy(retryAttempts, retryDelay);
+    }
+
+    long maxDelay =
+        getLongSetting(env, Lambda.ENV_API_RETRY_MAX_DELAY, Lambda.DEFAULT_API_RETRY_MAX_DELAY);
+    int budgetCapacity =
+        getIntSetting(env, Lambda.ENV_API_RETRY_BUDGET, Lambda.DEFAULT_API_RETRY_BUDGET);
+    int budgetRefill = getIntSetting(env, Lambda.ENV_API_RETRY_BUDGET_REFILL,
+        Lambda.DEFAULT_API_RETRY_BUDGET_REFILL);
+    RetryBudget budget = budgetCapacity > 0 ? new RetryBudget(budgetCapacity, budgetRefill) : null;
+
+    return new ExponentialBackoffRetryPolicy(retryAttempts, retryDelay, maxDelay, budget);
+  }
+
+  /**
+   * Create the HTTP client settings for VoiceBase API calls. Unset values keep the SDK defaults.
+   * 
+   * @param env function environment
+   * 
+   * @return HTTP client settings
+   */
+  static HttpClientSettings httpClientSettings(Map<String, String> env) {
+    HttpClientSettings settings = new HttpClientSettings();
+    settings.setMaxConnections(
+        getIntSetting(env, Lambda.ENV_API_MAX_CONNECTIONS, settings.getMaxConnections()));
+    settings.setMaxConnectionsPerRoute(getIntSetting(env, Lambda.ENV_API_MAX_CONNECTIONS_PER_ROUTE,
+        settings.getMaxConnectionsPerRoute()));
+    settings.setConnectTimeout(
+        getIntSetting(env, Lambda.ENV_API_CONNECT_TIMEOUT, settings.getConnectTimeout()));
+    settings.setSocketTimeout(
+        getIntSetting(env, Lambda.ENV_API_SOCKET_TIMEOUT, settings.getSocketTimeout()));
+    settings.setMaxIdleTime(
+        getLongSetting(env, Lambda.ENV_API_IDLE_TIMEOUT, settings.getMaxIdleTime()));
+    settings.setPrewarmConnections(
+        getIntSetting(env, Lambda.ENV_API_PREWARM_CONNECTIONS, settings.getPrewarmConnections()));
+    return settings;
+  }
+
+  /**
+   * Create a circuit breaker for a VoiceBase API endpoint with the settings from the function
+   * environment.
+   * 
+   * @param env function environment
+   * @param endpointUrl VoiceBase API URL
+   * 
+   * @return circuit breaker or null if disabled
+   */
+  static CircuitBreaker circuitBreaker(Map<String, String> env, String endpointUrl) {
+    if (!getBooleanSetting(env, Lambda.ENV_API_CIRCUIT_BREAKER,
+        Lambda.DEFAULT_API_CIRCUIT_BREAKER)) {
+      return null;
+    }
+    CircuitBreakerSettings settings = new CircuitBreakerSettings();
+    settings.setWindowSize(
+        getIntSetting(env, Lambda.ENV_API_CIRCUIT_WINDOW_SIZE, settings.getWindowSize()));
+    settings.setMinimumCalls(
+        getIntSetting(env, Lambda.ENV_API_CIRCUIT_MINIMUM_CALLS, settings.getMinimumCalls()));
+    settings.setFailureRateThreshold(getIntSetting(env, Lambda.ENV_API_CIRCUIT_FAILURE_RATE,
+        settings.getFailureRateThreshold()));
+    settings.setSlowCallThreshold(getLongSetting(env, Lambda.ENV_API_CIRCUIT_SLOW_CALL_THRESHOLD,
+        settings.getSlowCallThreshold()));
+    settings.setSlowCallRateThreshold(getIntSetting(env, Lambda.ENV_API_CIRCUIT_SLOW_CALL_RATE,
+        settings.getSlowCallRateThreshold()));
+    settings.setOpenDuration(getLongSetting(env, Lambda.ENV_API_CIRCUIT_OPEN_DURATION,
+        settings.getOpenDuration()));
+    return new CircuitBreaker(endpointUrl, settings);
+  }
+
+  /**
+   * Create the queue for requests that couldn't be sent from the function environment.
+   * 
+   * @param env function environment
+   * 
+   * @return spill queue or null if none is configured
+   */
+  static SpillQueue spillQueue(Map<String, String> env) {
+    String queueUrl = getStringSetting(env, Lambda.ENV_SPILL_QUEUE_URL, null);
+    String queueDir = getStringSetting(env, Lambda.ENV_SPILL_QUEUE_DIR, null);
+    if (queueUrl != null) {
+      return new SqsSpillQueue(AmazonSQSClientBuilder.defaultClient(), queueUrl);
+    } else if (queueDir != null) {
+      try {
+        return new FileSpillQueue(Paths.get(queueDir));
+      } catch (IOException e) {
+        LOGGER.warn("Unable to use {} for failed requests, not queueing them.", queueDir, e);
+      }
+    }
+    return null;
+  }
+
   void configure(Map<String, String> env) {
     configureSpeakers = getBooleanSetting(env, Lambda.ENV_CONFIGURE_SPEAKERS, true);
     predictionsEnabled = getBooleanSetting(env, Lambda.ENV_ENABLE_PREDICTIONS, true);
@@ -202,10 +527,12 @@ public class RecordingForwarder {
     vbApiClientLogLevel =
         getStringSetting(env, Lambda.ENV_API_CLIENT_LOGLEVEL, Lambda.DEFAULT_API_CLIENT_LOG_LEVEL);
     vbApiToken = getStringSetting(env, Lambda.ENV_API_TOKEN, null);
-    vbApiRetryDelay =
-        getLongSetting(env, Lambda.ENV_API_RETRY_DELAY, Lambda.DEFAULT_API_RETRY_DELAY);
-    vbApiRetryAttempts =
-        getIntSetting(env, Lambda.ENV_API_RETRY_ATTEMPTS, Lambda.DEFAULT_API_RETRY_ATTEMPTS);
+    spillQueue = spillQueue(env);
+    // failed requests are resent from the queue, don't hold up the batch retrying them
+    vbApiRetryPolicy = spillQueue != null
+        ? retryPolicy(env, getIntSetting(env, Lambda.ENV_SPILL_API_RETRY_ATTEMPTS,
+            Lambda.DEFAULT_SPILL_API_RETRY_ATTEMPTS))
+        : retryPolicy(env);
 
     callbackUrl = getStringSetting(env, Lambda.ENV_CALLBACK_URL, null);
     callbackMethod =
@@ -219,8 +546,46 @@ public class RecordingForwarder {
     callbackProvider.setCallbackMethod(callbackMethod);
     callbackProvider.setCallbackUrl(callbackUrl);
     callbackProvider.setAdditionalCallbackUrls(additionalCallbackUrls);
+    String callbackSigningSecret = getStringSetting(env, Lambda.ENV_CALLBACK_SIGNING_SECRET, null);
+    if (callbackSigningSecret != null) {
+      RequestSigner signer = new RequestSigner(callbackSigningSecret);
+      callbackProvider.setSigner(signer.canValidate() ? signer : null);
+    }
 
-    voicebaseClient = ServiceFactory.voicebaseClient(vbApiUrl, vbApiClientLogLevel);
+    configurationTemplate = new MediaProcessingRequestBuilder()
+        .withCallbackProvider(callbackProvider).withConfigureSpeakers(configureSpeakers)
+        .withPredictionsEnabled(predictionsEnabled)
+        .withKnowledgeDiscoveryEnabled(knowledgeEnabled)
+        .withAdvancedPunctuationEnabled(advancedPunctuationEnabld)
+        .withLeftSpeakerName(leftSpeakerName).withRightSpeakerName(rightSpeakerName)
+        .compileTemplate();
+    int configurationCacheSize = getIntSetting(env, Lambda.ENV_CONFIGURATION_CACHE_SIZE,
+        Lambda.DEFAULT_CONFIGURATION_CACHE_SIZE);
+    configurationCache =
+        configurationCacheSize > 0 ? new ConfigurationCache(configurationCacheSize) : null;
+
+    voicebaseClient =
+        ServiceFactory.voicebaseClient(vbApiUrl, vbApiClientLogLevel, httpClientSettings(env));
+    voicebaseClient.setCircuitBreaker(circuitBreaker(env, vbApiUrl));
+
+    deduplicator = null;
+    int dedupCacheSize =
+        getIntSetting(env, Lambda.ENV_DEDUP_CACHE_SIZE, Lambda.DEFAULT_DEDUP_CACHE_SIZE);
+    if (dedupCacheSize > 0) {
+      long dedupTtl =
+          getLongSetting(env, Lambda.ENV_DEDUP_TTL_MILLIS, Lambda.DEFAULT_DEDUP_TTL_MILLIS);
+      String dedupStoreDir = getStringSetting(env, Lambda.ENV_DEDUP_STORE_DIR, null);
+      IdempotencyStore store = null;
+      if (dedupStoreDir != null) {
+        try {
+          store = new FileIdempotencyStore(Paths.get(dedupStoreDir));
+        } catch (IOException e) {
+          LOGGER.warn("Unable to use {} for idempotency markers, using memory only.",
+              dedupStoreDir, e);
+        }
+      }
+      deduplicator = new ContactDeduplicator(dedupCacheSize, dedupTtl, store);
+    }
   }
 
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.voicebase.sdk.util.RetryPolicy;
+
+/**
+ * Resends requests from a {@link SpillQueue} to the VoiceBase API.
+ * <p/>
+ * Each request is sent once per drain, nothing waits for the API to come back. A request that
+ * fails again is released with a delay from the backoff policy, the attempt number being the
+ * number of times it has been taken from the queue. Once the policy gives up the request is
+ * dropped. After a failure the rest of the batch is released untried, without calling the API and
+ * without counting an attempt.
+ */
+public class SpillDrainer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SpillDrainer.class);
+
+  private final RecordingForwarder forwarder;
+  private final SpillQueue queue;
+  private final RetryPolicy backoff;
+  private final int batchSize;
+
+  /**
+   * @param forwarder forwarder resending the requests
+   * @param queue queue to drain
+   * @param backoff delays between attempts of a request
+   * @param batchSize maximum number of requests taken from the queue at once
+   */
+  public SpillDrainer(RecordingForwarder forwarder, SpillQueue queue, RetryPolicy backoff,
+      int batchSize) {
+    this.forwarder = forwarder;
+    this.queue = queue;
+    this.backoff = backoff;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Resend due requests until the queue is empty, a request fails or the deadline has passed.
+   * 
+   * @param deadline time in ms since the epoch after which no more requests are sent
+   * 
+   * @return number of requests that have been sent
+   * 
+   * @throws IOException if the queue can't be accessed
+   */
+  public int drain(long deadline) throws IOException {
+    int sent = 0;
+    int released = 0;
+    int dropped = 0;
+    long pause = -1;
+
+    while (pause < 0 && System.currentTimeMillis() < deadline) {
+      List<SpilledRequest> batch = queue.poll(batchSize);
+      if (batch.isEmpty()) {
+        break;
+      }
+      for (SpilledRequest request : batch) {
+        if (pause >= 0 || System.currentTimeMillis() >= deadline) {
+          queue.releaseUntried(request, Math.max(0, pause));
+          released++;
+          continue;
+        }
+
+        ForwardResult result = forwarder.resend(request);
+        if (result == ForwardResult.FORWARDED) {
+          queue.acknowledge(request);
+          sent++;
+        } else if (result.isRetryable()) {
+          long delay = backoff.retryDelay(request.getAttempts(), null);
+          if (delay < 0) {
+            LOGGER.error("Giving up on call ID {} after {} attempts, recording {} not processed",
+                request.getExternalId(), request.getAttempts(), request.getRecordingLocation());
+            queue.acknowledge(request);
+            dropped++;
+          } else {
+            queue.release(request, delay);
+            released++;
+            pause = delay;
+          }
+        } else {
+          LOGGER.error("VB API rejected call ID {}, recording {} not processed",
+              request.getExternalId(), request.getRecordingLocation());
+          queue.acknowledge(request);
+          dropped++;
+        }
+      }
+    }
+
+    LOGGER.info("Spill queue drained: {} sent, {} released, {} dropped", sent, released,
+        dropped);
+    return sent;
+  }
+}
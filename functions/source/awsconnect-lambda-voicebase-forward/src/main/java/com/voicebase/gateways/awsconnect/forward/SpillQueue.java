@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Durable queue of media requests that couldn't be sent to the VoiceBase API, see
+ * {@link SpillDrainer}.
+ * <p/>
+ * Requests taken from the queue are hidden until they are acknowledged or released. Requests that
+ * are neither, e.g. because the process died, are delivered again, so a request may be delivered
+ * more than once. Implementations must be thread safe.
+ */
+public interface SpillQueue {
+
+  /**
+   * Add a request to the queue.
+   * 
+   * @param request request to resend later
+   * 
+   * @throws IOException if the request can't be stored
+   */
+  void offer(SpilledRequest request) throws IOException;
+
+  /**
+   * Take requests that are due from the queue.
+   * 
+   * @param maxRequests maximum number of requests to take
+   * 
+   * @return requests, empty if none are due
+   * 
+   * @throws IOException if the queue can't be read
+   */
+  List<SpilledRequest> poll(int maxRequests) throws IOException;
+
+  /**
+   * Remove a request taken from the queue for good, e.g. because it has been sent.
+   * 
+   * @param request request returned by {@link #poll(int)}
+   * 
+   * @throws IOException if the queue can't be updated
+   */
+  void acknowledge(SpilledRequest request) throws IOException;
+
+  /**
+   * Put a request taken from the queue back, to be delivered again after a delay.
+   * 
+   * @param request request returned by {@link #poll(int)}
+   * @param delayMillis time in ms before the request is due again
+   * 
+   * @throws IOException if the queue can't be updated
+   */
+  void release(SpilledRequest request, long delayMillis) throws IOException;
+
+  /**
+   * Put a request taken from the queue back without having tried to send it. Unlike
+   * {@link #release(SpilledRequest, long)} the delivery doesn't count as an attempt.
+   * 
+   * @param request request returned by {@link #poll(int)}
+   * @param delayMillis time in ms before the request is due again
+   * 
+   * @throws IOException if the queue can't be updated
+   */
+  void releaseUntried(SpilledRequest request, long delayMillis) throws IOException;
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.sdk.v3.MediaProcessingRequest;
+import com.voicebase.v3client.datamodel.VbConfiguration;
+import com.voicebase.v3client.datamodel.VbMetadata;
+
+/**
+ * Media request that couldn't be sent to the VoiceBase API, as kept in a {@link SpillQueue}.
+ * <p/>
+ * Holds the built configuration and metadata. The pre-signed media URL isn't kept: it may have
+ * expired by the time the request is resent, a new one is created from the recording location.
+ * Callback URLs are kept unsigned for the same reason, they're signed again on every resend.
+ */
+public class SpilledRequest {
+
+  private String externalId;
+  private String recordingLocation;
+  private VbConfiguration configuration;
+  private VbMetadata metadata;
+  private long spilledAt;
+  private int attempts;
+  private String receipt;
+
+  /**
+   * @param externalId call ID
+   * @param recordingLocation S3 location of the recording, bucket/key
+   * @param unsignedConfiguration configuration of the request that failed, without callback
+   *        signatures
+   * @param metadata metadata of the request that failed
+   * 
+   * @return spilled request
+   */
+  static SpilledRequest of(String externalId, String recordingLocation,
+      VbConfiguration unsignedConfiguration, VbMetadata metadata) {
+    SpilledRequest spilled = new SpilledRequest();
+    spilled.externalId = externalId;
+    spilled.recordingLocation = recordingLocation;
+    spilled.configuration = unsignedConfiguration;
+    spilled.metadata = metadata;
+    spilled.spilledAt = System.currentTimeMillis();
+    return spilled;
+  }
+
+  /**
+   * @param callbackSigner signer for callback URLs, null if they aren't signed
+   * 
+   * @return request to resend, without media URL
+   */
+  MediaProcessingRequest toRequest(RequestSigner callbackSigner) {
+    VbConfiguration signed = callbackSigner != null ? MediaProcessingRequestBuilder
+        .withSignedCallbacks(configuration, callbackSigner.createSignature()) : configuration;
+    return new MediaProcessingRequest().withConfiguration(signed).withMetadata(metadata);
+  }
+
+  public String getExternalId() {
+    return externalId;
+  }
+
+  public void setExternalId(String externalId) {
+    this.externalId = externalId;
+  }
+
+  public String getRecordingLocation() {
+    return recordingLocation;
+  }
+
+  public void setRecordingLocation(String recordingLocation) {
+    this.recordingLocation = recordingLocation;
+  }
+
+  public VbConfiguration getConfiguration() {
+    return configuration;
+  }
+
+  public void setConfiguration(VbConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
+  public VbMetadata getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(VbMetadata metadata) {
+    this.metadata = metadata;
+  }
+
+  /**
+   * @return time in ms since the epoch the request was queued
+   */
+  public long getSpilledAt() {
+    return spilledAt;
+  }
+
+  public void setSpilledAt(long spilledAt) {
+    this.spilledAt = spilledAt;
+  }
+
+  /**
+   * @return number of times the request has been taken from the queue, including this one
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  /**
+   * @return queue specific handle of a request taken from the queue
+   */
+  @JsonIgnore
+  public String getReceipt() {
+    return receipt;
+  }
+
+  @JsonIgnore
+  public void setReceipt(String receipt) {
+    this.receipt = receipt;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.voicebase.v3client.JacksonFactory;
+
+/**
+ * Spill queue backed by an SQS queue.
+ * <p/>
+ * Requests are released by changing the visibility timeout of their message, the number of
+ * attempts is the receive count of the message. A receive can't be undone, so a request released
+ * untried is sent again as a new message carrying the attempts made so far, with the delay capped
+ * at the SQS maximum of 15 minutes. The queue's visibility timeout should be longer than a drain
+ * takes, a redrive policy can catch requests that keep failing.
+ */
+public class SqsSpillQueue implements SpillQueue {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqsSpillQueue.class);
+
+  // limits of the SQS API
+  private static final int MAX_RECEIVE = 10;
+  private static final long MAX_VISIBILITY_TIMEOUT = 12 * 60 * 60;
+  private static final long MAX_DELAY = 15 * 60;
+
+  private final AmazonSQS sqs;
+  private final String queueUrl;
+  private final ObjectWriter writer;
+  private final ObjectReader reader;
+
+  public SqsSpillQueue(AmazonSQS sqs, String queueUrl) {
+    this.sqs = sqs;
+    this.queueUrl = queueUrl;
+    writer = JacksonFactory.writer(SpilledRequest.class);
+    reader = JacksonFactory.reader(SpilledRequest.class);
+  }
+
+  @Override
+  public void offer(SpilledRequest request) throws IOException {
+    sqs.sendMessage(queueUrl, writer.writeValueAsString(request));
+  }
+
+  @Override
+  public List<SpilledRequest> poll(int maxRequests) throws IOException {
+    List<SpilledRequest> requests = new ArrayList<>();
+    while (requests.size() < maxRequests) {
+      List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+          .withMaxNumberOfMessages(Math.min(MAX_RECEIVE, maxRequests - requests.size()))
+          .withAttributeNames(MessageSystemAttributeName.ApproximateReceiveCount.toString()))
+          .getMessages();
+      if (messages.isEmpty()) {
+        break;
+      }
+      for (Message message : messages) {
+        SpilledRequest request;
+        try {
+          request = reader.readValue(message.getBody());
+        } catch (IOException e) {
+          LOGGER.error("Unable to read spilled request {}, dropping it: {}",
+              message.getMessageId(), message.getBody(), e);
+          sqs.deleteMessage(queueUrl, message.getReceiptHandle());
+          continue;
+        }
+        request.setReceipt(message.getReceiptHandle());
+        // attempts made with earlier messages of a request released untried
+        request.setAttempts(request.getAttempts() + receiveCount(message));
+        requests.add(request);
+      }
+    }
+    return requests;
+  }
+
+  private static int receiveCount(Message message) {
+    try {
+      return Integer.parseInt(message.getAttributes()
+          .get(MessageSystemAttributeName.ApproximateReceiveCount.toString()));
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  @Override
+  public void acknowledge(SpilledRequest request) throws IOException {
+    sqs.deleteMessage(queueUrl, request.getReceipt());
+  }
+
+  @Override
+  public void release(SpilledRequest request, long delayMillis) throws IOException {
+    long seconds = Math.min(MAX_VISIBILITY_TIMEOUT, toSeconds(delayMillis));
+    sqs.changeMessageVisibility(
+        new ChangeMessageVisibilityRequest(queueUrl, request.getReceipt(), (int) seconds));
+  }
+
+  @Override
+  public void releaseUntried(SpilledRequest request, long delayMillis) throws IOException {
+    String receipt = request.getReceipt();
+    request.setAttempts(request.getAttempts() - 1);
+    // sent before the delete, the request may be delivered twice but isn't lost
+    sqs.sendMessage(new SendMessageRequest(queueUrl, writer.writeValueAsString(request))
+        .withDelaySeconds((int) Math.min(MAX_DELAY, toSeconds(delayMillis))));
+    sqs.deleteMessage(queueUrl, receipt);
+  }
+
+  private static long toSeconds(long delayMillis) {
+    return Math.max(0, (delayMillis + 999) / 1000);
+  }
+}
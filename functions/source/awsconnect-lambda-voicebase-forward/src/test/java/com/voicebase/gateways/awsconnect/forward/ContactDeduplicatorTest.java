@@ -0,0 +1,66 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.voicebase.gateways.awsconnect.FileIdempotencyStore;
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
+
+public class ContactDeduplicatorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testDuplicatesAreDetectedInMemory() {
+    ContactDeduplicator deduplicator = new ContactDeduplicator(2, 60000L, null);
+
+    Assert.assertTrue(deduplicator.claim("a", "bucket/a.wav"));
+    Assert.assertFalse(deduplicator.claim("a", "bucket/a.wav"));
+    Assert.assertTrue("Other recording of same contact is no duplicate",
+        deduplicator.claim("a", "bucket/a2.wav"));
+
+    deduplicator.release("a", "bucket/a.wav");
+    Assert.assertTrue("Released key should be claimable again",
+        deduplicator.claim("a", "bucket/a.wav"));
+
+    // evicts least recently used entry
+    Assert.assertTrue(deduplicator.claim("b", "bucket/b.wav"));
+    Assert.assertTrue(deduplicator.claim("a", "bucket/a2.wav"));
+  }
+
+  @Test
+  public void testExpiredEntriesAreNoDuplicates() {
+    ContactDeduplicator deduplicator = new ContactDeduplicator(10, -1L, null);
+
+    Assert.assertTrue(deduplicator.claim("a", "bucket/a.wav"));
+    Assert.assertTrue(deduplicator.claim("a", "bucket/a.wav"));
+  }
+
+  @Test
+  public void testDuplicatesAreDetectedAcrossInstancesWithStore() throws Exception {
+    IdempotencyStore store = new FileIdempotencyStore(folder.getRoot().toPath());
+
+    ContactDeduplicator first = new ContactDeduplicator(10, 60000L, store);
+    ContactDeduplicator second = new ContactDeduplicator(10, 60000L, store);
+
+    Assert.assertTrue(first.claim("a", "bucket/a.wav"));
+    Assert.assertFalse(second.claim("a", "bucket/a.wav"));
+
+    first.release("a", "bucket/a.wav");
+    Assert.assertTrue(new ContactDeduplicator(10, 60000L, store).claim("a", "bucket/a.wav"));
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voicebase.gateways.awsconnect.BeanFactory;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+/**
+ * Compares time and allocation of the streaming CTR decoder against deserializing the complete
+ * record into a map.
+ * <p/>
+ * Not a unit test, run manually, e.g. from the IDE or with
+ * <code>mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...CtrDecoderBenchmark</code>.
+ */
+public class CtrDecoderBenchmark {
+
+  private static final int WARMUP = 20000;
+  private static final int ITERATIONS = 100000;
+
+  public static void main(String[] args) throws Exception {
+    final ObjectMapper om = BeanFactory.objectMapper();
+    final CtrDecoder decoder = new CtrDecoder(om);
+    final byte[] ctr = CtrDecoderTest.sampleCtr();
+
+    Task mapDecoding = new Task() {
+      @Override
+      public Object run() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(ctr);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes, 0, data.remaining());
+        Map<String, Object> dataAsMap = om.readValue(bytes, Lambda.MSG_JAVA_TYPE);
+        return dataAsMap.get(Lambda.KEY_EXTERNAL_ID);
+      }
+    };
+
+    Task streamingDecoding = new Task() {
+      @Override
+      public Object run() throws Exception {
+        return decoder.decode(ByteBuffer.wrap(ctr)).getContactId();
+      }
+    };
+
+    System.out.println("CTR size: " + ctr.length + " bytes");
+    measure("map", mapDecoding);
+    measure("streaming", streamingDecoding);
+  }
+
+  private interface Task {
+    Object run() throws Exception;
+  }
+
+  private static void measure(String name, Task task) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      task.run();
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      task.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.printf("%-10s %8.2f us/record %8d bytes allocated/record%n", name,
+        elapsed / 1000d / ITERATIONS, allocated / ITERATIONS);
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voicebase.gateways.awsconnect.BeanFactory;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+public class CtrDecoderTest {
+
+  private static final ObjectMapper OM = BeanFactory.objectMapper();
+
+  static byte[] sampleCtr() throws Exception {
+    return IOUtils.resourceToByteArray("ctr.json", CtrDecoderTest.class.getClassLoader());
+  }
+
+  @Test
+  public void testDecodeExtractsForwardingFields() throws Exception {
+    CtrRecord record = new CtrDecoder(OM).decode(ByteBuffer.wrap(sampleCtr()));
+
+    Assert.assertEquals("8f5b7d3a-6c1e-4d2b-9a0f-1e2d3c4b5a69", record.getContactId());
+    Assert.assertEquals(
+        "connect-recordings/connect/instance/CallRecordings/2018/05/01/8f5b7d3a-6c1e-4d2b-9a0f-1e2d3c4b5a69_20180501T17:09_UTC.wav",
+        record.getRecordingLocation());
+
+    Map<String, String> vbAttributes = record.getVoicebaseAttributes();
+    Assert.assertEquals(9, vbAttributes.size());
+    Assert.assertEquals("high", vbAttributes.get("voicebase_priority"));
+    Assert.assertFalse(vbAttributes.containsKey("customerTier"));
+  }
+
+  @Test
+  public void testLazyMapMatchesFullDeserialization() throws Exception {
+    byte[] ctr = sampleCtr();
+    // decode from the middle of a larger buffer to check offsets are honored
+    byte[] padded = new byte[ctr.length + 20];
+    System.arraycopy(ctr, 0, padded, 10, ctr.length);
+    ByteBuffer buffer = ByteBuffer.wrap(padded, 10, ctr.length);
+
+    CtrRecord record = new CtrDecoder(OM).decode(buffer);
+
+    Assert.assertEquals(OM.readValue(ctr, Lambda.MSG_JAVA_TYPE), record.asMap());
+    Assert.assertEquals("Buffer position must not change", 10, buffer.position());
+  }
+
+  @Test
+  public void testRecordingLocationFallsBackToAttribute() throws Exception {
+    String json = "{\"ContactId\":\"c\",\"Recording\":null,"
+        + "\"Attributes\":{\"voicebase_recordingLocation\":\"bucket/key.wav\"}}";
+    CtrRecord record = new CtrDecoder(OM).decode(ByteBuffer.wrap(json.getBytes("UTF-8")));
+
+    Assert.assertEquals("c", record.getContactId());
+    Assert.assertEquals("bucket/key.wav", record.getRecordingLocation());
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.voicebase.v3client.datamodel.VbConfiguration;
+import com.voicebase.v3client.datamodel.VbMetadata;
+import com.voicebase.v3client.datamodel.VbPriorityEnum;
+
+public class FileSpillQueueTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static SpilledRequest request(String externalId) {
+    return SpilledRequest.of(externalId, "bucket/" + externalId + ".wav",
+        new VbConfiguration().priority(VbPriorityEnum.HIGH),
+        new VbMetadata().externalId(externalId));
+  }
+
+  @Test
+  public void testRequestsAreDeliveredUntilAcknowledged() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    FileSpillQueue queue = new FileSpillQueue(dir);
+    queue.offer(request("a"));
+    queue.offer(request("b"));
+    queue.offer(request("c"));
+
+    List<SpilledRequest> batch = queue.poll(2);
+    Assert.assertEquals(2, batch.size());
+    SpilledRequest a = batch.get(0);
+    Assert.assertEquals("a", a.getExternalId());
+    Assert.assertEquals("bucket/a.wav", a.getRecordingLocation());
+    Assert.assertEquals(VbPriorityEnum.HIGH, a.getConfiguration().getPriority());
+    Assert.assertEquals("a", a.getMetadata().getExternalId());
+    Assert.assertEquals(1, a.getAttempts());
+
+    queue.acknowledge(batch.get(1));
+    // a is still in flight, a new queue on the same directory sees it again
+    List<SpilledRequest> reopened = new FileSpillQueue(dir).poll(10);
+    Assert.assertEquals(3, reopened.size());
+    Assert.assertEquals("a", reopened.get(0).getExternalId());
+
+    queue.acknowledge(a);
+    batch = queue.poll(10);
+    Assert.assertEquals(1, batch.size());
+    Assert.assertEquals("c", batch.get(0).getExternalId());
+    queue.acknowledge(batch.get(0));
+
+    Assert.assertTrue(queue.poll(10).isEmpty());
+    Assert.assertTrue(new FileSpillQueue(dir).poll(10).isEmpty());
+  }
+
+  @Test
+  public void testReleasedRequestsAreDeliveredWhenDue() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    FileSpillQueue queue = new FileSpillQueue(dir);
+    queue.offer(request("a"));
+    queue.offer(request("b"));
+
+    List<SpilledRequest> batch = queue.poll(10);
+    queue.release(batch.get(0), 0);
+    queue.release(batch.get(1), 60000);
+
+    batch = queue.poll(10);
+    Assert.assertEquals(1, batch.size());
+    Assert.assertEquals("a", batch.get(0).getExternalId());
+    Assert.assertEquals(2, batch.get(0).getAttempts());
+    queue.acknowledge(batch.get(0));
+
+    // the delayed request is carried forward, the log doesn't grow while it waits
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(queue.poll(10).isEmpty());
+    }
+    Assert.assertEquals(2, Files.readAllLines(dir.resolve("spill.log")).size());
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.sun.net.httpserver.HttpServer;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+/**
+ * Fixtures shared by the tests of the forwarder and the spill drainer.
+ */
+final class ForwarderFixtures {
+
+  // signs URLs locally, never called
+  static final AmazonS3 S3 = AmazonS3ClientBuilder.standard().withRegion("us-east-1")
+      .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+      .build();
+
+  // nothing listens there
+  static final String UNREACHABLE_API_URL = "http://127.0.0.1:9/v3";
+
+  private ForwarderFixtures() {}
+
+  /**
+   * @return CTR of a contact with a recording
+   */
+  static CtrRecord ctr(String contactId) {
+    Map<String, Object> recording = new HashMap<>();
+    recording.put(Lambda.KEY_MEDIA_LOCATION, "bucket/" + contactId + ".wav");
+    Map<String, Object> ctr = new HashMap<>();
+    ctr.put(Lambda.KEY_EXTERNAL_ID, contactId);
+    ctr.put(Lambda.KEY_ATTRIBUTES, new HashMap<String, Object>());
+    ctr.put(Lambda.KEY_MEDIA, recording);
+    return CtrRecord.fromMap(ctr);
+  }
+
+  /**
+   * Local VoiceBase API accepting every media upload, or answering 503 while down.
+   */
+  static final class ApiStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final AtomicInteger uploads = new AtomicInteger();
+    private volatile boolean down;
+    private volatile String lastUpload;
+
+    ApiStub() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", exchange -> {
+        uploads.incrementAndGet();
+        lastUpload = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+        byte[] response = (down ? "{\"errors\":[{\"error\":\"unavailable\"}]}"
+            : "{\"mediaId\":\"m1\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(down ? 503 : 200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(response);
+        }
+      });
+      server.start();
+    }
+
+    String getUrl() {
+      return "http://127.0.0.1:" + server.getAddress().getPort() + "/v3";
+    }
+
+    void setDown(boolean down) {
+      this.down = down;
+    }
+
+    /**
+     * @return number of uploads received, including those answered with an error
+     */
+    int getUploads() {
+      return uploads.get();
+    }
+
+    /**
+     * @return body of the last upload
+     */
+    String getLastUpload() {
+      return lastUpload;
+    }
+
+    @Override
+    public void close() {
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.S3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent.KinesisEventRecord;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent.Record;
+import com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.ApiStub;
+import com.voicebase.gateways.awsconnect.forward.LambdaRecordProcessor.ContactRecord;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.CircuitBreaker;
+import com.voicebase.sdk.util.RetryStatistics;
+
+public class LambdaRecordProcessorTest {
+
+  private static KinesisEventRecord kinesisRecord(String json) {
+    return kinesisRecord(null, json);
+  }
+
+  private static KinesisEventRecord kinesisRecord(String sequenceNumber, String json) {
+    Record record = new Record();
+    record.setSequenceNumber(sequenceNumber);
+    record.setData(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    KinesisEventRecord recordEvent = new KinesisEventRecord();
+    recordEvent.setKinesis(record);
+    return recordEvent;
+  }
+
+  private static LambdaRecordProcessor processor(int concurrency) {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_FORWARD_CONCURRENCY, String.valueOf(concurrency));
+    env.put(Lambda.ENV_FORWARD_REPORT_BATCH_FAILURES, "true");
+    return processor(env);
+  }
+
+  private static LambdaRecordProcessor processor(Map<String, String> env) {
+    return new LambdaRecordProcessor(env) {
+      @Override
+      RecordingForwarder createForwarder(Map<String, String> env) {
+        return new RecordingForwarder(env, S3);
+      }
+    };
+  }
+
+  /**
+   * Records the order CTRs are forwarded in, per contact ID.
+   */
+  private static class RecordingStub extends RecordingForwarder {
+
+    final Map<String, List<Object>> forwarded = new ConcurrentHashMap<>();
+
+    RecordingStub() {
+      super(new HashMap<>(), S3);
+    }
+
+    @Override
+    public ForwardResult forward(CtrRecord record) {
+      try {
+        List<Object> contact = forwarded.computeIfAbsent(String.valueOf(record.getContactId()),
+            id -> new CopyOnWriteArrayList<>());
+        contact.add(record.asMap().get("seq"));
+        return forward(record, contact.size());
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    ForwardResult forward(CtrRecord record, int position) throws Exception {
+      return ForwardResult.FORWARDED;
+    }
+
+    @Override
+    public RetryStatistics getRetryStatistics() {
+      return new RetryStatistics();
+    }
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+      return null;
+    }
+  }
+
+  @Test
+  public void testRecordsAreGroupedByContactIdInOrder() throws Exception {
+    List<KinesisEventRecord> records = new ArrayList<>();
+    records.add(kinesisRecord("{\"ContactId\":\"a\",\"seq\":1}"));
+    records.add(kinesisRecord("{\"ContactId\":\"b\",\"seq\":2}"));
+    records.add(kinesisRecord("{\"seq\":3}"));
+    records.add(kinesisRecord("{\"ContactId\":\"a\",\"seq\":4}"));
+    records.add(kinesisRecord("{\"seq\":5}"));
+    records.add(kinesisRecord("not json"));
+
+    List<List<ContactRecord>> groups = processor(4).groupByContactId(records);
+
+    Assert.assertEquals(4, groups.size());
+    Assert.assertEquals(2, groups.get(0).size());
+    Assert.assertEquals(1, groups.get(0).get(0).ctr.asMap().get("seq"));
+    Assert.assertEquals(4, groups.get(0).get(1).ctr.asMap().get("seq"));
+    Assert.assertEquals(2, groups.get(1).get(0).ctr.asMap().get("seq"));
+    Assert.assertEquals(3, groups.get(2).get(0).ctr.asMap().get("seq"));
+    Assert.assertEquals(5, groups.get(3).get(0).ctr.asMap().get("seq"));
+  }
+
+  @Test
+  public void testPrimingDoesNotCallApi() throws Exception {
+    try (ApiStub api = new ApiStub()) {
+      Map<String, String> env = new HashMap<>();
+      env.put(Lambda.ENV_API_URL, api.getUrl());
+      env.put(Lambda.ENV_PRIME_ON_INIT, "false");
+
+      processor(env).prime(env);
+
+      Assert.assertEquals(0, api.getUploads());
+    }
+  }
+
+  @Test
+  public void testGroupsAreForwardedConcurrentlyInOrder() throws Exception {
+    // the first record of each contact waits for the other contact's first record
+    CyclicBarrier bothStarted = new CyclicBarrier(2);
+    RecordingStub forwarder = new RecordingStub() {
+      @Override
+      ForwardResult forward(CtrRecord record, int position) throws Exception {
+        if (position == 1) {
+          bothStarted.await(5, TimeUnit.SECONDS);
+        }
+        return ForwardResult.FORWARDED;
+      }
+    };
+    LambdaRecordProcessor processor = processor(2);
+    processor.setForwarder(forwarder);
+
+    List<KinesisEventRecord> records = new ArrayList<>();
+    for (int seq = 1; seq <= 6; seq++) {
+      records.add(kinesisRecord(String.valueOf(seq),
+          "{\"ContactId\":\"" + (seq % 2 == 0 ? "a" : "b") + "\",\"seq\":" + seq + "}"));
+    }
+    records.add(kinesisRecord("7", "not json"));
+    KinesisEvent event = new KinesisEvent();
+    event.setRecords(records);
+
+    KinesisBatchResponse response = processor.handleRequest(event, null);
+
+    Assert.assertEquals(Arrays.asList(2, 4, 6), forwarder.forwarded.get("a"));
+    Assert.assertEquals(Arrays.asList(1, 3, 5), forwarder.forwarded.get("b"));
+    // barrier would have timed out and failed the groups if they ran one after the other
+    Assert.assertFalse(bothStarted.isBroken());
+    // undecodable records are skipped, not retried
+    Assert.assertEquals(Collections.emptyList(), response.getBatchItemFailures());
+  }
+
+  private static List<String> failures(KinesisBatchResponse response) {
+    List<String> failures = new ArrayList<>();
+    for (KinesisBatchResponse.BatchItemFailure failure : response.getBatchItemFailures()) {
+      failures.add(failure.getItemIdentifier());
+    }
+    Collections.sort(failures);
+    return failures;
+  }
+
+  private static KinesisEvent event(String... contactIds) {
+    List<KinesisEventRecord> records = new ArrayList<>();
+    for (int i = 0; i < contactIds.length; i++) {
+      records.add(kinesisRecord(String.valueOf(i + 1),
+          "{\"ContactId\":\"" + contactIds[i] + "\",\"seq\":" + (i + 1) + "}"));
+    }
+    KinesisEvent event = new KinesisEvent();
+    event.setRecords(records);
+    return event;
+  }
+
+  @Test
+  public void testOnlyRetryableFailuresAreReported() throws Exception {
+    RecordingStub forwarder = new RecordingStub() {
+      @Override
+      ForwardResult forward(CtrRecord record, int position) throws Exception {
+        switch (String.valueOf(record.getContactId())) {
+          case "failed":
+            return ForwardResult.FAILED;
+          case "rejected":
+            return ForwardResult.REJECTED;
+          case "deferred":
+            return ForwardResult.DEFERRED;
+          default:
+            return ForwardResult.FORWARDED;
+        }
+      }
+    };
+
+    for (int concurrency : new int[] {1, 4}) {
+      LambdaRecordProcessor processor = processor(concurrency);
+      processor.setForwarder(forwarder);
+      KinesisBatchResponse response = processor
+          .handleRequest(event("ok", "failed", "rejected", "deferred", "failed"), null);
+      Assert.assertEquals(Arrays.asList("2", "5"), failures(response));
+    }
+  }
+
+  @Test
+  public void testThrownGroupIsReported() throws Exception {
+    RecordingStub forwarder = new RecordingStub() {
+      @Override
+      public ForwardResult forward(CtrRecord record) {
+        if ("broken".equals(record.getContactId())) {
+          // not an Exception, escapes the per-record handling
+          throw new AssertionError("broken");
+        }
+        return super.forward(record);
+      }
+    };
+    LambdaRecordProcessor processor = processor(4);
+    processor.setForwarder(forwarder);
+
+    KinesisBatchResponse response =
+        processor.handleRequest(event("ok", "broken", "ok", "broken"), null);
+    Assert.assertEquals(Arrays.asList("2", "4"), failures(response));
+
+    processor = processor(1);
+    processor.setForwarder(new RecordingStub() {
+      @Override
+      public ForwardResult forward(CtrRecord record) {
+        throw new IllegalStateException("unexpected");
+      }
+    });
+    response = processor.handleRequest(event("a", "b"), null);
+    Assert.assertEquals(Arrays.asList("1", "2"), failures(response));
+  }
+
+  @Test
+  public void testUnexpectedForwardErrorIsReported() throws Exception {
+    RecordingForwarder forwarder = new RecordingForwarder(new HashMap<>(), S3) {
+      @Override
+      boolean shouldProcess(CtrRecord record) {
+        if ("broken".equals(record.getContactId())) {
+          throw new NullPointerException("broken");
+        }
+        return false;
+      }
+    };
+
+    for (int concurrency : new int[] {1, 4}) {
+      LambdaRecordProcessor processor = processor(concurrency);
+      processor.setForwarder(forwarder);
+      KinesisBatchResponse response =
+          processor.handleRequest(event("ok", "broken", "ok", "broken"), null);
+      Assert.assertEquals(Arrays.asList("2", "4"), failures(response));
+    }
+  }
+}
@@ -13,9 +13,12 @@ package com.voicebase.gateways.awsconnect.forward;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.io.IOUtils;
@@ -27,9 +30,18 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner;
 import com.voicebase.sdk.v3.MediaProcessingRequest;
+import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.datamodel.VbCallbackConfiguration;
+import com.voicebase.v3client.datamodel.VbCallbackFormatEnum;
+import com.voicebase.v3client.datamodel.VbCallbackStreamEnum;
+import com.voicebase.v3client.datamodel.VbCallbackTypeEnum;
 import com.voicebase.v3client.datamodel.VbConfiguration;
+import com.voicebase.v3client.datamodel.VbHttpMethodEnum;
+import com.voicebase.v3client.datamodel.VbIncludeTypeEnum;
 import com.voicebase.v3client.datamodel.VbMetricGroupConfiguration;
+import com.voicebase.v3client.datamodel.VbPriorityEnum;
 
 /**
  * 
@@ -165,4 +177,147 @@ public class MediaProcessingRequestBuilderTest {
 
   }
 
+  @Test
+  public void testTemplateIsNotModifiedByRequests() throws IOException {
+    ConfigurationTemplate template = requestBuilderStub().compileTemplate();
+
+    MediaProcessingRequestBuilder builder = new MediaProcessingRequestBuilder()
+        .withTemplate(template).withAwsInputData(awsConfigStub());
+    Map<String, String> vbAttr = getVbAttributes(builder.getAwsInputData());
+    vbAttr.put("voicebase_classifier_names", "blah");
+    vbAttr.put("voicebase_language", "es-US");
+    vbAttr.put("voicebase_knowledge_discover", "0");
+    MediaProcessingRequest first = builder.build();
+
+    Assert.assertEquals("es-US", first.getConfiguration().getSpeechModel().getLanguage());
+    Assert.assertFalse(first.getConfiguration().getKnowledge().isEnableDiscovery());
+
+    builder = new MediaProcessingRequestBuilder().withTemplate(template)
+        .withAwsInputData(awsConfigStub());
+    getVbAttributes(builder.getAwsInputData()).put("voicebase_classifier_names", "blah");
+    MediaProcessingRequest second = builder.build();
+
+    verifyJSONConfiguration("voice-features.json", second.getConfiguration());
+    Assert.assertSame(first.getConfiguration().getPublish(),
+        second.getConfiguration().getPublish());
+    Assert.assertNull(template.getEmptyPrediction().getClassifiers());
+  }
+
+  @Test
+  public void testCallbackAttributes() throws IOException {
+    ConfigurationTemplate template = requestBuilderStub().compileTemplate();
+
+    MediaProcessingRequestBuilder builder = new MediaProcessingRequestBuilder()
+        .withTemplate(template).withAwsInputData(awsConfigStub());
+    Map<String, String> vbAttr = getVbAttributes(builder.getAwsInputData());
+    vbAttr.put("voicebase_callback_includes", "transcript, unknown");
+    vbAttr.put("voicebase_callback_stream", "redacted-audio");
+    VbCallbackConfiguration analytics =
+        builder.build().getConfiguration().getPublish().getCallbacks().get(0);
+
+    Assert.assertEquals("http://example.com", analytics.getUrl());
+    Assert.assertEquals(VbHttpMethodEnum.POST, analytics.getMethod());
+    Assert.assertEquals(Collections.singletonList(VbIncludeTypeEnum.TRANSCRIPT),
+        analytics.getInclude());
+    Assert.assertEquals(VbCallbackStreamEnum.REDACTED_AUDIO, analytics.getStream());
+
+    builder = new MediaProcessingRequestBuilder().withTemplate(template)
+        .withAwsInputData(awsConfigStub());
+    vbAttr = getVbAttributes(builder.getAwsInputData());
+    vbAttr.put("voicebase_callback_includes", "transcript");
+    vbAttr.put("voicebase_callback_format", "text");
+    vbAttr.put("voicebase_callback_type", "bogus");
+    VbCallbackConfiguration text =
+        builder.build().getConfiguration().getPublish().getCallbacks().get(0);
+
+    Assert.assertEquals(VbCallbackTypeEnum.TRANSCRIPT, text.getType());
+    Assert.assertEquals(VbCallbackFormatEnum.TEXT, text.getFormat());
+    Assert.assertNull(text.getInclude());
+    // text bodies don't contain the external ID
+    Assert.assertEquals("http://example.com?externalId=externalId", text.getUrl());
+
+    VbCallbackConfiguration shared = template.getPublish().getCallbacks().get(0);
+    Assert.assertNull(shared.getType());
+    Assert.assertNull(shared.getStream());
+    Assert.assertTrue(shared.getInclude().isEmpty());
+  }
+
+  @Test
+  public void testLegacyAttributeValues() throws IOException {
+    MediaProcessingRequestBuilder builder = requestBuilderStub();
+    Map<String, String> vbAttr = getVbAttributes(builder.getAwsInputData());
+
+    vbAttr.put("voicebase_phraseSpotting_groups", " greetings,,closings , greetings");
+    vbAttr.put("voicebase_language", "null");
+    vbAttr.put("voicebase_pciRedaction", "yes");
+    vbAttr.put("voicebase_transcript_formatNumbers", " 1 ");
+    vbAttr.put("voicebase_priority", "");
+
+    VbConfiguration configuration = builder.build().getConfiguration();
+
+    Assert.assertEquals(2, configuration.getSpotting().getGroups().size());
+    Assert.assertNull(configuration.getSpeechModel().getLanguage());
+    Assert.assertNull(configuration.getPrediction().getDetectors());
+    Assert.assertTrue(configuration.getTranscript().getFormatting().isEnableNumberFormatting());
+    Assert.assertEquals(VbPriorityEnum.NORMAL, configuration.getPriority());
+  }
+
+  @Test
+  public void testConfigurationCache() throws IOException {
+    ConfigurationTemplate template = requestBuilderStub().compileTemplate();
+    ConfigurationCache cache = new ConfigurationCache(10);
+
+    MediaProcessingRequest[] requests = new MediaProcessingRequest[3];
+    for (int i = 0; i < requests.length; i++) {
+      MediaProcessingRequestBuilder builder = new MediaProcessingRequestBuilder()
+          .withTemplate(template).withConfigurationCache(cache).withAwsInputData(awsConfigStub());
+      Map<String, String> vbAttr = getVbAttributes(builder.getAwsInputData());
+      vbAttr.put("voicebase_classifier_names", i < 2 ? "blah" : "other");
+      vbAttr.put("customerId", String.valueOf(i));
+      requests[i] = builder.build();
+    }
+
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertSame(requests[0].getSerializedConfiguration(),
+        requests[1].getSerializedConfiguration());
+    Assert.assertArrayEquals(JacksonFactory.objectMapper().writeValueAsBytes(
+        requests[2].getConfiguration()), requests[2].getSerializedConfiguration());
+    verifyJSONConfiguration("voice-features.json", requests[1].getConfiguration());
+
+    // metadata is still per request
+    Assert.assertEquals("1",
+        getVbAttributes(requests[1].getMetadata().getExtended()).get("customerId"));
+  }
+
+  @Test
+  public void testSignedCallbacks() throws IOException {
+    CallbackProvider cbp = callbackProvider();
+    cbp.setCallbackUrl("http://example.com/callback?source=connect");
+    RequestSigner signer = new RequestSigner("secret");
+    cbp.setSigner(signer);
+    ConfigurationTemplate template = new MediaProcessingRequestBuilder()
+        .withCallbackProvider(cbp).withAwsInputData(awsConfigStub()).compileTemplate();
+    ConfigurationCache cache = new ConfigurationCache(10);
+
+    String[] urls = new String[2];
+    for (int i = 0; i < urls.length; i++) {
+      MediaProcessingRequest req = new MediaProcessingRequestBuilder().withTemplate(template)
+          .withConfigurationCache(cache).withAwsInputData(awsConfigStub()).build();
+      Assert.assertNull(req.getSerializedConfiguration());
+      urls[i] = req.getConfiguration().getPublish().getCallbacks().get(0).getUrl();
+    }
+
+    Assert.assertNotEquals(urls[0], urls[1]);
+    Matcher m = Pattern
+        .compile("\\?source=connect&timestamp=(\\d+)&token=(\\w+)&signature=(\\w+)$")
+        .matcher(urls[0]);
+    Assert.assertTrue(urls[0], m.find());
+    Assert.assertTrue(signer.validate(Long.parseLong(m.group(1)), m.group(2), m.group(3)));
+    Assert.assertFalse(signer.validate(Long.parseLong(m.group(1)), m.group(2) + "x", m.group(3)));
+
+    // the shared template keeps the plain URL
+    Assert.assertEquals("http://example.com/callback?source=connect",
+        template.getPublish().getCallbacks().get(0).getUrl());
+  }
 }
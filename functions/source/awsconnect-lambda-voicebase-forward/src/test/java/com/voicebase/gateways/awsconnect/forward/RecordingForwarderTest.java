@@ -12,6 +12,9 @@
 package com.voicebase.gateways.awsconnect.forward;
 
 import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.getVoicebaseAttributeName;
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.S3;
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.UNREACHABLE_API_URL;
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.ctr;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,7 +22,10 @@ import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.ApiStub;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.CircuitBreaker;
+import com.voicebase.sdk.util.CircuitBreakerStatistics;
 
 public class RecordingForwarderTest {
 
@@ -39,7 +45,7 @@ public class RecordingForwarderTest {
 
   @Test
   public void testIfVoiceBaseEnableFlowVariableIsHonored() {
-    RecordingForwarder forwarder = new RecordingForwarder();
+    RecordingForwarder forwarder = new RecordingForwarder(new HashMap<>(), S3);
     String flowVariable = getVoicebaseAttributeName(Lambda.VB_ATTR_ENABLE);
 
     Map<String, Object> awsAttr = awsConfigStub();
@@ -59,4 +65,79 @@ public class RecordingForwarderTest {
     Assert.assertFalse("Should not forward request if respective flow variable is set to 0",
         forwarder.shouldProcess(awsAttr));
   }
+
+  private static Map<String, String> circuitEnv(String apiUrl, long openDuration) {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_API_URL, apiUrl);
+    env.put(Lambda.ENV_API_TOKEN, "token");
+    env.put(Lambda.ENV_CALLBACK_URL, "https://example.com/callback");
+    env.put(Lambda.ENV_API_CIRCUIT_WINDOW_SIZE, "2");
+    env.put(Lambda.ENV_API_CIRCUIT_MINIMUM_CALLS, "2");
+    env.put(Lambda.ENV_API_CIRCUIT_OPEN_DURATION, String.valueOf(openDuration));
+    return env;
+  }
+
+  @Test
+  public void testOpenCircuitFailsFast() throws Exception {
+    Map<String, String> env = circuitEnv(UNREACHABLE_API_URL, 60000);
+    env.put(Lambda.ENV_API_RETRY_ATTEMPTS, "3");
+    env.put(Lambda.ENV_API_RETRY_BACKOFF, Lambda.API_RETRY_BACKOFF_FIXED);
+    env.put(Lambda.ENV_API_RETRY_DELAY, "500");
+    RecordingForwarder forwarder = new RecordingForwarder(env, S3);
+
+    // trips on the second attempt and gives up instead of waiting for the third
+    Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("a")));
+    Assert.assertEquals(1, forwarder.getRetryStatistics().getRetries());
+    Assert.assertEquals(CircuitBreaker.State.OPEN, forwarder.getCircuitBreaker().getState());
+
+    long start = System.currentTimeMillis();
+    Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("b")));
+    Assert.assertTrue(System.currentTimeMillis() - start < 500);
+    Assert.assertEquals(1, forwarder.getRetryStatistics().getRetries());
+
+    CircuitBreakerStatistics statistics = forwarder.getCircuitBreaker().getStatistics();
+    Assert.assertEquals(1, statistics.getTrips());
+    Assert.assertEquals(1, statistics.getRejected());
+
+    // another forwarder of the same endpoint has its own circuit breaker and settings
+    env.put(Lambda.ENV_API_CIRCUIT_WINDOW_SIZE, "4");
+    env.put(Lambda.ENV_API_CIRCUIT_MINIMUM_CALLS, "4");
+    env.put(Lambda.ENV_API_RETRY_ATTEMPTS, "0");
+    RecordingForwarder other = new RecordingForwarder(env, S3);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, other.getCircuitBreaker().getState());
+    Assert.assertEquals(ForwardResult.FAILED, other.forward(ctr("c")));
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, other.getCircuitBreaker().getState());
+  }
+
+  @Test
+  public void testProbeClosesCircuit() throws Exception {
+    try (ApiStub api = new ApiStub()) {
+      api.setDown(true);
+      Map<String, String> env = circuitEnv(api.getUrl(), 100);
+      env.put(Lambda.ENV_API_RETRY_ATTEMPTS, "0");
+      RecordingForwarder forwarder = new RecordingForwarder(env, S3);
+      CircuitBreakerStatistics statistics = forwarder.getCircuitBreaker().getStatistics();
+
+      Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("a")));
+      Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("b")));
+      Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("c")));
+      Assert.assertEquals(2, api.getUploads());
+      Assert.assertEquals(1, statistics.getTrips());
+
+      // failed probe
+      Thread.sleep(150);
+      Assert.assertEquals(ForwardResult.FAILED, forwarder.forward(ctr("d")));
+      Assert.assertEquals(3, api.getUploads());
+      Assert.assertEquals(1, statistics.getReopened());
+      Assert.assertEquals(CircuitBreaker.State.OPEN, statistics.getState());
+
+      api.setDown(false);
+      Thread.sleep(150);
+      Assert.assertEquals(ForwardResult.FORWARDED, forwarder.forward(ctr("e")));
+      Assert.assertEquals(ForwardResult.FORWARDED, forwarder.forward(ctr("f")));
+      Assert.assertEquals(2, statistics.getProbes());
+      Assert.assertEquals(1, statistics.getRecovered());
+      Assert.assertEquals(CircuitBreaker.State.CLOSED, statistics.getState());
+    }
+  }
 }
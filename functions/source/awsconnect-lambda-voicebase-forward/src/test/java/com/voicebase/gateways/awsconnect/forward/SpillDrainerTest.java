@@ -0,0 +1,143 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.forward;
+
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.S3;
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.UNREACHABLE_API_URL;
+import static com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.ctr;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.voicebase.gateways.awsconnect.forward.ForwarderFixtures.ApiStub;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.FixedDelayRetryPolicy;
+import com.voicebase.sdk.util.RequestSigner;
+
+public class SpillDrainerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ApiStub api;
+
+  @Before
+  public void startApi() throws IOException {
+    api = new ApiStub();
+  }
+
+  @After
+  public void stopApi() {
+    api.close();
+  }
+
+  private RecordingForwarder forwarder(String apiUrl) {
+    return forwarder(apiUrl, null);
+  }
+
+  private RecordingForwarder forwarder(String apiUrl, String signingSecret) {
+    Map<String, String> env = new HashMap<>();
+    if (signingSecret != null) {
+      env.put(Lambda.ENV_CALLBACK_SIGNING_SECRET, signingSecret);
+    }
+    env.put(Lambda.ENV_API_URL, apiUrl);
+    env.put(Lambda.ENV_API_TOKEN, "token");
+    env.put(Lambda.ENV_CALLBACK_URL, "https://example.com/callback");
+    env.put(Lambda.ENV_SPILL_QUEUE_DIR, folder.getRoot().getAbsolutePath());
+    return new RecordingForwarder(env, S3);
+  }
+
+  @Test
+  public void testFailedRequestsAreSpilledAndResent() throws Exception {
+    RecordingForwarder down = forwarder(UNREACHABLE_API_URL);
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("a")));
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("b")));
+    Assert.assertEquals("Spilled after the first failure", 0,
+        down.getRetryStatistics().getRetries());
+
+    // still down, the second request isn't tried
+    SpillDrainer drainer =
+        new SpillDrainer(down, down.getSpillQueue(), new FixedDelayRetryPolicy(5, 0), 10);
+    Assert.assertEquals(0, drainer.drain(Long.MAX_VALUE));
+
+    RecordingForwarder up = forwarder(api.getUrl());
+    drainer = new SpillDrainer(up, up.getSpillQueue(), new FixedDelayRetryPolicy(5, 0), 10);
+    Assert.assertEquals(2, drainer.drain(Long.MAX_VALUE));
+    Assert.assertEquals(2, api.getUploads());
+    Assert.assertTrue(up.getSpillQueue().poll(10).isEmpty());
+  }
+
+  @Test
+  public void testRequestsAreDroppedWhenBackoffGivesUp() throws Exception {
+    RecordingForwarder down = forwarder(UNREACHABLE_API_URL);
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("a")));
+
+    SpillDrainer drainer =
+        new SpillDrainer(down, down.getSpillQueue(), new FixedDelayRetryPolicy(1, 0), 10);
+    // released after the first attempt, dropped after the second
+    drainer.drain(Long.MAX_VALUE);
+    drainer.drain(Long.MAX_VALUE);
+    Assert.assertTrue(down.getSpillQueue().poll(10).isEmpty());
+  }
+
+  @Test
+  public void testUntriedRequestsDontCountAttempts() throws Exception {
+    RecordingForwarder down = forwarder(UNREACHABLE_API_URL);
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("a")));
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("b")));
+
+    SpillDrainer drainer =
+        new SpillDrainer(down, down.getSpillQueue(), new FixedDelayRetryPolicy(5, 0), 10);
+    drainer.drain(Long.MAX_VALUE);
+
+    Map<String, Integer> attempts = new HashMap<>();
+    for (SpilledRequest request : down.getSpillQueue().poll(10)) {
+      attempts.put(request.getExternalId(), request.getAttempts());
+    }
+    Assert.assertEquals("Tried once, polled again", Integer.valueOf(2), attempts.get("a"));
+    Assert.assertEquals("Never tried, polled again", Integer.valueOf(1), attempts.get("b"));
+  }
+
+  @Test
+  public void testResentCallbacksAreSignedAgain() throws Exception {
+    RecordingForwarder down = forwarder(UNREACHABLE_API_URL, "secret");
+    Assert.assertEquals(ForwardResult.DEFERRED, down.forward(ctr("a")));
+
+    SpillQueue queue = down.getSpillQueue();
+    SpilledRequest spilled = queue.poll(10).get(0);
+    Assert.assertEquals("https://example.com/callback",
+        spilled.getConfiguration().getPublish().getCallbacks().get(0).getUrl());
+    queue.releaseUntried(spilled, 0);
+
+    RecordingForwarder up = forwarder(api.getUrl(), "secret");
+    SpillDrainer drainer =
+        new SpillDrainer(up, up.getSpillQueue(), new FixedDelayRetryPolicy(5, 0), 10);
+    Assert.assertEquals(1, drainer.drain(Long.MAX_VALUE));
+
+    Matcher signature = Pattern.compile("timestamp=(\\d+)&token=(\\w+)&signature=(\\p{XDigit}+)")
+        .matcher(api.getLastUpload());
+    Assert.assertTrue(signature.find());
+    Assert.assertTrue(new RequestSigner("secret").validate(Long.parseLong(signature.group(1)),
+        signature.group(2), signature.group(3)));
+    Assert.assertFalse("Signed once", signature.find());
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getIntSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getLongSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getStringSetting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner;
+
+/**
+ * Checks the signature parameters the forward function adds to callback URLs.
+ * <p/>
+ * A callback is authentic if its signature matches timestamp and token and hasn't expired, and
+ * if the token hasn't been accepted before. Tokens are remembered once their callback has been
+ * forwarded, so VoiceBase can still retry a callback that failed. The number of remembered tokens
+ * is bounded, the oldest are dropped first.
+ * <p/>
+ * Instances are thread safe.
+ */
+public class CallbackAuthenticator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallbackAuthenticator.class);
+
+  private final RequestSigner signer;
+  private final Map<String, Long> acceptedTokens;
+
+  public CallbackAuthenticator(RequestSigner signer, int replayCacheSize) {
+    this.signer = signer;
+    int maxTokens = Math.max(1, replayCacheSize);
+    acceptedTokens = new LinkedHashMap<String, Long>(Math.min(maxTokens, 1024), 0.75f, false) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > maxTokens;
+      }
+    };
+  }
+
+  /**
+   * Create an authenticator from the function environment.
+   * 
+   * @param env function environment
+   * 
+   * @return authenticator or null if callbacks aren't signed
+   */
+  public static CallbackAuthenticator fromEnv(Map<String, String> env) {
+    String secret = getStringSetting(env, Lambda.ENV_CALLBACK_SIGNING_SECRET, null);
+    if (secret == null) {
+      return null;
+    }
+    RequestSigner signer = new RequestSigner(secret).withSignatureLifetimeSeconds(getLongSetting(
+        env, Lambda.ENV_CALLBACK_SIGNATURE_LIFETIME, Lambda.DEFAULT_CALLBACK_SIGNATURE_LIFETIME));
+    if (!signer.canValidate()) {
+      throw new IllegalStateException("Unable to validate callback signatures");
+    }
+    return new CallbackAuthenticator(signer, getIntSetting(env,
+        Lambda.ENV_CALLBACK_REPLAY_CACHE_SIZE, Lambda.DEFAULT_CALLBACK_REPLAY_CACHE_SIZE));
+  }
+
+  /**
+   * Check the signature parameters of a callback.
+   * 
+   * @param queryParameters query parameters of the callback URL, may be null
+   * 
+   * @return true if the callback is signed, the signature is valid and it hasn't been accepted
+   *         before
+   */
+  public boolean authenticate(Map<String, String> queryParameters) {
+    if (queryParameters == null) {
+      LOGGER.warn("Unsigned callback, rejecting.");
+      return false;
+    }
+    return authenticate(queryParameters.get(Lambda.CALLBACK_PARAM_TIMESTAMP),
+        queryParameters.get(Lambda.CALLBACK_PARAM_TOKEN),
+        queryParameters.get(Lambda.CALLBACK_PARAM_SIGNATURE));
+  }
+
+  /**
+   * Check the signature parameters of a callback.
+   * 
+   * @param timestamp timestamp parameter, seconds since 1970-01-01
+   * @param token token parameter
+   * @param signature signature parameter
+   * 
+   * @return true if the signature is valid and the token hasn't been accepted before
+   */
+  public boolean authenticate(String timestamp, String token, String signature) {
+    long seconds;
+    try {
+      seconds = Long.parseLong(timestamp);
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Unsigned callback, rejecting.");
+      return false;
+    }
+    if (token == null || signature == null) {
+      LOGGER.warn("Unsigned callback, rejecting.");
+      return false;
+    }
+    if (isAccepted(token)) {
+      LOGGER.warn("Callback with token {} has already been accepted, rejecting replay.", token);
+      return false;
+    }
+    if (!signer.validate(seconds, token, signature)) {
+      LOGGER.warn("Invalid or expired callback signature, rejecting.");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Remember the token of a callback that has been forwarded, so it's rejected if it comes again.
+   * 
+   * @param token token parameter of the callback
+   */
+  public void accepted(String token) {
+    if (token == null) {
+      return;
+    }
+    long lifetime = signer.getSignatureLifetimeSeconds();
+    long expires =
+        lifetime > 0 ? System.currentTimeMillis() + lifetime * 1000 : Long.MAX_VALUE;
+    synchronized (acceptedTokens) {
+      acceptedTokens.put(token, expires);
+    }
+  }
+
+  /**
+   * @see #accepted(String)
+   */
+  public void accepted(Map<String, String> queryParameters) {
+    if (queryParameters != null) {
+      accepted(queryParameters.get(Lambda.CALLBACK_PARAM_TOKEN));
+    }
+  }
+
+  private boolean isAccepted(String token) {
+    synchronized (acceptedTokens) {
+      Long expires = acceptedTokens.get(token);
+      if (expires == null) {
+        return false;
+      }
+      // expired signatures are rejected anyway
+      if (expires <= System.currentTimeMillis()) {
+        acceptedTokens.remove(token);
+        return false;
+      }
+      return true;
+    }
+  }
+}
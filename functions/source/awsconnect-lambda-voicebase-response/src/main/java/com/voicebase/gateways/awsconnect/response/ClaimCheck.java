@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Pointer written to the output stream in place of a transcript that has been offloaded to a
+ * {@link TranscriptStore}.
+ */
+public class ClaimCheck {
+
+  public static final String TYPE = "claimCheck";
+
+  private final String mediaId;
+  private final String externalId;
+  private final int size;
+  private final String sha256;
+  private final String location;
+
+  ClaimCheck(String mediaId, String externalId, int size, String sha256, String location) {
+    this.mediaId = mediaId;
+    this.externalId = externalId;
+    this.size = size;
+    this.sha256 = sha256;
+    this.location = location;
+  }
+
+  /**
+   * Create the claim check for a stored transcript.
+   * 
+   * @param record transcript as written to the store
+   * @param location location returned by the store
+   * 
+   * @return claim check
+   */
+  static ClaimCheck of(TranscriptRecord record, String location) {
+    MessageDigest digest = DigestUtils.getSha256Digest();
+    ByteBuffer data = record.getData();
+    digest.update(data);
+    return new ClaimCheck(record.getMediaId(), record.getExternalId(), record.getLength(),
+        Hex.encodeHexString(digest.digest()), location);
+  }
+
+  /**
+   * @return always {@value #TYPE}, tells consumers this is not a transcript
+   */
+  public String getType() {
+    return TYPE;
+  }
+
+  public String getMediaId() {
+    return mediaId;
+  }
+
+  public String getExternalId() {
+    return externalId;
+  }
+
+  /**
+   * @return size of the stored transcript in bytes
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return hex encoded SHA-256 checksum of the stored transcript
+   */
+  public String getSha256() {
+    return sha256;
+  }
+
+  /**
+   * @return location of the stored transcript as URI
+   */
+  public String getLocation() {
+    return location;
+  }
+
+  @Override
+  public String toString() {
+    return "ClaimCheck [mediaId=" + mediaId + ", externalId=" + externalId + ", size=" + size
+        + ", sha256=" + sha256 + ", location=" + location + "]";
+  }
+}
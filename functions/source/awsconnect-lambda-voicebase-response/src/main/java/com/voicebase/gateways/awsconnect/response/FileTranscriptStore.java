@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Transcript store keeping one file per transcript in a local directory.
+ * <p/>
+ * Meant for tests and single host setups.
+ */
+public class FileTranscriptStore implements TranscriptStore {
+
+  private final Path directory;
+
+  public FileTranscriptStore(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  @Override
+  public String store(String key, ByteBuffer data) throws IOException {
+    Path file = directory.resolve(key).normalize();
+    if (!file.startsWith(directory)) {
+      throw new IOException("Key " + key + " points outside of " + directory);
+    }
+    Files.createDirectories(file.getParent());
+
+    ByteBuffer source = data.duplicate();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (source.hasRemaining()) {
+        channel.write(source);
+      }
+    }
+    return file.toUri().toString();
+  }
+}
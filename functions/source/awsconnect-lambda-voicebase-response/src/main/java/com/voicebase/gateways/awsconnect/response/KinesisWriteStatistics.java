@@ -0,0 +1,96 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for writes to the transcript output stream.
+ */
+public class KinesisWriteStatistics {
+
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong throttles = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong backoffMillis = new AtomicLong();
+  private final AtomicLong exhausted = new AtomicLong();
+
+  void recordWrite() {
+    writes.incrementAndGet();
+  }
+
+  void recordThrottle() {
+    throttles.incrementAndGet();
+  }
+
+  void recordRetry(long delay) {
+    retries.incrementAndGet();
+    backoffMillis.addAndGet(delay);
+  }
+
+  void recordExhausted() {
+    exhausted.incrementAndGet();
+  }
+
+  /**
+   * @return number of records written
+   */
+  public long getWrites() {
+    return writes.get();
+  }
+
+  /**
+   * @return number of writes rejected because the stream's throughput was exceeded
+   */
+  public long getThrottles() {
+    return throttles.get();
+  }
+
+  /**
+   * @return number of retries scheduled after a throttled write
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * @return total time in ms spent waiting between attempts
+   */
+  public long getBackoffMillis() {
+    return backoffMillis.get();
+  }
+
+  /**
+   * @return number of records given up on because they were still throttled after all attempts
+   *         or when time ran out
+   */
+  public long getExhausted() {
+    return exhausted.get();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("KinesisWriteStatistics [writes=");
+    builder.append(writes);
+    builder.append(", throttles=");
+    builder.append(throttles);
+    builder.append(", retries=");
+    builder.append(retries);
+    builder.append(", backoffMillis=");
+    builder.append(backoffMillis);
+    builder.append(", exhausted=");
+    builder.append(exhausted);
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.AmazonKinesisClientBuilder;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+
+/**
+ * Writes records to Kinesis, retrying writes rejected for exceeding the stream's throughput.
+ * <p/>
+ * Throttled writes are retried with exponential backoff and full jitter: the delay before retry
+ * <code>n</code> is drawn uniformly from <code>[0, min(maxDelay, baseDelay * 2^(n-1))]</code>.
+ * A write is given up on when the attempts are used up or the next attempt would start after the
+ * deadline, leaving it to the caller to have the record sent again. Other errors are retried by
+ * the AWS SDK as usual and are not retried here.
+ * <p/>
+ * Instances are thread safe.
+ */
+public class KinesisWriter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(KinesisWriter.class);
+
+  private final AmazonKinesis kinesisClient;
+  private final int retryAttempts;
+  private final long baseDelay;
+  private final long maxDelay;
+  private final KinesisWriteStatistics statistics = new KinesisWriteStatistics();
+
+  /**
+   * @param kinesisClient client to write with, should not retry throttled writes itself, see
+   *        {@link #defaultClient()}
+   * @param retryAttempts number of retries after the first attempt
+   * @param baseDelay delay cap for the first retry in ms
+   * @param maxDelay maximum delay between attempts in ms
+   */
+  public KinesisWriter(AmazonKinesis kinesisClient, int retryAttempts, long baseDelay,
+      long maxDelay) {
+    this.kinesisClient = kinesisClient;
+    this.retryAttempts = Math.max(0, retryAttempts);
+    this.baseDelay = Math.max(1, baseDelay);
+    this.maxDelay = Math.max(this.baseDelay, maxDelay);
+  }
+
+  /**
+   * Create a client with the SDK's default retries for everything but throttled writes, which
+   * are retried by {@link #putRecord(PutRecordRequest, long)} instead.
+   * 
+   * @return Kinesis client
+   */
+  public static AmazonKinesis defaultClient() {
+    RetryPolicy retryPolicy = new RetryPolicy((request, exception, retries) -> {
+      if (exception instanceof ProvisionedThroughputExceededException) {
+        return false;
+      }
+      return PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception,
+          retries);
+    }, PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY,
+        PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY, true);
+    return AmazonKinesisClientBuilder.standard()
+        .withClientConfiguration(new ClientConfiguration().withRetryPolicy(retryPolicy)).build();
+  }
+
+  /**
+   * Write a record.
+   * 
+   * @param request record to write
+   * @param deadline time in ms since the epoch no attempt may start after
+   * 
+   * @return result of the successful attempt
+   * 
+   * @throws ProvisionedThroughputExceededException if the record was still throttled when the
+   *         attempts or the time ran out
+   */
+  public PutRecordResult putRecord(PutRecordRequest request, long deadline) {
+    for (int attempt = 1;; attempt++) {
+      try {
+        PutRecordResult result = kinesisClient.putRecord(request);
+        statistics.recordWrite();
+        if (attempt > 1) {
+          LOGGER.info("Record written to shard {} after {} retries, {}", result.getShardId(),
+              attempt - 1, statistics);
+        }
+        return result;
+      } catch (ProvisionedThroughputExceededException e) {
+        statistics.recordThrottle();
+        long delay = retryDelay(attempt);
+        if (delay < 0 || System.currentTimeMillis() + delay >= deadline) {
+          statistics.recordExhausted();
+          LOGGER.warn("Write to {} throttled, giving up after {} attempts, {}",
+              request.getStreamName(), attempt, statistics);
+          throw e;
+        }
+        LOGGER.debug("Write to {} throttled, retrying in {}ms", request.getStreamName(), delay);
+        statistics.recordRetry(delay);
+        sleep(delay, e);
+      }
+    }
+  }
+
+  /**
+   * @param attempt number of the attempt that just failed, starting at 1
+   * 
+   * @return delay in ms or a negative value if there are no attempts left
+   */
+  long retryDelay(int attempt) {
+    if (attempt > retryAttempts) {
+      return -1;
+    }
+    // avoid overflow for large attempt numbers
+    int exponent = Math.min(attempt - 1, 30);
+    long ceiling = Math.min(maxDelay, baseDelay << exponent);
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  private static void sleep(long delay, ProvisionedThroughputExceededException cause) {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw cause;
+    }
+  }
+
+  /**
+   * @return writes, throttles and retries since this writer was created
+   */
+  public KinesisWriteStatistics getStatistics() {
+    return statistics;
+  }
+}
@@ -24,7 +24,9 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.voicebase.gateways.awsconnect.BeanFactory;
+import com.voicebase.gateways.awsconnect.ConfigUtil;
 import com.voicebase.gateways.awsconnect.RequestSourceValidator;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
 import com.voicebase.gateways.awsconnect.lambda.LambdaHandler;
 
 /**
@@ -39,6 +41,12 @@ public class LambdaTranscriptionProcessor extends LambdaHandler
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LambdaTranscriptionProcessor.class);
 
+  static final String PRIMING_TRANSCRIPT =
+      "{\"mediaId\":\"priming\",\"status\":\"finished\","
+      + "\"dateCreated\":\"2018-01-01T00:00:00.000Z\",\"metadata\":{\"externalId\":\"priming\","
+      + "\"extended\":{\"priming\":true}},\"transcript\":{\"confidence\":0.9,\"words\":"
+      + "[{\"p\":0,\"c\":0.9,\"s\":0,\"e\":100,\"w\":\"priming\"}]}}";
+
   private final APIGatewayProxyResponseEvent responseUnauthorized;
   private final APIGatewayProxyResponseEvent responseSuccess;
   private final APIGatewayProxyResponseEvent responseInvalidRequest;
@@ -47,6 +55,8 @@ public class LambdaTranscriptionProcessor extends LambdaHandler
   private ObjectMapper objectMapper;
   private TranscriptionForwarder forwarder;
   private RequestSourceValidator requestSourceValidator;
+  private CallbackAuthenticator callbackAuthenticator;
+  private long retryTimeReserve;
 
   public LambdaTranscriptionProcessor() {
     this(System.getenv());
@@ -96,20 +106,51 @@ public class LambdaTranscriptionProcessor extends LambdaHandler
       return responseUnauthorized;
     }
 
+    if (callbackAuthenticator != null
+        && !callbackAuthenticator.authenticate(input.getQueryStringParameters())) {
+      return responseUnauthorized;
+    }
+
+    TranscriptRecord record = forwarder.identify(forwarder.getEncoder().encode(input.getBody()),
+        input.getQueryStringParameters());
+    if (record == null) {
+      return responseInvalidRequest;
+    }
+
     try {
-      forwarder.forward(input.getBody());
+      forwarder.forward(record, deadline(context, retryTimeReserve));
     } catch (Exception e) {
       LOGGER.error("Error forwarding transcript to stream", e);
       return responseServerError;
     }
 
+    if (callbackAuthenticator != null) {
+      callbackAuthenticator.accepted(input.getQueryStringParameters());
+    }
+
     return responseSuccess;
   }
 
+  /**
+   * Get the time after which throttled stream writes are given up, leaving enough time to answer
+   * the callback before the function times out.
+   * 
+   * @param context Lambda context, may be null
+   * @param retryTimeReserve time in ms to keep for answering the callback
+   * 
+   * @return deadline in ms since the epoch
+   */
+  static long deadline(Context context, long retryTimeReserve) {
+    if (context == null) {
+      return Long.MAX_VALUE;
+    }
+    return System.currentTimeMillis() + context.getRemainingTimeInMillis() - retryTimeReserve;
+  }
+
   /**
    * Check incoming request against source IP whitelist if there is one.
    * <p/>
-   * Right now only accepts IP addresses on the whitelist, may want to extend to process CIDRs.
+   * The whitelist may contain IPv4 and IPv6 addresses and CIDR blocks.
    * 
    * @param input incoming event
    * @param env this function's environment
@@ -125,10 +166,22 @@ public class LambdaTranscriptionProcessor extends LambdaHandler
     return requestSourceValidator.validate(sourceIp);
   }
 
+  /**
+   * Parse and serialize a synthetic transcript the way a callback would be, without writing it to
+   * the stream.
+   */
+  @Override
+  protected void prime(Map<String, String> env) throws Exception {
+    forwarder.prime(PRIMING_TRANSCRIPT);
+  }
+
   @Override
   protected void configure(Map<String, String> env) {
-    objectMapper = BeanFactory.objectMapper();
+    objectMapper = BeanFactory.sharedObjectMapper();
     forwarder = new TranscriptionForwarder(env);
     requestSourceValidator = BeanFactory.requestSourceValidator(env);
+    callbackAuthenticator = CallbackAuthenticator.fromEnv(env);
+    retryTimeReserve = ConfigUtil.getLongSetting(env, Lambda.ENV_KINESIS_RETRY_TIME_RESERVE,
+        Lambda.DEFAULT_KINESIS_RETRY_TIME_RESERVE);
   }
 }
@@ -0,0 +1,429 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voicebase.gateways.awsconnect.BeanFactory;
+import com.voicebase.gateways.awsconnect.ConfigUtil;
+import com.voicebase.gateways.awsconnect.RequestSourceValidator;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.gateways.awsconnect.lambda.LambdaHandler;
+
+/**
+ * Lambda function receiving VoiceBase callbacks through an API Gateway proxy integration and
+ * sending them to a Kinesis stream, like {@link LambdaTranscriptionProcessor}, but reading the
+ * proxy event from the raw request stream.
+ * <p/>
+ * The event is parsed as a stream and the body is never turned into a string: a JSON body is
+ * encoded straight out of the parser's buffer. Source IP, callback signature and headers are
+ * checked as soon as they have been read, a request rejected before its body is reached is
+ * answered without reading the body, a body reached first is only encoded after the checks.
+ * Base64 encoded bodies, e.g. from an API with binary media types, are decoded and decompressed,
+ * if they are gzipped, while being encoded, up to {@value Lambda#ENV_CALLBACK_MAX_BODY_SIZE}
+ * bytes.
+ */
+public class LambdaTranscriptionStreamProcessor extends LambdaHandler
+    implements RequestStreamHandler {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(LambdaTranscriptionStreamProcessor.class);
+
+  private static final String KEY_HEADERS = "headers";
+  private static final String KEY_REQUEST_CONTEXT = "requestContext";
+  private static final String KEY_IDENTITY = "identity";
+  private static final String KEY_SOURCE_IP = "sourceIp";
+  private static final String KEY_QUERY_PARAMETERS = "queryStringParameters";
+  private static final String KEY_BODY = "body";
+  private static final String KEY_BASE64 = "isBase64Encoded";
+  private static final String HEADER_CONTENT_ENCODING = "content-encoding";
+  private static final String ENCODING_GZIP = "gzip";
+  private static final String ENCODING_IDENTITY = "identity";
+  private static final int DECODE_BUFFER_SIZE = 8192;
+
+  private JsonFactory jsonFactory;
+  private TranscriptionForwarder forwarder;
+  private RequestSourceValidator requestSourceValidator;
+  private CallbackAuthenticator callbackAuthenticator;
+  private long retryTimeReserve;
+  private long maxBodySize;
+
+  private byte[] responseUnauthorized;
+  private byte[] responseSuccess;
+  private byte[] responseInvalidRequest;
+  private byte[] responseServerError;
+
+  public LambdaTranscriptionStreamProcessor() {
+    this(System.getenv());
+  }
+
+  LambdaTranscriptionStreamProcessor(Map<String, String> env) {
+    super(env);
+  }
+
+  @Override
+  public void handleRequest(InputStream input, OutputStream output, Context context)
+      throws IOException {
+    output.write(
+        process(input, LambdaTranscriptionProcessor.deadline(context, retryTimeReserve)));
+  }
+
+  /**
+   * Process a proxy event.
+   * 
+   * @param input API Gateway proxy event
+   * @param deadline time in ms since the epoch after which throttled writes aren't retried
+   * 
+   * @return serialized proxy response
+   */
+  byte[] process(InputStream input, long deadline) {
+    Request request = new Request();
+    try (JsonParser parser = jsonFactory.createParser(input)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return responseInvalidRequest;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (KEY_HEADERS.equals(field) && value == JsonToken.START_OBJECT) {
+          readHeaders(parser, request);
+          if (!request.isContentEncodingSupported()) {
+            return responseInvalidRequest;
+          }
+        } else if (KEY_REQUEST_CONTEXT.equals(field) && value == JsonToken.START_OBJECT) {
+          request.sourceIp = readSourceIp(parser);
+          request.sourceValidated = true;
+          if (!requestSourceValidator.validate(request.sourceIp)) {
+            return responseUnauthorized;
+          }
+        } else if (KEY_QUERY_PARAMETERS.equals(field) && value == JsonToken.START_OBJECT) {
+          request.queryParameters = readStrings(parser);
+          request.authenticated = true;
+          if (callbackAuthenticator != null
+              && !callbackAuthenticator.authenticate(request.queryParameters)) {
+            return responseUnauthorized;
+          }
+        } else if (KEY_BASE64.equals(field)) {
+          request.base64 = value == JsonToken.VALUE_TRUE;
+        } else if (KEY_BODY.equals(field) && value == JsonToken.VALUE_STRING) {
+          readBody(parser, request);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to parse request", e);
+      return responseInvalidRequest;
+    }
+
+    // fields may come in any order, check what couldn't be checked before the body
+    if (!request.sourceValidated && !requestSourceValidator.validate(request.sourceIp)) {
+      return responseUnauthorized;
+    }
+    if (!request.authenticated && callbackAuthenticator != null
+        && !callbackAuthenticator.authenticate(request.queryParameters)) {
+      return responseUnauthorized;
+    }
+
+    TranscriptRecord record;
+    try {
+      record = request.record != null ? request.record : decodeBody(request);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to decode request body", e);
+      return responseInvalidRequest;
+    }
+    record = forwarder.identify(record, request.queryParameters);
+    if (record == null) {
+      return responseInvalidRequest;
+    }
+
+    try {
+      forwarder.forward(record, deadline);
+    } catch (Exception e) {
+      LOGGER.error("Error forwarding transcript to stream", e);
+      return responseServerError;
+    }
+    if (callbackAuthenticator != null) {
+      callbackAuthenticator.accepted(request.queryParameters);
+    }
+    return responseSuccess;
+  }
+
+  /**
+   * Encode a JSON body right out of the parser's buffer once source IP and signature have been
+   * checked. Anything else is kept until the whole event has been read: the caller hasn't been
+   * checked yet, or the body might be base64 encoded and the flag saying so comes after it.
+   * Base64 never contains braces or brackets, so a body starting with one is plain JSON.
+   */
+  private void readBody(JsonParser parser, Request request) throws IOException {
+    char[] text = parser.getTextCharacters();
+    int offset = parser.getTextOffset();
+    int length = parser.getTextLength();
+    if (length == 0) {
+      return;
+    }
+
+    int start = offset;
+    while (start < offset + length - 1 && Character.isWhitespace(text[start])) {
+      start++;
+    }
+    if (!request.base64 && isCallerChecked(request)
+        && (text[start] == '{' || text[start] == '[')) {
+      request.record = forwarder.getEncoder().encode(text, offset, length);
+    } else {
+      request.body = new char[length];
+      System.arraycopy(text, offset, request.body, 0, length);
+    }
+  }
+
+  private boolean isCallerChecked(Request request) {
+    return request.sourceValidated && (request.authenticated || callbackAuthenticator == null);
+  }
+
+  /**
+   * Encode a body kept by {@link #readBody(JsonParser, Request)}. Base64 bodies are decoded and
+   * inflated while the encoder reads them, up to the maximum body size.
+   */
+  private TranscriptRecord decodeBody(Request request) throws IOException {
+    if (request.body == null) {
+      return null;
+    }
+    if (!request.base64) {
+      return forwarder.getEncoder().encode(request.body, 0, request.body.length);
+    }
+
+    char[] encoded = request.body;
+    request.body = null;
+    BufferedInputStream decoded = new BufferedInputStream(
+        Base64.getDecoder().wrap(new AsciiInputStream(encoded)), DECODE_BUFFER_SIZE);
+    InputStream body = decoded;
+    if (ENCODING_GZIP.equals(request.contentEncoding) || isGzip(decoded)) {
+      body = new GZIPInputStream(decoded, DECODE_BUFFER_SIZE);
+    }
+    return forwarder.getEncoder().encode(new BoundedInputStream(body, maxBodySize));
+  }
+
+  private static boolean isGzip(BufferedInputStream data) throws IOException {
+    data.mark(2);
+    try {
+      return data.read() == 0x1f && data.read() == 0x8b;
+    } finally {
+      data.reset();
+    }
+  }
+
+  private static void readHeaders(JsonParser parser, Request request) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name) && value == JsonToken.VALUE_STRING) {
+        request.contentEncoding = parser.getText().trim().toLowerCase();
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static Map<String, String> readStrings(JsonParser parser) throws IOException {
+    Map<String, String> values = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.VALUE_STRING) {
+        values.put(name, parser.getText());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return values;
+  }
+
+  private static String readSourceIp(JsonParser parser) throws IOException {
+    String sourceIp = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (KEY_IDENTITY.equals(name) && value == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String identityField = parser.getCurrentName();
+          if (parser.nextToken() == JsonToken.VALUE_STRING
+              && KEY_SOURCE_IP.equals(identityField)) {
+            sourceIp = parser.getText();
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return sourceIp;
+  }
+
+  private static byte[] response(ObjectMapper objectMapper, int statusCode,
+      ServiceResponse serviceResponse) throws IOException {
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("statusCode", statusCode);
+    response.put("body", objectMapper.writeValueAsString(serviceResponse));
+    return objectMapper.writeValueAsBytes(response);
+  }
+
+  @Override
+  protected void prime(Map<String, String> env) throws Exception {
+    forwarder.prime(LambdaTranscriptionProcessor.PRIMING_TRANSCRIPT);
+  }
+
+  /**
+   * Called while the handler is configured, so it must not depend on the handler's fields.
+   * 
+   * @return forwarder configured from the function environment
+   */
+  TranscriptionForwarder createForwarder(Map<String, String> env) {
+    return new TranscriptionForwarder(env);
+  }
+
+  @Override
+  protected void configure(Map<String, String> env) {
+    ObjectMapper objectMapper = BeanFactory.sharedObjectMapper();
+    jsonFactory = objectMapper.getFactory();
+    forwarder = createForwarder(env);
+    requestSourceValidator = BeanFactory.requestSourceValidator(env);
+    callbackAuthenticator = CallbackAuthenticator.fromEnv(env);
+    retryTimeReserve = ConfigUtil.getLongSetting(env, Lambda.ENV_KINESIS_RETRY_TIME_RESERVE,
+        Lambda.DEFAULT_KINESIS_RETRY_TIME_RESERVE);
+    maxBodySize = ConfigUtil.getLongSetting(env, Lambda.ENV_CALLBACK_MAX_BODY_SIZE,
+        Lambda.DEFAULT_CALLBACK_MAX_BODY_SIZE);
+
+    try {
+      responseSuccess = response(objectMapper, 200, ServiceResponse.SUCCESS);
+      responseUnauthorized = response(objectMapper, 401, ServiceResponse.FAILURE);
+      responseInvalidRequest = response(objectMapper, 406, ServiceResponse.FAILURE);
+      responseServerError = response(objectMapper, 500, ServiceResponse.FAILURE);
+    } catch (IOException e) {
+      // won't happen
+      throw new IllegalStateException("Invalid service response", e);
+    }
+  }
+
+  /**
+   * Bytes of a base64 body, which is all ASCII, read without copying it.
+   */
+  private static final class AsciiInputStream extends InputStream {
+    private final char[] chars;
+    private int position;
+
+    private AsciiInputStream(char[] chars) {
+      this.chars = chars;
+    }
+
+    @Override
+    public int read() {
+      return position < chars.length ? chars[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (position >= chars.length) {
+        return -1;
+      }
+      int count = Math.min(len, chars.length - position);
+      for (int i = 0; i < count; i++) {
+        b[off + i] = (byte) chars[position++];
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Fails reads once more than the maximum number of bytes have been read.
+   */
+  private static final class BoundedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long count;
+
+    private BoundedInputStream(InputStream in, long maxBytes) {
+      super(in);
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        counted(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        counted(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      counted(skipped);
+      return skipped;
+    }
+
+    private void counted(long bytes) throws IOException {
+      count += bytes;
+      if (count > maxBytes) {
+        throw new IOException("Decoded body is larger than " + maxBytes + " bytes");
+      }
+    }
+  }
+
+  /**
+   * What has been read of a request so far.
+   */
+  private static final class Request {
+    private String sourceIp;
+    private boolean sourceValidated;
+    private Map<String, String> queryParameters;
+    private boolean authenticated;
+    private String contentEncoding;
+    private boolean base64;
+    private char[] body;
+    private TranscriptRecord record;
+
+    private boolean isContentEncodingSupported() {
+      return contentEncoding == null || contentEncoding.isEmpty()
+          || ENCODING_GZIP.equals(contentEncoding) || ENCODING_IDENTITY.equals(contentEncoding);
+    }
+  }
+}
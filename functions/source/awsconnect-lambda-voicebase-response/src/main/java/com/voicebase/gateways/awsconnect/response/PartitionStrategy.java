@@ -0,0 +1,84 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+
+/**
+ * Placement of transcript records on the shards of the output stream.
+ * <p/>
+ * Records of a contact always go to the same shard, so they stay in order.
+ */
+public enum PartitionStrategy {
+
+  /**
+   * Partition by call ID, media ID if there is no call ID. Records without either share one
+   * partition key.
+   */
+  ID,
+
+  /**
+   * Set the explicit hash key to the MD5 hash of the call or media ID. This is where Kinesis
+   * would place the ID anyway, records without ID are spread over random hash keys instead of
+   * piling up on a single shard.
+   */
+  HASH;
+
+  static final String DEFAULT_PARTITION_KEY = "1";
+
+  /**
+   * Get a strategy by name, ignoring case.
+   * 
+   * @param name strategy name, null or empty for {@link #ID}
+   * 
+   * @return strategy
+   * 
+   * @throws IllegalArgumentException if there is no strategy with that name
+   */
+  public static PartitionStrategy fromName(String name) {
+    if (name == null || name.trim().isEmpty()) {
+      return ID;
+    }
+    return valueOf(name.trim().toUpperCase());
+  }
+
+  /**
+   * Set partition key and, depending on the strategy, explicit hash key of a request.
+   * 
+   * @param request request to update
+   * @param externalId call ID, may be null
+   * @param mediaId VoiceBase media ID, may be null
+   * 
+   * @return the request
+   */
+  public PutRecordRequest apply(PutRecordRequest request, String externalId, String mediaId) {
+    String id = externalId != null ? externalId : mediaId;
+    request.setPartitionKey(id != null ? id : DEFAULT_PARTITION_KEY);
+    if (this == HASH) {
+      byte[] hash;
+      if (id != null) {
+        hash = DigestUtils.md5(id.getBytes(StandardCharsets.UTF_8));
+      } else {
+        hash = new byte[16];
+        ThreadLocalRandom.current().nextBytes(hash);
+      }
+      request.setExplicitHashKey(new BigInteger(1, hash).toString());
+    }
+    return request;
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.voicebase.gateways.awsconnect.TranscriptCompression;
+import com.voicebase.gateways.awsconnect.TranscriptDecoder;
+
+/**
+ * Transcript store writing to an S3 bucket.
+ */
+public class S3TranscriptStore implements TranscriptStore {
+
+  private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+  private static final String COMPRESSED_CONTENT_TYPE = "application/octet-stream";
+
+  private final AmazonS3 s3Client;
+  private final String bucketName;
+  private final String keyPrefix;
+
+  public S3TranscriptStore(AmazonS3 s3Client, String bucketName, String keyPrefix) {
+    this.s3Client = s3Client;
+    this.bucketName = bucketName;
+    this.keyPrefix = keyPrefix != null ? keyPrefix : "";
+  }
+
+  @Override
+  public String store(String key, ByteBuffer data) throws IOException {
+    String objectKey = keyPrefix + key;
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.remaining());
+    metadata.setContentType(TranscriptDecoder.compressionOf(data) == TranscriptCompression.NONE
+        ? CONTENT_TYPE : COMPRESSED_CONTENT_TYPE);
+
+    ByteBuffer source = data.duplicate();
+    byte[] content;
+    int offset;
+    if (source.hasArray()) {
+      content = source.array();
+      offset = source.arrayOffset() + source.position();
+    } else {
+      content = new byte[source.remaining()];
+      source.get(content);
+      offset = 0;
+    }
+
+    try {
+      s3Client.putObject(new PutObjectRequest(bucketName, objectKey,
+          new ByteArrayInputStream(content, offset, data.remaining()), metadata));
+    } catch (SdkClientException e) {
+      throw new IOException("Unable to store transcript in s3://" + bucketName + "/" + objectKey,
+          e);
+    }
+    return "s3://" + bucketName + "/" + objectKey;
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
+
+/**
+ * Detects transcripts that have already been written to the output stream, e.g. because VoiceBase
+ * retried a callback that timed out or failed after the record was written.
+ * <p/>
+ * Keys are media ID plus a hash of the encoded transcript, so a media that has been reprocessed
+ * with different results is written again. Recently written keys are kept in a bounded LRU map
+ * with a time to live; an optional {@link IdempotencyStore} extends detection across containers.
+ * <p/>
+ * Keys are recorded after the write succeeded, never before: a callback that died before its
+ * record was written is written when it's retried. Two copies arriving at the same time may both
+ * be written.
+ */
+public class TranscriptDeduplicator {
+
+  private final long ttlMillis;
+  private final Map<String, Long> recent;
+  private final IdempotencyStore store;
+  private final AtomicLong duplicates = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of keys kept in memory
+   * @param ttlMillis time in ms a key is considered a duplicate
+   * @param store durable store, may be null
+   */
+  public TranscriptDeduplicator(final int maxEntries, long ttlMillis, IdempotencyStore store) {
+    this.ttlMillis = ttlMillis;
+    this.store = store;
+    this.recent = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param record encoded transcript
+   * 
+   * @return idempotency key of the transcript, null if it has no media ID and, for bodies that
+   *         aren't JSON, no external ID
+   */
+  static String key(TranscriptRecord record) {
+    String id = record.getMediaId();
+    if (id == null && !record.isJson()) {
+      id = record.getExternalId();
+    }
+    if (id == null) {
+      return null;
+    }
+    MessageDigest digest = DigestUtils.getSha1Digest();
+    digest.update(record.getData());
+    return id + "|" + Hex.encodeHexString(digest.digest());
+  }
+
+  /**
+   * Check if a transcript has been written within the time to live.
+   * 
+   * @param key idempotency key, see {@link #key(TranscriptRecord)}
+   * 
+   * @return true if the transcript is a duplicate
+   */
+  public boolean isWritten(String key) {
+    long now = System.currentTimeMillis();
+    boolean written;
+    synchronized (recent) {
+      Long expiry = recent.get(key);
+      written = expiry != null && expiry > now;
+    }
+    if (!written && store != null && store.contains(key)) {
+      // remember locally, retries tend to come to the same container
+      synchronized (recent) {
+        recent.put(key, now + ttlMillis);
+      }
+      written = true;
+    }
+    if (written) {
+      duplicates.incrementAndGet();
+    }
+    return written;
+  }
+
+  /**
+   * Record a transcript that has been written to the output stream.
+   * 
+   * @param key idempotency key, see {@link #key(TranscriptRecord)}
+   */
+  public void written(String key) {
+    long expiresAt = System.currentTimeMillis() + ttlMillis;
+    synchronized (recent) {
+      recent.put(key, expiresAt);
+    }
+    if (store != null) {
+      store.putIfAbsent(key, expiresAt);
+    }
+  }
+
+  /**
+   * @return number of duplicates detected since this deduplicator was created
+   */
+  public long getDuplicates() {
+    return duplicates.get();
+  }
+}
@@ -0,0 +1,391 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
+import com.voicebase.gateways.awsconnect.TranscriptCompression;
+
+/**
+ * Minifies a VoiceBase callback in a single streaming pass into a UTF-8 buffer that is reused for
+ * every transcript on the same thread, optionally compressing it on the way. The media ID and the
+ * external ID are picked up as they stream by, the transcript is never deserialized into objects.
+ * A {@link TranscriptProjection} drops unwanted parts on the way.
+ */
+public class TranscriptEncoder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TranscriptEncoder.class);
+
+  private static final String KEY_MEDIA_ID = "mediaId";
+  private static final String KEY_METADATA = "metadata";
+  private static final String KEY_EXTERNAL_ID = "externalId";
+  private static final char NEWLINE = '\n';
+
+  // buffers larger than this are not kept for the next transcript
+  private static final int MAX_RETAINED_BUFFER = 8 * 1024 * 1024;
+
+  private final JsonFactory jsonFactory;
+  private final boolean addNewline;
+  private final TranscriptCompression compression;
+  private final TranscriptProjection projection;
+  private final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+    @Override
+    protected Buffer initialValue() {
+      return new Buffer();
+    }
+  };
+
+  public TranscriptEncoder(JsonFactory jsonFactory, boolean addNewline) {
+    this(jsonFactory, addNewline, TranscriptCompression.NONE, null);
+  }
+
+  /**
+   * Create an encoder writing compressed records.
+   * 
+   * @param jsonFactory factory for parser and generator
+   * @param addNewline whether to end each record with a newline, before compression
+   * @param compression compression of the records, must be available
+   * @param projection parts of the transcript to write, null for everything
+   */
+  public TranscriptEncoder(JsonFactory jsonFactory, boolean addNewline,
+      TranscriptCompression compression, TranscriptProjection projection) {
+    this.jsonFactory = jsonFactory;
+    this.addNewline = addNewline;
+    this.compression = compression;
+    this.projection = projection;
+  }
+
+  /**
+   * Encode a callback body. Bodies that aren't valid JSON are passed on as they are, as are
+   * text, caption and DFXP transcripts from flows that request a callback format other than JSON.
+   * Their records aren't {@link TranscriptRecord#isJson() JSON}, IDs have to come from elsewhere.
+   * 
+   * @param processingResult callback body
+   * 
+   * @return encoded transcript or null if there is no body
+   */
+  public TranscriptRecord encode(String processingResult) {
+    if (processingResult == null) {
+      return null;
+    }
+    return encode(new IndexedBody() {
+      @Override
+      JsonParser createParser(JsonFactory jsonFactory) throws IOException {
+        return jsonFactory.createParser(processingResult);
+      }
+
+      @Override
+      char charAt(int index) {
+        return processingResult.charAt(index);
+      }
+
+      @Override
+      int length() {
+        return processingResult.length();
+      }
+
+      @Override
+      byte[] toUtf8() {
+        return processingResult.getBytes(StandardCharsets.UTF_8);
+      }
+    });
+  }
+
+  /**
+   * Encode a callback body held in a character array, for example the buffer of the parser
+   * reading the request, without copying it first.
+   * 
+   * @param processingResult characters of the callback body
+   * @param offset start of the body
+   * @param length length of the body
+   * 
+   * @return encoded transcript
+   * 
+   * @see #encode(String)
+   */
+  public TranscriptRecord encode(char[] processingResult, int offset, int length) {
+    return encode(new IndexedBody() {
+      @Override
+      JsonParser createParser(JsonFactory jsonFactory) throws IOException {
+        return jsonFactory.createParser(processingResult, offset, length);
+      }
+
+      @Override
+      char charAt(int index) {
+        return processingResult[offset + index];
+      }
+
+      @Override
+      int length() {
+        return length;
+      }
+
+      @Override
+      byte[] toUtf8() {
+        return new String(processingResult, offset, length).getBytes(StandardCharsets.UTF_8);
+      }
+    });
+  }
+
+  /**
+   * Encode a UTF-8 callback body, for example after decoding a binary request.
+   * 
+   * @param processingResult UTF-8 bytes of the callback body
+   * @param offset start of the body
+   * @param length length of the body
+   * 
+   * @return encoded transcript
+   * 
+   * @see #encode(String)
+   */
+  public TranscriptRecord encode(byte[] processingResult, int offset, int length) {
+    return encode(new IndexedBody() {
+      @Override
+      JsonParser createParser(JsonFactory jsonFactory) throws IOException {
+        return jsonFactory.createParser(processingResult, offset, length);
+      }
+
+      @Override
+      char charAt(int index) {
+        // only used to look for the first structural character, which is always ASCII
+        return (char) (processingResult[offset + index] & 0xff);
+      }
+
+      @Override
+      int length() {
+        return length;
+      }
+
+      @Override
+      byte[] toUtf8() {
+        return Arrays.copyOfRange(processingResult, offset, offset + length);
+      }
+    });
+  }
+
+  /**
+   * Encode a UTF-8 callback body read from a stream, for example while decoding and inflating a
+   * binary request, without holding the decoded body in memory. The stream is only read once, so
+   * a body that looks like JSON but turns out to be invalid can't be passed on as it is.
+   * 
+   * @param processingResult UTF-8 bytes of the callback body, not closed
+   * 
+   * @return encoded transcript
+   * 
+   * @throws IOException if the stream can't be read or the body is invalid JSON
+   * 
+   * @see #encode(String)
+   */
+  public TranscriptRecord encode(InputStream processingResult) throws IOException {
+    ByteArrayOutputStream leadingWhitespace = new ByteArrayOutputStream();
+    int first;
+    while ((first = processingResult.read()) >= 0 && Character.isWhitespace(first)) {
+      leadingWhitespace.write(first);
+    }
+    PushbackInputStream in = new PushbackInputStream(processingResult, 1);
+    if (first >= 0) {
+      in.unread(first);
+    }
+    boolean json = first == '{' || first == '[';
+
+    try {
+      return encode(new Body() {
+        @Override
+        JsonParser createParser(JsonFactory jsonFactory) throws IOException {
+          return jsonFactory.createParser(in);
+        }
+
+        @Override
+        boolean isJsonDocument() {
+          return json;
+        }
+
+        @Override
+        boolean isReplayable() {
+          return false;
+        }
+
+        @Override
+        byte[] toUtf8() {
+          try {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+              leadingWhitespace.write(chunk, 0, read);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          return leadingWhitespace.toByteArray();
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private TranscriptRecord encode(Body body) {
+    Buffer buffer = buffers.get();
+    buffer.reset();
+    if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+      buffer = new Buffer();
+      buffers.set(buffer);
+    }
+
+    if (!body.isJsonDocument()) {
+      writeOriginal(body.toUtf8(), buffer);
+      return new TranscriptRecord(null, null, buffer.array(), buffer.size(), false);
+    }
+
+    String mediaId = null;
+    String externalId = null;
+    boolean json = true;
+    try (JsonParser parser = body.createParser(jsonFactory);
+        JsonGenerator generator =
+            jsonFactory.createGenerator(compression.compress(buffer), JsonEncoding.UTF8)) {
+      // IDs are read from the parser, so they are found even if projected away
+      JsonGenerator output = projection == null ? generator
+          : new FilteringGeneratorDelegate(generator, projection, true, true);
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        if (token == JsonToken.VALUE_STRING) {
+          JsonStreamContext context = parser.getParsingContext();
+          if (isField(context, KEY_MEDIA_ID, null)) {
+            mediaId = parser.getText();
+          } else if (isField(context, KEY_EXTERNAL_ID, KEY_METADATA)) {
+            externalId = parser.getText();
+          }
+        }
+        output.copyCurrentEvent(parser);
+      }
+      if (addNewline) {
+        generator.writeRaw(NEWLINE);
+      }
+    } catch (IOException e) {
+      if (!body.isReplayable()) {
+        throw new UncheckedIOException(e);
+      }
+      LOGGER.warn("Unable to minify response, sending original", e);
+      writeOriginal(body.toUtf8(), buffer);
+      json = false;
+    }
+
+    return new TranscriptRecord(mediaId, externalId, buffer.array(), buffer.size(), json);
+  }
+
+  private void writeOriginal(byte[] original, Buffer buffer) {
+    buffer.reset();
+    try (OutputStream out = compression.compress(buffer)) {
+      out.write(original);
+      if (addNewline) {
+        out.write(NEWLINE);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to compress response, sending original uncompressed", e);
+      buffer.reset();
+      buffer.write(original, 0, original.length);
+      if (addNewline) {
+        buffer.write(NEWLINE);
+      }
+    }
+  }
+
+  /**
+   * Check if the current value is the field with the given name in a top level object or, if a
+   * parent is given, in an object that is the value of the parent field of a top level object.
+   */
+  private static boolean isField(JsonStreamContext context, String name, String parent) {
+    if (!context.inObject() || !name.equals(context.getCurrentName())) {
+      return false;
+    }
+    JsonStreamContext outer = context.getParent();
+    if (parent == null) {
+      return outer.inRoot();
+    }
+    return outer.inObject() && parent.equals(outer.getCurrentName()) && outer.getParent().inRoot();
+  }
+
+  /**
+   * Callback body in one of the representations accepted by the encoder.
+   */
+  private abstract static class Body {
+
+    abstract JsonParser createParser(JsonFactory jsonFactory) throws IOException;
+
+    abstract boolean isJsonDocument();
+
+    /**
+     * @return true if the body can still be read as a whole after parsing failed
+     */
+    boolean isReplayable() {
+      return true;
+    }
+
+    abstract byte[] toUtf8();
+  }
+
+  /**
+   * Callback body held in memory, looked at before parsing.
+   */
+  private abstract static class IndexedBody extends Body {
+
+    abstract char charAt(int index);
+
+    abstract int length();
+
+    @Override
+    boolean isJsonDocument() {
+      for (int i = 0; i < length(); i++) {
+        char c = charAt(i);
+        if (!Character.isWhitespace(c)) {
+          return c == '{' || c == '[';
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Output stream exposing its backing array to avoid copying.
+   */
+  private static class Buffer extends ByteArrayOutputStream {
+
+    Buffer() {
+      super(64 * 1024);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.filter.TokenFilter;
+
+/**
+ * Selects the parts of a transcript written to the output stream, applied while streaming.
+ * <p/>
+ * Paths are property names separated by dots, {@code []} stands for all elements of an array,
+ * e.g. {@code transcript.words[].c} or {@code metadata.extended}. Without include paths
+ * everything but the excluded paths is written; with include paths only those and the objects
+ * and arrays containing them are. Excluded paths win over included ones.
+ */
+public class TranscriptProjection extends TokenFilter {
+
+  private static final String ELEMENTS = "[]";
+
+  private final Node node;
+  private final boolean includedByDefault;
+
+  private TranscriptProjection(Node node, boolean includedByDefault) {
+    this.node = node;
+    this.includedByDefault = includedByDefault;
+  }
+
+  /**
+   * Create a projection.
+   * 
+   * @param includes paths to include, null or empty to include everything
+   * @param excludes paths to exclude, may be null
+   * 
+   * @return projection or null if there is nothing to filter
+   * 
+   * @throws IllegalArgumentException if a path is malformed
+   */
+  public static TranscriptProjection of(Collection<String> includes,
+      Collection<String> excludes) {
+    boolean hasIncludes = includes != null && !includes.isEmpty();
+    boolean hasExcludes = excludes != null && !excludes.isEmpty();
+    if (!hasIncludes && !hasExcludes) {
+      return null;
+    }
+
+    Node root = new Node();
+    if (hasIncludes) {
+      for (String path : includes) {
+        root.add(path, Mode.INCLUDE);
+      }
+    }
+    if (hasExcludes) {
+      for (String path : excludes) {
+        root.add(path, Mode.EXCLUDE);
+      }
+    }
+    return new TranscriptProjection(root, !hasIncludes);
+  }
+
+  @Override
+  public TokenFilter includeProperty(String name) {
+    return filter(node.children.get(name));
+  }
+
+  @Override
+  public TokenFilter includeElement(int index) {
+    return filter(node.children.get(ELEMENTS));
+  }
+
+  /**
+   * Scalars reaching a projection sit where the paths below its node expect objects or arrays, so
+   * they are only written if the node's unlisted content is.
+   */
+  @Override
+  protected boolean _includeScalar() {
+    return includedByDefault;
+  }
+
+  private TokenFilter filter(Node child) {
+    if (child == null) {
+      return includedByDefault ? INCLUDE_ALL : null;
+    }
+    switch (child.mode) {
+      case EXCLUDE:
+        return null;
+      case INCLUDE:
+        return child.children.isEmpty() ? INCLUDE_ALL : new TranscriptProjection(child, true);
+      default:
+        return new TranscriptProjection(child, includedByDefault);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TranscriptProjection [" + node + "]";
+  }
+
+  private enum Mode {
+    INHERIT, INCLUDE, EXCLUDE
+  }
+
+  /**
+   * Path tree, one node per property name or array elements.
+   */
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private Mode mode = Mode.INHERIT;
+
+    void add(String path, Mode pathMode) {
+      String trimmed = path != null ? path.trim() : "";
+      if (trimmed.isEmpty()) {
+        throw new IllegalArgumentException("Empty projection path");
+      }
+
+      Node current = this;
+      for (String segment : trimmed.split("\\.", -1)) {
+        String name = segment;
+        boolean elements = false;
+        if (name.endsWith(ELEMENTS)) {
+          name = name.substring(0, name.length() - ELEMENTS.length());
+          elements = true;
+        }
+        if (name.isEmpty() && !elements || name.contains("[") || name.contains("]")) {
+          throw new IllegalArgumentException("Invalid projection path " + path);
+        }
+        if (!name.isEmpty()) {
+          current = current.child(name);
+        }
+        if (elements) {
+          current = current.child(ELEMENTS);
+        }
+      }
+      if (current.mode != Mode.EXCLUDE) {
+        current.mode = pathMode;
+      }
+    }
+
+    private Node child(String name) {
+      Node child = children.get(name);
+      if (child == null) {
+        child = new Node();
+        children.put(name, child);
+      }
+      return child;
+    }
+
+    @Override
+    public String toString() {
+      return mode == Mode.INHERIT ? children.toString() : mode + children.toString();
+    }
+  }
+}
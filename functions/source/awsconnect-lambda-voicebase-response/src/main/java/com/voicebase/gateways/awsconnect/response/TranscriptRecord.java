@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Transcript as written to the output stream, together with the IDs read while encoding it. The
+ * data may be compressed, see {@link com.voicebase.gateways.awsconnect.TranscriptDecoder}.
+ * <p/>
+ * The data is backed by the encoder's buffer and only valid until the next transcript is encoded
+ * on the same thread.
+ */
+public class TranscriptRecord {
+
+  private final String mediaId;
+  private final String externalId;
+  private final byte[] buffer;
+  private final int length;
+  private final boolean json;
+
+  TranscriptRecord(String mediaId, String externalId, byte[] buffer, int length) {
+    this(mediaId, externalId, buffer, length, true);
+  }
+
+  TranscriptRecord(String mediaId, String externalId, byte[] buffer, int length,
+      boolean json) {
+    this.mediaId = mediaId;
+    this.externalId = externalId;
+    this.buffer = buffer;
+    this.length = length;
+    this.json = json;
+  }
+
+  /**
+   * Get a record with the external ID taken from somewhere other than the body, e.g. the callback
+   * URL. Only used if none was found in the body.
+   * 
+   * @param callbackExternalId external ID, may be null
+   * 
+   * @return record with the external ID, this record if it already has one
+   */
+  TranscriptRecord withExternalId(String callbackExternalId) {
+    if (externalId != null || callbackExternalId == null) {
+      return this;
+    }
+    return new TranscriptRecord(mediaId, callbackExternalId, buffer, length, json);
+  }
+
+  /**
+   * @return VoiceBase media ID or null if not found
+   */
+  public String getMediaId() {
+    return mediaId;
+  }
+
+  /**
+   * @return external ID (Amazon Connect contact ID) from the media metadata or null if not found
+   */
+  public String getExternalId() {
+    return externalId;
+  }
+
+  /**
+   * @return false if the body wasn't valid JSON and was written as it is, IDs must be taken from
+   *         elsewhere
+   */
+  public boolean isJson() {
+    return json;
+  }
+
+  /**
+   * @return length of the encoded, possibly compressed, transcript in bytes
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return encoded transcript, a view of the encoder's buffer
+   */
+  public ByteBuffer getData() {
+    return ByteBuffer.wrap(buffer, 0, length);
+  }
+
+  @Override
+  public String toString() {
+    return "TranscriptRecord [mediaId=" + mediaId + ", externalId=" + externalId + ", length="
+        + length + ", json=" + json + "]";
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage for transcripts too large to be written to the output stream directly.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface TranscriptStore {
+
+  /**
+   * Store a transcript, replacing any transcript stored under the same key.
+   * 
+   * @param key object key, may contain slashes
+   * @param data encoded transcript, the buffer position is not changed
+   * 
+   * @return location of the stored transcript as URI
+   * 
+   * @throws IOException if the transcript could not be stored
+   */
+  String store(String key, ByteBuffer data) throws IOException;
+}
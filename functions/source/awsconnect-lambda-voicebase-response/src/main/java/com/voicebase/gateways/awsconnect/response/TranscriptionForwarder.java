@@ -11,22 +11,34 @@
  */
 package com.voicebase.gateways.awsconnect.response;
 
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getIntSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getLongSetting;
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getStringListSetting;
 import static com.voicebase.gateways.awsconnect.ConfigUtil.getStringSetting;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.kinesis.AmazonKinesis;
-import com.amazonaws.services.kinesis.AmazonKinesisClientBuilder;
 import com.amazonaws.services.kinesis.model.PutRecordRequest;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.voicebase.gateways.awsconnect.ConfigUtil;
+import com.voicebase.gateways.awsconnect.FileIdempotencyStore;
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
+import com.voicebase.gateways.awsconnect.TranscriptCompression;
+import com.voicebase.gateways.awsconnect.TranscriptDecoder;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
 import com.voicebase.v3client.JacksonFactory;
-import com.voicebase.v3client.datamodel.VbMedia;
 
 /**
  * 
@@ -40,84 +52,280 @@ public class TranscriptionForwarder {
   private String transcriptOutputStream;
   private boolean addNewlineToOutput = false;
 
-  private final ObjectMapper objectMapper;
+  private TranscriptEncoder encoder;
+  private TranscriptStore claimCheckStore;
+  private int claimCheckThreshold;
+  private PartitionStrategy partitionStrategy;
+  private KinesisWriter kinesisWriter;
+  private TranscriptDeduplicator deduplicator;
   private final AmazonKinesis kinesisClient;
+  private final ObjectWriter claimCheckWriter;
 
   public TranscriptionForwarder(Map<String, String> env) {
-    objectMapper = JacksonFactory.objectMapper();
-    kinesisClient = AmazonKinesisClientBuilder.defaultClient();
+    this(env, KinesisWriter.defaultClient());
+  }
+
+  TranscriptionForwarder(Map<String, String> env, AmazonKinesis kinesisClient) {
+    this.kinesisClient = kinesisClient;
+    claimCheckWriter = JacksonFactory.writer(ClaimCheck.class);
     configure(env);
   }
 
   public void forward(String processingResult) {
+    forward(processingResult, Long.MAX_VALUE);
+  }
 
-    byte[] msgData = createOutdata(processingResult);
-    String mediaId = null;
-    String externalId = null;
+  /**
+   * Write a transcript to the output stream.
+   * 
+   * @param processingResult callback body
+   * @param deadline time in ms since the epoch after which throttled writes aren't retried
+   */
+  public void forward(String processingResult, long deadline) {
+    LOGGER.trace("VB API processing result: {}", processingResult);
+    forward(encoder.encode(processingResult), deadline);
+  }
 
-    VbMedia result = null;
-    try {
-      result = objectMapper.readValue(processingResult.getBytes(), VbMedia.class);
-      mediaId = result.getMediaId();
-      externalId = result.getMetadata().getExternalId();
-    } catch (Exception e) {
-      LOGGER.debug("Problem accessing mediaId/externalId", e);
-    }
+  /**
+   * Write a transcript that has already been encoded with {@link #getEncoder()} to the output
+   * stream.
+   * 
+   * @param record encoded transcript, null if the callback had no body
+   * @param deadline time in ms since the epoch after which throttled writes aren't retried
+   */
+  public void forward(TranscriptRecord record, long deadline) {
+    String mediaId = record != null ? record.getMediaId() : null;
+    String externalId = record != null ? record.getExternalId() : null;
 
     LOGGER.info("Transcript for call ID {}, media ID {} received.", externalId, mediaId);
 
-    if (msgData != null) {
-      String partitionKey = "1";
-      if (externalId != null) {
-        partitionKey = externalId;
-      } else if (mediaId != null) {
-        partitionKey = mediaId;
+    if (record != null) {
+      String dedupKey = deduplicator != null ? TranscriptDeduplicator.key(record) : null;
+      if (dedupKey != null && deduplicator.isWritten(dedupKey)) {
+        LOGGER.info("Transcript for call ID {}, media ID {} has already been written, skipping.",
+            externalId, mediaId);
+        return;
       }
-      try {
 
-        kinesisClient.putRecord(new PutRecordRequest().withStreamName(transcriptOutputStream)
-            .withData(ByteBuffer.wrap(msgData)).withPartitionKey(partitionKey));
+      try {
+        PutRecordRequest request = new PutRecordRequest().withStreamName(transcriptOutputStream)
+            .withData(outputData(record));
+        kinesisWriter.putRecord(partitionStrategy.apply(request, externalId, mediaId), deadline);
         LOGGER.debug("Transcript for call ID {}, media ID {} sent to {}", externalId, mediaId, transcriptOutputStream);
-        LOGGER.trace("VB API processing result: {}", processingResult);
       } catch (Exception e) {
         LOGGER.error("Unable to write result to Kinesis", e);
         // re-throw to let the callback try again
         throw e;
       }
 
+      if (dedupKey != null) {
+        deduplicator.written(dedupKey);
+      }
+
     } else {
       LOGGER.warn("No usable data received, not writing output to stream");
     }
   }
 
-  private byte[] createOutdata(String processingResult) {
-    if (processingResult == null) {
+  /**
+   * Add the IDs of the callback URL to a record whose body isn't JSON. Text and caption
+   * transcripts don't contain IDs, without them the record would end up on a single shard and
+   * couldn't be deduplicated.
+   * 
+   * @param record encoded transcript, may be null
+   * @param queryParameters query parameters of the callback, may be null
+   * 
+   * @return record to forward, null if it isn't JSON and has no IDs
+   */
+  public TranscriptRecord identify(TranscriptRecord record, Map<String, String> queryParameters) {
+    if (record == null || record.isJson()) {
+      return record;
+    }
+    if (queryParameters != null) {
+      record = record.withExternalId(queryParameters.get(Lambda.CALLBACK_PARAM_EXTERNAL_ID));
+    }
+    if (record.getExternalId() == null && record.getMediaId() == null) {
+      LOGGER.warn("Callback body isn't JSON and the callback URL has no external ID, rejecting.");
       return null;
     }
+    return record;
+  }
+
+  /**
+   * @return encoder turning callback bodies into output records
+   */
+  public TranscriptEncoder getEncoder() {
+    return encoder;
+  }
 
+  /**
+   * Get the data to write to the stream for a transcript. Transcripts larger than the claim check
+   * threshold are written to the claim check store if there is one, and replaced by a
+   * {@link ClaimCheck} pointing to them.
+   * 
+   * @param record encoded transcript
+   * 
+   * @return record data
+   * 
+   * @throws UncheckedIOException if the transcript can't be stored, to let the callback try again
+   */
+  ByteBuffer outputData(TranscriptRecord record) {
+    if (claimCheckStore == null || record.getLength() <= claimCheckThreshold) {
+      return record.getData();
+    }
+
+    String id = record.getExternalId() != null ? record.getExternalId() : "unknown";
     try {
-      // deserialize/serialize to remove any existing JSON formatting
-      Map<?, ?> deserialized = objectMapper.readValue(processingResult.getBytes(), Map.class);
-      if (!addNewlineToOutput) {
-        return objectMapper.writeValueAsBytes(deserialized);
-      } else {
-        return new String(objectMapper.writeValueAsString(deserialized) + "\n").getBytes();
+      String key = id + "/" + (record.getMediaId() != null ? record.getMediaId()
+          : UUID.randomUUID().toString()) + claimCheckSuffix(record);
+      ClaimCheck claimCheck = ClaimCheck.of(record, claimCheckStore.store(key, record.getData()));
+      LOGGER.info("Transcript for call ID {}, media ID {} has {} bytes, stored as {}",
+          record.getExternalId(), record.getMediaId(), record.getLength(),
+          claimCheck.getLocation());
+      byte[] pointer = claimCheckWriter.writeValueAsBytes(claimCheck);
+      if (addNewlineToOutput) {
+        pointer = Arrays.copyOf(pointer, pointer.length + 1);
+        pointer[pointer.length - 1] = '\n';
       }
-    } catch (Exception e) {
-      LOGGER.warn("Unable to deserialize/serialize response, sending original", e);
+      return ByteBuffer.wrap(pointer);
+    } catch (IOException e) {
+      LOGGER.error("Unable to store transcript for call ID {}, media ID {}",
+          record.getExternalId(), record.getMediaId(), e);
+      throw new UncheckedIOException(e);
     }
+  }
 
-    if (!addNewlineToOutput) {
-      return processingResult.getBytes();
-    } else {
-      return new String(processingResult + "\n").getBytes();
+  /**
+   * Get the file name suffix of a stored transcript. Like the content type chosen by
+   * {@link S3TranscriptStore}, it tells compressed records from plain ones.
+   * 
+   * @return ".vbt" for records with a compression header, ".json" or ".txt" for plain records
+   * 
+   * @throws IOException if the record header is invalid
+   */
+  static String claimCheckSuffix(TranscriptRecord record) throws IOException {
+    if (TranscriptDecoder.compressionOf(record.getData()) != TranscriptCompression.NONE) {
+      return ".vbt";
     }
+    return record.isJson() ? ".json" : ".txt";
+  }
+
+  /**
+   * Run a transcript through the same encoding as {@link #forward(String)} without writing it to
+   * the stream.
+   * 
+   * @param processingResult representative transcript
+   */
+  void prime(String processingResult) {
+    encoder.encode(processingResult);
+  }
+
+  static TranscriptProjection projection(Map<String, String> env) {
+    List<String> includes = getStringListSetting(env, Lambda.ENV_TRANSCRIPT_OUTPUT_INCLUDE, null);
+    List<String> excludes = getStringListSetting(env, Lambda.ENV_TRANSCRIPT_OUTPUT_EXCLUDE, null);
+    try {
+      TranscriptProjection projection = TranscriptProjection.of(includes, excludes);
+      if (projection != null) {
+        LOGGER.info("Writing projected transcripts: {}", projection);
+      }
+      return projection;
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Invalid transcript projection, writing complete transcripts", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return writes, throttles and retries of the output stream since this forwarder was
+   *         configured
+   */
+  public KinesisWriteStatistics getWriteStatistics() {
+    return kinesisWriter.getStatistics();
+  }
+
+  /**
+   * @return detector of transcripts that have already been written, null if disabled
+   */
+  public TranscriptDeduplicator getDeduplicator() {
+    return deduplicator;
+  }
+
+  static PartitionStrategy partitionStrategy(Map<String, String> env) {
+    String name = getStringSetting(env, Lambda.ENV_TRANSCRIPT_PARTITION_STRATEGY,
+        Lambda.DEFAULT_TRANSCRIPT_PARTITION_STRATEGY);
+    try {
+      return PartitionStrategy.fromName(name);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown partition strategy {}, partitioning by ID", name);
+      return PartitionStrategy.ID;
+    }
+  }
+
+  static TranscriptCompression outputCompression(Map<String, String> env) {
+    String name = getStringSetting(env, Lambda.ENV_TRANSCRIPT_OUTPUT_COMPRESSION,
+        Lambda.DEFAULT_TRANSCRIPT_OUTPUT_COMPRESSION);
+    try {
+      TranscriptCompression compression = TranscriptCompression.fromName(name);
+      if (compression.isAvailable()) {
+        return compression;
+      }
+      LOGGER.warn("Compression {} is not available, writing uncompressed transcripts", name);
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown compression {}, writing uncompressed transcripts", name);
+    }
+    return TranscriptCompression.NONE;
   }
 
   void configure(Map<String, String> env) {
     transcriptOutputStream = getStringSetting(env, Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, null);
     addNewlineToOutput = ConfigUtil.getBooleanSetting(env, Lambda.ENV_TRANSCRIPT_OUTPUT_ADD_NEWLINE,
         Lambda.DEFAULT_TRANSCRIPT_OUTPUT_ADD_NEWLINE);
+    encoder = new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(),
+        addNewlineToOutput, outputCompression(env), projection(env));
+    partitionStrategy = partitionStrategy(env);
+    kinesisWriter = new KinesisWriter(kinesisClient,
+        getIntSetting(env, Lambda.ENV_KINESIS_RETRY_ATTEMPTS,
+            Lambda.DEFAULT_KINESIS_RETRY_ATTEMPTS),
+        getLongSetting(env, Lambda.ENV_KINESIS_RETRY_DELAY, Lambda.DEFAULT_KINESIS_RETRY_DELAY),
+        getLongSetting(env, Lambda.ENV_KINESIS_RETRY_MAX_DELAY,
+            Lambda.DEFAULT_KINESIS_RETRY_MAX_DELAY));
+
+    deduplicator = null;
+    int dedupCacheSize = getIntSetting(env, Lambda.ENV_TRANSCRIPT_DEDUP_CACHE_SIZE,
+        Lambda.DEFAULT_TRANSCRIPT_DEDUP_CACHE_SIZE);
+    if (dedupCacheSize > 0) {
+      long dedupTtl = getLongSetting(env, Lambda.ENV_TRANSCRIPT_DEDUP_TTL_MILLIS,
+          Lambda.DEFAULT_TRANSCRIPT_DEDUP_TTL_MILLIS);
+      String dedupStoreDir = getStringSetting(env, Lambda.ENV_TRANSCRIPT_DEDUP_STORE_DIR, null);
+      IdempotencyStore store = null;
+      if (dedupStoreDir != null) {
+        try {
+          store = new FileIdempotencyStore(Paths.get(dedupStoreDir));
+        } catch (IOException e) {
+          LOGGER.warn("Unable to use {} for idempotency markers, using memory only.",
+              dedupStoreDir, e);
+        }
+      }
+      deduplicator = new TranscriptDeduplicator(dedupCacheSize, dedupTtl, store);
+    }
+
+    claimCheckThreshold = getIntSetting(env, Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_THRESHOLD,
+        Lambda.DEFAULT_TRANSCRIPT_CLAIM_CHECK_THRESHOLD);
+    claimCheckStore = null;
+    String claimCheckBucket = getStringSetting(env, Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_BUCKET, null);
+    String claimCheckDir = getStringSetting(env, Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_DIR, null);
+    if (claimCheckBucket != null) {
+      claimCheckStore = new S3TranscriptStore(AmazonS3ClientBuilder.defaultClient(),
+          claimCheckBucket, getStringSetting(env, Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_PREFIX,
+              Lambda.DEFAULT_TRANSCRIPT_CLAIM_CHECK_PREFIX));
+    } else if (claimCheckDir != null) {
+      try {
+        claimCheckStore = new FileTranscriptStore(Paths.get(claimCheckDir));
+      } catch (IOException e) {
+        LOGGER.warn("Unable to use {} for oversized transcripts, claim checks disabled.",
+            claimCheckDir, e);
+      }
+    }
   }
 
 }
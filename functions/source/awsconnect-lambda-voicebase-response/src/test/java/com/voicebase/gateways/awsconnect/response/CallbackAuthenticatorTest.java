@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.sdk.util.RequestSigner.SignatureParameters;
+
+public class CallbackAuthenticatorTest {
+
+  private static Map<String, String> queryParameters(SignatureParameters signature) {
+    Map<String, String> params = new HashMap<>();
+    params.put(Lambda.CALLBACK_PARAM_TIMESTAMP, String.valueOf(signature.getTimestamp()));
+    params.put(Lambda.CALLBACK_PARAM_TOKEN, signature.getToken());
+    params.put(Lambda.CALLBACK_PARAM_SIGNATURE, signature.getSignature());
+    return params;
+  }
+
+  @Test
+  public void testValidSignatureIsAccepted() {
+    RequestSigner signer = new RequestSigner("secret");
+    CallbackAuthenticator authenticator = new CallbackAuthenticator(signer, 10);
+
+    Map<String, String> params = queryParameters(signer.createSignature());
+    Assert.assertTrue(authenticator.authenticate(params));
+    // not forwarded yet, VoiceBase may retry
+    Assert.assertTrue(authenticator.authenticate(params));
+
+    authenticator.accepted(params);
+    Assert.assertFalse(authenticator.authenticate(params));
+  }
+
+  @Test
+  public void testInvalidSignaturesAreRejected() {
+    RequestSigner signer = new RequestSigner("secret");
+    CallbackAuthenticator authenticator = new CallbackAuthenticator(signer, 10);
+    SignatureParameters signature = signer.createSignature();
+
+    Map<String, String> params = queryParameters(signature);
+    params.put(Lambda.CALLBACK_PARAM_TOKEN, signature.getToken() + "x");
+    Assert.assertFalse(authenticator.authenticate(params));
+
+    params = queryParameters(signature);
+    params.remove(Lambda.CALLBACK_PARAM_SIGNATURE);
+    Assert.assertFalse(authenticator.authenticate(params));
+    Assert.assertFalse(authenticator.authenticate((Map<String, String>) null));
+
+    // signed with another secret
+    Assert.assertFalse(authenticator
+        .authenticate(queryParameters(new RequestSigner("other").createSignature())));
+
+    // expired
+    long timestamp = System.currentTimeMillis() / 1000 - signer.getSignatureLifetimeSeconds() - 1;
+    Assert.assertFalse(authenticator.authenticate(String.valueOf(timestamp), "token",
+        signer.calculateSignature(timestamp, "token")));
+  }
+
+  @Test
+  public void testReplayCacheIsBounded() {
+    RequestSigner signer = new RequestSigner("secret");
+    CallbackAuthenticator authenticator = new CallbackAuthenticator(signer, 2);
+
+    Map<String, String> first = queryParameters(signer.createSignature());
+    authenticator.accepted(first);
+    authenticator.accepted("a");
+    authenticator.accepted("b");
+
+    Assert.assertTrue(authenticator.authenticate(first));
+  }
+
+  @Test
+  public void testFromEnv() {
+    Map<String, String> env = new HashMap<>();
+    Assert.assertNull(CallbackAuthenticator.fromEnv(env));
+
+    env.put(Lambda.ENV_CALLBACK_SIGNING_SECRET, "secret");
+    Assert.assertNotNull(CallbackAuthenticator.fromEnv(env));
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.AbstractAmazonKinesis;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+
+public class KinesisWriterTest {
+
+  /**
+   * Rejects the first writes as throttled, records the accepted ones.
+   */
+  static class ThrottlingKinesis extends AbstractAmazonKinesis {
+    final List<PutRecordRequest> written = new ArrayList<>();
+    int throttled;
+
+    ThrottlingKinesis(int throttled) {
+      this.throttled = throttled;
+    }
+
+    @Override
+    public PutRecordResult putRecord(PutRecordRequest request) {
+      if (throttled > 0) {
+        throttled--;
+        throw new ProvisionedThroughputExceededException("Rate exceeded");
+      }
+      written.add(request);
+      return new PutRecordResult().withShardId("shardId-000000000000").withSequenceNumber("1");
+    }
+  }
+
+  @Test
+  public void testThrottledWritesAreRetried() {
+    ThrottlingKinesis kinesis = new ThrottlingKinesis(2);
+    KinesisWriter writer = new KinesisWriter(kinesis, 3, 1, 5);
+
+    writer.putRecord(new PutRecordRequest().withStreamName("s"), Long.MAX_VALUE);
+
+    Assert.assertEquals(1, kinesis.written.size());
+    Assert.assertEquals(1, writer.getStatistics().getWrites());
+    Assert.assertEquals(2, writer.getStatistics().getThrottles());
+    Assert.assertEquals(2, writer.getStatistics().getRetries());
+    Assert.assertEquals(0, writer.getStatistics().getExhausted());
+  }
+
+  @Test
+  public void testGivesUpWhenAttemptsAreUsedUp() {
+    ThrottlingKinesis kinesis = new ThrottlingKinesis(5);
+    KinesisWriter writer = new KinesisWriter(kinesis, 2, 1, 5);
+
+    try {
+      writer.putRecord(new PutRecordRequest().withStreamName("s"), Long.MAX_VALUE);
+      Assert.fail("Throttled write should have been given up");
+    } catch (ProvisionedThroughputExceededException e) {
+      // expected
+    }
+    Assert.assertEquals(3, writer.getStatistics().getThrottles());
+    Assert.assertEquals(2, writer.getStatistics().getRetries());
+    Assert.assertEquals(1, writer.getStatistics().getExhausted());
+  }
+
+  @Test
+  public void testGivesUpAtDeadline() {
+    ThrottlingKinesis kinesis = new ThrottlingKinesis(1);
+    KinesisWriter writer = new KinesisWriter(kinesis, 10, 1000, 1000);
+
+    try {
+      writer.putRecord(new PutRecordRequest().withStreamName("s"),
+          System.currentTimeMillis() - 1);
+      Assert.fail("Throttled write should have been given up");
+    } catch (ProvisionedThroughputExceededException e) {
+      // expected
+    }
+    Assert.assertEquals(0, writer.getStatistics().getRetries());
+    Assert.assertEquals(1, writer.getStatistics().getExhausted());
+  }
+
+  @Test
+  public void testRetryDelayIsCapped() {
+    KinesisWriter writer = new KinesisWriter(new ThrottlingKinesis(0), 100, 10, 50);
+    for (int attempt = 1; attempt <= 100; attempt++) {
+      long delay = writer.retryDelay(attempt);
+      Assert.assertTrue(delay >= 0 && delay <= Math.min(50, 10L << Math.min(attempt - 1, 30)));
+    }
+    Assert.assertTrue(writer.retryDelay(101) < 0);
+  }
+}
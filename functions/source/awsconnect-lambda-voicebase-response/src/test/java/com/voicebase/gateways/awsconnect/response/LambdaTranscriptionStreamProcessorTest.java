@@ -0,0 +1,267 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.sdk.util.RequestSigner;
+import com.voicebase.sdk.util.RequestSigner.SignatureParameters;
+import com.voicebase.v3client.JacksonFactory;
+
+public class LambdaTranscriptionStreamProcessorTest {
+
+  private static final String SOURCE_IP = "52.6.244.43";
+
+  private KinesisWriterTest.ThrottlingKinesis kinesis = new KinesisWriterTest.ThrottlingKinesis(0);
+
+  private LambdaTranscriptionStreamProcessor processor() {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_CALLBACK_SOURCE_IPS, SOURCE_IP);
+    env.put(Lambda.ENV_PRIME_ON_INIT, "false");
+    return processor(env, new TranscriptionForwarder(env, kinesis));
+  }
+
+  private static LambdaTranscriptionStreamProcessor processor(Map<String, String> env,
+      TranscriptionForwarder forwarder) {
+    return new LambdaTranscriptionStreamProcessor(env) {
+      @Override
+      TranscriptionForwarder createForwarder(Map<String, String> env) {
+        return forwarder;
+      }
+    };
+  }
+
+  /**
+   * Proxy event with the body before the request context, the order API Gateway doesn't use.
+   */
+  private static byte[] event(String sourceIp, Map<String, String> headers, String body,
+      boolean base64) throws Exception {
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("resource", "/callback");
+    event.put("httpMethod", "POST");
+    event.put("headers", headers);
+    event.put("body", body);
+    event.put("isBase64Encoded", base64);
+    event.put("requestContext", Collections.singletonMap("identity",
+        Collections.singletonMap("sourceIp", sourceIp)));
+    return JacksonFactory.sharedObjectMapper().writeValueAsBytes(event);
+  }
+
+  private static int statusCode(byte[] response) throws Exception {
+    return (Integer) JacksonFactory.mapReader().<Map<String, Object>>readValue(response)
+        .get("statusCode");
+  }
+
+  private String written() {
+    Assert.assertEquals(1, kinesis.written.size());
+    ByteBuffer data = kinesis.written.get(0).getData();
+    return new String(data.array(), data.position(), data.remaining(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testJsonBodyIsForwarded() throws Exception {
+    String transcript = TranscriptEncoderTest.sampleTranscript(3);
+    byte[] response = processor().process(
+        new ByteArrayInputStream(event(SOURCE_IP, null, "  " + transcript, false)),
+        Long.MAX_VALUE);
+
+    Assert.assertEquals(200, statusCode(response));
+    Assert.assertEquals(JacksonFactory.sharedObjectMapper()
+        .writeValueAsString(JacksonFactory.mapReader().readValue(transcript)), written());
+    Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d",
+        kinesis.written.get(0).getPartitionKey());
+  }
+
+  @Test
+  public void testBase64GzipBodyIsDecoded() throws Exception {
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write("{\"mediaId\" : \"m\"}".getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] response = processor().process(new ByteArrayInputStream(event(SOURCE_IP,
+        Collections.singletonMap("Content-Encoding", "gzip"),
+        Base64.getEncoder().encodeToString(gzipped.toByteArray()), true)), Long.MAX_VALUE);
+
+    Assert.assertEquals(200, statusCode(response));
+    Assert.assertEquals("{\"mediaId\":\"m\"}", written());
+  }
+
+  @Test
+  public void testBase64BodyIsDecoded() throws Exception {
+    LambdaTranscriptionStreamProcessor processor = processor();
+
+    Assert.assertEquals(200, statusCode(processor.process(new ByteArrayInputStream(event(SOURCE_IP,
+        null, Base64.getEncoder().encodeToString(
+            " {\"mediaId\" : \"m\"}".getBytes(StandardCharsets.UTF_8)), true)),
+        Long.MAX_VALUE)));
+    Assert.assertEquals("{\"mediaId\":\"m\"}", written());
+
+    Assert.assertEquals(406, statusCode(processor.process(
+        new ByteArrayInputStream(event(SOURCE_IP, null, "{not base64}", true)), Long.MAX_VALUE)));
+    Assert.assertEquals(406, statusCode(processor.process(new ByteArrayInputStream(event(SOURCE_IP,
+        null, Base64.getEncoder().encodeToString(
+            "{\"mediaId\" : \"m\", oops".getBytes(StandardCharsets.UTF_8)), true)),
+        Long.MAX_VALUE)));
+    Assert.assertEquals(1, kinesis.written.size());
+  }
+
+  @Test
+  public void testInflatedBodyIsLimited() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_CALLBACK_SOURCE_IPS, SOURCE_IP);
+    env.put(Lambda.ENV_PRIME_ON_INIT, "false");
+    env.put(Lambda.ENV_CALLBACK_MAX_BODY_SIZE, "100000");
+    LambdaTranscriptionStreamProcessor processor =
+        processor(env, new TranscriptionForwarder(env, kinesis));
+
+    // a few KB inflating to 10MB
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write("{\"mediaId\" : \"m\", \"padding\" : \"".getBytes(StandardCharsets.UTF_8));
+      byte[] padding = new byte[1024 * 1024];
+      Arrays.fill(padding, (byte) 'a');
+      for (int i = 0; i < 10; i++) {
+        out.write(padding);
+      }
+      out.write("\"}".getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertTrue(gzipped.size() < 100000);
+
+    Assert.assertEquals(406, statusCode(processor.process(new ByteArrayInputStream(event(SOURCE_IP,
+        Collections.singletonMap("Content-Encoding", "gzip"),
+        Base64.getEncoder().encodeToString(gzipped.toByteArray()), true)), Long.MAX_VALUE)));
+    Assert.assertTrue(kinesis.written.isEmpty());
+  }
+
+  @Test
+  public void testBodyIsEncodedAfterCallerIsChecked() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_CALLBACK_SOURCE_IPS, SOURCE_IP);
+    env.put(Lambda.ENV_PRIME_ON_INIT, "false");
+    AtomicInteger encoded = new AtomicInteger();
+    TranscriptEncoder encoder =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false) {
+          @Override
+          public TranscriptRecord encode(char[] processingResult, int offset, int length) {
+            encoded.incrementAndGet();
+            return super.encode(processingResult, offset, length);
+          }
+        };
+    LambdaTranscriptionStreamProcessor processor = processor(env,
+        new TranscriptionForwarder(env, kinesis) {
+          @Override
+          public TranscriptEncoder getEncoder() {
+            return encoder;
+          }
+        });
+    String transcript = TranscriptEncoderTest.sampleTranscript(1);
+
+    // the body comes before the request context
+    Assert.assertEquals(401, statusCode(processor.process(
+        new ByteArrayInputStream(event("10.0.0.1", null, transcript, false)), Long.MAX_VALUE)));
+    Assert.assertEquals(0, encoded.get());
+
+    Assert.assertEquals(200, statusCode(processor.process(
+        new ByteArrayInputStream(event(SOURCE_IP, null, transcript, false)), Long.MAX_VALUE)));
+    Assert.assertEquals(1, encoded.get());
+  }
+
+  @Test
+  public void testRequestsAreValidated() throws Exception {
+    LambdaTranscriptionStreamProcessor processor = processor();
+    String transcript = TranscriptEncoderTest.sampleTranscript(1);
+
+    Assert.assertEquals(401, statusCode(processor.process(
+        new ByteArrayInputStream(event("10.0.0.1", null, transcript, false)), Long.MAX_VALUE)));
+    Assert.assertEquals(406, statusCode(processor.process(new ByteArrayInputStream(event(SOURCE_IP,
+        Collections.singletonMap("Content-Encoding", "br"), transcript, false)), Long.MAX_VALUE)));
+    Assert.assertEquals(406, statusCode(processor.process(
+        new ByteArrayInputStream(event(SOURCE_IP, null, "", false)), Long.MAX_VALUE)));
+    Assert.assertEquals(406, statusCode(processor.process(
+        new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)), Long.MAX_VALUE)));
+    Assert.assertTrue(kinesis.written.isEmpty());
+  }
+
+  @Test
+  public void testSignedCallbacks() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_CALLBACK_SOURCE_IPS, SOURCE_IP);
+    env.put(Lambda.ENV_PRIME_ON_INIT, "false");
+    env.put(Lambda.ENV_CALLBACK_SIGNING_SECRET, "secret");
+    LambdaTranscriptionStreamProcessor processor =
+        processor(env, new TranscriptionForwarder(env, kinesis));
+
+    SignatureParameters signature = new RequestSigner("secret").createSignature();
+    Map<String, String> params = new HashMap<>();
+    params.put(Lambda.CALLBACK_PARAM_TIMESTAMP, String.valueOf(signature.getTimestamp()));
+    params.put(Lambda.CALLBACK_PARAM_TOKEN, signature.getToken());
+    params.put(Lambda.CALLBACK_PARAM_SIGNATURE, signature.getSignature());
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("queryStringParameters", params);
+    event.put("requestContext", Collections.singletonMap("identity",
+        Collections.singletonMap("sourceIp", SOURCE_IP)));
+    event.put("body", "{\"mediaId\" : \"m\"}");
+    byte[] signed = JacksonFactory.sharedObjectMapper().writeValueAsBytes(event);
+
+    Assert.assertEquals(401, statusCode(processor.process(new ByteArrayInputStream(
+        event(SOURCE_IP, null, "{\"mediaId\" : \"m\"}", false)), Long.MAX_VALUE)));
+    Assert.assertEquals(200,
+        statusCode(processor.process(new ByteArrayInputStream(signed), Long.MAX_VALUE)));
+    // replayed
+    Assert.assertEquals(401,
+        statusCode(processor.process(new ByteArrayInputStream(signed), Long.MAX_VALUE)));
+    Assert.assertEquals("{\"mediaId\":\"m\"}", written());
+  }
+
+  @Test
+  public void testTextBodyIsIdentifiedByCallbackUrl() throws Exception {
+    LambdaTranscriptionStreamProcessor processor = processor();
+    String srt = "1\n00:00:00,000 --> 00:00:01,500\nHello\n";
+
+    // no IDs at all, it would end up on one shard and couldn't be deduplicated
+    Assert.assertEquals(406, statusCode(processor.process(
+        new ByteArrayInputStream(event(SOURCE_IP, null, srt, false)), Long.MAX_VALUE)));
+    Assert.assertTrue(kinesis.written.isEmpty());
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("body", srt);
+    event.put("queryStringParameters",
+        Collections.singletonMap(Lambda.CALLBACK_PARAM_EXTERNAL_ID, "contact-1"));
+    event.put("requestContext", Collections.singletonMap("identity",
+        Collections.singletonMap("sourceIp", SOURCE_IP)));
+    Assert.assertEquals(200, statusCode(processor.process(
+        new ByteArrayInputStream(JacksonFactory.sharedObjectMapper().writeValueAsBytes(event)),
+        Long.MAX_VALUE)));
+    Assert.assertEquals(srt, written());
+    Assert.assertEquals("contact-1", kinesis.written.get(0).getPartitionKey());
+  }
+}
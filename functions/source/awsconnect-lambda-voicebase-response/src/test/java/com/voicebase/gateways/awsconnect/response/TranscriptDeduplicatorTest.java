@@ -0,0 +1,79 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.voicebase.gateways.awsconnect.FileIdempotencyStore;
+import com.voicebase.gateways.awsconnect.IdempotencyStore;
+import com.voicebase.v3client.JacksonFactory;
+
+public class TranscriptDeduplicatorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static TranscriptRecord encode(String transcript) {
+    return new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false)
+        .encode(transcript);
+  }
+
+  @Test
+  public void testKeyIsMediaIdAndContentHash() {
+    String key = TranscriptDeduplicator.key(encode("{\"mediaId\" : \"m\", \"status\" : 1}"));
+
+    Assert.assertTrue(key.startsWith("m|"));
+    Assert.assertEquals("Formatting doesn't matter", key,
+        TranscriptDeduplicator.key(encode("{\"mediaId\":\"m\",\n\"status\":1}")));
+    Assert.assertNotEquals(key,
+        TranscriptDeduplicator.key(encode("{\"mediaId\" : \"m\", \"status\" : 2}")));
+    Assert.assertNull(TranscriptDeduplicator.key(encode("{\"status\" : 1}")));
+  }
+
+  @Test
+  public void testDuplicatesAreDetectedInMemory() {
+    TranscriptDeduplicator deduplicator = new TranscriptDeduplicator(2, 60000L, null);
+
+    Assert.assertFalse(deduplicator.isWritten("a"));
+    Assert.assertFalse("Not written until recorded", deduplicator.isWritten("a"));
+    deduplicator.written("a");
+    Assert.assertTrue(deduplicator.isWritten("a"));
+
+    // evicts least recently used entry
+    deduplicator.written("b");
+    deduplicator.written("c");
+    Assert.assertFalse(deduplicator.isWritten("a"));
+    Assert.assertEquals(1, deduplicator.getDuplicates());
+  }
+
+  @Test
+  public void testExpiredEntriesAreNoDuplicates() {
+    TranscriptDeduplicator deduplicator = new TranscriptDeduplicator(10, -1L, null);
+
+    deduplicator.written("a");
+    Assert.assertFalse(deduplicator.isWritten("a"));
+  }
+
+  @Test
+  public void testDuplicatesAreDetectedAcrossInstancesWithStore() throws Exception {
+    IdempotencyStore store = new FileIdempotencyStore(folder.getRoot().toPath());
+
+    new TranscriptDeduplicator(10, 60000L, store).written("a");
+
+    TranscriptDeduplicator other = new TranscriptDeduplicator(10, 60000L, store);
+    Assert.assertTrue(other.isWritten("a"));
+    Assert.assertFalse(other.isWritten("b"));
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.datamodel.VbMedia;
+
+/**
+ * Compares time and allocation of the streaming transcript encoder against deserializing the
+ * callback into a {@link VbMedia} for the IDs and into a map for minifying it.
+ * <p/>
+ * Not a unit test, run manually, e.g. from the IDE or with
+ * <code>mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...TranscriptEncoderBenchmark</code>.
+ */
+public class TranscriptEncoderBenchmark {
+
+  private static final int WARMUP = 50;
+  private static final int ITERATIONS = 200;
+
+  public static void main(String[] args) throws Exception {
+    final ObjectMapper om = JacksonFactory.objectMapper();
+    final TranscriptEncoder encoder =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), true);
+    // about 20000 words, roughly a 90 minute call
+    final String transcript = TranscriptEncoderTest.sampleTranscript(20000);
+
+    Task mapEncoding = new Task() {
+      @Override
+      public Object run() throws Exception {
+        VbMedia media = om.readValue(transcript.getBytes(), VbMedia.class);
+        Map<?, ?> deserialized = om.readValue(transcript.getBytes(), Map.class);
+        byte[] data = new String(om.writeValueAsString(deserialized) + "\n").getBytes();
+        return media.getMetadata().getExternalId() + data.length;
+      }
+    };
+
+    Task streamingEncoding = new Task() {
+      @Override
+      public Object run() throws Exception {
+        TranscriptRecord record = encoder.encode(transcript);
+        return record.getExternalId() + record.getLength();
+      }
+    };
+
+    System.out.println("Transcript size: " + transcript.length() + " characters");
+    measure("map", mapEncoding);
+    measure("streaming", streamingEncoding);
+  }
+
+  private interface Task {
+    Object run() throws Exception;
+  }
+
+  private static void measure(String name, Task task) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      task.run();
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      task.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.printf("%-10s %8.2f ms/transcript %10d bytes allocated/transcript%n", name,
+        elapsed / 1000000d / ITERATIONS, allocated / ITERATIONS);
+  }
+}
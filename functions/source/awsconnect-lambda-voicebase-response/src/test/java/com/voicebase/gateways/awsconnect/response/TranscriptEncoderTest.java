@@ -0,0 +1,223 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.voicebase.gateways.awsconnect.TranscriptCompression;
+import com.voicebase.gateways.awsconnect.TranscriptDecoder;
+import com.voicebase.v3client.JacksonFactory;
+
+public class TranscriptEncoderTest {
+
+  static String sampleTranscript(int words) {
+    StringBuilder transcript = new StringBuilder();
+    transcript.append("{\n  \"mediaId\" : \"d0b2cbd5-9c4c-4b8a-8f3e-5c2b4f0e4a11\",\n")
+        .append("  \"status\" : \"finished\",\n")
+        .append("  \"metadata\" : {\n")
+        .append("    \"externalId\" : \"8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d\",\n")
+        .append("    \"extended\" : { \"mediaId\" : \"nested\", \"externalId\" : \"nested\",")
+        .append(" \"agent\" : \"José Müller\" }\n  },\n")
+        .append("  \"transcript\" : {\n    \"confidence\" : 0.87,\n    \"words\" : [");
+    for (int i = 0; i < words; i++) {
+      transcript.append(i > 0 ? ",\n" : "\n").append("      { \"p\" : ").append(i)
+          .append(", \"c\" : 0.9, \"s\" : ").append(i * 250).append(", \"e\" : ")
+          .append(i * 250 + 200).append(", \"w\" : \"word").append(i).append("\" }");
+    }
+    transcript.append("\n    ]\n  }\n}");
+    return transcript.toString();
+  }
+
+  private static String toString(TranscriptRecord record) {
+    ByteBuffer data = record.getData();
+    return new String(data.array(), data.position(), data.remaining(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testMinifiesAndExtractsIds() throws Exception {
+    String transcript = sampleTranscript(3);
+    TranscriptRecord record =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false)
+            .encode(transcript);
+
+    Assert.assertEquals("d0b2cbd5-9c4c-4b8a-8f3e-5c2b4f0e4a11", record.getMediaId());
+    Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d", record.getExternalId());
+
+    Map<String, Object> expected = JacksonFactory.mapReader().readValue(transcript);
+    String encoded = toString(record);
+    Assert.assertEquals(JacksonFactory.sharedObjectMapper().writeValueAsString(expected), encoded);
+    Assert.assertEquals(encoded.getBytes(StandardCharsets.UTF_8).length, record.getLength());
+  }
+
+  @Test
+  public void testBufferIsReusedAndNewlineAdded() throws Exception {
+    TranscriptEncoder encoder =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), true);
+
+    TranscriptRecord large = encoder.encode(sampleTranscript(100));
+    TranscriptRecord small = encoder.encode("{\"mediaId\" : \"m\"}");
+
+    Assert.assertSame(large.getData().array(), small.getData().array());
+    Assert.assertEquals("{\"mediaId\":\"m\"}\n", toString(small));
+    Assert.assertNull(small.getExternalId());
+  }
+
+  @Test
+  public void testInvalidJsonIsSentAsIs() throws Exception {
+    TranscriptRecord record =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false)
+            .encode("{\"mediaId\": \"m\", oops");
+
+    Assert.assertEquals("{\"mediaId\": \"m\", oops", toString(record));
+    Assert.assertNull(new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(),
+        false).encode((String) null));
+  }
+
+  @Test
+  public void testTextTranscriptIsSentAsIs() throws Exception {
+    String srt = "1\n00:00:00,000 --> 00:00:01,500\nHello\n";
+    TranscriptRecord record =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), true)
+            .encode(srt);
+
+    Assert.assertEquals(srt + "\n", toString(record));
+    Assert.assertNull(record.getMediaId());
+    Assert.assertFalse(record.isJson());
+  }
+
+  @Test
+  public void testStreamedBodies() throws Exception {
+    TranscriptEncoder encoder =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false);
+
+    TranscriptRecord record = encoder.encode(new ByteArrayInputStream(
+        sampleTranscript(2).getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(toString(encoder.encode(sampleTranscript(2))), toString(record));
+    Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d", record.getExternalId());
+
+    String srt = "\n1\n00:00:00,000 --> 00:00:01,500\nHello\n";
+    record = encoder.encode(new ByteArrayInputStream(srt.getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(srt, toString(record));
+    Assert.assertFalse(record.isJson());
+
+    // read once, invalid JSON can't be sent as it is
+    try {
+      encoder.encode(new ByteArrayInputStream(
+          "{\"mediaId\": \"m\", oops".getBytes(StandardCharsets.UTF_8)));
+      Assert.fail("Expected failure");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCompressedRecordsDecodeToMinifiedJson() throws Exception {
+    String transcript = sampleTranscript(100);
+    TranscriptRecord plain =
+        new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), true)
+            .encode(transcript);
+    byte[] expected = new byte[plain.getLength()];
+    plain.getData().get(expected);
+    Assert.assertArrayEquals(expected, TranscriptDecoder.decode(plain.getData()));
+
+    // zstd-jni is on the test classpath
+    for (TranscriptCompression compression : new TranscriptCompression[] {
+        TranscriptCompression.GZIP, TranscriptCompression.DEFLATE, TranscriptCompression.ZSTD}) {
+      TranscriptRecord record =
+          new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), true,
+              compression, null).encode(transcript);
+
+      Assert.assertEquals(compression, TranscriptDecoder.compressionOf(record.getData()));
+      Assert.assertTrue(record.getLength() * 3 < expected.length);
+      Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d", record.getExternalId());
+      Assert.assertArrayEquals(expected, TranscriptDecoder.decode(record.getData()));
+    }
+  }
+
+  @Test
+  public void testInvalidJsonIsCompressedAsIs() throws Exception {
+    TranscriptRecord record = new TranscriptEncoder(
+        JacksonFactory.sharedObjectMapper().getFactory(), false, TranscriptCompression.GZIP, null)
+            .encode("{\"mediaId\": \"m\", oops");
+
+    Assert.assertEquals("{\"mediaId\": \"m\", oops",
+        new String(TranscriptDecoder.decode(record.getData()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testExcludedPathsAreDropped() throws Exception {
+    TranscriptRecord record = new TranscriptEncoder(
+        JacksonFactory.sharedObjectMapper().getFactory(), false, TranscriptCompression.NONE,
+        TranscriptProjection.of(null, Arrays.asList("metadata.extended", "transcript.words[].c")))
+            .encode(sampleTranscript(2));
+
+    Assert.assertEquals("{\"mediaId\":\"d0b2cbd5-9c4c-4b8a-8f3e-5c2b4f0e4a11\","
+        + "\"status\":\"finished\",\"metadata\":{\"externalId\":"
+        + "\"8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d\"},\"transcript\":{\"confidence\":0.87,"
+        + "\"words\":[{\"p\":0,\"s\":0,\"e\":200,\"w\":\"word0\"},"
+        + "{\"p\":1,\"s\":250,\"e\":450,\"w\":\"word1\"}]}}", toString(record));
+  }
+
+  @Test
+  public void testOnlyIncludedPathsAreWritten() throws Exception {
+    TranscriptRecord record = new TranscriptEncoder(
+        JacksonFactory.sharedObjectMapper().getFactory(), false, TranscriptCompression.NONE,
+        TranscriptProjection.of(Arrays.asList("mediaId", "transcript.words[].w", "metadata"),
+            Arrays.asList("metadata.extended"))).encode(sampleTranscript(2));
+
+    Assert.assertEquals("{\"mediaId\":\"d0b2cbd5-9c4c-4b8a-8f3e-5c2b4f0e4a11\","
+        + "\"metadata\":{\"externalId\":\"8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d\"},"
+        + "\"transcript\":{\"words\":[{\"w\":\"word0\"},{\"w\":\"word1\"}]}}",
+        toString(record));
+
+    // IDs are found even if they aren't written
+    record = new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false,
+        TranscriptCompression.NONE, TranscriptProjection.of(Arrays.asList("status"), null))
+            .encode(sampleTranscript(2));
+    Assert.assertEquals("{\"status\":\"finished\"}", toString(record));
+    Assert.assertEquals("d0b2cbd5-9c4c-4b8a-8f3e-5c2b4f0e4a11", record.getMediaId());
+    Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d", record.getExternalId());
+  }
+
+  @Test
+  public void testScalarsOnIncludedPathsAreNotWritten() throws Exception {
+    // scalars where the included paths expect objects or arrays contain nothing that's included
+    TranscriptEncoder encoder = new TranscriptEncoder(
+        JacksonFactory.sharedObjectMapper().getFactory(), false, TranscriptCompression.NONE,
+        TranscriptProjection.of(Arrays.asList("mediaId", "metadata.extended.agent",
+            "transcript.words[].w"), null));
+
+    TranscriptRecord record = encoder.encode("{\"mediaId\":\"m\",\"metadata\":"
+        + "{\"externalId\":\"e\",\"extended\":\"agent\"},\"transcript\":{\"confidence\":0.8,"
+        + "\"words\":[{\"c\":0.9,\"w\":\"word0\"},\"word1\",null,7]}}");
+
+    Assert.assertEquals("{\"mediaId\":\"m\",\"transcript\":{\"words\":[{\"w\":\"word0\"}]}}",
+        toString(record));
+    Assert.assertEquals("e", record.getExternalId());
+
+    record = encoder.encode("{\"mediaId\":\"m\",\"metadata\":\"none\",\"transcript\":true}");
+    Assert.assertEquals("{\"mediaId\":\"m\"}", toString(record));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidProjectionPath() throws Exception {
+    TranscriptProjection.of(Arrays.asList("transcript..words"), null);
+  }
+}
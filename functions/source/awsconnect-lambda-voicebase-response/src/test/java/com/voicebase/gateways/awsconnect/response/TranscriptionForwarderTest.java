@@ -0,0 +1,181 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect.response;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.voicebase.gateways.awsconnect.TranscriptCompression;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+import com.voicebase.v3client.JacksonFactory;
+
+public class TranscriptionForwarderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TranscriptionForwarder forwarder(File claimCheckDir, int threshold) {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_DIR, claimCheckDir.getAbsolutePath());
+    env.put(Lambda.ENV_TRANSCRIPT_CLAIM_CHECK_THRESHOLD, String.valueOf(threshold));
+    return new TranscriptionForwarder(env, new KinesisWriterTest.ThrottlingKinesis(0));
+  }
+
+  private static TranscriptRecord encode(String transcript) {
+    return new TranscriptEncoder(JacksonFactory.sharedObjectMapper().getFactory(), false)
+        .encode(transcript);
+  }
+
+  @Test
+  public void testSmallTranscriptIsWrittenAsIs() throws Exception {
+    TranscriptRecord record = encode(TranscriptEncoderTest.sampleTranscript(3));
+
+    ByteBuffer data = forwarder(folder.getRoot(), 100000).outputData(record);
+
+    Assert.assertEquals(record.getData(), data);
+    Assert.assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testLargeTranscriptIsReplacedByClaimCheck() throws Exception {
+    TranscriptRecord record = encode(TranscriptEncoderTest.sampleTranscript(100));
+    byte[] transcript = new byte[record.getLength()];
+    record.getData().get(transcript);
+
+    ByteBuffer data = forwarder(folder.getRoot(), 1000).outputData(record);
+
+    Map<String, Object> pointer = JacksonFactory.mapReader()
+        .readValue(new String(data.array(), data.position(), data.remaining(),
+            StandardCharsets.UTF_8));
+    Assert.assertEquals(ClaimCheck.TYPE, pointer.get("type"));
+    Assert.assertEquals(record.getMediaId(), pointer.get("mediaId"));
+    Assert.assertEquals(record.getExternalId(), pointer.get("externalId"));
+    Assert.assertEquals(transcript.length, pointer.get("size"));
+    Assert.assertEquals(DigestUtils.sha256Hex(transcript), pointer.get("sha256"));
+
+    byte[] stored = Files.readAllBytes(Paths.get(URI.create((String) pointer.get("location"))));
+    Assert.assertArrayEquals(transcript, stored);
+    Assert.assertTrue(((String) pointer.get("location"))
+        .endsWith(record.getExternalId() + "/" + record.getMediaId() + ".json"));
+  }
+
+  @Test
+  public void testClaimCheckSuffixFollowsContent() throws Exception {
+    String transcript = TranscriptEncoderTest.sampleTranscript(1);
+    Assert.assertEquals(".json", TranscriptionForwarder.claimCheckSuffix(encode(transcript)));
+    Assert.assertEquals(".txt", TranscriptionForwarder.claimCheckSuffix(encode("Hello")));
+    TranscriptRecord compressed = new TranscriptEncoder(
+        JacksonFactory.sharedObjectMapper().getFactory(), false, TranscriptCompression.GZIP, null)
+            .encode(transcript);
+    Assert.assertEquals(".vbt", TranscriptionForwarder.claimCheckSuffix(compressed));
+  }
+
+  @Test
+  public void testHashPartitioning() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_TRANSCRIPT_PARTITION_STRATEGY, "hash");
+    env.put(Lambda.ENV_TRANSCRIPT_DEDUP_CACHE_SIZE, "0");
+    KinesisWriterTest.ThrottlingKinesis kinesis = new KinesisWriterTest.ThrottlingKinesis(1);
+    TranscriptionForwarder forwarder = new TranscriptionForwarder(env, kinesis);
+
+    forwarder.forward(TranscriptEncoderTest.sampleTranscript(3));
+    forwarder.forward(TranscriptEncoderTest.sampleTranscript(3));
+    forwarder.forward("{\"status\" : \"finished\"}");
+    forwarder.forward("{\"status\" : \"finished\"}");
+
+    Assert.assertEquals(4, kinesis.written.size());
+    Assert.assertEquals(1, forwarder.getWriteStatistics().getRetries());
+    PutRecordRequest first = kinesis.written.get(0);
+    Assert.assertEquals("8f5b7d3a-2c1e-4f0a-9b6d-3e4c5a6b7c8d", first.getPartitionKey());
+    Assert.assertEquals(new BigInteger(1, DigestUtils.md5(first.getPartitionKey())).toString(),
+        first.getExplicitHashKey());
+    Assert.assertEquals(first.getExplicitHashKey(), kinesis.written.get(1).getExplicitHashKey());
+    Assert.assertNotEquals(kinesis.written.get(2).getExplicitHashKey(),
+        kinesis.written.get(3).getExplicitHashKey());
+  }
+
+  @Test
+  public void testDuplicatesAreWrittenOnce() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_STREAM, "transcripts");
+    env.put(Lambda.ENV_TRANSCRIPT_DEDUP_STORE_DIR, folder.getRoot().getAbsolutePath());
+    KinesisWriterTest.ThrottlingKinesis kinesis = new KinesisWriterTest.ThrottlingKinesis(0);
+    TranscriptionForwarder forwarder = new TranscriptionForwarder(env, kinesis);
+
+    forwarder.forward(TranscriptEncoderTest.sampleTranscript(3));
+    forwarder.forward(TranscriptEncoderTest.sampleTranscript(3));
+    forwarder.forward(TranscriptEncoderTest.sampleTranscript(4));
+    // seen by another container
+    new TranscriptionForwarder(env, kinesis).forward(TranscriptEncoderTest.sampleTranscript(3));
+    // no media ID, can't tell
+    forwarder.forward("{\"status\" : \"finished\"}");
+    forwarder.forward("{\"status\" : \"finished\"}");
+    // text transcripts are told apart by the external ID of the callback URL
+    Map<String, String> query =
+        Collections.singletonMap(Lambda.CALLBACK_PARAM_EXTERNAL_ID, "contact-1");
+    forwarder.forward(forwarder.identify(encode("Hello"), query), Long.MAX_VALUE);
+    forwarder.forward(forwarder.identify(encode("Hello"), query), Long.MAX_VALUE);
+
+    Assert.assertEquals(5, kinesis.written.size());
+    Assert.assertEquals(2, forwarder.getDeduplicator().getDuplicates());
+  }
+
+  @Test
+  public void testTextBodiesNeedExternalId() throws Exception {
+    TranscriptionForwarder forwarder = forwarder(folder.getRoot(), 100000);
+
+    Assert.assertNull(forwarder.identify(encode("Hello"), null));
+    Assert.assertNull(forwarder.identify(encode("Hello"), Collections.emptyMap()));
+    Assert.assertEquals("contact-1", forwarder.identify(encode("Hello"),
+        Collections.singletonMap(Lambda.CALLBACK_PARAM_EXTERNAL_ID, "contact-1")).getExternalId());
+
+    // JSON bodies keep their own IDs
+    TranscriptRecord json = encode(TranscriptEncoderTest.sampleTranscript(1));
+    Assert.assertSame(json, forwarder.identify(json,
+        Collections.singletonMap(Lambda.CALLBACK_PARAM_EXTERNAL_ID, "contact-1")));
+    TranscriptRecord anonymous = encode("{\"status\" : \"finished\"}");
+    Assert.assertSame(anonymous, forwarder.identify(anonymous, null));
+  }
+
+  @Test
+  public void testOutputCompression() throws Exception {
+    Map<String, String> env = new HashMap<>();
+    Assert.assertEquals(TranscriptCompression.NONE,
+        TranscriptionForwarder.outputCompression(env));
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_COMPRESSION, "gzip");
+    Assert.assertEquals(TranscriptCompression.GZIP,
+        TranscriptionForwarder.outputCompression(env));
+    // zstd-jni is on the test classpath
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_COMPRESSION, "zstd");
+    Assert.assertEquals(TranscriptCompression.ZSTD,
+        TranscriptionForwarder.outputCompression(env));
+    env.put(Lambda.ENV_TRANSCRIPT_OUTPUT_COMPRESSION, "lzma");
+    Assert.assertEquals(TranscriptCompression.NONE,
+        TranscriptionForwarder.outputCompression(env));
+  }
+}
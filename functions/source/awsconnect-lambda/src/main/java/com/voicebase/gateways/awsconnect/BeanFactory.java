@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.voicebase.gateways.awsconnect.lambda.Lambda;
 import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.UtcDateFormat;
 
 /**
  * 
@@ -28,6 +29,7 @@ import com.voicebase.v3client.JacksonFactory;
  */
 public class BeanFactory {
 
+  private static final ObjectMapper SHARED_MAPPER = objectMapper();
 
   public static final SimpleDateFormat dateFormatter() {
     SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
@@ -46,10 +48,22 @@ public class BeanFactory {
    */
   public static final ObjectMapper objectMapper() {
     ObjectMapper objectMapper = new ObjectMapper();
-    objectMapper.setDateFormat(dateFormatter());
+    objectMapper.setDateFormat(UtcDateFormat.INSTANCE);
     objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     return objectMapper;
   }
+
+  /**
+   * General purpose object mapper shared by the whole process. Callers must not change its
+   * configuration.
+   * 
+   * @return shared object mapper
+   * 
+   * @see {@link JacksonFactory#sharedObjectMapper()}
+   */
+  public static final ObjectMapper sharedObjectMapper() {
+    return SHARED_MAPPER;
+  }
   
 
   
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Idempotency store keeping one marker file per key in a local directory.
+ * <p/>
+ * Meant for tests and single host setups. Errors accessing the directory are logged and the key is
+ * treated as new, so a broken store never blocks processing.
+ */
+public class FileIdempotencyStore implements IdempotencyStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileIdempotencyStore.class);
+
+  // file locks are held per process, threads of this process are serialized here
+  private static final Striped<Lock> RENEW_LOCKS = Striped.lock(64);
+
+  private final Path directory;
+
+  public FileIdempotencyStore(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  @Override
+  public boolean putIfAbsent(String key, long expiresAt) {
+    Path marker = marker(key);
+    byte[] content = String.valueOf(expiresAt).getBytes(StandardCharsets.UTF_8);
+    try {
+      Files.write(marker, content, StandardOpenOption.CREATE_NEW);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      return readExpiry(marker) <= System.currentTimeMillis() && renew(key, expiresAt);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write idempotency marker {}", marker, e);
+      return true;
+    }
+  }
+
+  /**
+   * Replace an expired marker. Renewals from this and other processes sharing the directory hold
+   * a lock on the marker and check the expiry again, so only one of them takes over the key.
+   * 
+   * @return true if the marker was expired and has been renewed
+   */
+  boolean renew(String key, long expiresAt) {
+    Path marker = marker(key);
+    byte[] content = String.valueOf(expiresAt).getBytes(StandardCharsets.UTF_8);
+    Lock lock = RENEW_LOCKS.get(marker.toAbsolutePath());
+    lock.lock();
+    try (FileChannel channel =
+        FileChannel.open(marker, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock fileLock = channel.lock()) {
+      ByteBuffer current = ByteBuffer.allocate(32);
+      channel.read(current, 0);
+      if (parseExpiry(new String(current.array(), 0, current.position(),
+          StandardCharsets.UTF_8)) > System.currentTimeMillis()) {
+        return false;
+      }
+      // overwrite before truncating so readers never see an empty marker
+      channel.write(ByteBuffer.wrap(content), 0);
+      channel.truncate(content.length);
+      return true;
+    } catch (NoSuchFileException e) {
+      // removed in the meantime
+      return putIfAbsent(key, expiresAt);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to renew idempotency marker {}", marker, e);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(String key) {
+    Path marker = marker(key);
+    return Files.exists(marker) && readExpiry(marker) > System.currentTimeMillis();
+  }
+
+  @Override
+  public void remove(String key) {
+    Path marker = marker(key);
+    try {
+      Files.deleteIfExists(marker);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to remove idempotency marker {}", marker, e);
+    }
+  }
+
+  private Path marker(String key) {
+    return directory.resolve(DigestUtils.sha1Hex(key));
+  }
+
+  private long readExpiry(Path marker) {
+    try {
+      return parseExpiry(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOGGER.debug("Unable to read idempotency marker {}", marker, e);
+      return 0;
+    }
+  }
+
+  private static long parseExpiry(String content) {
+    try {
+      return Long.parseLong(content.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+/**
+ * Durable record of keys that have already been processed, shared between Lambda containers.
+ * <p/>
+ * Implementations must be thread safe.
+ */
+public interface IdempotencyStore {
+
+  /**
+   * Record a key unless it is already recorded and not yet expired.
+   * 
+   * @param key idempotency key
+   * @param expiresAt time in ms since the epoch after which the key may be recorded again
+   * 
+   * @return true if the key was recorded, false if it already existed
+   */
+  boolean putIfAbsent(String key, long expiresAt);
+
+  /**
+   * Check if a key is recorded and not yet expired.
+   * 
+   * @param key idempotency key
+   * 
+   * @return true if the key is recorded
+   */
+  boolean contains(String key);
+
+  /**
+   * Forget a key, e.g. because processing it failed and should be retried.
+   * 
+   * @param key idempotency key
+   */
+  void remove(String key);
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorted, non-overlapping IP address ranges compiled from addresses and CIDR blocks.
+ * <p/>
+ * IPv4 and IPv6 are kept in one 128 bit address space, IPv4 addresses are mapped to
+ * <code>::ffff:0:0/96</code>, so <code>52.6.244.43</code> and <code>::ffff:52.6.244.43</code>
+ * are the same address. Range bounds are stored in primitive arrays and looked up with a binary
+ * search; a lookup parses the address without creating objects.
+ * <p/>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class IpRangeIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IpRangeIndex.class);
+
+  private static final long IPV4_MAPPED = 0x0000ffff00000000L;
+  private static final int IPV4_MAPPED_PREFIX = 96;
+
+  // range i is [start[2i], start[2i + 1]] to [end[2i], end[2i + 1]], high and low 64 bits
+  private final long[] start;
+  private final long[] end;
+
+  private final ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[2]);
+
+  private IpRangeIndex(long[] start, long[] end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Compile addresses and CIDR blocks, e.g. <code>52.6.244.43</code>, <code>52.6.0.0/16</code>
+   * or <code>2600:1f18::/36</code>. Invalid entries are logged and skipped.
+   * 
+   * @param entries addresses and CIDR blocks
+   * 
+   * @return index of the valid entries
+   */
+  public static IpRangeIndex compile(Collection<String> entries) {
+    List<long[]> ranges = new ArrayList<>(entries.size());
+    long[] address = new long[2];
+    for (String entry : entries) {
+      String trimmed = entry != null ? entry.trim() : "";
+      int slash = trimmed.indexOf('/');
+      String host = slash >= 0 ? trimmed.substring(0, slash) : trimmed;
+      int prefix = 128;
+      boolean valid = parse(host, address);
+      if (valid && slash >= 0) {
+        try {
+          int maxPrefix = isIpv4(host) ? 32 : 128;
+          prefix = Integer.parseInt(trimmed.substring(slash + 1));
+          valid = prefix >= 0 && prefix <= maxPrefix;
+          prefix += 128 - maxPrefix;
+        } catch (NumberFormatException e) {
+          valid = false;
+        }
+      }
+      if (!valid) {
+        LOGGER.warn("Invalid IP address or CIDR block '{}', ignoring it.", entry);
+        continue;
+      }
+
+      long maskHi = prefix >= 64 ? -1L : prefix == 0 ? 0L : -1L << (64 - prefix);
+      long maskLo = prefix <= 64 ? 0L : prefix == 128 ? -1L : -1L << (128 - prefix);
+      ranges.add(new long[] {address[0] & maskHi, address[1] & maskLo, address[0] | ~maskHi,
+          address[1] | ~maskLo});
+    }
+
+    ranges.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+    List<long[]> merged = new ArrayList<>(ranges.size());
+    for (long[] range : ranges) {
+      long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && compare(range[0], range[1], last[2], last[3]) <= 0) {
+        if (compare(range[2], range[3], last[2], last[3]) > 0) {
+          last[2] = range[2];
+          last[3] = range[3];
+        }
+      } else {
+        merged.add(range);
+      }
+    }
+
+    long[] start = new long[merged.size() * 2];
+    long[] end = new long[merged.size() * 2];
+    for (int i = 0; i < merged.size(); i++) {
+      long[] range = merged.get(i);
+      start[2 * i] = range[0];
+      start[2 * i + 1] = range[1];
+      end[2 * i] = range[2];
+      end[2 * i + 1] = range[3];
+    }
+    return new IpRangeIndex(start, end);
+  }
+
+  /**
+   * @return number of ranges after merging overlapping ones
+   */
+  public int size() {
+    return start.length / 2;
+  }
+
+  /**
+   * Check if an address is in one of the ranges.
+   * 
+   * @param address IPv4 or IPv6 address, IPv6 may be in brackets and have a zone ID
+   * 
+   * @return true if the address is valid and in a range
+   */
+  public boolean contains(CharSequence address) {
+    long[] parsed = scratch.get();
+    if (address == null || !parse(address, parsed)) {
+      return false;
+    }
+    long hi = parsed[0];
+    long lo = parsed[1];
+
+    // last range starting at or before the address
+    int low = 0;
+    int high = size() - 1;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (compare(start[2 * mid], start[2 * mid + 1], hi, lo) <= 0) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found >= 0 && compare(hi, lo, end[2 * found], end[2 * found + 1]) <= 0;
+  }
+
+  private static int compare(long hi1, long lo1, long hi2, long lo2) {
+    int result = Long.compareUnsigned(hi1, hi2);
+    return result != 0 ? result : Long.compareUnsigned(lo1, lo2);
+  }
+
+  private static boolean isIpv4(CharSequence address) {
+    for (int i = 0; i < address.length(); i++) {
+      if (address.charAt(i) == ':') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parse an address into its high and low 64 bits.
+   * 
+   * @param address IPv4 or IPv6 address
+   * @param result receives the address
+   * 
+   * @return false if the address is invalid
+   */
+  static boolean parse(CharSequence address, long[] result) {
+    int from = 0;
+    int to = address.length();
+    if (to > 1 && address.charAt(0) == '[' && address.charAt(to - 1) == ']') {
+      from++;
+      to--;
+    }
+    for (int i = from; i < to; i++) {
+      if (address.charAt(i) == '%') {
+        to = i;
+      }
+    }
+    if (from >= to) {
+      return false;
+    }
+
+    boolean ipv6 = false;
+    for (int i = from; i < to && !ipv6; i++) {
+      ipv6 = address.charAt(i) == ':';
+    }
+    if (!ipv6) {
+      long ipv4 = parseIpv4(address, from, to);
+      result[0] = 0;
+      result[1] = IPV4_MAPPED | ipv4;
+      return ipv4 >= 0;
+    }
+    return parseIpv6(address, from, to, result);
+  }
+
+  /**
+   * @return address or -1 if invalid
+   */
+  private static long parseIpv4(CharSequence address, int from, int to) {
+    long value = 0;
+    int octets = 0;
+    int octet = -1;
+    for (int i = from; i < to; i++) {
+      char c = address.charAt(i);
+      if (c == '.') {
+        if (octet < 0 || octets == 3) {
+          return -1;
+        }
+        value = value << 8 | octet;
+        octets++;
+        octet = -1;
+      } else if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else {
+        return -1;
+      }
+    }
+    if (octet < 0 || octets != 3) {
+      return -1;
+    }
+    return value << 8 | octet;
+  }
+
+  private static boolean parseIpv6(CharSequence address, int from, int to, long[] result) {
+    // groups before and after "::"
+    long headHi = 0;
+    long headLo = 0;
+    int head = 0;
+    long tailHi = 0;
+    long tailLo = 0;
+    int tail = 0;
+    boolean compressed = false;
+
+    int i = from;
+    if (address.charAt(i) == ':') {
+      if (i + 1 >= to || address.charAt(i + 1) != ':') {
+        return false;
+      }
+      compressed = true;
+      i += 2;
+    }
+
+    while (i < to) {
+      int groupEnd = i;
+      boolean dotted = false;
+      while (groupEnd < to && address.charAt(groupEnd) != ':') {
+        dotted |= address.charAt(groupEnd) == '.';
+        groupEnd++;
+      }
+
+      long value;
+      int bits;
+      if (dotted) {
+        // embedded IPv4 address, must be last
+        value = groupEnd == to ? parseIpv4(address, i, groupEnd) : -1;
+        bits = 32;
+      } else {
+        value = groupEnd - i >= 1 && groupEnd - i <= 4 ? 0 : -1;
+        for (int j = i; j < groupEnd && value >= 0; j++) {
+          int digit = Character.digit(address.charAt(j), 16);
+          value = digit >= 0 ? value << 4 | digit : -1;
+        }
+        bits = 16;
+      }
+      if (value < 0) {
+        return false;
+      }
+
+      if (compressed) {
+        tailHi = tailHi << bits | tailLo >>> (64 - bits);
+        tailLo = tailLo << bits | value;
+        tail += bits / 16;
+      } else {
+        headHi = headHi << bits | headLo >>> (64 - bits);
+        headLo = headLo << bits | value;
+        head += bits / 16;
+      }
+      if (head + tail > 8) {
+        return false;
+      }
+
+      i = groupEnd;
+      if (i < to) {
+        // skip the separator, a second one starts the compressed part
+        i++;
+        if (i < to && address.charAt(i) == ':') {
+          if (compressed) {
+            return false;
+          }
+          compressed = true;
+          i++;
+        } else if (i == to) {
+          return false;
+        }
+      }
+    }
+
+    if (compressed ? head + tail > 7 : head != 8) {
+      return false;
+    }
+
+    // move the head groups to the top, the tail stays at the bottom
+    int shift = 16 * (8 - head);
+    if (shift >= 128) {
+      headHi = 0;
+      headLo = 0;
+    } else if (shift >= 64) {
+      headHi = headLo << (shift - 64);
+      headLo = 0;
+    } else if (shift > 0) {
+      headHi = headHi << shift | headLo >>> (64 - shift);
+      headLo = headLo << shift;
+    }
+    result[0] = headHi | tailHi;
+    result[1] = headLo | tailLo;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "IpRangeIndex [ranges=" + size() + "]";
+  }
+}
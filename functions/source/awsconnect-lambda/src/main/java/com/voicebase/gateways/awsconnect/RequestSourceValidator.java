@@ -12,8 +12,7 @@
 package com.voicebase.gateways.awsconnect;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -21,6 +20,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Validator for incoming requests.
+ * <p/>
+ * The whitelist may contain IPv4 and IPv6 addresses and CIDR blocks, they are compiled into an
+ * {@link IpRangeIndex}. Results are cached per source address, callbacks come from a handful of
+ * servers, so most requests are answered by a single map lookup.
  * 
  * @author Volker Kueffel <volker@voicebase.com>
  *
@@ -29,35 +32,47 @@ public class RequestSourceValidator {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RequestSourceValidator.class);
 
+  // bounds the cache if requests come from many different addresses
+  private static final int MAX_CACHED_ADDRESSES = 1024;
+
   private final boolean validate;
-  private final Set<String> ipWhitelist = new HashSet<>();
+  private final IpRangeIndex ipWhitelist;
+  private final ConcurrentHashMap<String, Boolean> results = new ConcurrentHashMap<>();
 
   public RequestSourceValidator(Collection<String> ipWhitelist, boolean validate) {
     if (ipWhitelist != null && !ipWhitelist.isEmpty()) {
-      this.ipWhitelist.addAll(ipWhitelist);
+      this.ipWhitelist = IpRangeIndex.compile(ipWhitelist);
+      if (this.ipWhitelist.size() == 0) {
+        LOGGER.warn("No valid entry in the source IP whitelist, all requests will be rejected.");
+      }
+    } else {
+      this.ipWhitelist = null;
     }
     this.validate = validate;
   }
 
   public boolean validate(String sourceIp) {
-    if (!validate) {
+    if (!validate || ipWhitelist == null) {
       return true;
     }
 
-    if (!ipWhitelist.isEmpty()) {
-      try {
-        LOGGER.debug("Incoming request from {}", sourceIp);
-        if (StringUtils.isEmpty(sourceIp) || !ipWhitelist.contains(sourceIp)) {
-          LOGGER.warn("Request from {} not authorized, rejecting.", sourceIp);
-          return false;
-        }
-      } catch (Exception e) {
-        LOGGER.error("Unable to validate request source.", e);
-        return false;
-      }
+    LOGGER.debug("Incoming request from {}", sourceIp);
+    if (StringUtils.isEmpty(sourceIp)) {
+      LOGGER.warn("Request without source IP not authorized, rejecting.");
+      return false;
     }
 
-    return true;
+    Boolean valid = results.get(sourceIp);
+    if (valid == null) {
+      valid = ipWhitelist.contains(sourceIp);
+      if (results.size() < MAX_CACHED_ADDRESSES) {
+        results.put(sourceIp, valid);
+      }
+    }
+    if (!valid) {
+      LOGGER.warn("Request from {} not authorized, rejecting.", sourceIp);
+    }
+    return valid;
   }
 
 }
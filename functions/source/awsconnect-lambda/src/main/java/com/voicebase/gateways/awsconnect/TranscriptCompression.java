@@ -0,0 +1,200 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+/**
+ * Compression of transcript records on the output stream.
+ * <p/>
+ * Compressed records start with a header: the magic bytes {@code 0x00 'V' 'B' 'T'}, a format
+ * version and the {@link #getId() ID} of the compression, followed by the compressed JSON.
+ * Uncompressed records are plain JSON without header. A JSON document can't start with a NUL
+ * byte, so both can be told apart, see {@link TranscriptDecoder}.
+ */
+public enum TranscriptCompression {
+
+  NONE(0), GZIP(1), DEFLATE(2),
+
+  /**
+   * Zstandard, requires <a href="https://github.com/luben/zstd-jni">zstd-jni</a>, an optional
+   * dependency, on the classpath and its native library for the platform.
+   */
+  ZSTD(3);
+
+  static final byte[] MAGIC = {0x00, 'V', 'B', 'T'};
+  static final byte VERSION = 1;
+  static final int HEADER_LENGTH = MAGIC.length + 2;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final byte id;
+
+  private TranscriptCompression(int id) {
+    this.id = (byte) id;
+  }
+
+  /**
+   * @return ID of the compression in the record header
+   */
+  public byte getId() {
+    return id;
+  }
+
+  /**
+   * Get a compression by name, ignoring case.
+   * 
+   * @param name compression name, null or empty for {@link #NONE}
+   * 
+   * @return compression
+   * 
+   * @throws IllegalArgumentException if there is no compression with that name
+   */
+  public static TranscriptCompression fromName(String name) {
+    if (name == null || name.trim().isEmpty()) {
+      return NONE;
+    }
+    return valueOf(name.trim().toUpperCase());
+  }
+
+  static TranscriptCompression fromId(byte id) throws IOException {
+    for (TranscriptCompression compression : values()) {
+      if (compression.id == id) {
+        return compression;
+      }
+    }
+    throw new IOException("Unknown transcript compression " + id);
+  }
+
+  /**
+   * Check if this compression can be used in this environment.
+   * 
+   * @return false if a required library is missing
+   */
+  public boolean isAvailable() {
+    if (this != ZSTD) {
+      return true;
+    }
+    try {
+      return Zstd.AVAILABLE;
+    } catch (LinkageError e) {
+      // zstd-jni is missing
+      return false;
+    }
+  }
+
+  /**
+   * Write the record header, if any, and wrap the output in a compressing stream. Closing the
+   * returned stream finishes the compressed data and closes the target.
+   * 
+   * @param out target stream
+   * 
+   * @return stream to write the JSON to
+   * 
+   * @throws IOException if writing fails or the compression is not available
+   */
+  public OutputStream compress(OutputStream out) throws IOException {
+    if (this == NONE) {
+      return out;
+    }
+
+    out.write(MAGIC);
+    out.write(VERSION);
+    out.write(id);
+    switch (this) {
+      case GZIP:
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+      case DEFLATE:
+        return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+          @Override
+          public void close() throws IOException {
+            // end the deflater we created, DeflaterOutputStream only ends its default one
+            try {
+              super.close();
+            } finally {
+              def.end();
+            }
+          }
+        };
+      default:
+        checkAvailable();
+        return Zstd.compress(out);
+    }
+  }
+
+  /**
+   * Wrap compressed data, without header, in a decompressing stream.
+   * 
+   * @param in compressed data
+   * 
+   * @return stream of the decompressed JSON
+   * 
+   * @throws IOException if reading fails or the compression is not available
+   */
+  public InputStream decompress(InputStream in) throws IOException {
+    switch (this) {
+      case NONE:
+        return in;
+      case GZIP:
+        return new GZIPInputStream(in, BUFFER_SIZE);
+      case DEFLATE:
+        return new InflaterInputStream(in);
+      default:
+        checkAvailable();
+        return Zstd.decompress(in);
+    }
+  }
+
+  private void checkAvailable() throws IOException {
+    if (!isAvailable()) {
+      throw new IOException(
+          "zstd compression requires zstd-jni and its native library for this platform");
+    }
+  }
+
+  /**
+   * zstd-jni calls, kept out of the enum so that it loads without the library.
+   */
+  private static final class Zstd {
+
+    static final boolean AVAILABLE = load();
+
+    private static boolean load() {
+      try {
+        Native.load();
+        return true;
+      } catch (LinkageError e) {
+        // no native library for this platform
+        return false;
+      }
+    }
+
+    static OutputStream compress(OutputStream out) throws IOException {
+      return new ZstdOutputStream(out);
+    }
+
+    static InputStream decompress(InputStream in) throws IOException {
+      return new ZstdInputStream(in);
+    }
+  }
+}
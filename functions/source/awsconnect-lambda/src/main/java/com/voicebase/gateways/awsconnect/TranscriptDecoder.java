@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads transcript records written to the output stream by the VoiceBase response function, for
+ * use by downstream consumers. Handles compressed records as well as plain JSON.
+ * 
+ * @see TranscriptCompression
+ */
+public final class TranscriptDecoder {
+
+  private TranscriptDecoder() {}
+
+  /**
+   * Get the compression of a record.
+   * 
+   * @param record record data, the buffer position is not changed
+   * 
+   * @return compression, {@link TranscriptCompression#NONE} for plain JSON
+   * 
+   * @throws IOException if the record has a header with an unknown version or compression
+   */
+  public static TranscriptCompression compressionOf(ByteBuffer record) throws IOException {
+    int start = record.position();
+    if (record.remaining() < TranscriptCompression.HEADER_LENGTH) {
+      return TranscriptCompression.NONE;
+    }
+    for (int i = 0; i < TranscriptCompression.MAGIC.length; i++) {
+      if (record.get(start + i) != TranscriptCompression.MAGIC[i]) {
+        return TranscriptCompression.NONE;
+      }
+    }
+    byte version = record.get(start + TranscriptCompression.MAGIC.length);
+    if (version != TranscriptCompression.VERSION) {
+      throw new IOException("Unsupported transcript record version " + version);
+    }
+    return TranscriptCompression.fromId(record.get(start + TranscriptCompression.MAGIC.length + 1));
+  }
+
+  /**
+   * Open a record for reading.
+   * 
+   * @param record record data, the buffer position is not changed
+   * 
+   * @return stream of the UTF-8 encoded JSON
+   * 
+   * @throws IOException if the record can't be decompressed
+   */
+  public static InputStream open(ByteBuffer record) throws IOException {
+    TranscriptCompression compression = compressionOf(record);
+    ByteBuffer data = record.duplicate();
+    if (compression != TranscriptCompression.NONE) {
+      data.position(data.position() + TranscriptCompression.HEADER_LENGTH);
+    }
+
+    InputStream in;
+    if (data.hasArray()) {
+      in = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(),
+          data.remaining());
+    } else {
+      byte[] copy = new byte[data.remaining()];
+      data.get(copy);
+      in = new ByteArrayInputStream(copy);
+    }
+    return compression.decompress(in);
+  }
+
+  /**
+   * Decode a record.
+   * 
+   * @param record record data, the buffer position is not changed
+   * 
+   * @return UTF-8 encoded JSON
+   * 
+   * @throws IOException if the record can't be decompressed
+   */
+  public static byte[] decode(ByteBuffer record) throws IOException {
+    // JSON transcripts typically compress 5-10x
+    int expectedLength = compressionOf(record) == TranscriptCompression.NONE ? record.remaining()
+        : record.remaining() * 8;
+    try (InputStream in = open(record)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(expectedLength);
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Decode a record.
+   * 
+   * @param record record data
+   * 
+   * @return UTF-8 encoded JSON
+   * 
+   * @throws IOException if the record can't be decompressed
+   */
+  public static byte[] decode(byte[] record) throws IOException {
+    return decode(ByteBuffer.wrap(record));
+  }
+}
@@ -66,7 +66,19 @@ public final class VoiceBaseAttributeExtractor extends MapConfiguration {
    * @see KinesisRecordProcessor#Lambda.VB_CONFIG_LIST_SEPARATOR
    */
   public static List<String> getStringParameterList(ImmutableConfiguration attr, String key) {
-    String param = getStringParameter(attr, key);
+    return toStringList(getStringParameter(attr, key));
+  }
+
+  /**
+   * Split a list parameter value.
+   * 
+   * @param param parameter value, may be null
+   * 
+   * @return trimmed, non-empty entries or null, never an empty list
+   * 
+   * @see #getStringParameterList(ImmutableConfiguration, String)
+   */
+  static List<String> toStringList(String param) {
     if (param != null) {
       String[] entries = param.split(Lambda.VB_CONFIG_LIST_SEPARATOR);
       if (entries != null && entries.length > 0) {
@@ -106,17 +118,33 @@ public final class VoiceBaseAttributeExtractor extends MapConfiguration {
    */
   public static String getStringParameter(ImmutableConfiguration attr, String key) {
     if (attr != null && attr.containsKey(key)) {
-      String param = attr.getString(key, null);
-      if (!StringUtils.isEmpty(param)
-          && !StringUtils.equalsIgnoreCase(param, Lambda.VB_CONFIG_NULL_STRING)) {
-        return StringUtils.trimToNull(param);
-      }
+      return toStringParameter(attr.getString(key, null));
+    }
+    return null;
+  }
+
+  /**
+   * @param param raw parameter value
+   * @return trimmed value or null if empty or the pre-defined null-string
+   */
+  static String toStringParameter(String param) {
+    if (!StringUtils.isEmpty(param)
+        && !StringUtils.equalsIgnoreCase(param, Lambda.VB_CONFIG_NULL_STRING)) {
+      return StringUtils.trimToNull(param);
     }
     return null;
   }
 
   public static Boolean getBooleanParameter(ImmutableConfiguration attr, String key) {
-    String boolStr = getStringParameter(attr, key);
+    return toBooleanParameter(key, getStringParameter(attr, key));
+  }
+
+  /**
+   * @param key parameter name, for logging
+   * @param boolStr parameter value as returned by {@link #toStringParameter(String)}
+   * @return boolean value or null if not set or invalid
+   */
+  static Boolean toBooleanParameter(String key, String boolStr) {
     if (boolStr != null) {
       try {
         Boolean result = BooleanUtils.toBooleanObject(boolStr, Lambda.VB_CONFIG_BOOLEAN_TRUE_STRING,
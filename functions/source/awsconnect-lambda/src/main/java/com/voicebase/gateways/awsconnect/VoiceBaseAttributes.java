@@ -0,0 +1,303 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.toBooleanParameter;
+import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.toStringList;
+import static com.voicebase.gateways.awsconnect.VoiceBaseAttributeExtractor.toStringParameter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Sets;
+import com.voicebase.gateways.awsconnect.lambda.Lambda;
+
+/**
+ * VoiceBase settings from Amazon Connect attributes, parsed once per contact.
+ * <p/>
+ * Attribute names are split on {@link Lambda#VB_CONFIG_DELIMITER} into a prefix tree below
+ * {@link Lambda#VB_ATTR} in a single pass over the attributes, the settings used to build
+ * requests are converted up front. Values follow the rules of
+ * {@link VoiceBaseAttributeExtractor}: trimmed, the null-string and empty values are treated as
+ * unset, booleans are <code>1</code>/<code>0</code>, lists are comma separated. Values are taken
+ * literally, there is no variable interpolation.
+ * <p/>
+ * Instances are immutable and safe to share between threads.
+ * 
+ */
+public final class VoiceBaseAttributes {
+
+  public static final VoiceBaseAttributes EMPTY = new VoiceBaseAttributes(new Node());
+
+  private final Node root;
+
+  private final Boolean enabled;
+  private final Boolean pciRedaction;
+  private final Boolean numberRedaction;
+  private final String priority;
+  private final String language;
+  private final String recordingLocation;
+  private final Boolean formatNumbers;
+  private final Boolean filterSwearWords;
+  private final Boolean knowledgeDiscovery;
+  private final Set<String> phraseSpottingGroups;
+  private final Set<String> classifierNames;
+  private final Set<String> vocabularyTerms;
+  private final Set<String> vocabularyNames;
+  private final Set<String> metricGroups;
+  private final Set<String> callbackIncludes;
+  private final String callbackType;
+  private final String callbackFormat;
+  private final String callbackStream;
+
+  private VoiceBaseAttributes(Node root) {
+    this.root = root;
+    enabled = getBoolean(Lambda.VB_ATTR_ENABLE);
+    pciRedaction = getBoolean(Lambda.VB_ATTR_PCIREDACT);
+    numberRedaction = getBoolean(Lambda.VB_ATTR_NUMBERREDACT);
+    priority = getString(Lambda.VB_ATTR_PRIORIY);
+    language = getString(Lambda.VB_ATTR_LANGUAGE);
+    recordingLocation = getString(Lambda.VB_ATTR_RECORDING_LOCATION);
+    formatNumbers =
+        getBoolean(Lambda.VB_ATTR_TRANSCRIPT, Lambda.VB_ATTR_TRANSCRIPT_NUMBER_FORMAT);
+    filterSwearWords =
+        getBoolean(Lambda.VB_ATTR_TRANSCRIPT, Lambda.VB_ATTR_TRANSCRIPT_SWEARWORD_FILTER);
+    knowledgeDiscovery = getBoolean(Lambda.VB_ATTR_KNOWLEDGE, Lambda.VB_ATTR_KNOWLEDGE_DISCOVERY);
+    phraseSpottingGroups = getStringSet(Lambda.VB_ATTR_KEYWORDS, Lambda.VB_ATTR_KEYWORDS_GROUPS);
+    classifierNames = getStringSet(Lambda.VB_ATTR_CLASSIFIER, Lambda.VB_ATTR_CLASSIFIER_NAMES);
+    vocabularyTerms = getStringSet(Lambda.VB_ATTR_VOCABULARY, Lambda.VB_ATTR_VOCABULARY_TERMS);
+    vocabularyNames = getStringSet(Lambda.VB_ATTR_VOCABULARY, Lambda.VB_ATTR_VOCABULARY_NAMES);
+    metricGroups = getStringSet(Lambda.VB_ATTR_METRICS, Lambda.VB_ATTR_METRICS_GROUPS);
+    callbackIncludes = getStringSet(Lambda.VB_ATTR_CALLBACK, Lambda.VB_ATTR_CALLBACK_INCLUDES);
+    callbackType = getString(Lambda.VB_ATTR_CALLBACK, Lambda.VB_ATTR_CALLBACK_TYPE);
+    callbackFormat = getString(Lambda.VB_ATTR_CALLBACK, Lambda.VB_ATTR_CALLBACK_FORMAT);
+    callbackStream = getString(Lambda.VB_ATTR_CALLBACK, Lambda.VB_ATTR_CALLBACK_STREAM);
+  }
+
+  /**
+   * Parse the VoiceBase settings out of Amazon Connect attributes. Attributes without the
+   * VoiceBase prefix are ignored.
+   * 
+   * @param attributes contact attributes, may be null
+   * 
+   * @return parsed settings, never null
+   */
+  public static VoiceBaseAttributes parse(Map<String, ?> attributes) {
+    if (attributes == null || attributes.isEmpty()) {
+      return EMPTY;
+    }
+
+    String prefix = Lambda.VB_ATTR + Lambda.VB_CONFIG_DELIMITER;
+    Node root = new Node();
+    for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+      String name = attribute.getKey();
+      String value = toRawString(attribute.getValue());
+      if (value == null || name == null || !name.startsWith(prefix)) {
+        continue;
+      }
+
+      Node node = root;
+      int start = prefix.length();
+      int end;
+      while ((end = name.indexOf(Lambda.VB_CONFIG_DELIMITER, start)) >= 0) {
+        node = node.child(name.substring(start, end));
+        start = end + Lambda.VB_CONFIG_DELIMITER.length();
+      }
+      node.child(name.substring(start)).value = value;
+    }
+    return new VoiceBaseAttributes(root);
+  }
+
+  /**
+   * Parse the VoiceBase settings out of the attributes of a deserialized CTR.
+   * 
+   * @param awsInputData deserialized CTR, may be null
+   * 
+   * @return parsed settings, never null
+   */
+  @SuppressWarnings("unchecked")
+  public static VoiceBaseAttributes fromAwsInputData(Map<String, Object> awsInputData) {
+    if (awsInputData == null) {
+      return EMPTY;
+    }
+    Object attributes = awsInputData.get(Lambda.KEY_ATTRIBUTES);
+    if (!(attributes instanceof Map)) {
+      return EMPTY;
+    }
+    return parse((Map<String, ?>) attributes);
+  }
+
+  /**
+   * Same conversion as commons-configuration applies to collection values: use the first element.
+   */
+  private static String toRawString(Object value) {
+    if (value instanceof Collection) {
+      Iterator<?> it = ((Collection<?>) value).iterator();
+      value = it.hasNext() ? it.next() : null;
+    }
+    return value != null ? value.toString() : null;
+  }
+
+  private Node find(String... path) {
+    Node node = root;
+    for (int i = 0; node != null && i < path.length; i++) {
+      node = node.children != null ? node.children.get(path[i]) : null;
+    }
+    return node;
+  }
+
+  /**
+   * Get a string setting.
+   * 
+   * @param path attribute name levels below the VoiceBase prefix
+   * 
+   * @return trimmed value or null if not set, empty or the pre-defined null-string
+   */
+  public String getString(String... path) {
+    Node node = find(path);
+    return node != null ? toStringParameter(node.value) : null;
+  }
+
+  /**
+   * Get a boolean setting.
+   * 
+   * @param path attribute name levels below the VoiceBase prefix
+   * 
+   * @return value or null if not set or invalid
+   */
+  public Boolean getBoolean(String... path) {
+    return toBooleanParameter(StringUtils.join(path, Lambda.VB_CONFIG_DELIMITER),
+        getString(path));
+  }
+
+  /**
+   * Get a list setting with unique entries.
+   * 
+   * @param path attribute name levels below the VoiceBase prefix
+   * 
+   * @return unmodifiable set of trimmed, non-empty entries or null, never an empty set
+   */
+  public Set<String> getStringSet(String... path) {
+    List<String> entries = toStringList(getString(path));
+    if (entries != null) {
+      return Collections.unmodifiableSet(Sets.newHashSet(entries));
+    }
+    return null;
+  }
+
+  public boolean isEnabled(boolean defaultValue) {
+    return enabled != null ? enabled : defaultValue;
+  }
+
+  public boolean isPciRedaction(boolean defaultValue) {
+    return pciRedaction != null ? pciRedaction : defaultValue;
+  }
+
+  public boolean isNumberRedaction(boolean defaultValue) {
+    return numberRedaction != null ? numberRedaction : defaultValue;
+  }
+
+  public String getPriority() {
+    return priority;
+  }
+
+  public String getLanguage() {
+    return language;
+  }
+
+  public String getRecordingLocation() {
+    return recordingLocation;
+  }
+
+  public Boolean getFormatNumbers() {
+    return formatNumbers;
+  }
+
+  public Boolean getFilterSwearWords() {
+    return filterSwearWords;
+  }
+
+  public Boolean getKnowledgeDiscovery() {
+    return knowledgeDiscovery;
+  }
+
+  public Set<String> getPhraseSpottingGroups() {
+    return phraseSpottingGroups;
+  }
+
+  public Set<String> getClassifierNames() {
+    return classifierNames;
+  }
+
+  public Set<String> getVocabularyTerms() {
+    return vocabularyTerms;
+  }
+
+  public Set<String> getVocabularyNames() {
+    return vocabularyNames;
+  }
+
+  public Set<String> getMetricGroups() {
+    return metricGroups;
+  }
+
+  public Set<String> getCallbackIncludes() {
+    return callbackIncludes;
+  }
+
+  public String getCallbackType() {
+    return callbackType;
+  }
+
+  public String getCallbackFormat() {
+    return callbackFormat;
+  }
+
+  public String getCallbackStream() {
+    return callbackStream;
+  }
+
+  /**
+   * @return true if the flow overrides any part of the callback configuration
+   */
+  public boolean hasCallbackOverrides() {
+    return callbackIncludes != null || callbackType != null || callbackFormat != null
+        || callbackStream != null;
+  }
+
+  /**
+   * Prefix tree node, one level of an attribute name. Only modified while parsing.
+   */
+  private static final class Node {
+    private String value;
+    private Map<String, Node> children;
+
+    private Node child(String name) {
+      if (children == null) {
+        children = new HashMap<>(4);
+      }
+      Node child = children.get(name);
+      if (child == null) {
+        child = new Node();
+        children.put(name, child);
+      }
+      return child;
+    }
+  }
+}
@@ -16,6 +16,7 @@ import java.util.Map;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.Lists;
+import com.voicebase.v3client.JacksonFactory;
 import com.voicebase.v3client.datamodel.VbIncludeTypeEnum;
 
 /**
@@ -29,15 +30,79 @@ public class Lambda {
 
   // environment variables
   public static final String ENV_LOG_CONFIG = "VOICEBASE_LOG_CONFIG";
+  public static final String ENV_PRIME_ON_INIT = "VOICEBASE_PRIME_ON_INIT";
+  public static final String ENV_JACKSON_AFTERBURNER = JacksonFactory.ENV_AFTERBURNER;
   public static final String ENV_API_CLIENT_LOGLEVEL = "VOICEBASE_API_CLIENT_LOGLEVEL";
   public static final String ENV_API_RETRY_ATTEMPTS = "VOICEBASE_API_RETRY_ATTEMPTS";
   public static final String ENV_API_RETRY_DELAY = "VOICEBASE_API_RETRY_DELAY";
+  public static final String ENV_API_RETRY_BACKOFF = "VOICEBASE_API_RETRY_BACKOFF";
+  public static final String ENV_API_RETRY_MAX_DELAY = "VOICEBASE_API_RETRY_MAX_DELAY";
+  public static final String ENV_API_RETRY_BUDGET = "VOICEBASE_API_RETRY_BUDGET";
+  public static final String ENV_API_RETRY_BUDGET_REFILL =
+      "VOICEBASE_API_RETRY_BUDGET_REFILL_PER_SECOND";
+  public static final String ENV_API_MAX_CONNECTIONS = "VOICEBASE_API_MAX_CONNECTIONS";
+  public static final String ENV_API_MAX_CONNECTIONS_PER_ROUTE =
+      "VOICEBASE_API_MAX_CONNECTIONS_PER_ROUTE";
+  public static final String ENV_API_CONNECT_TIMEOUT = "VOICEBASE_API_CONNECT_TIMEOUT";
+  public static final String ENV_API_SOCKET_TIMEOUT = "VOICEBASE_API_SOCKET_TIMEOUT";
+  public static final String ENV_API_IDLE_TIMEOUT = "VOICEBASE_API_IDLE_TIMEOUT";
+  public static final String ENV_API_PREWARM_CONNECTIONS = "VOICEBASE_API_PREWARM_CONNECTIONS";
+  public static final String ENV_API_CIRCUIT_BREAKER = "VOICEBASE_API_CIRCUIT_BREAKER";
+  public static final String ENV_API_CIRCUIT_WINDOW_SIZE = "VOICEBASE_API_CIRCUIT_WINDOW_SIZE";
+  public static final String ENV_API_CIRCUIT_MINIMUM_CALLS = "VOICEBASE_API_CIRCUIT_MINIMUM_CALLS";
+  public static final String ENV_API_CIRCUIT_FAILURE_RATE = "VOICEBASE_API_CIRCUIT_FAILURE_RATE";
+  public static final String ENV_API_CIRCUIT_SLOW_CALL_THRESHOLD =
+      "VOICEBASE_API_CIRCUIT_SLOW_CALL_THRESHOLD";
+  public static final String ENV_API_CIRCUIT_SLOW_CALL_RATE =
+      "VOICEBASE_API_CIRCUIT_SLOW_CALL_RATE";
+  public static final String ENV_API_CIRCUIT_OPEN_DURATION = "VOICEBASE_API_CIRCUIT_OPEN_DURATION";
   public static final String ENV_API_TOKEN = "VOICEBASE_API_TOKEN";
   public static final String ENV_API_URL = "VOICEBASE_API_URL";
+  public static final String ENV_SPILL_QUEUE_URL = "VOICEBASE_SPILL_QUEUE_URL";
+  public static final String ENV_SPILL_QUEUE_DIR = "VOICEBASE_SPILL_QUEUE_DIR";
+  public static final String ENV_SPILL_API_RETRY_ATTEMPTS = "VOICEBASE_SPILL_API_RETRY_ATTEMPTS";
+  public static final String ENV_SPILL_DRAIN_ATTEMPTS = "VOICEBASE_SPILL_DRAIN_ATTEMPTS";
+  public static final String ENV_SPILL_DRAIN_DELAY = "VOICEBASE_SPILL_DRAIN_DELAY";
+  public static final String ENV_SPILL_DRAIN_MAX_DELAY = "VOICEBASE_SPILL_DRAIN_MAX_DELAY";
+  public static final String ENV_SPILL_DRAIN_BATCH_SIZE = "VOICEBASE_SPILL_DRAIN_BATCH_SIZE";
+  public static final String ENV_SPILL_DRAIN_TIME_RESERVE = "VOICEBASE_SPILL_DRAIN_TIME_RESERVE";
+  public static final String ENV_FORWARD_CONCURRENCY = "VOICEBASE_FORWARD_CONCURRENCY";
+  public static final String ENV_FORWARD_REPORT_BATCH_FAILURES =
+      "VOICEBASE_FORWARD_REPORT_BATCH_FAILURES";
+  public static final String ENV_DEDUP_CACHE_SIZE = "VOICEBASE_FORWARD_DEDUP_CACHE_SIZE";
+  public static final String ENV_DEDUP_TTL_MILLIS = "VOICEBASE_FORWARD_DEDUP_TTL_MILLIS";
+  public static final String ENV_DEDUP_STORE_DIR = "VOICEBASE_FORWARD_DEDUP_STORE_DIR";
+  public static final String ENV_CONFIGURATION_CACHE_SIZE =
+      "VOICEBASE_FORWARD_CONFIGURATION_CACHE_SIZE";
 
   public static final String ENV_TRANSCRIPT_OUTPUT_STREAM = "VOICEBASE_TRANSCRIPT_OUTPUT_STREAM";
   public static final String ENV_TRANSCRIPT_OUTPUT_ADD_NEWLINE =
       "VOICEBASE_TRANSCRIPT_OUTPUT_ADD_NEWLINE";
+  public static final String ENV_TRANSCRIPT_OUTPUT_COMPRESSION =
+      "VOICEBASE_TRANSCRIPT_OUTPUT_COMPRESSION";
+  public static final String ENV_TRANSCRIPT_OUTPUT_INCLUDE = "VOICEBASE_TRANSCRIPT_OUTPUT_INCLUDE";
+  public static final String ENV_TRANSCRIPT_OUTPUT_EXCLUDE = "VOICEBASE_TRANSCRIPT_OUTPUT_EXCLUDE";
+  public static final String ENV_TRANSCRIPT_CLAIM_CHECK_THRESHOLD =
+      "VOICEBASE_TRANSCRIPT_CLAIM_CHECK_THRESHOLD";
+  public static final String ENV_TRANSCRIPT_CLAIM_CHECK_BUCKET =
+      "VOICEBASE_TRANSCRIPT_CLAIM_CHECK_BUCKET";
+  public static final String ENV_TRANSCRIPT_CLAIM_CHECK_PREFIX =
+      "VOICEBASE_TRANSCRIPT_CLAIM_CHECK_PREFIX";
+  public static final String ENV_TRANSCRIPT_CLAIM_CHECK_DIR =
+      "VOICEBASE_TRANSCRIPT_CLAIM_CHECK_DIR";
+  public static final String ENV_TRANSCRIPT_PARTITION_STRATEGY =
+      "VOICEBASE_TRANSCRIPT_PARTITION_STRATEGY";
+  public static final String ENV_TRANSCRIPT_DEDUP_CACHE_SIZE =
+      "VOICEBASE_TRANSCRIPT_DEDUP_CACHE_SIZE";
+  public static final String ENV_TRANSCRIPT_DEDUP_TTL_MILLIS =
+      "VOICEBASE_TRANSCRIPT_DEDUP_TTL_MILLIS";
+  public static final String ENV_TRANSCRIPT_DEDUP_STORE_DIR =
+      "VOICEBASE_TRANSCRIPT_DEDUP_STORE_DIR";
+  public static final String ENV_KINESIS_RETRY_ATTEMPTS = "VOICEBASE_KINESIS_RETRY_ATTEMPTS";
+  public static final String ENV_KINESIS_RETRY_DELAY = "VOICEBASE_KINESIS_RETRY_DELAY";
+  public static final String ENV_KINESIS_RETRY_MAX_DELAY = "VOICEBASE_KINESIS_RETRY_MAX_DELAY";
+  public static final String ENV_KINESIS_RETRY_TIME_RESERVE =
+      "VOICEBASE_KINESIS_RETRY_TIME_RESERVE";
   public static final String ENV_CALLBACK_SOURCE_IPS = "VOICEBASE_CALLBACK_SOURCE_IPS";
   public static final String ENV_CALLBACK_SOURCE_IPS_VALIDATE =
       "VOICEBASE_CALLBACK_SOURCE_IPS_VALIDATE";
@@ -46,6 +111,12 @@ public class Lambda {
   public static final String ENV_CALLBACK_METHOD = "VOICEBASE_CALLBACK_METHOD";
   public static final String ENV_CALLBACK_URL = "VOICEBASE_CALLBACK_URL";
   public static final String ENV_CALLBACK_ADDITIONAL_URLS = "VOICEBASE_CALLBACK_ADDITIONAL_URLS";
+  public static final String ENV_CALLBACK_SIGNING_SECRET = "VOICEBASE_CALLBACK_SIGNING_SECRET";
+  public static final String ENV_CALLBACK_SIGNATURE_LIFETIME =
+      "VOICEBASE_CALLBACK_SIGNATURE_LIFETIME";
+  public static final String ENV_CALLBACK_REPLAY_CACHE_SIZE =
+      "VOICEBASE_CALLBACK_REPLAY_CACHE_SIZE";
+  public static final String ENV_CALLBACK_MAX_BODY_SIZE = "VOICEBASE_CALLBACK_MAX_BODY_SIZE";
   public static final String ENV_CONFIGURE_SPEAKERS = "VOICEBASE_SPEAKERS_CONFIGURE";
   public static final String ENV_ENABLE_PREDICTIONS = "VOICEBASE_PREDICTIONS_ENABLE";
   public static final String ENV_ENABLE_KNOWLEDGE_DISCOVERY =
@@ -65,6 +136,11 @@ public class Lambda {
   // VoiceBase attribute names in Amazon Connect provided attributes
   public static final String VB_ATTR = "voicebase";
   public static final String VB_ATTR_ENABLE= "enable";
+  public static final String VB_ATTR_CALLBACK = "callback";
+  public static final String VB_ATTR_CALLBACK_INCLUDES = "includes";
+  public static final String VB_ATTR_CALLBACK_TYPE = "type";
+  public static final String VB_ATTR_CALLBACK_FORMAT = "format";
+  public static final String VB_ATTR_CALLBACK_STREAM = "stream";
   public static final String VB_ATTR_CLASSIFIER = "classifier";
   public static final String VB_ATTR_CLASSIFIER_NAMES = "names";
   public static final String VB_ATTR_KEYWORDS = "phraseSpotting";
@@ -92,9 +168,29 @@ public class Lambda {
 
   // defaults
   public static final boolean DEFAULT_ENABLE = true;
+  public static final boolean DEFAULT_PRIME_ON_INIT = true;
   public static final String DEFAULT_V3_API_URL = "https://apis.voicebase.com/v3";
   public static final int DEFAULT_API_RETRY_ATTEMPTS = 3;
   public static final long DEFAULT_API_RETRY_DELAY = 100;
+  public static final String API_RETRY_BACKOFF_FIXED = "fixed";
+  public static final String API_RETRY_BACKOFF_EXPONENTIAL = "exponential";
+  public static final String DEFAULT_API_RETRY_BACKOFF = API_RETRY_BACKOFF_EXPONENTIAL;
+  public static final long DEFAULT_API_RETRY_MAX_DELAY = 2000;
+  public static final int DEFAULT_API_RETRY_BUDGET = 20;
+  public static final int DEFAULT_API_RETRY_BUDGET_REFILL = 2;
+  public static final boolean DEFAULT_API_CIRCUIT_BREAKER = true;
+  public static final int DEFAULT_SPILL_API_RETRY_ATTEMPTS = 0;
+  public static final int DEFAULT_SPILL_DRAIN_ATTEMPTS = 20;
+  public static final long DEFAULT_SPILL_DRAIN_DELAY = 30000; // 30s
+  public static final long DEFAULT_SPILL_DRAIN_MAX_DELAY = 900000; // 15min
+  public static final int DEFAULT_SPILL_DRAIN_BATCH_SIZE = 10;
+  // time left after the last resend, covers one API call
+  public static final long DEFAULT_SPILL_DRAIN_TIME_RESERVE = 30000;
+  public static final int DEFAULT_FORWARD_CONCURRENCY = 1;
+  public static final boolean DEFAULT_FORWARD_REPORT_BATCH_FAILURES = false;
+  public static final int DEFAULT_DEDUP_CACHE_SIZE = 10000;
+  public static final long DEFAULT_DEDUP_TTL_MILLIS = 3600000L; // 1h
+  public static final int DEFAULT_CONFIGURATION_CACHE_SIZE = 256;
   public static final String DEFAULT_API_CLIENT_LOG_LEVEL = "BASIC";
   public static final String DEFAULT_CALLBACK_METHOD = "POST";
   public static final boolean DEFAULT_ENABLE_KNOWLEDGE_DISCOVERY = false;
@@ -111,9 +207,34 @@ public class Lambda {
       Lists.newArrayList("52.6.244.43", "52.6.208.178", "52.2.171.140");
 
   public static final boolean DEFAULT_SOURCE_IPS_VALIDATE = true;
+  // seconds, covers processing and VoiceBase's callback retries
+  public static final long DEFAULT_CALLBACK_SIGNATURE_LIFETIME = 24 * 60 * 60;
+  public static final int DEFAULT_CALLBACK_REPLAY_CACHE_SIZE = 10000;
+  // bytes of a decoded and inflated callback body, bounds what a small gzipped body can expand to
+  public static final long DEFAULT_CALLBACK_MAX_BODY_SIZE = 64L * 1024 * 1024;
   public static final String DEFAULT_LEFT_SPEAKER_NAME = "Caller";
   public static final String DEFAULT_RIGHT_SPEAKER_NAME = "Agent";
   public static final boolean DEFAULT_TRANSCRIPT_OUTPUT_ADD_NEWLINE = false;
+  public static final String DEFAULT_TRANSCRIPT_OUTPUT_COMPRESSION = "none";
+  // Kinesis records are limited to 1MiB including the partition key
+  public static final int DEFAULT_TRANSCRIPT_CLAIM_CHECK_THRESHOLD = 1000000;
+  public static final String DEFAULT_TRANSCRIPT_CLAIM_CHECK_PREFIX = "transcripts/";
+  public static final String DEFAULT_TRANSCRIPT_PARTITION_STRATEGY = "id";
+  public static final int DEFAULT_TRANSCRIPT_DEDUP_CACHE_SIZE = 10000;
+  // VoiceBase keeps retrying failed callbacks for hours
+  public static final long DEFAULT_TRANSCRIPT_DEDUP_TTL_MILLIS = 86400000L; // 24h
+  public static final int DEFAULT_KINESIS_RETRY_ATTEMPTS = 5;
+  public static final long DEFAULT_KINESIS_RETRY_DELAY = 100;
+  public static final long DEFAULT_KINESIS_RETRY_MAX_DELAY = 2000;
+  // time left to answer the callback after giving up on throttled writes
+  public static final long DEFAULT_KINESIS_RETRY_TIME_RESERVE = 1000;
+
+  // signed callback URL parameters
+  public static final String CALLBACK_PARAM_TIMESTAMP = "timestamp";
+  public static final String CALLBACK_PARAM_TOKEN = "token";
+  public static final String CALLBACK_PARAM_SIGNATURE = "signature";
+  // external ID of callbacks whose body doesn't contain it, e.g. text transcripts
+  public static final String CALLBACK_PARAM_EXTERNAL_ID = "externalId";
 
   // other
   public static final TypeReference<Map<String, Object>> MSG_JAVA_TYPE =
@@ -11,7 +11,12 @@
  */
 package com.voicebase.gateways.awsconnect.lambda;
 
+import static com.voicebase.gateways.awsconnect.ConfigUtil.getBooleanSetting;
+
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Map;
 import java.util.Properties;
 
@@ -40,6 +45,9 @@ public abstract class LambdaHandler {
 
   private Properties handlerProperties = null;
 
+  // the CRaC context only keeps weak references to registered resources
+  private Object checkpointResource = null;
+
   /**
    * Constructor.
    * 
@@ -49,15 +57,94 @@ public abstract class LambdaHandler {
    * <li>Load the default properties file ({@link #loadProperties()})</li>
    * <li>Print out a start message {{@link #sayHello()})</li>
    * <li>Configure the handler ({@link #configure(Map)})</li>
+   * <li>Prime the handler unless disabled ({@link #prime(Map)})</li>
+   * <li>Register for checkpoint and restore notifications if the runtime supports it</li>
    * </ol>
+   * The time spent in each phase is logged.
    * 
    * @param env handler environment
    */
   protected LambdaHandler(Map<String, String> env) {
+    long start = System.nanoTime();
     configureLogging(env);
+    long loggingDone = System.nanoTime();
     loadProperties();
     sayHello();
+    long propertiesDone = System.nanoTime();
     configure(env);
+    long configureDone = System.nanoTime();
+    if (getBooleanSetting(env, Lambda.ENV_PRIME_ON_INIT, Lambda.DEFAULT_PRIME_ON_INIT)) {
+      try {
+        prime(env);
+      } catch (Exception e) {
+        LOGGER.warn("Priming {} failed, continuing without.", getClass().getSimpleName(), e);
+      }
+    }
+    long primeDone = System.nanoTime();
+    registerCheckpointHooks();
+
+    LOGGER.info(
+        "Startup timings: logging={}ms, properties={}ms, configure={}ms, prime={}ms, total={}ms,"
+            + " JVM uptime={}ms",
+        millis(start, loggingDone), millis(loggingDone, propertiesDone),
+        millis(propertiesDone, configureDone), millis(configureDone, primeDone),
+        millis(start, System.nanoTime()), ManagementFactory.getRuntimeMXBean().getUptime());
+  }
+
+  /**
+   * Exercise the code paths of a request during initialization, so class loading, Jackson
+   * introspection and Retrofit method resolution aren't paid for by the first invocation. Must
+   * not have any external side effects. Does nothing by default.
+   * 
+   * @param env handler environment
+   * 
+   * @throws Exception on failure, logged and otherwise ignored
+   */
+  protected void prime(Map<String, String> env) throws Exception {}
+
+  /**
+   * Called before a snapshot of the initialized function is taken, e.g. with Lambda SnapStart.
+   * Should close network connections which won't survive the restore. Does nothing by default.
+   * 
+   * @throws Exception on failure, aborts the checkpoint
+   */
+  protected void beforeCheckpoint() throws Exception {}
+
+  /**
+   * Called after the function has been restored from a snapshot. Does nothing by default.
+   * 
+   * @throws Exception on failure
+   */
+  protected void afterRestore() throws Exception {}
+
+  /**
+   * Register {@link #beforeCheckpoint()} and {@link #afterRestore()} with the CRaC global context.
+   * The CRaC API is looked up at runtime, without it nothing is registered.
+   */
+  private void registerCheckpointHooks() {
+    Class<?> resourceType;
+    try {
+      resourceType = Class.forName("org.crac.Resource");
+    } catch (ClassNotFoundException e) {
+      LOGGER.debug("CRaC API not available, not registering for checkpoint notifications.");
+      return;
+    }
+
+    try {
+      Object context = Class.forName("org.crac.Core").getMethod("getGlobalContext").invoke(null);
+      Object resource = Proxy.newProxyInstance(resourceType.getClassLoader(),
+          new Class<?>[] {resourceType}, new CheckpointHandler());
+      Class.forName("org.crac.Context").getMethod("register", resourceType).invoke(context,
+          resource);
+      checkpointResource = resource;
+      LOGGER.info("Registered for checkpoint and restore notifications");
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.warn("Unable to register for checkpoint notifications", e);
+    }
+  }
+
+  private static long millis(long startNanos, long endNanos) {
+    return (endNanos - startNanos) / 1000000L;
   }
 
   protected void configureLogging(Map<String, String> env) {
@@ -88,4 +175,47 @@ public abstract class LambdaHandler {
         getHandlerProperties().getProperty(PROPERTY_KEY_VERSION, "<UNKNIOWN>"), RUNTIME_ID);
   }
 
+  /**
+   * Dispatches calls of the org.crac.Resource proxy to the handler.
+   */
+  private class CheckpointHandler implements InvocationHandler {
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return invokeObjectMethod(proxy, method, args);
+      }
+      switch (method.getName()) {
+        case "beforeCheckpoint":
+          LOGGER.info("Preparing {} for checkpoint", LambdaHandler.this.getClass().getSimpleName());
+          beforeCheckpoint();
+          return null;
+        case "afterRestore":
+          long start = System.nanoTime();
+          afterRestore();
+          LOGGER.info("Restored {} in {}ms", LambdaHandler.this.getClass().getSimpleName(),
+              millis(start, System.nanoTime()));
+          return null;
+        default:
+          // Resource only has void methods, ignore any added later
+          LOGGER.debug("Ignoring checkpoint callback {}", method.getName());
+          return null;
+      }
+    }
+
+    /**
+     * Proxies only pass equals, hashCode and toString of Object to the handler.
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          return "CheckpointHandler[" + LambdaHandler.this.getClass().getSimpleName() + "]";
+      }
+    }
+  }
+
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileIdempotencyStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMarkersExpire() throws Exception {
+    FileIdempotencyStore store = new FileIdempotencyStore(folder.getRoot().toPath());
+    long now = System.currentTimeMillis();
+
+    Assert.assertTrue(store.putIfAbsent("key", now + 60000));
+    Assert.assertFalse(store.putIfAbsent("key", now + 60000));
+    Assert.assertTrue(store.contains("key"));
+
+    store.remove("key");
+    Assert.assertFalse(store.contains("key"));
+    Assert.assertTrue(store.putIfAbsent("key", now - 1));
+    Assert.assertFalse(store.contains("key"));
+    Assert.assertTrue("Expired marker is renewed", store.putIfAbsent("key", now + 60000));
+    Assert.assertTrue(store.contains("key"));
+  }
+
+  @Test
+  public void testRenewalChecksExpiryAgain() throws Exception {
+    FileIdempotencyStore store = new FileIdempotencyStore(folder.getRoot().toPath());
+    long now = System.currentTimeMillis();
+    Assert.assertTrue(store.putIfAbsent("key", now - 1));
+
+    // both callers saw the expired marker, only the first one takes it over
+    Assert.assertTrue(store.renew("key", now + 60000));
+    Assert.assertFalse(store.renew("key", now + 120000));
+    Assert.assertFalse(store.putIfAbsent("key", now + 120000));
+
+    // removed after the expiry was read
+    store.remove("key");
+    Assert.assertTrue(store.renew("key", now + 60000));
+    Assert.assertTrue(store.contains("key"));
+  }
+
+  @Test
+  public void testExpiredMarkerIsRenewedOnce() throws Exception {
+    // two stores on the same directory stand in for two containers
+    FileIdempotencyStore[] stores = {new FileIdempotencyStore(folder.getRoot().toPath()),
+        new FileIdempotencyStore(folder.getRoot().toPath())};
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      for (int round = 0; round < 20; round++) {
+        String key = "key-" + round;
+        Assert.assertTrue(stores[0].putIfAbsent(key, System.currentTimeMillis() - 1));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> claims = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+          FileIdempotencyStore store = stores[i % 2];
+          claims.add(executor.submit(() -> {
+            start.await();
+            return store.putIfAbsent(key, System.currentTimeMillis() + 60000);
+          }));
+        }
+        start.countDown();
+
+        int renewed = 0;
+        for (Future<Boolean> claim : claims) {
+          if (claim.get(5, TimeUnit.SECONDS)) {
+            renewed++;
+          }
+        }
+        Assert.assertEquals("Round " + round, 1, renewed);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
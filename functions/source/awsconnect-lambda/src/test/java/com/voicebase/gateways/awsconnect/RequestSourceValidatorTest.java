@@ -0,0 +1,80 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.gateways.awsconnect;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestSourceValidatorTest {
+
+  private static final RequestSourceValidator VALIDATOR = new RequestSourceValidator(
+      Arrays.asList("52.6.244.43", "10.1.0.0/16", "10.1.128.0/17", "2600:1f18:4000::/36",
+          "fe80::1", "not an address", "10.0.0.0/33"),
+      true);
+
+  @Test
+  public void testAddressesAndCidrBlocks() {
+    Assert.assertTrue(VALIDATOR.validate("52.6.244.43"));
+    Assert.assertFalse(VALIDATOR.validate("52.6.244.44"));
+    Assert.assertTrue(VALIDATOR.validate("10.1.0.0"));
+    Assert.assertTrue(VALIDATOR.validate("10.1.255.255"));
+    Assert.assertFalse(VALIDATOR.validate("10.2.0.0"));
+    Assert.assertFalse(VALIDATOR.validate("10.0.255.255"));
+    Assert.assertFalse(VALIDATOR.validate(null));
+    Assert.assertFalse(VALIDATOR.validate("10.1.0"));
+    Assert.assertFalse(VALIDATOR.validate("10.1.0.256"));
+  }
+
+  @Test
+  public void testIpv6() {
+    Assert.assertTrue(VALIDATOR.validate("2600:1f18:4000::1"));
+    Assert.assertTrue(VALIDATOR.validate("2600:1F18:4FFF:FFFF:FFFF:FFFF:FFFF:FFFF"));
+    Assert.assertFalse(VALIDATOR.validate("2600:1f18:5000::"));
+    Assert.assertTrue(VALIDATOR.validate("fe80:0:0:0:0:0:0:1"));
+    Assert.assertTrue(VALIDATOR.validate("[fe80::1%eth0]"));
+    Assert.assertFalse(VALIDATOR.validate("fe80::2"));
+    // IPv4 mapped
+    Assert.assertTrue(VALIDATOR.validate("::ffff:52.6.244.43"));
+    Assert.assertTrue(VALIDATOR.validate("::ffff:a01:203"));
+    Assert.assertFalse(VALIDATOR.validate("::52.6.244.43"));
+    Assert.assertFalse(VALIDATOR.validate("fe80:::1"));
+    Assert.assertFalse(VALIDATOR.validate("1:2:3:4:5:6:7:8:9"));
+    Assert.assertFalse(VALIDATOR.validate("1:2:3:4:5:6:7"));
+    Assert.assertFalse(VALIDATOR.validate("fe80::1:"));
+  }
+
+  @Test
+  public void testRangesAreMerged() {
+    IpRangeIndex index = IpRangeIndex.compile(
+        Arrays.asList("10.1.0.0/16", "10.1.128.0/17", "10.1.2.3", "::/0", "1.2.3.4"));
+    Assert.assertEquals(1, index.size());
+    Assert.assertTrue(index.contains("ffff::"));
+
+    long[] address = new long[2];
+    Assert.assertTrue(IpRangeIndex.parse("1:2:3:4:5:6:7:8", address));
+    Assert.assertEquals(0x0001000200030004L, address[0]);
+    Assert.assertEquals(0x0005000600070008L, address[1]);
+    Assert.assertTrue(IpRangeIndex.parse("1::8", address));
+    Assert.assertEquals(0x0001000000000000L, address[0]);
+    Assert.assertEquals(0x0000000000000008L, address[1]);
+  }
+
+  @Test
+  public void testNoWhitelistOrDisabled() {
+    Assert.assertTrue(new RequestSourceValidator(null, true).validate("1.2.3.4"));
+    Assert.assertTrue(
+        new RequestSourceValidator(Arrays.asList("52.6.244.43"), false).validate("1.2.3.4"));
+    Assert.assertFalse(new RequestSourceValidator(Arrays.asList("bogus"), true).validate("::"));
+  }
+}
@@ -11,32 +11,180 @@
  */
 package com.voicebase.v3client;
 
-import java.text.SimpleDateFormat;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.voicebase.v3client.datamodel.VbConfiguration;
+import com.voicebase.v3client.datamodel.VbMedia;
+import com.voicebase.v3client.datamodel.VbMetadata;
 
 /**
  * 
  * @author Volker Kueffel <volker@voicebase.com>
  */
 public class JacksonFactory {
-  
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JacksonFactory.class);
+
+  /**
+   * Environment variable to enable or disable the Afterburner module. It's used if it's on the
+   * classpath unless disabled.
+   */
+  public static final String ENV_AFTERBURNER = "VOICEBASE_JACKSON_AFTERBURNER";
+
+  private static final String AFTERBURNER_MODULE =
+      "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  private static final ObjectMapper SHARED_MAPPER = objectMapper(System.getenv());
+  private static final ConcurrentMap<JavaType, ObjectReader> READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<JavaType, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+  static {
+    // the types every function deals with, build them up front
+    for (Class<?> type : new Class<?>[] {VbMedia.class, VbConfiguration.class, VbMetadata.class}) {
+      reader(type);
+      writer(type);
+    }
+    mapReader();
+  }
+
   /**
    * Get object mapper to use with the VoiceBase API object model.
+   * <p/>
+   * Creates a new mapper on every call, which has to introspect every class it sees again. Use
+   * {@link #sharedObjectMapper()} or the readers and writers unless the mapper needs a different
+   * configuration.
    * 
    * @return object mapper configured for use with VoiceBase API objects
    */
   public static ObjectMapper objectMapper() {
-    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-    df.setTimeZone(TimeZone.getTimeZone("UTC"));
-    
+    return objectMapper(System.getenv());
+  }
+
+  /**
+   * Get a new object mapper configured by the given environment, see {@link #objectMapper()}.
+   * 
+   * @param env environment, {@value #ENV_AFTERBURNER} is the only setting used
+   * 
+   * @return object mapper configured for use with VoiceBase API objects
+   */
+  public static ObjectMapper objectMapper(Map<String, String> env) {
     ObjectMapper objectMapper = new ObjectMapper();
     objectMapper.registerModule(new JavaTimeModule());
-    objectMapper.setDateFormat(df);
+    objectMapper.setDateFormat(UtcDateFormat.INSTANCE);
     objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    registerAfterburner(objectMapper, env);
     return objectMapper;
   }
+
+  /**
+   * Get the object mapper shared by the whole process. It's thread-safe as long as nobody changes
+   * its configuration, which callers must not do.
+   * 
+   * @return shared object mapper configured for use with VoiceBase API objects
+   */
+  public static ObjectMapper sharedObjectMapper() {
+    return SHARED_MAPPER;
+  }
+
+  /**
+   * Get the shared reader for a type. Readers are immutable and thread-safe.
+   * 
+   * @param type type to read
+   * 
+   * @return reader based on the shared object mapper
+   */
+  public static ObjectReader reader(Class<?> type) {
+    return reader(SHARED_MAPPER.constructType(type));
+  }
+
+  /**
+   * Get the shared writer for a type. Writers are immutable and thread-safe.
+   * 
+   * @param type type to write
+   * 
+   * @return writer based on the shared object mapper
+   */
+  public static ObjectWriter writer(Class<?> type) {
+    return writer(SHARED_MAPPER.constructType(type));
+  }
+
+  /**
+   * @return shared reader for JSON objects as {@code Map<String, Object>}
+   */
+  public static ObjectReader mapReader() {
+    return reader(SHARED_MAPPER.getTypeFactory().constructType(MAP_TYPE));
+  }
+
+  private static ObjectReader reader(JavaType type) {
+    ObjectReader reader = READERS.get(type);
+    if (reader == null) {
+      reader = SHARED_MAPPER.readerFor(type);
+      ObjectReader existing = READERS.putIfAbsent(type, reader);
+      if (existing != null) {
+        reader = existing;
+      }
+    }
+    return reader;
+  }
+
+  private static ObjectWriter writer(JavaType type) {
+    ObjectWriter writer = WRITERS.get(type);
+    if (writer == null) {
+      writer = SHARED_MAPPER.writerFor(type);
+      ObjectWriter existing = WRITERS.putIfAbsent(type, writer);
+      if (existing != null) {
+        writer = existing;
+      }
+    }
+    return writer;
+  }
+
+  /**
+   * Register the Afterburner module, which replaces reflection with generated bytecode for bean
+   * properties, if it's on the classpath and not disabled by {@value #ENV_AFTERBURNER}.
+   * Registration falling back to reflection is logged as a warning unless the module was neither
+   * enabled explicitly nor on the classpath.
+   * 
+   * @param objectMapper mapper to register the module with
+   * @param env environment
+   * 
+   * @return true if the module was registered
+   */
+  static boolean registerAfterburner(ObjectMapper objectMapper, Map<String, String> env) {
+    String setting = env == null ? null : env.get(ENV_AFTERBURNER);
+    if (setting != null && "false".equalsIgnoreCase(setting.trim())) {
+      return false;
+    }
+    try {
+      objectMapper.registerModule((Module) Class.forName(AFTERBURNER_MODULE).newInstance());
+      return true;
+    } catch (ClassNotFoundException e) {
+      if (setting != null && "true".equalsIgnoreCase(setting.trim())) {
+        LOGGER.warn("{} is enabled but Afterburner isn't on the classpath, using reflection.",
+            ENV_AFTERBURNER);
+      } else {
+        LOGGER.debug("Afterburner isn't on the classpath, using reflection.");
+      }
+      return false;
+    } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+      LOGGER.warn("Unable to register Afterburner, using reflection.", e);
+      return false;
+    }
+  }
 }
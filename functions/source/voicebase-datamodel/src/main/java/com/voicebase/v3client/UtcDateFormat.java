@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.v3client;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe replacement for a {@code SimpleDateFormat} with pattern
+ * {@code yyyy-MM-dd'T'HH:mm:ss.SSS'Z'} in UTC, backed by a {@link DateTimeFormatter}.
+ * <p/>
+ * Jackson clones the configured date format for every serialization and deserialization; this
+ * format is immutable and hands out itself instead of a copy.
+ */
+public final class UtcDateFormat extends DateFormat {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+  public static final UtcDateFormat INSTANCE = new UtcDateFormat();
+
+  private UtcDateFormat() {
+    // only used for the time zone reported by getTimeZone(), formatting doesn't use it
+    Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    super.setCalendar(calendar);
+  }
+
+  @Override
+  public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition) {
+    FORMATTER.formatTo(date.toInstant(), toAppendTo);
+    return toAppendTo;
+  }
+
+  @Override
+  public Date parse(String source, ParsePosition pos) {
+    try {
+      TemporalAccessor parsed = FORMATTER.parse(source, pos);
+      return Date.from(Instant.from(parsed));
+    } catch (DateTimeParseException e) {
+      if (pos.getErrorIndex() < 0) {
+        pos.setErrorIndex(pos.getIndex());
+      }
+      return null;
+    }
+  }
+
+  @Override
+  public Object clone() {
+    return this;
+  }
+
+  // immutable, ignore attempts to reconfigure
+
+  @Override
+  public void setCalendar(Calendar newCalendar) {}
+
+  @Override
+  public void setTimeZone(TimeZone zone) {}
+
+  @Override
+  public void setLenient(boolean lenient) {}
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof UtcDateFormat;
+  }
+
+  @Override
+  public int hashCode() {
+    return UtcDateFormat.class.hashCode();
+  }
+}
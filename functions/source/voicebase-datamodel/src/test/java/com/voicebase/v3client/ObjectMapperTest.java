@@ -12,6 +12,8 @@
 package com.voicebase.v3client;
 
 import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -78,4 +80,47 @@ public class ObjectMapperTest {
     Assert.assertEquals(media.getStatus(), deserialized.getStatus());
 
   }
+
+  @Test
+  public void testSharedReadersAndWriters() throws Exception {
+    Assert.assertSame(JacksonFactory.reader(VbMedia.class), JacksonFactory.reader(VbMedia.class));
+    Assert.assertSame(JacksonFactory.writer(VbMedia.class), JacksonFactory.writer(VbMedia.class));
+
+    VbMedia media = new VbMedia();
+    media.setMediaId(UUID.randomUUID().toString());
+    media.setDateCreated(OffsetDateTime.now());
+    byte[] serialized = JacksonFactory.writer(VbMedia.class).writeValueAsBytes(media);
+
+    VbMedia deserialized = JacksonFactory.reader(VbMedia.class).readValue(serialized);
+    Assert.assertEquals(media.getMediaId(), deserialized.getMediaId());
+    Assert.assertTrue(media.getDateCreated().isEqual(deserialized.getDateCreated()));
+
+    Map<String, Object> map = JacksonFactory.mapReader().readValue(serialized);
+    Assert.assertEquals(media.getMediaId(), map.get("mediaId"));
+  }
+
+  @Test
+  public void testUtcDateFormat() throws Exception {
+    Date date = new Date(1514808000123L);
+    Map<String, Object> map = new HashMap<>();
+    map.put("date", date);
+
+    String serialized = JacksonFactory.sharedObjectMapper().writeValueAsString(map);
+    Assert.assertEquals("{\"date\":\"2018-01-01T12:00:00.123Z\"}", serialized);
+    Assert.assertEquals(date, UtcDateFormat.INSTANCE.parse("2018-01-01T12:00:00.123Z"));
+    Assert.assertSame(UtcDateFormat.INSTANCE, UtcDateFormat.INSTANCE.clone());
+  }
+
+  @Test
+  public void testAfterburnerSetting() throws Exception {
+    Assert.assertFalse(JacksonFactory.registerAfterburner(new ObjectMapper(),
+        Collections.singletonMap(JacksonFactory.ENV_AFTERBURNER, "false")));
+
+    // not on the classpath of this module, mappers fall back to reflection
+    ObjectMapper om = JacksonFactory
+        .objectMapper(Collections.singletonMap(JacksonFactory.ENV_AFTERBURNER, "true"));
+    Assert.assertEquals("m1",
+        om.readValue(om.writeValueAsString(new VbMedia().mediaId("m1")), VbMedia.class)
+            .getMediaId());
+  }
 }
@@ -12,9 +12,20 @@
 package com.voicebase.sdk.util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.utils.DateUtils;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.datamodel.VbErrorResponse;
 
 import retrofit.ErrorHandler;
 import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
 
 /**
  * @author Volker Kueffel <volker@voicebase.com>
@@ -22,6 +33,9 @@ import retrofit.RetrofitError;
  */
 public class ApiErrorHandler implements ErrorHandler {
 
+  private static final ObjectReader ERROR_READER =
+      JacksonFactory.reader(VbErrorResponse.class);
+
   /*
    * (non-Javadoc)
    * 
@@ -29,34 +43,113 @@ public class ApiErrorHandler implements ErrorHandler {
    */
   @Override
   public Throwable handleError(RetrofitError error) {
-    String message;
+    Response response = error.getResponse();
+    ApiException exception;
     switch (error.getKind()) {
       case NETWORK:
-        message = "Network error: " + error.getMessage();
+        if (error.getCause() instanceof InterruptedIOException) {
+          exception = new ApiNetworkException("Timeout: " + error.getMessage(),
+              ApiErrorType.TIMEOUT);
+        } else {
+          exception = new ApiNetworkException("Network error: " + error.getMessage(),
+              ApiErrorType.NETWORK);
+        }
         break;
       case HTTP:
-        message = error.getMessage();
-        // maybe add VbErrorResponse object to exception
-        if (error.getResponse() != null && error.getResponse().getBody() != null) {
-          try {
-            message += ": " + IOUtil.readToString(error.getResponse().getBody().in());
-          } catch (IOException e) {
-          }
-        }
+        exception = httpError(error);
         break;
       case CONVERSION:
-        message = "Conversion error: " + error.getMessage();
+        exception = new ApiException("Conversion error: " + error.getMessage(),
+            ApiErrorType.CONVERSION);
         break;
       case UNEXPECTED:
-        message = "Unexpected error: " + error.getMessage();
+        exception = new ApiException("Unexpected error: " + error.getMessage(),
+            ApiErrorType.UNEXPECTED);
         break;
       default:
-        message = "Unknown error: " + error.getMessage();
+        exception =
+            new ApiException("Unknown error: " + error.getMessage(), ApiErrorType.UNEXPECTED);
         break;
     }
 
-    return new ApiException(message).withStatusCode(error.getResponse().getStatus());
+    exception.initCause(error);
+    if (response != null) {
+      exception.withStatusCode(response.getStatus())
+          .setRetryAfterMillis(retryAfterMillis(response));
+    }
+    return exception;
+
+  }
 
+  private ApiException httpError(RetrofitError error) {
+    String message = error.getMessage();
+    Response response = error.getResponse();
+    VbErrorResponse errorResponse = null;
+
+    if (response != null && response.getBody() != null) {
+      try {
+        String body = IOUtil.readToString(response.getBody().in());
+        message += ": " + body;
+        errorResponse = ERROR_READER.readValue(body);
+      } catch (IOException e) {
+        // not an error response, keep raw body in message
+      }
+    }
+
+    int status = response != null ? response.getStatus() : 0;
+    ApiErrorType errorType = ApiErrorType.fromStatus(status);
+    ApiException exception;
+    switch (errorType) {
+      case THROTTLED:
+        exception = new ApiThrottledException(message, errorType);
+        break;
+      case SERVER:
+        exception = new ApiServerException(message, errorType);
+        break;
+      case AUTHENTICATION:
+        exception = new ApiAuthenticationException(message, errorType);
+        break;
+      case VALIDATION:
+        exception = new ApiValidationException(message, errorType);
+        break;
+      case TIMEOUT:
+        exception = new ApiNetworkException(message, errorType);
+        break;
+      default:
+        exception = new ApiException(message, errorType);
+        break;
+    }
+    return exception.withErrorResponse(errorResponse);
+  }
+
+  /**
+   * Extract the <code>Retry-After</code> header, either delay seconds or an HTTP date.
+   * 
+   * @param response HTTP response
+   * 
+   * @return requested delay in ms or null if there is no valid header
+   */
+  static Long retryAfterMillis(Response response) {
+    if (response == null || response.getHeaders() == null) {
+      return null;
+    }
+    for (Header header : response.getHeaders()) {
+      if ("Retry-After".equalsIgnoreCase(header.getName())) {
+        String value = StringUtils.trimToNull(header.getValue());
+        if (value == null) {
+          return null;
+        }
+        if (StringUtils.isNumeric(value)) {
+          return Long.parseLong(value) * 1000L;
+        }
+        Date date = DateUtils.parseDate(value);
+        if (date != null) {
+          return Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+        return null;
+      }
+    }
+    return null;
   }
 
 }
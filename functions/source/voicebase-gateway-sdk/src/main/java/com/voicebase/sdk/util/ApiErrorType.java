@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Classification of VoiceBase API errors.
+ */
+public enum ApiErrorType {
+
+  /** Connection failed or was reset. */
+  NETWORK(true),
+  /** Connect or read timeout. */
+  TIMEOUT(true),
+  /** Request rejected with 429, too many requests. */
+  THROTTLED(true),
+  /** 5xx server side error. */
+  SERVER(true),
+  /** Not sent, the circuit breaker of the endpoint is open. */
+  UNAVAILABLE(true),
+  /** 401/403, token missing, invalid or without permission. */
+  AUTHENTICATION(false),
+  /** Any other 4xx, the request itself is invalid. */
+  VALIDATION(false),
+  /** Response could not be converted. */
+  CONVERSION(false),
+  /** Anything else. */
+  UNEXPECTED(false);
+
+  private final boolean retryable;
+
+  private ApiErrorType(boolean retryable) {
+    this.retryable = retryable;
+  }
+
+  /**
+   * @return true if repeating the same request may succeed
+   */
+  public boolean isRetryable() {
+    return retryable;
+  }
+
+  /**
+   * Classify an HTTP status code.
+   * 
+   * @param status HTTP status code
+   * 
+   * @return error type
+   */
+  public static ApiErrorType fromStatus(int status) {
+    if (status == 429) {
+      return THROTTLED;
+    }
+    if (status == 401 || status == 403) {
+      return AUTHENTICATION;
+    }
+    if (status == 408) {
+      return TIMEOUT;
+    }
+    if (status >= 500) {
+      return SERVER;
+    }
+    if (status >= 400) {
+      return VALIDATION;
+    }
+    return UNEXPECTED;
+  }
+}
@@ -11,6 +11,7 @@
  */
 package com.voicebase.sdk.util;
 
+import com.voicebase.v3client.datamodel.VbErrorResponse;
 
 /**
  * @author Volker Kueffel <volker@voicebase.com>
@@ -20,25 +21,38 @@ public class ApiException extends RuntimeException {
 
   private static final long serialVersionUID = 1L;
   private int statusCode;
+  private Long retryAfterMillis;
+  private VbErrorResponse errorResponse;
+  private final ApiErrorType errorType;
 
   public ApiException() {
     super();
+    this.errorType = ApiErrorType.UNEXPECTED;
+  }
+
+  protected ApiException(String message, ApiErrorType errorType) {
+    super(message);
+    this.errorType = errorType;
   }
 
   public ApiException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
     super(message, cause, enableSuppression, writableStackTrace);
+    this.errorType = ApiErrorType.UNEXPECTED;
   }
 
   public ApiException(String message, Throwable cause) {
     super(message, cause);
+    this.errorType = ApiErrorType.UNEXPECTED;
   }
 
   public ApiException(String message) {
     super(message);
+    this.errorType = ApiErrorType.UNEXPECTED;
   }
 
   public ApiException(Throwable cause) {
     super(cause);
+    this.errorType = ApiErrorType.UNEXPECTED;
   }
 
   public int getStatusCode() {
@@ -53,5 +67,49 @@ public class ApiException extends RuntimeException {
     setStatusCode(statusCode);
     return this;
   }
-  
-}
\ No newline at end of file
+
+  /**
+   * @return delay requested by the API through a <code>Retry-After</code> header in ms, null if
+   *         none was sent
+   */
+  public Long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  public void setRetryAfterMillis(Long retryAfterMillis) {
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public ApiException withRetryAfterMillis(Long retryAfterMillis) {
+    setRetryAfterMillis(retryAfterMillis);
+    return this;
+  }
+
+  /**
+   * @return error response sent by the API, null if none could be parsed
+   */
+  public VbErrorResponse getErrorResponse() {
+    return errorResponse;
+  }
+
+  public void setErrorResponse(VbErrorResponse errorResponse) {
+    this.errorResponse = errorResponse;
+  }
+
+  public ApiException withErrorResponse(VbErrorResponse errorResponse) {
+    setErrorResponse(errorResponse);
+    return this;
+  }
+
+  public ApiErrorType getErrorType() {
+    return errorType;
+  }
+
+  /**
+   * @return true if repeating the request may succeed
+   */
+  public boolean isRetryable() {
+    return errorType.isRetryable();
+  }
+
+}
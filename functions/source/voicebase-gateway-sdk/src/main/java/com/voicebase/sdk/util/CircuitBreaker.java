@@ -0,0 +1,229 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker for calls to one endpoint.
+ * <p/>
+ * While closed, the outcome and duration of the most recent calls are kept. Once enough calls
+ * were made and the share of failed or slow calls reaches its threshold the circuit opens and
+ * calls are rejected without being sent. After the open duration a single probe call is let
+ * through: if it succeeds in time the circuit closes again, otherwise it stays open for another
+ * open duration.
+ * <p/>
+ * Callers take a permit with {@link #tryAcquire()} and report the outcome of every permitted
+ * call on the permit. Outcomes of calls permitted before the last transition are ignored, so only
+ * the probe decides whether a half open circuit closes.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private static final byte FAILED = 1;
+  private static final byte SLOW = 2;
+
+  /**
+   * Circuit breaker states.
+   */
+  public enum State {
+    /** Calls are sent, outcomes are recorded. */
+    CLOSED,
+    /** Calls are rejected. */
+    OPEN,
+    /** One probe call is sent to decide whether to close the circuit. */
+    HALF_OPEN
+  }
+
+  private final String name;
+  private final CircuitBreakerSettings settings;
+  private final CircuitBreakerStatistics statistics = new CircuitBreakerStatistics();
+
+  // outcomes of the last calls, ring buffer
+  private final byte[] outcomes;
+  private int next;
+  private int calls;
+  private int failures;
+  private int slowCalls;
+
+  private State state = State.CLOSED;
+  private long openUntil;
+  private boolean probing;
+  // incremented on every transition
+  private long generation;
+
+  /**
+   * @param name name used in log messages, usually the endpoint
+   * @param settings thresholds
+   */
+  public CircuitBreaker(String name, CircuitBreakerSettings settings) {
+    this.name = name;
+    this.settings = settings;
+    this.outcomes = new byte[Math.max(1, settings.getWindowSize())];
+  }
+
+  /**
+   * Ask to send a call.
+   * 
+   * @return permit to send the call, its outcome must then be reported on it; null if the call
+   *         is rejected
+   */
+  public synchronized Permit tryAcquire() {
+    if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+      transition(State.HALF_OPEN);
+    }
+    if (state == State.CLOSED) {
+      return new Permit(generation);
+    }
+    if (state == State.HALF_OPEN && !probing) {
+      probing = true;
+      statistics.recordProbe();
+      return new Permit(generation);
+    }
+    statistics.recordRejection();
+    return null;
+  }
+
+  /**
+   * @return true if calls are currently rejected
+   */
+  public synchronized boolean isOpen() {
+    return state == State.OPEN && System.currentTimeMillis() < openUntil;
+  }
+
+  /**
+   * @return current state
+   */
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return state and transition counters
+   */
+  public CircuitBreakerStatistics getStatistics() {
+    return statistics;
+  }
+
+  private boolean isSlow(long durationMillis) {
+    return settings.getSlowCallThreshold() > 0 && settings.getSlowCallRateThreshold() > 0
+        && durationMillis >= settings.getSlowCallThreshold();
+  }
+
+  private synchronized void release(Permit permit) {
+    if (permit.generation == generation && state == State.HALF_OPEN) {
+      probing = false;
+    }
+  }
+
+  private synchronized void record(Permit permit, byte outcome) {
+    if (permit.generation != generation) {
+      // permitted before the last transition, e.g. sent before the circuit opened
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      transition(outcome == 0 ? State.CLOSED : State.OPEN);
+      return;
+    }
+
+    if (calls == outcomes.length) {
+      failures -= outcomes[next] & FAILED;
+      slowCalls -= (outcomes[next] & SLOW) >> 1;
+    } else {
+      calls++;
+    }
+    outcomes[next] = outcome;
+    next = (next + 1) % outcomes.length;
+    failures += outcome & FAILED;
+    slowCalls += (outcome & SLOW) >> 1;
+
+    if (calls >= settings.getMinimumCalls()
+        && (exceeds(failures, settings.getFailureRateThreshold())
+            || exceeds(slowCalls, settings.getSlowCallRateThreshold()))) {
+      transition(State.OPEN);
+    }
+  }
+
+  private boolean exceeds(int count, int rateThreshold) {
+    return rateThreshold > 0 && count * 100 >= rateThreshold * calls;
+  }
+
+  private void transition(State to) {
+    State from = state;
+    state = to;
+    probing = false;
+    generation++;
+    if (to == State.OPEN) {
+      openUntil = System.currentTimeMillis() + settings.getOpenDuration();
+    }
+    if (from == State.HALF_OPEN && to == State.OPEN) {
+      LOGGER.warn("Probe to {} failed, rejecting calls for another {}ms", name,
+          settings.getOpenDuration());
+    } else if (to == State.OPEN) {
+      LOGGER.warn("Circuit to {} open after {} failed and {} slow of {} calls, rejecting calls "
+          + "for {}ms", name, failures, slowCalls, calls, settings.getOpenDuration());
+    } else {
+      LOGGER.info("Circuit to {} {}", name, to == State.CLOSED ? "closed" : "half open");
+    }
+    if (to == State.CLOSED) {
+      calls = 0;
+      next = 0;
+      failures = 0;
+      slowCalls = 0;
+    }
+    statistics.recordTransition(from, to);
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker [" + name + ", " + statistics + "]";
+  }
+
+  /**
+   * Permission to send one call, the outcome is reported exactly once.
+   */
+  public final class Permit {
+
+    private final long generation;
+
+    private Permit(long generation) {
+      this.generation = generation;
+    }
+
+    /**
+     * Report a call that got a response.
+     * 
+     * @param durationMillis call duration
+     */
+    public void onSuccess(long durationMillis) {
+      record(this, isSlow(durationMillis) ? SLOW : 0);
+    }
+
+    /**
+     * Report a call that failed in a way indicating the endpoint is unavailable.
+     * 
+     * @param durationMillis call duration
+     */
+    public void onFailure(long durationMillis) {
+      record(this, (byte) (FAILED | (isSlow(durationMillis) ? SLOW : 0)));
+    }
+
+    /**
+     * Report a call that was not sent or whose outcome says nothing about the endpoint.
+     */
+    public void release() {
+      CircuitBreaker.this.release(this);
+    }
+  }
+}
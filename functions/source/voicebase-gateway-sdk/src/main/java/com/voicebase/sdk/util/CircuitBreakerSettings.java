@@ -0,0 +1,126 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Thresholds of a {@link CircuitBreaker}.
+ * <p/>
+ * Rates are percentages of the calls in the window, times are in ms. A slow call threshold or
+ * rate of zero or less disables tripping on latency.
+ */
+public class CircuitBreakerSettings {
+
+  public static final int DEFAULT_WINDOW_SIZE = 20;
+  public static final int DEFAULT_MINIMUM_CALLS = 10;
+  public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+  public static final long DEFAULT_SLOW_CALL_THRESHOLD = 10000;
+  public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+  public static final long DEFAULT_OPEN_DURATION = 30000;
+
+  private int windowSize = DEFAULT_WINDOW_SIZE;
+  private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+  private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+  private long slowCallThreshold = DEFAULT_SLOW_CALL_THRESHOLD;
+  private int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+  private long openDuration = DEFAULT_OPEN_DURATION;
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  /**
+   * @param windowSize number of most recent calls the rates are computed over
+   */
+  public void setWindowSize(int windowSize) {
+    this.windowSize = windowSize;
+  }
+
+  public CircuitBreakerSettings withWindowSize(int windowSize) {
+    setWindowSize(windowSize);
+    return this;
+  }
+
+  public int getMinimumCalls() {
+    return minimumCalls;
+  }
+
+  /**
+   * @param minimumCalls number of calls in the window before the circuit can trip
+   */
+  public void setMinimumCalls(int minimumCalls) {
+    this.minimumCalls = minimumCalls;
+  }
+
+  public CircuitBreakerSettings withMinimumCalls(int minimumCalls) {
+    setMinimumCalls(minimumCalls);
+    return this;
+  }
+
+  public int getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  public void setFailureRateThreshold(int failureRateThreshold) {
+    this.failureRateThreshold = failureRateThreshold;
+  }
+
+  public CircuitBreakerSettings withFailureRateThreshold(int failureRateThreshold) {
+    setFailureRateThreshold(failureRateThreshold);
+    return this;
+  }
+
+  public long getSlowCallThreshold() {
+    return slowCallThreshold;
+  }
+
+  /**
+   * @param slowCallThreshold calls taking at least this long count as slow
+   */
+  public void setSlowCallThreshold(long slowCallThreshold) {
+    this.slowCallThreshold = slowCallThreshold;
+  }
+
+  public CircuitBreakerSettings withSlowCallThreshold(long slowCallThreshold) {
+    setSlowCallThreshold(slowCallThreshold);
+    return this;
+  }
+
+  public int getSlowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+
+  public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+    this.slowCallRateThreshold = slowCallRateThreshold;
+  }
+
+  public CircuitBreakerSettings withSlowCallRateThreshold(int slowCallRateThreshold) {
+    setSlowCallRateThreshold(slowCallRateThreshold);
+    return this;
+  }
+
+  public long getOpenDuration() {
+    return openDuration;
+  }
+
+  /**
+   * @param openDuration time calls are rejected after the circuit tripped before a probe is let
+   *        through
+   */
+  public void setOpenDuration(long openDuration) {
+    this.openDuration = openDuration;
+  }
+
+  public CircuitBreakerSettings withOpenDuration(long openDuration) {
+    setOpenDuration(openDuration);
+    return this;
+  }
+}
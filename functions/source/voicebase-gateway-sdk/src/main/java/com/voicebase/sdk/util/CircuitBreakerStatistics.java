@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State and transition counters of a {@link CircuitBreaker}.
+ */
+public class CircuitBreakerStatistics {
+
+  private volatile CircuitBreaker.State state = CircuitBreaker.State.CLOSED;
+  private final AtomicLong trips = new AtomicLong();
+  private final AtomicLong probes = new AtomicLong();
+  private final AtomicLong reopened = new AtomicLong();
+  private final AtomicLong recovered = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  void recordTransition(CircuitBreaker.State from, CircuitBreaker.State to) {
+    state = to;
+    if (to == CircuitBreaker.State.OPEN) {
+      (from == CircuitBreaker.State.HALF_OPEN ? reopened : trips).incrementAndGet();
+    } else if (to == CircuitBreaker.State.CLOSED) {
+      recovered.incrementAndGet();
+    }
+  }
+
+  void recordProbe() {
+    probes.incrementAndGet();
+  }
+
+  void recordRejection() {
+    rejected.incrementAndGet();
+  }
+
+  /**
+   * @return state after the last transition
+   */
+  public CircuitBreaker.State getState() {
+    return state;
+  }
+
+  /**
+   * @return number of times the closed circuit opened
+   */
+  public long getTrips() {
+    return trips.get();
+  }
+
+  /**
+   * @return number of probe calls let through while half open
+   */
+  public long getProbes() {
+    return probes.get();
+  }
+
+  /**
+   * @return number of failed probes that opened the circuit again
+   */
+  public long getReopened() {
+    return reopened.get();
+  }
+
+  /**
+   * @return number of successful probes that closed the circuit
+   */
+  public long getRecovered() {
+    return recovered.get();
+  }
+
+  /**
+   * @return number of calls rejected without being sent
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("CircuitBreakerStatistics [state=");
+    builder.append(state);
+    builder.append(", trips=");
+    builder.append(trips);
+    builder.append(", probes=");
+    builder.append(probes);
+    builder.append(", reopened=");
+    builder.append(reopened);
+    builder.append(", recovered=");
+    builder.append(recovered);
+    builder.append(", rejected=");
+    builder.append(rejected);
+    builder.append("]");
+    return builder.toString();
+  }
+}
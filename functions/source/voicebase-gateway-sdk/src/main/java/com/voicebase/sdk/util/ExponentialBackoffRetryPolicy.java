@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter.
+ * <p/>
+ * The delay before retry <code>n</code> is drawn uniformly from
+ * <code>[0, min(maxDelay, baseDelay * 2^(n-1))]</code>. A <code>Retry-After</code> sent by the
+ * API is used as the lower bound; if it exceeds the maximum delay the call is not retried. An
+ * optional {@link RetryBudget} limits the number of retries across all calls.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+  private final int retryAttempts;
+  private final long baseDelay;
+  private final long maxDelay;
+  private final RetryBudget budget;
+  private final RetryStatistics statistics = new RetryStatistics();
+
+  /**
+   * @param retryAttempts number of retries after the first attempt
+   * @param baseDelay delay cap for the first retry in ms
+   * @param maxDelay maximum delay between attempts in ms
+   * @param budget retry budget, may be null
+   */
+  public ExponentialBackoffRetryPolicy(int retryAttempts, long baseDelay, long maxDelay,
+      RetryBudget budget) {
+    this.retryAttempts = retryAttempts;
+    this.baseDelay = Math.max(1, baseDelay);
+    this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    this.budget = budget;
+  }
+
+  @Override
+  public long retryDelay(int attempt, Throwable error) {
+    if (attempt > retryAttempts) {
+      statistics.recordExhausted();
+      return -1;
+    }
+
+    long retryAfter = -1;
+    if (error instanceof ApiException && ((ApiException) error).getRetryAfterMillis() != null) {
+      retryAfter = ((ApiException) error).getRetryAfterMillis();
+      if (retryAfter > maxDelay) {
+        statistics.recordExhausted();
+        return -1;
+      }
+    }
+
+    if (budget != null && !budget.tryAcquire()) {
+      statistics.recordBudgetRejection();
+      return -1;
+    }
+
+    // avoid overflow for large attempt numbers
+    int exponent = Math.min(attempt - 1, 30);
+    long ceiling = Math.min(maxDelay, baseDelay << exponent);
+    long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+    delay = Math.max(delay, retryAfter);
+
+    statistics.recordRetry(delay);
+    return delay;
+  }
+
+  @Override
+  public RetryStatistics getStatistics() {
+    return statistics;
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Retry a fixed number of times with a constant delay.
+ */
+public class FixedDelayRetryPolicy implements RetryPolicy {
+
+  private final int retryAttempts;
+  private final long retryDelay;
+  private final RetryStatistics statistics = new RetryStatistics();
+
+  /**
+   * @param retryAttempts number of retries after the first attempt
+   * @param retryDelay delay between attempts in ms
+   */
+  public FixedDelayRetryPolicy(int retryAttempts, long retryDelay) {
+    this.retryAttempts = retryAttempts;
+    this.retryDelay = retryDelay;
+  }
+
+  @Override
+  public long retryDelay(int attempt, Throwable error) {
+    if (attempt > retryAttempts) {
+      statistics.recordExhausted();
+      return -1;
+    }
+    statistics.recordRetry(retryDelay);
+    return retryDelay;
+  }
+
+  @Override
+  public RetryStatistics getStatistics() {
+    return statistics;
+  }
+}
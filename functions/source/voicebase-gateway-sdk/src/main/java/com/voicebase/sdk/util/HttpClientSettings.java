@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Connection pool, timeout and TLS settings for the HTTP client used to call the VoiceBase API.
+ * <p/>
+ * Times are in ms, zero or negative values disable a timeout.
+ */
+public class HttpClientSettings {
+
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+  public static final int DEFAULT_MAX_CONNECTIONS = 50;
+  public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+  public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+  public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 10000;
+  public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+  public static final long DEFAULT_KEEP_ALIVE = 30000;
+  public static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 100;
+  public static final int DEFAULT_TLS_SESSION_TIMEOUT = 3600000;
+
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+  private int connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+  private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+  private long keepAlive = DEFAULT_KEEP_ALIVE;
+  private int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
+  private int tlsSessionTimeout = DEFAULT_TLS_SESSION_TIMEOUT;
+  private int prewarmConnections = 0;
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  public HttpClientSettings withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+    return this;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  public HttpClientSettings withMaxConnections(int maxConnections) {
+    setMaxConnections(maxConnections);
+    return this;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  public HttpClientSettings withConnectTimeout(int connectTimeout) {
+    setConnectTimeout(connectTimeout);
+    return this;
+  }
+
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  public void setSocketTimeout(int socketTimeout) {
+    this.socketTimeout = socketTimeout;
+  }
+
+  public HttpClientSettings withSocketTimeout(int socketTimeout) {
+    setSocketTimeout(socketTimeout);
+    return this;
+  }
+
+  public int getConnectionRequestTimeout() {
+    return connectionRequestTimeout;
+  }
+
+  /**
+   * @param connectionRequestTimeout maximum time to wait for a connection from the pool
+   */
+  public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+    this.connectionRequestTimeout = connectionRequestTimeout;
+  }
+
+  public HttpClientSettings withConnectionRequestTimeout(int connectionRequestTimeout) {
+    setConnectionRequestTimeout(connectionRequestTimeout);
+    return this;
+  }
+
+  public long getMaxIdleTime() {
+    return maxIdleTime;
+  }
+
+  /**
+   * @param maxIdleTime time after which idle connections are evicted from the pool
+   */
+  public void setMaxIdleTime(long maxIdleTime) {
+    this.maxIdleTime = maxIdleTime;
+  }
+
+  public HttpClientSettings withMaxIdleTime(long maxIdleTime) {
+    setMaxIdleTime(maxIdleTime);
+    return this;
+  }
+
+  public long getKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * @param keepAlive time to keep a connection if the server doesn't send a keep-alive timeout
+   */
+  public void setKeepAlive(long keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  public HttpClientSettings withKeepAlive(long keepAlive) {
+    setKeepAlive(keepAlive);
+    return this;
+  }
+
+  public int getTlsSessionCacheSize() {
+    return tlsSessionCacheSize;
+  }
+
+  /**
+   * @param tlsSessionCacheSize number of TLS sessions kept for resumption, 0 for no limit
+   */
+  public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+    this.tlsSessionCacheSize = tlsSessionCacheSize;
+  }
+
+  public HttpClientSettings withTlsSessionCacheSize(int tlsSessionCacheSize) {
+    setTlsSessionCacheSize(tlsSessionCacheSize);
+    return this;
+  }
+
+  public int getTlsSessionTimeout() {
+    return tlsSessionTimeout;
+  }
+
+  /**
+   * @param tlsSessionTimeout time a TLS session can be resumed
+   */
+  public void setTlsSessionTimeout(int tlsSessionTimeout) {
+    this.tlsSessionTimeout = tlsSessionTimeout;
+  }
+
+  public HttpClientSettings withTlsSessionTimeout(int tlsSessionTimeout) {
+    setTlsSessionTimeout(tlsSessionTimeout);
+    return this;
+  }
+
+  public int getPrewarmConnections() {
+    return prewarmConnections;
+  }
+
+  /**
+   * @param prewarmConnections number of connections to open when the client is created
+   */
+  public void setPrewarmConnections(int prewarmConnections) {
+    this.prewarmConnections = prewarmConnections;
+  }
+
+  public HttpClientSettings withPrewarmConnections(int prewarmConnections) {
+    setPrewarmConnections(prewarmConnections);
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HttpClientSettings [maxConnectionsPerRoute=");
+    builder.append(maxConnectionsPerRoute);
+    builder.append(", maxConnections=");
+    builder.append(maxConnections);
+    builder.append(", connectTimeout=");
+    builder.append(connectTimeout);
+    builder.append(", socketTimeout=");
+    builder.append(socketTimeout);
+    builder.append(", connectionRequestTimeout=");
+    builder.append(connectionRequestTimeout);
+    builder.append(", maxIdleTime=");
+    builder.append(maxIdleTime);
+    builder.append(", keepAlive=");
+    builder.append(keepAlive);
+    builder.append(", tlsSessionCacheSize=");
+    builder.append(tlsSessionCacheSize);
+    builder.append(", tlsSessionTimeout=");
+    builder.append(tlsSessionTimeout);
+    builder.append(", prewarmConnections=");
+    builder.append(prewarmConnections);
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -11,12 +11,16 @@
  */
 package com.voicebase.sdk.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Date;
+import java.security.SecureRandom;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +28,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Signs and validates request parameters with an HMAC-SHA256 over timestamp and token.
+ * <p/>
+ * The key is set up once, each thread keeps its own initialized {@link Mac}, so signing and
+ * validating don't look up providers or copy the key. Signatures are compared in constant time.
+ * Instances are thread safe once configured.
  * 
  * @author Volker Kueffel <volker@voicebase.com>
  *
@@ -31,23 +40,37 @@ import org.slf4j.LoggerFactory;
 public class RequestSigner {
   private static final Logger LOGGER = LoggerFactory.getLogger(RequestSigner.class);
   private static final String HMAC_ALGORITHM = "HmacSHA256";
+  private static final int TOKEN_LENGTH = 50;
+
+  private final SecretKeySpec key;
+  private final SecureRandom random = new SecureRandom();
+  private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+    @Override
+    protected Mac initialValue() {
+      try {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("Unable to initialize " + HMAC_ALGORITHM, e);
+      }
+    }
+  };
 
-  private String secret;
-  // Should make this configuable
   private long signatureLifetimeSeconds = 60 * 60;
 
   private final boolean algorithmAvailable;
 
   public RequestSigner(String secret) {
     boolean works = false;
+    SecretKeySpec secretKey = null;
     try {
       if (StringUtils.isBlank(secret)) {
         throw new NullPointerException("API key must be provided to validate requests");
       }
-      this.secret = secret;
+      secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
       // check if algorithm is available
-      @SuppressWarnings("unused")
-      Mac sha256HMAC = Mac.getInstance(HMAC_ALGORITHM);
+      Mac.getInstance(HMAC_ALGORITHM);
       works = true;
       LOGGER.info("{} algorithm available. ", HMAC_ALGORITHM);
     } catch (NoSuchAlgorithmException e) {
@@ -55,6 +78,7 @@ public class RequestSigner {
     } catch (NullPointerException e) {
       LOGGER.warn("{}; cannot verify request parameters.", e.getMessage());
     }
+    key = secretKey;
     algorithmAvailable = works;
 
   }
@@ -63,13 +87,22 @@ public class RequestSigner {
     return signatureLifetimeSeconds;
   }
 
+  /**
+   * @param signatureLifetimeSeconds time a signature is accepted after it has been created, not
+   *        checked if 0 or less
+   */
   public void setSignatureLifetimeSeconds(long signatureLifetimeSeconds) {
     this.signatureLifetimeSeconds = signatureLifetimeSeconds;
     LOGGER.debug("Signatures valid for {}s", signatureLifetimeSeconds);
   }
 
+  public RequestSigner withSignatureLifetimeSeconds(long signatureLifetimeSeconds) {
+    setSignatureLifetimeSeconds(signatureLifetimeSeconds);
+    return this;
+  }
+
   public RequestSigner withSignatureLifetimeMillis(long signatureLifetimeMillis) {
-    setSignatureLifetimeSeconds(signatureLifetimeMillis);
+    setSignatureLifetimeSeconds(signatureLifetimeMillis / 1000);
     return this;
   }
 
@@ -82,8 +115,8 @@ public class RequestSigner {
    * @param timestamp
    *          Seconds since 1970-01-01
    * @param token
-   * @param signature
-   * @return
+   * @param signature hex encoded, case is ignored
+   * @return true if the signature matches and hasn't expired
    */
   public boolean validate(long timestamp, String token, String signature) {
     long signatureValidUntil = (timestamp + signatureLifetimeSeconds) * 1000;
@@ -93,9 +126,17 @@ public class RequestSigner {
           signatureLifetimeSeconds, timestamp, signatureValidUntil);
       return false;
     }
+    if (!algorithmAvailable || token == null || signature == null) {
+      return false;
+    }
 
-    String hmac = calculateSignature(timestamp, token);
-    boolean validated = hmac.equalsIgnoreCase(signature);
+    boolean validated;
+    try {
+      validated =
+          MessageDigest.isEqual(sign(timestamp, token), Hex.decodeHex(signature.toCharArray()));
+    } catch (DecoderException e) {
+      validated = false;
+    }
 
     LOGGER.trace("Request parameters validated: {}", validated);
 
@@ -106,12 +147,7 @@ public class RequestSigner {
     String hmac = null;
     if (algorithmAvailable) {
       try {
-        Mac sha256HMAC = Mac.getInstance(HMAC_ALGORITHM);
-        SecretKeySpec key = new SecretKeySpec(secret.getBytes(), HMAC_ALGORITHM);
-        sha256HMAC.init(key);
-
-        String input = String.valueOf(timestamp) + token;
-        hmac = Hex.encodeHexString(sha256HMAC.doFinal(input.getBytes()));
+        hmac = Hex.encodeHexString(sign(timestamp, token));
       } catch (Exception e) {
         LOGGER.debug("Error calculating signature.", e);
       }
@@ -119,12 +155,24 @@ public class RequestSigner {
     return hmac;
   }
 
+  private byte[] sign(long timestamp, String token) {
+    Mac mac = macs.get();
+    mac.update(String.valueOf(timestamp).getBytes(StandardCharsets.UTF_8));
+    return mac.doFinal(token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Create signature parameters with the current time and a random token.
+   * 
+   * @return signature parameters, the timestamp is in seconds since 1970-01-01
+   */
   public SignatureParameters createSignature() {
 
-    long timestamp = new Date().getTime();
-    String token = RandomStringUtils.randomAlphanumeric(50);
+    long timestamp = System.currentTimeMillis() / 1000;
+    String token = RandomStringUtils.random(TOKEN_LENGTH, 0, 0, true, true, null, random);
     String signature = calculateSignature(timestamp, token);
-    return new SignatureParameters().withTimestamp(timestamp).withToken(token).withSignature(signature);
+    return new SignatureParameters().withTimestamp(timestamp).withToken(token)
+        .withSignature(signature);
   }
 
   public static final class SignatureParameters {
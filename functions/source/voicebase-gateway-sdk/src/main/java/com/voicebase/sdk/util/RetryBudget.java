@@ -0,0 +1,55 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Token bucket limiting the number of retries over time.
+ * <p/>
+ * Each retry takes one token, tokens are refilled continuously up to the capacity. Once the
+ * bucket is empty retries are denied until it is refilled, so an unavailable API does not get
+ * multiplied traffic from retries.
+ */
+public class RetryBudget {
+
+  private final double capacity;
+  private final double refillPerMilli;
+
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * @param capacity maximum number of tokens
+   * @param refillPerSecond tokens added per second
+   */
+  public RetryBudget(int capacity, double refillPerSecond) {
+    this.capacity = capacity;
+    this.refillPerMilli = refillPerSecond / 1000d;
+    this.tokens = capacity;
+    this.lastRefill = System.currentTimeMillis();
+  }
+
+  /**
+   * Take a token if one is available.
+   * 
+   * @return true if the retry is within the budget
+   */
+  public synchronized boolean tryAcquire() {
+    long now = System.currentTimeMillis();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+    lastRefill = now;
+    if (tokens >= 1d) {
+      tokens -= 1d;
+      return true;
+    }
+    return false;
+  }
+}
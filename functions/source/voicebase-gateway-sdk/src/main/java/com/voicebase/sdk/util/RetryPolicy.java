@@ -0,0 +1,36 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+/**
+ * Decides whether and when a failed API call is retried.
+ * <p/>
+ * Implementations are shared by all requests of a client and must be thread safe.
+ */
+public interface RetryPolicy {
+
+  /**
+   * Get the delay before the next attempt.
+   * 
+   * @param attempt number of the attempt that just failed, starting at 1
+   * @param error error of the failed attempt
+   * 
+   * @return delay in ms before the next attempt or a negative value if the call should not be
+   *         retried
+   */
+  long retryDelay(int attempt, Throwable error);
+
+  /**
+   * @return retries and backoff time spent by this policy
+   */
+  RetryStatistics getStatistics();
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for retries done under a {@link RetryPolicy}.
+ */
+public class RetryStatistics {
+
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong backoffMillis = new AtomicLong();
+  private final AtomicLong exhausted = new AtomicLong();
+  private final AtomicLong budgetRejections = new AtomicLong();
+
+  void recordRetry(long delay) {
+    retries.incrementAndGet();
+    backoffMillis.addAndGet(delay);
+  }
+
+  void recordExhausted() {
+    exhausted.incrementAndGet();
+  }
+
+  void recordBudgetRejection() {
+    budgetRejections.incrementAndGet();
+  }
+
+  /**
+   * @return number of retries scheduled
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * @return total time in ms spent waiting between attempts
+   */
+  public long getBackoffMillis() {
+    return backoffMillis.get();
+  }
+
+  /**
+   * @return number of calls given up because all attempts failed
+   */
+  public long getExhausted() {
+    return exhausted.get();
+  }
+
+  /**
+   * @return number of retries denied because the retry budget was used up
+   */
+  public long getBudgetRejections() {
+    return budgetRejections.get();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RetryStatistics [retries=");
+    builder.append(retries);
+    builder.append(", backoffMillis=");
+    builder.append(backoffMillis);
+    builder.append(", exhausted=");
+    builder.append(exhausted);
+    builder.append(", budgetRejections=");
+    builder.append(budgetRejections);
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.v3;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.voicebase.sdk.util.HttpClientSettings;
+
+/**
+ * Connection pool to the VoiceBase API shared by the services of a client.
+ */
+public class ConnectionPool {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final String endpointUrl;
+  private final HttpClientSettings settings;
+
+  ConnectionPool(PoolingHttpClientConnectionManager connectionManager, String endpointUrl,
+      HttpClientSettings settings) {
+    this.connectionManager = connectionManager;
+    this.endpointUrl = endpointUrl;
+    this.settings = settings;
+  }
+
+  PoolingHttpClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  /**
+   * Open connections to the API endpoint and return them to the pool, so the first requests don't
+   * pay for TCP and TLS handshakes. Failures are logged and otherwise ignored.
+   * 
+   * @return number of connections opened
+   */
+  public int prewarm() {
+    if (endpointUrl == null || settings.getPrewarmConnections() <= 0) {
+      return 0;
+    }
+
+    long start = System.currentTimeMillis();
+    int connections =
+        Math.min(settings.getPrewarmConnections(), settings.getMaxConnectionsPerRoute());
+    List<HttpClientConnection> opened = new ArrayList<>(connections);
+
+    try {
+      URI uri = URI.create(endpointUrl);
+      HttpHost target = new HttpHost(uri.getHost(),
+          DefaultSchemePortResolver.INSTANCE.resolve(
+              new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme())),
+          uri.getScheme());
+      HttpRoute route =
+          new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+
+      // keep all connections leased until the end, otherwise the pool hands out the same one again
+      for (int i = 0; i < connections; i++) {
+        HttpClientConnection connection = connectionManager.requestConnection(route, null)
+            .get(settings.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS);
+        try {
+          if (!connection.isOpen()) {
+            HttpClientContext context = HttpClientContext.create();
+            connectionManager.connect(connection, route, settings.getConnectTimeout(), context);
+            connectionManager.routeComplete(connection, route, context);
+          }
+        } catch (IOException e) {
+          connection.shutdown();
+          connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+          throw e;
+        }
+        opened.add(connection);
+      }
+    } catch (IOException | ExecutionException | RuntimeException e) {
+      LOGGER.warn("Unable to prewarm connections to {}", endpointUrl, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (HttpClientConnection connection : opened) {
+        connectionManager.releaseConnection(connection, null, settings.getKeepAlive(),
+            TimeUnit.MILLISECONDS);
+      }
+    }
+
+    LOGGER.info("Opened {} connections to {} in {}ms", opened.size(), endpointUrl,
+        System.currentTimeMillis() - start);
+    return opened.size();
+  }
+
+  /**
+   * Close all idle connections, e.g. before a snapshot of the process is taken. Connections in
+   * use are not affected.
+   */
+  public void closeIdleConnections() {
+    connectionManager.closeExpiredConnections();
+    connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+  }
+}
@@ -24,6 +24,7 @@ import com.voicebase.v3client.datamodel.VbMetadata;
 public class MediaProcessingRequest {
 
   private VbConfiguration configuration;
+  private byte[] serializedConfiguration;
   private VbMetadata metadata;
   private File mediaFile;
   private String mediaUrl;
@@ -41,6 +42,25 @@ public class MediaProcessingRequest {
       return this;
   }
 
+  public byte[] getSerializedConfiguration() {
+    return serializedConfiguration;
+  }
+
+  /**
+   * Set the configuration as already serialized JSON. If set, it is sent instead of serializing
+   * the configuration object again, both must describe the same configuration.
+   * 
+   * @param serializedConfiguration UTF-8 encoded JSON of the configuration
+   */
+  public void setSerializedConfiguration(byte[] serializedConfiguration) {
+    this.serializedConfiguration = serializedConfiguration;
+  }
+
+  public MediaProcessingRequest withSerializedConfiguration(byte[] serializedConfiguration) {
+    setSerializedConfiguration(serializedConfiguration);
+    return this;
+  }
+
   public VbMetadata getMetadata() {
     return metadata;
   }
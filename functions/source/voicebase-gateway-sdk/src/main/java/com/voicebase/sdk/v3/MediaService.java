@@ -15,12 +15,14 @@ import com.voicebase.v3client.datamodel.VbConfiguration;
 import com.voicebase.v3client.datamodel.VbMedia;
 import com.voicebase.v3client.datamodel.VbMetadata;
 
+import retrofit.Callback;
 import retrofit.http.Header;
 import retrofit.http.Multipart;
 import retrofit.http.POST;
 import retrofit.http.Part;
 import retrofit.http.Path;
 import retrofit.mime.TypedFile;
+import retrofit.mime.TypedOutput;
 
 /**
  * 
@@ -52,4 +54,77 @@ public interface MediaService {
   public VbMedia updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
       @Part("configuration") VbConfiguration configuration, @Part("metadata") VbMetadata metadata,
       @Part("mediaUrl") String mediaUrl);
+
+  @Multipart
+  @POST("/media")
+  public void processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") VbConfiguration configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media")
+  public void processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") VbConfiguration configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public void updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") VbConfiguration configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public void updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") VbConfiguration configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl, Callback<VbMedia> callback);
+
+  // variants taking an already serialized configuration
+  @Multipart
+  @POST("/media")
+  public VbMedia processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media);
+
+  @Multipart
+  @POST("/media")
+  public VbMedia processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public VbMedia updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public VbMedia updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl);
+
+  @Multipart
+  @POST("/media")
+  public void processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media")
+  public void processMedia(@Header("Authorization") String authorization,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public void updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("media") TypedFile media, Callback<VbMedia> callback);
+
+  @Multipart
+  @POST("/media/{mediaId}")
+  public void updateMedia(@Header("Authorization") String authorization, @Path("mediaId") String mediaId,
+      @Part("configuration") TypedOutput configuration, @Part("metadata") VbMetadata metadata,
+      @Part("mediaUrl") String mediaUrl, Callback<VbMedia> callback);
 }
@@ -11,11 +11,31 @@
  */
 package com.voicebase.sdk.v3;
 
-import javax.activation.MimetypesFileTypeMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
+import javax.activation.MimetypesFileTypeMap;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
 
 import com.voicebase.sdk.util.ApiErrorHandler;
+import com.voicebase.sdk.util.HttpClientSettings;
 import com.voicebase.sdk.util.NoAuthHeaderHttpClientRedirectStrategy;
 import com.voicebase.sdk.util.RetrofitToSlf4jLogger;
 import com.voicebase.v3client.JacksonFactory;
@@ -23,6 +43,7 @@ import com.voicebase.v3client.JacksonFactory;
 import retrofit.RestAdapter;
 import retrofit.RestAdapter.LogLevel;
 import retrofit.client.ApacheClient;
+import retrofit.client.Client;
 import retrofit.converter.JacksonConverter;
 
 /**
@@ -32,24 +53,57 @@ import retrofit.converter.JacksonConverter;
  */
 public class ServiceFactory {
 
-  
+  private static final HttpClientSettings DEFAULT_SETTINGS = new HttpClientSettings();
+
+  // HTTP clients by settings instance, settings don't override equals so this is by identity
+  private static final Map<HttpClientSettings, SharedClient> SHARED_CLIENTS =
+      new WeakHashMap<>();
+
   public static final VoiceBaseClient voicebaseClient(String endpointUrl, String logLevel) {
+    return voicebaseClient(endpointUrl, logLevel, DEFAULT_SETTINGS);
+  }
+
+  /**
+   * Create a client with media and API services sharing one connection pool. Clients created
+   * with the same settings instance share the pool.
+   * 
+   * @param endpointUrl VoiceBase API URL
+   * @param logLevel retrofit log level
+   * @param settings connection pool, timeout and TLS settings
+   * 
+   * @return VoiceBase client
+   */
+  public static final VoiceBaseClient voicebaseClient(String endpointUrl, String logLevel,
+      HttpClientSettings settings) {
+    SharedClient shared = sharedClient(settings);
+    ConnectionPool connectionPool =
+        new ConnectionPool(shared.connectionManager, endpointUrl, settings);
+    Client client = shared.client;
+
+    connectionPool.prewarm();
+
     VoiceBaseClient voicebaseClient = new VoiceBaseClient();
+    voicebaseClient.setConnectionPool(connectionPool);
     voicebaseClient.setMimeMap(mimetypesFileTypeMap());
-    voicebaseClient.setMediaService(mediaService(endpointUrl, logLevel));
-    voicebaseClient.setVoicebaseService(voiceBaseService(endpointUrl, logLevel));
+    voicebaseClient.setMediaService(mediaService(endpointUrl, logLevel, client));
+    voicebaseClient.setPrimingService(mediaService(endpointUrl, logLevel, new PrimingClient()));
+    voicebaseClient.setVoicebaseService(voiceBaseService(endpointUrl, logLevel, client));
     return voicebaseClient;
   }
   
   public static MediaService mediaService(String endpointUrl, String logLevel) {
+    return mediaService(endpointUrl, logLevel, apacheClient());
+  }
+
+  public static MediaService mediaService(String endpointUrl, String logLevel, Client client) {
     if (endpointUrl == null) {
       return null;
     }
 
     RetrofitToSlf4jLogger log = new RetrofitToSlf4jLogger(MediaService.class);
     
-    RestAdapter.Builder retrofit = new RestAdapter.Builder().setEndpoint(endpointUrl).setClient(apacheClient())
-        .setConverter(new JacksonConverter(JacksonFactory.objectMapper())).setLog(log).setErrorHandler(new ApiErrorHandler());
+    RestAdapter.Builder retrofit = new RestAdapter.Builder().setEndpoint(endpointUrl).setClient(client)
+        .setConverter(new JacksonConverter(JacksonFactory.sharedObjectMapper())).setLog(log).setErrorHandler(new ApiErrorHandler());
 
     if (logLevel != null) {
       LogLevel clientLogLevel = LogLevel.valueOf(logLevel);
@@ -65,11 +119,16 @@ public class ServiceFactory {
   }
 
   public static VoiceBaseService voiceBaseService(String endpointUrl, String logLevel) {
+    return voiceBaseService(endpointUrl, logLevel, apacheClient());
+  }
+
+  public static VoiceBaseService voiceBaseService(String endpointUrl, String logLevel,
+      Client client) {
 
     RetrofitToSlf4jLogger log = new RetrofitToSlf4jLogger(VoiceBaseService.class);
 
-    RestAdapter.Builder retrofit = new RestAdapter.Builder().setEndpoint(endpointUrl).setClient(apacheClient())
-        .setConverter(new JacksonConverter(JacksonFactory.objectMapper())).setLog(log).setErrorHandler(new ApiErrorHandler());
+    RestAdapter.Builder retrofit = new RestAdapter.Builder().setEndpoint(endpointUrl).setClient(client)
+        .setConverter(new JacksonConverter(JacksonFactory.sharedObjectMapper())).setLog(log).setErrorHandler(new ApiErrorHandler());
 
     if (logLevel != null) {
       LogLevel clientLogLevel = LogLevel.valueOf(logLevel);
@@ -81,11 +140,103 @@ public class ServiceFactory {
     return retrofit.build().create(VoiceBaseService.class);
   }
 
-  private static ApacheClient apacheClient() {
-    return new ApacheClient(
-        HttpClientBuilder.create().setRedirectStrategy(new NoAuthHeaderHttpClientRedirectStrategy()).build());
+  private static Client apacheClient() {
+    return sharedClient(DEFAULT_SETTINGS).client;
   }
-  
+
+  /**
+   * Get the HTTP client for a settings instance, creating its connection pool on first use.
+   * Changes to the settings after that don't affect the pool.
+   * 
+   * @param settings connection pool, timeout and TLS settings
+   * 
+   * @return client and connection pool shared by everyone using these settings
+   */
+  static synchronized SharedClient sharedClient(HttpClientSettings settings) {
+    SharedClient shared = SHARED_CLIENTS.get(settings);
+    if (shared == null) {
+      PoolingHttpClientConnectionManager connectionManager = connectionManager(settings);
+      shared = new SharedClient(connectionManager,
+          new ApacheClient(httpClient(connectionManager, settings)));
+      SHARED_CLIENTS.put(settings, shared);
+    }
+    return shared;
+  }
+
+  /**
+   * Retrofit client along with its connection pool.
+   */
+  static final class SharedClient {
+    final PoolingHttpClientConnectionManager connectionManager;
+    final Client client;
+
+    SharedClient(PoolingHttpClientConnectionManager connectionManager, Client client) {
+      this.connectionManager = connectionManager;
+      this.client = client;
+    }
+  }
+
+  /**
+   * Create a connection pool. All connections share one SSL context so TLS sessions can be
+   * resumed when new connections are opened.
+   * 
+   * @param settings pool and TLS settings
+   * 
+   * @return connection manager
+   */
+  static PoolingHttpClientConnectionManager connectionManager(HttpClientSettings settings) {
+    SSLContext sslContext = SSLContexts.createDefault();
+    sslContext.getClientSessionContext().setSessionCacheSize(settings.getTlsSessionCacheSize());
+    sslContext.getClientSessionContext()
+        .setSessionTimeout((int) TimeUnit.MILLISECONDS.toSeconds(settings.getTlsSessionTimeout()));
+
+    Registry<ConnectionSocketFactory> socketFactories =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", new SSLConnectionSocketFactory(sslContext))
+            .build();
+
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(socketFactories);
+    connectionManager.setMaxTotal(settings.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+    connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+        .setSoTimeout(Math.max(settings.getSocketTimeout(), 0)).setSoKeepAlive(true)
+        .setTcpNoDelay(true).build());
+    return connectionManager;
+  }
+
+  static CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+      HttpClientSettings settings) {
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(settings.getConnectTimeout())
+        .setSocketTimeout(settings.getSocketTimeout())
+        .setConnectionRequestTimeout(settings.getConnectionRequestTimeout()).build();
+
+    HttpClientBuilder builder = HttpClientBuilder.create().setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(keepAliveStrategy(settings.getKeepAlive()))
+        // connections are not bound to a user, reuse them (and their TLS sessions) for all requests
+        .disableConnectionState()
+        .setRedirectStrategy(new NoAuthHeaderHttpClientRedirectStrategy());
+
+    if (settings.getMaxIdleTime() > 0) {
+      builder.evictExpiredConnections().evictIdleConnections(settings.getMaxIdleTime(),
+          TimeUnit.MILLISECONDS);
+    }
+    return builder.build();
+  }
+
+  private static ConnectionKeepAliveStrategy keepAliveStrategy(final long defaultKeepAlive) {
+    return new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long keepAlive = super.getKeepAliveDuration(response, context);
+        return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+      }
+    };
+  }
+
   private static final MimetypesFileTypeMap mimetypesFileTypeMap() {
     MimetypesFileTypeMap mimeMap = new MimetypesFileTypeMap();
     mimeMap.addMimeTypes("audio/mpeg mp3 mpeg3\naudio/ogg ogg\naudio/flac flac");
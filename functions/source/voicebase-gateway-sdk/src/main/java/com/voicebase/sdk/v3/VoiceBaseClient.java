@@ -12,7 +12,16 @@
 package com.voicebase.sdk.v3;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.activation.MimetypesFileTypeMap;
 
@@ -20,10 +29,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.voicebase.sdk.util.ApiException;
+import com.voicebase.sdk.util.ApiUnavailableException;
+import com.voicebase.sdk.util.CircuitBreaker;
+import com.voicebase.sdk.util.FixedDelayRetryPolicy;
+import com.voicebase.sdk.util.RetryPolicy;
 import com.voicebase.v3client.JacksonFactory;
+import com.voicebase.v3client.datamodel.VbConfiguration;
 import com.voicebase.v3client.datamodel.VbMedia;
 
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
 import retrofit.mime.TypedFile;
 
 /**
@@ -34,18 +54,39 @@ import retrofit.mime.TypedFile;
 public class VoiceBaseClient {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(VoiceBaseClient.class);
-  private static final ObjectMapper OM = JacksonFactory.objectMapper();
+  private static final ObjectWriter CONFIGURATION_WRITER =
+      JacksonFactory.writer(VbConfiguration.class);
+  // same as retrofit's JacksonConverter
+  private static final String JSON_MIME_TYPE = "application/json; charset=UTF-8";
 
   private MediaService mediaService;
 
+  private MediaService primingService;
+
   private VoiceBaseService voicebaseService;
 
   private MimetypesFileTypeMap mimeMap;
 
+  private ScheduledExecutorService retryScheduler = RetryScheduler.INSTANCE;
+
+  private ConnectionPool connectionPool;
+
+  private CircuitBreaker circuitBreaker;
+
   public void setMediaService(MediaService mediaService) {
     this.mediaService = mediaService;
   }
 
+  /**
+   * Set the media service used by {@link #prime(MediaProcessingRequest)}. It must not be backed
+   * by a client calling the API.
+   * 
+   * @param primingService media service answering locally
+   */
+  public void setPrimingService(MediaService primingService) {
+    this.primingService = primingService;
+  }
+
   public void setVoicebaseService(VoiceBaseService voicebaseService) {
     this.voicebaseService = voicebaseService;
   }
@@ -54,14 +95,96 @@ public class VoiceBaseClient {
     this.mimeMap = mimeMap;
   }
 
+  public ConnectionPool getConnectionPool() {
+    return connectionPool;
+  }
+
+  public void setConnectionPool(ConnectionPool connectionPool) {
+    this.connectionPool = connectionPool;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Guard media calls with a circuit breaker. While it is open calls fail with an
+   * {@link ApiUnavailableException} without being sent and retrying calls give up without waiting
+   * for the remaining attempts.
+   * 
+   * @param circuitBreaker circuit breaker of the API endpoint, null to always send calls
+   */
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Run a media upload through the client without calling the API.
+   * <p/>
+   * The request is serialized and a canned response deserialized by the same services and
+   * converters as real requests. Meant to be called during initialization so classes, Retrofit
+   * method metadata and Jackson serializers are ready when the first real request arrives. The
+   * request only goes to the priming service, clients created by {@link ServiceFactory} have one.
+   * 
+   * @param request representative request
+   * 
+   * @return media ID of the canned response
+   * 
+   * @throws IllegalStateException if the client has no priming service
+   */
+  public String prime(MediaProcessingRequest request) {
+    if (primingService == null) {
+      throw new IllegalStateException("No priming service configured.");
+    }
+    return sendMedia(primingService, "priming", request);
+  }
+
+  /**
+   * Set the scheduler used to delay retries of asynchronous calls. Defaults to a single daemon
+   * thread shared by all clients.
+   * 
+   * @param retryScheduler scheduler for retries
+   */
+  public void setRetryScheduler(ScheduledExecutorService retryScheduler) {
+    this.retryScheduler = retryScheduler;
+  }
+
+  /**
+   * Get the configuration part of a request, serializing the configuration unless the request
+   * carries it already serialized.
+   * 
+   * @param request processing request
+   * 
+   * @return JSON configuration part
+   * 
+   * @throws IllegalArgumentException if the configuration can't be serialized
+   */
+  private static TypedByteArray configurationPart(MediaProcessingRequest request) {
+    byte[] json = request.getSerializedConfiguration();
+    if (json == null) {
+      try {
+        json = CONFIGURATION_WRITER.writeValueAsBytes(request.getConfiguration());
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException("Unable to serialize configuration.", e);
+      }
+    }
+    return new TypedByteArray(JSON_MIME_TYPE, json);
+  }
+
   public String uploadMedia(String token, MediaProcessingRequest request) {
+    return guarded(() -> sendMedia(mediaService, token, request));
+  }
+
+  private String sendMedia(MediaService service, String token,
+      MediaProcessingRequest request) {
     VbMedia result = null;
 
     LOGGER.debug("Sending request to VoiceBase API: {}", request);
 
     if (LOGGER.isTraceEnabled()) {
       try {
-        LOGGER.trace("VB configuration: {}", OM.writeValueAsString(request.getConfiguration()));
+        LOGGER.trace("VB configuration: {}", new String(configurationPart(request).getBytes(),
+            StandardCharsets.UTF_8));
       } catch (Exception e) {
         LOGGER.trace("Unable to serialize VB configuration");
       }
@@ -71,10 +194,10 @@ public class VoiceBaseClient {
       TypedFile file =
           new TypedFile(mimeMap.getContentType(request.getMediaFile()), request.getMediaFile());
 
-      result = mediaService.processMedia(authHeaderValue(token), request.getConfiguration(),
+      result = service.processMedia(authHeaderValue(token), configurationPart(request),
           request.getMetadata(), file);
     } else if (request.getMediaUrl() != null) {
-      result = mediaService.processMedia(authHeaderValue(token), request.getConfiguration(),
+      result = service.processMedia(authHeaderValue(token), configurationPart(request),
           request.getMetadata(), request.getMediaUrl());
     } else {
       throw new IllegalArgumentException("Media information missing.");
@@ -92,6 +215,11 @@ public class VoiceBaseClient {
 
   public String uploadMedia(String token, MediaProcessingRequest request, int retryAttempts,
       long retryDelay) throws IOException {
+    return uploadMedia(token, request, new FixedDelayRetryPolicy(retryAttempts, retryDelay));
+  }
+
+  public String uploadMedia(String token, MediaProcessingRequest request, RetryPolicy retryPolicy)
+      throws IOException {
 
     int attempt = 0;
     boolean success = false;
@@ -106,21 +234,7 @@ public class VoiceBaseClient {
         LOGGER.error("Invalid argument.", e);
         throw e;
       } catch (Exception e) {
-        // retry
-        if (attempt < 1 + retryAttempts) {
-          try {
-            LOGGER.warn("Error calling VB API, retrying in {}ms", retryDelay, e);
-            Thread.sleep(retryDelay);
-          } catch (InterruptedException e1) {
-            throw new RuntimeException(e1);
-          }
-        } else {
-          if (e instanceof IOException) {
-            throw (IOException) e;
-          } else {
-            throw new IOException(e);
-          }
-        }
+        backoff(retryPolicy, attempt, e);
       }
     } while (!success);
 
@@ -128,15 +242,19 @@ public class VoiceBaseClient {
   }
 
   public boolean updateMedia(String token, String mediaId, MediaProcessingRequest request) {
+    return guarded(() -> sendUpdate(token, mediaId, request));
+  }
+
+  private boolean sendUpdate(String token, String mediaId, MediaProcessingRequest request) {
     VbMedia result = null;
     if (request.getMediaFile() != null) {
       TypedFile file =
           new TypedFile(mimeMap.getContentType(request.getMediaFile()), request.getMediaFile());
 
-      result = mediaService.updateMedia(authHeaderValue(token), mediaId, request.getConfiguration(),
+      result = mediaService.updateMedia(authHeaderValue(token), mediaId, configurationPart(request),
           request.getMetadata(), file);
     } else {
-      result = mediaService.updateMedia(authHeaderValue(token), mediaId, request.getConfiguration(),
+      result = mediaService.updateMedia(authHeaderValue(token), mediaId, configurationPart(request),
           request.getMetadata(), request.getMediaUrl());
     }
 
@@ -151,6 +269,12 @@ public class VoiceBaseClient {
 
   public String updateMedia(String token, String mediaId, MediaProcessingRequest request,
       int retryAttempts, long retryDelay) throws IOException {
+    return updateMedia(token, mediaId, request,
+        new FixedDelayRetryPolicy(retryAttempts, retryDelay));
+  }
+
+  public String updateMedia(String token, String mediaId, MediaProcessingRequest request,
+      RetryPolicy retryPolicy) throws IOException {
 
     int attempt = 0;
     boolean success = false;
@@ -163,27 +287,300 @@ public class VoiceBaseClient {
           throw new IOException("Call to Voiebase not successful.");
         }
       } catch (Exception e) {
-        // retry
-        if (attempt < 1 + retryAttempts) {
-          try {
-            LOGGER.warn("Error calling VB API, retrying in {}ms", retryDelay, e);
-            Thread.sleep(retryDelay);
-          } catch (InterruptedException e1) {
-            throw new RuntimeException(e1);
-          }
-        } else {
-          if (e instanceof IOException) {
-            throw (IOException) e;
-          } else {
-            throw new IOException(e);
-          }
-        }
+        backoff(retryPolicy, attempt, e);
       }
     } while (!success);
 
     return mediaId;
   }
 
+  /**
+   * Send a call through the circuit breaker, if there is one, and report its outcome.
+   * 
+   * @throws ApiUnavailableException if the circuit breaker is open
+   */
+  private <T> T guarded(Supplier<T> call) {
+    if (circuitBreaker == null) {
+      return call.get();
+    }
+    CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+    if (permit == null) {
+      throw new ApiUnavailableException("Circuit breaker open, VB API call not sent.");
+    }
+
+    long start = System.currentTimeMillis();
+    Throwable error = null;
+    try {
+      return call.get();
+    } catch (RuntimeException | Error e) {
+      error = e;
+      throw e;
+    } finally {
+      recordOutcome(permit, System.currentTimeMillis() - start, error);
+    }
+  }
+
+  /**
+   * Send an asynchronous call through the circuit breaker, if there is one, and report its outcome
+   * once the call completes.
+   * 
+   * @param call sends the call, completing the callback with its result
+   * @return future completing with the result of the call after its outcome was reported, or
+   *         exceptionally with an {@link ApiUnavailableException} without sending the call if the
+   *         circuit breaker is open
+   */
+  private CompletableFuture<VbMedia> guardedAsync(Consumer<MediaCallback> call) {
+    MediaCallback callback = new MediaCallback();
+    if (circuitBreaker == null) {
+      call.accept(callback);
+      return callback.result;
+    }
+    CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+    if (permit == null) {
+      callback.result.completeExceptionally(
+          new ApiUnavailableException("Circuit breaker open, VB API call not sent."));
+      return callback.result;
+    }
+
+    long start = System.currentTimeMillis();
+    CompletableFuture<VbMedia> result =
+        callback.result.whenComplete((media, error) -> recordOutcome(permit,
+            System.currentTimeMillis() - start,
+            error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                : error));
+    call.accept(callback);
+    return result;
+  }
+
+  /**
+   * Report a permitted call to the circuit breaker. Only errors that may go away on retry count
+   * as failures, any other API error means the endpoint is up and answering.
+   */
+  private static void recordOutcome(CircuitBreaker.Permit permit, long duration,
+      Throwable error) {
+    if (error == null) {
+      permit.onSuccess(duration);
+    } else if (error instanceof IllegalArgumentException) {
+      permit.release();
+    } else if (error instanceof ApiException && !((ApiException) error).isRetryable()) {
+      permit.onSuccess(duration);
+    } else {
+      permit.onFailure(duration);
+    }
+  }
+
+  /**
+   * @return true if the call failed or will fail because the circuit breaker is open, so there is
+   *         no point in waiting to retry it
+   */
+  private boolean isCircuitOpen(Throwable e) {
+    return e instanceof ApiUnavailableException
+        || circuitBreaker != null && circuitBreaker.isOpen();
+  }
+
+  /**
+   * Wait before the next attempt as directed by the retry policy or re-throw the error if the
+   * call should not be retried. API errors that can't succeed on retry are re-thrown as is.
+   */
+  private void backoff(RetryPolicy retryPolicy, int attempt, Exception e) throws IOException {
+    if (e instanceof ApiException && !((ApiException) e).isRetryable()) {
+      LOGGER.error("VB API call failed, not retrying {} error.", ((ApiException) e).getErrorType());
+      throw (ApiException) e;
+    }
+
+    long delay = isCircuitOpen(e) ? -1 : retryPolicy.retryDelay(attempt, e);
+    if (delay < 0) {
+      if (e instanceof IOException) {
+        throw (IOException) e;
+      } else {
+        throw new IOException(e);
+      }
+    }
+    try {
+      LOGGER.warn("Error calling VB API, retrying in {}ms", delay, e);
+      Thread.sleep(delay);
+    } catch (InterruptedException e1) {
+      throw new RuntimeException(e1);
+    }
+  }
+
+  /**
+   * Upload media without blocking the calling thread.
+   * 
+   * @param token API token
+   * @param request processing request
+   * 
+   * @return future completing with the media ID; completes exceptionally with an
+   *         {@link IllegalArgumentException} if the request has no media, an
+   *         {@link ApiUnavailableException} if the circuit breaker is open and with the API error
+   *         if the call failed.
+   */
+  public CompletableFuture<String> uploadMediaAsync(String token, MediaProcessingRequest request) {
+    LOGGER.debug("Sending request to VoiceBase API: {}", request);
+
+    return guardedAsync(callback -> {
+      try {
+        if (request.getMediaFile() != null) {
+          TypedFile file = new TypedFile(mimeMap.getContentType(request.getMediaFile()),
+              request.getMediaFile());
+
+          mediaService.processMedia(authHeaderValue(token), configurationPart(request),
+              request.getMetadata(), file, callback);
+        } else if (request.getMediaUrl() != null) {
+          mediaService.processMedia(authHeaderValue(token), configurationPart(request),
+              request.getMetadata(), request.getMediaUrl(), callback);
+        } else {
+          throw new IllegalArgumentException("Media information missing.");
+        }
+      } catch (IllegalArgumentException e) {
+        callback.result.completeExceptionally(e);
+      }
+    }).thenApply(result -> result != null ? result.getMediaId() : null);
+  }
+
+  /**
+   * Upload media without blocking the calling thread, retrying failed attempts after the given
+   * delay. Retries are scheduled on the retry scheduler, no thread is held while waiting.
+   * 
+   * @param token API token
+   * @param request processing request
+   * @param retryAttempts number of retries after the first attempt
+   * @param retryDelay delay between attempts in ms
+   * 
+   * @return future completing with the media ID or exceptionally with an {@link IOException} once
+   *         all attempts failed.
+   */
+  public CompletableFuture<String> uploadMediaAsync(String token, MediaProcessingRequest request,
+      int retryAttempts, long retryDelay) {
+    return uploadMediaAsync(token, request, new FixedDelayRetryPolicy(retryAttempts, retryDelay));
+  }
+
+  /**
+   * Upload media without blocking the calling thread, retrying failed attempts as directed by the
+   * retry policy.
+   * 
+   * @param token API token
+   * @param request processing request
+   * @param retryPolicy retry policy
+   * 
+   * @return future completing with the media ID or exceptionally with an {@link IOException} once
+   *         the policy gave up.
+   */
+  public CompletableFuture<String> uploadMediaAsync(String token, MediaProcessingRequest request,
+      RetryPolicy retryPolicy) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    attemptAsync(() -> uploadMediaAsync(token, request), result, 1, retryPolicy);
+    return result;
+  }
+
+  /**
+   * Update media without blocking the calling thread.
+   * 
+   * @param token API token
+   * @param mediaId media to update
+   * @param request processing request
+   * 
+   * @return future completing with true if the API acknowledged the update; completes
+   *         exceptionally with an {@link ApiUnavailableException} if the circuit breaker is open
+   *         and with the API error if the call failed.
+   */
+  public CompletableFuture<Boolean> updateMediaAsync(String token, String mediaId,
+      MediaProcessingRequest request) {
+    return guardedAsync(callback -> {
+      try {
+        if (request.getMediaFile() != null) {
+          TypedFile file = new TypedFile(mimeMap.getContentType(request.getMediaFile()),
+              request.getMediaFile());
+
+          mediaService.updateMedia(authHeaderValue(token), mediaId, configurationPart(request),
+              request.getMetadata(), file, callback);
+        } else {
+          mediaService.updateMedia(authHeaderValue(token), mediaId, configurationPart(request),
+              request.getMetadata(), request.getMediaUrl(), callback);
+        }
+      } catch (IllegalArgumentException e) {
+        callback.result.completeExceptionally(e);
+      }
+    }).thenApply(result -> result != null && StringUtils.equals(result.getMediaId(), mediaId));
+  }
+
+  /**
+   * Update media without blocking the calling thread, retrying failed attempts after the given
+   * delay.
+   * 
+   * @param token API token
+   * @param mediaId media to update
+   * @param request processing request
+   * @param retryAttempts number of retries after the first attempt
+   * @param retryDelay delay between attempts in ms
+   * 
+   * @return future completing with the media ID or exceptionally with an {@link IOException} once
+   *         all attempts failed.
+   */
+  public CompletableFuture<String> updateMediaAsync(String token, String mediaId,
+      MediaProcessingRequest request, int retryAttempts, long retryDelay) {
+    return updateMediaAsync(token, mediaId, request,
+        new FixedDelayRetryPolicy(retryAttempts, retryDelay));
+  }
+
+  /**
+   * Update media without blocking the calling thread, retrying failed attempts as directed by the
+   * retry policy.
+   * 
+   * @param token API token
+   * @param mediaId media to update
+   * @param request processing request
+   * @param retryPolicy retry policy
+   * 
+   * @return future completing with the media ID or exceptionally with an {@link IOException} once
+   *         the policy gave up.
+   */
+  public CompletableFuture<String> updateMediaAsync(String token, String mediaId,
+      MediaProcessingRequest request, RetryPolicy retryPolicy) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    attemptAsync(() -> updateMediaAsync(token, mediaId, request).thenApply(success -> {
+      if (!success) {
+        throw new CompletionException(new IOException("Call to Voicebase not successful."));
+      }
+      return mediaId;
+    }), result, 1, retryPolicy);
+    return result;
+  }
+
+  private <T> void attemptAsync(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result,
+      int attempt, RetryPolicy retryPolicy) {
+    call.get().whenComplete((value, error) -> {
+      if (error == null) {
+        result.complete(value);
+        return;
+      }
+
+      Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      if (cause instanceof IllegalArgumentException) {
+        LOGGER.error("Invalid argument.", cause);
+        result.completeExceptionally(cause);
+        return;
+      }
+      if (cause instanceof ApiException && !((ApiException) cause).isRetryable()) {
+        LOGGER.error("VB API call failed, not retrying {} error.",
+            ((ApiException) cause).getErrorType());
+        result.completeExceptionally(cause);
+        return;
+      }
+
+      long delay = isCircuitOpen(cause) ? -1 : retryPolicy.retryDelay(attempt, cause);
+      if (delay >= 0) {
+        LOGGER.warn("Error calling VB API, retrying in {}ms", delay, cause);
+        retryScheduler.schedule(() -> attemptAsync(call, result, attempt + 1, retryPolicy), delay,
+            TimeUnit.MILLISECONDS);
+      } else {
+        result.completeExceptionally(
+            cause instanceof IOException ? cause : new IOException(cause));
+      }
+    });
+  }
+
   public Map<String, ?> getResources(String token) {
     return voicebaseService.getResources(authHeaderValue(token));
   }
@@ -192,4 +589,40 @@ public class VoiceBaseClient {
     return "Bearer " + token;
   }
 
+  /**
+   * Adapts Retrofit callbacks to a future. Errors translated by the error handler arrive wrapped
+   * in a {@link RetrofitError} and are unwrapped here.
+   */
+  private static final class MediaCallback implements Callback<VbMedia> {
+
+    private final CompletableFuture<VbMedia> result = new CompletableFuture<>();
+
+    @Override
+    public void success(VbMedia media, Response response) {
+      LOGGER.trace("Voicebase response: {}", media);
+      result.complete(media);
+    }
+
+    @Override
+    public void failure(RetrofitError error) {
+      if (error.getCause() instanceof ApiException) {
+        result.completeExceptionally(error.getCause());
+      } else {
+        result.completeExceptionally(error);
+      }
+    }
+  }
+
+  private static final class RetryScheduler {
+    private static final ScheduledExecutorService INSTANCE =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "voicebase-retry");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
 }
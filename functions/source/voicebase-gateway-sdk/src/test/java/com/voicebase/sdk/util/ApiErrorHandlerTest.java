@@ -0,0 +1,136 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.client.utils.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+public class ApiErrorHandlerTest {
+
+  private static final String URL = "https://apis.voicebase.com/v3/media";
+
+  private static final byte[] ERROR_BODY =
+      "{\"errors\":[{\"error\":\"failed\"}]}".getBytes(StandardCharsets.UTF_8);
+
+  private static Response response(int status, String retryAfter) {
+    List<Header> headers = new ArrayList<>();
+    if (retryAfter != null) {
+      headers.add(new Header("Retry-After", retryAfter));
+    }
+    return new Response(URL, status, "status " + status, headers,
+        new TypedByteArray("application/json", ERROR_BODY));
+  }
+
+  private static ApiException handle(RetrofitError error) {
+    return (ApiException) new ApiErrorHandler().handleError(error);
+  }
+
+  private static ApiException httpError(int status) {
+    return handle(RetrofitError.httpError(URL, response(status, null), null, null));
+  }
+
+  @Test
+  public void testStatusClassification() {
+    Assert.assertEquals(ApiErrorType.THROTTLED, ApiErrorType.fromStatus(429));
+    Assert.assertEquals(ApiErrorType.TIMEOUT, ApiErrorType.fromStatus(408));
+    Assert.assertEquals(ApiErrorType.SERVER, ApiErrorType.fromStatus(500));
+    Assert.assertEquals(ApiErrorType.SERVER, ApiErrorType.fromStatus(503));
+    Assert.assertEquals(ApiErrorType.AUTHENTICATION, ApiErrorType.fromStatus(401));
+    Assert.assertEquals(ApiErrorType.AUTHENTICATION, ApiErrorType.fromStatus(403));
+    Assert.assertEquals(ApiErrorType.VALIDATION, ApiErrorType.fromStatus(400));
+    Assert.assertEquals(ApiErrorType.VALIDATION, ApiErrorType.fromStatus(404));
+    Assert.assertEquals(ApiErrorType.UNEXPECTED, ApiErrorType.fromStatus(302));
+  }
+
+  @Test
+  public void testRetryableHttpErrors() {
+    ApiException throttled = httpError(429);
+    Assert.assertTrue(throttled instanceof ApiThrottledException);
+    Assert.assertTrue(throttled.isRetryable());
+    Assert.assertEquals(429, throttled.getStatusCode());
+
+    ApiException server = httpError(502);
+    Assert.assertTrue(server instanceof ApiServerException);
+    Assert.assertTrue(server.isRetryable());
+    Assert.assertNotNull(server.getErrorResponse());
+
+    Assert.assertTrue(httpError(408).isRetryable());
+  }
+
+  @Test
+  public void testPermanentHttpErrors() {
+    ApiException authentication = httpError(401);
+    Assert.assertTrue(authentication instanceof ApiAuthenticationException);
+    Assert.assertFalse(authentication.isRetryable());
+
+    ApiException validation = httpError(422);
+    Assert.assertTrue(validation instanceof ApiValidationException);
+    Assert.assertFalse(validation.isRetryable());
+  }
+
+  @Test
+  public void testNetworkErrors() {
+    ApiException reset =
+        handle(RetrofitError.networkError(URL, new IOException("connection reset")));
+    Assert.assertEquals(ApiErrorType.NETWORK, reset.getErrorType());
+    Assert.assertTrue(reset.isRetryable());
+
+    ApiException timeout =
+        handle(RetrofitError.networkError(URL, new SocketTimeoutException("read timed out")));
+    Assert.assertEquals(ApiErrorType.TIMEOUT, timeout.getErrorType());
+    Assert.assertTrue(timeout.isRetryable());
+  }
+
+  @Test
+  public void testRetryAfterSeconds() {
+    Assert.assertEquals(Long.valueOf(120000),
+        ApiErrorHandler.retryAfterMillis(response(429, "120")));
+    Assert.assertEquals(Long.valueOf(0), ApiErrorHandler.retryAfterMillis(response(429, " 0 ")));
+
+    ApiException throttled =
+        handle(RetrofitError.httpError(URL, response(429, "3"), null, null));
+    Assert.assertEquals(Long.valueOf(3000), throttled.getRetryAfterMillis());
+  }
+
+  @Test
+  public void testRetryAfterDate() {
+    String date = DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000));
+    long delay = ApiErrorHandler.retryAfterMillis(response(503, date));
+    // HTTP dates have second precision
+    Assert.assertTrue(String.valueOf(delay), delay > 55000 && delay <= 60000);
+
+    String past = DateUtils.formatDate(new Date(System.currentTimeMillis() - 60000));
+    Assert.assertEquals(Long.valueOf(0), ApiErrorHandler.retryAfterMillis(response(503, past)));
+  }
+
+  @Test
+  public void testInvalidOrMissingRetryAfter() {
+    Assert.assertNull(ApiErrorHandler.retryAfterMillis(response(503, null)));
+    Assert.assertNull(ApiErrorHandler.retryAfterMillis(response(503, "")));
+    Assert.assertNull(ApiErrorHandler.retryAfterMillis(response(503, "soon")));
+    Assert.assertNull(ApiErrorHandler.retryAfterMillis(response(503, "-5")));
+    Assert.assertNull(httpError(503).getRetryAfterMillis());
+  }
+}
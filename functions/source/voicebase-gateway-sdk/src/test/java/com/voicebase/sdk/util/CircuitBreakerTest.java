@@ -0,0 +1,148 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static CircuitBreaker breaker(long openDuration) {
+    return new CircuitBreaker("test", new CircuitBreakerSettings().withWindowSize(4)
+        .withMinimumCalls(4).withFailureRateThreshold(50).withSlowCallThreshold(100)
+        .withSlowCallRateThreshold(75).withOpenDuration(openDuration));
+  }
+
+  private static void trip(CircuitBreaker breaker) {
+    for (int i = 0; i < 4; i++) {
+      breaker.tryAcquire().onFailure(1);
+    }
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testFailuresOpenCircuit() {
+    CircuitBreaker breaker = breaker(60000);
+    breaker.tryAcquire().onSuccess(1);
+    breaker.tryAcquire().onFailure(1);
+    breaker.tryAcquire().onSuccess(1);
+    // not enough calls yet
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    breaker.tryAcquire().onFailure(1);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertTrue(breaker.isOpen());
+    Assert.assertNull(breaker.tryAcquire());
+
+    CircuitBreakerStatistics statistics = breaker.getStatistics();
+    Assert.assertEquals(1, statistics.getTrips());
+    Assert.assertEquals(1, statistics.getRejected());
+  }
+
+  @Test
+  public void testSlowCallsOpenCircuit() {
+    CircuitBreaker breaker = breaker(60000);
+    breaker.tryAcquire().onSuccess(1);
+    breaker.tryAcquire().onSuccess(200);
+    breaker.tryAcquire().onSuccess(200);
+    breaker.tryAcquire().onSuccess(200);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testOldOutcomesLeaveWindow() {
+    CircuitBreaker breaker = breaker(60000);
+    breaker.tryAcquire().onFailure(1);
+    for (int i = 0; i < 8; i++) {
+      breaker.tryAcquire().onSuccess(1);
+    }
+    breaker.tryAcquire().onFailure(1);
+    // one failure of the last four calls
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testSuccessfulProbeClosesCircuit() {
+    CircuitBreaker breaker = breaker(0);
+    trip(breaker);
+
+    CircuitBreaker.Permit probe = breaker.tryAcquire();
+    Assert.assertNotNull(probe);
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    Assert.assertNull("Single probe", breaker.tryAcquire());
+
+    probe.onSuccess(1);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals(1, breaker.getStatistics().getProbes());
+    Assert.assertEquals(1, breaker.getStatistics().getRecovered());
+
+    // the window starts over
+    breaker.tryAcquire().onFailure(1);
+    breaker.tryAcquire().onFailure(1);
+    breaker.tryAcquire().onFailure(1);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testFailedOrSlowProbeReopensCircuit() {
+    CircuitBreaker breaker = breaker(0);
+    trip(breaker);
+
+    breaker.tryAcquire().onFailure(1);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    breaker.tryAcquire().onSuccess(200);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(2, breaker.getStatistics().getReopened());
+  }
+
+  @Test
+  public void testReleasedProbeLetsAnotherProbeThrough() {
+    CircuitBreaker breaker = breaker(0);
+    trip(breaker);
+
+    breaker.tryAcquire().release();
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    breaker.tryAcquire().onSuccess(1);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testOnlyProbeDecidesHalfOpenCircuit() {
+    CircuitBreaker breaker = breaker(0);
+    CircuitBreaker.Permit early = breaker.tryAcquire();
+    CircuitBreaker.Permit late = breaker.tryAcquire();
+    trip(breaker);
+
+    CircuitBreaker.Permit probe = breaker.tryAcquire();
+    // calls sent while the circuit was closed finish during the probe
+    early.onSuccess(1);
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    late.release();
+    Assert.assertNull("Probe still in flight", breaker.tryAcquire());
+
+    probe.onFailure(1);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(0, breaker.getStatistics().getRecovered());
+    Assert.assertEquals(1, breaker.getStatistics().getReopened());
+  }
+
+  @Test
+  public void testCallsSentBeforeCircuitOpenedAreIgnored() {
+    CircuitBreaker breaker = breaker(60000);
+    CircuitBreaker.Permit early = breaker.tryAcquire();
+    trip(breaker);
+
+    early.onSuccess(1);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(1, breaker.getStatistics().getTrips());
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+  private static final IOException ERROR = new IOException("connection reset");
+
+  @Test
+  public void testJitterStaysWithinExponentialCeiling() {
+    ExponentialBackoffRetryPolicy policy =
+        new ExponentialBackoffRetryPolicy(10, 100, 1000, null);
+
+    for (int attempt = 1; attempt <= 10; attempt++) {
+      long ceiling = Math.min(1000, 100L << (attempt - 1));
+      long min = Long.MAX_VALUE;
+      long max = -1;
+      for (int i = 0; i < 500; i++) {
+        long delay = policy.retryDelay(attempt, ERROR);
+        Assert.assertTrue("attempt " + attempt + " delay " + delay,
+            delay >= 0 && delay <= ceiling);
+        min = Math.min(min, delay);
+        max = Math.max(max, delay);
+      }
+      // full jitter, the delays spread over the whole range
+      Assert.assertTrue(min < ceiling / 4);
+      Assert.assertTrue(max > ceiling * 3 / 4);
+    }
+  }
+
+  @Test
+  public void testLargeAttemptNumbersDoNotOverflow() {
+    ExponentialBackoffRetryPolicy policy =
+        new ExponentialBackoffRetryPolicy(Integer.MAX_VALUE, 100, 2000, null);
+    long delay = policy.retryDelay(100, ERROR);
+    Assert.assertTrue(delay >= 0 && delay <= 2000);
+  }
+
+  @Test
+  public void testGivesUpAfterRetryAttempts() {
+    ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(2, 10, 100, null);
+    Assert.assertTrue(policy.retryDelay(1, ERROR) >= 0);
+    Assert.assertTrue(policy.retryDelay(2, ERROR) >= 0);
+    Assert.assertEquals(-1, policy.retryDelay(3, ERROR));
+
+    Assert.assertEquals(2, policy.getStatistics().getRetries());
+    Assert.assertEquals(1, policy.getStatistics().getExhausted());
+  }
+
+  @Test
+  public void testRetryAfterIsLowerBound() {
+    ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(3, 10, 1000, null);
+    ApiException throttled = new ApiException("throttled").withRetryAfterMillis(500L);
+    for (int i = 0; i < 100; i++) {
+      long delay = policy.retryDelay(1, throttled);
+      Assert.assertTrue(delay >= 500 && delay <= 1000);
+    }
+
+    // waiting longer than the maximum delay isn't worth it
+    throttled.setRetryAfterMillis(5000L);
+    Assert.assertEquals(-1, policy.retryDelay(1, throttled));
+  }
+
+  @Test
+  public void testBudgetExhaustion() {
+    // no meaningful refill during the test
+    RetryBudget budget = new RetryBudget(3, 0.001);
+    ExponentialBackoffRetryPolicy first = new ExponentialBackoffRetryPolicy(5, 10, 100, budget);
+    ExponentialBackoffRetryPolicy second = new ExponentialBackoffRetryPolicy(5, 10, 100, budget);
+
+    Assert.assertTrue(first.retryDelay(1, ERROR) >= 0);
+    Assert.assertTrue(first.retryDelay(2, ERROR) >= 0);
+    Assert.assertTrue(second.retryDelay(1, ERROR) >= 0);
+    // the budget is shared by both policies
+    Assert.assertEquals(-1, second.retryDelay(2, ERROR));
+    Assert.assertEquals(-1, first.retryDelay(3, ERROR));
+
+    Assert.assertEquals(1, first.getStatistics().getBudgetRejections());
+    Assert.assertEquals(1, second.getStatistics().getBudgetRejections());
+    Assert.assertEquals(2, first.getStatistics().getRetries());
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RetryBudgetTest {
+
+  @Test
+  public void testTokensAreUsedUp() {
+    RetryBudget budget = new RetryBudget(2, 0.001);
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertFalse(budget.tryAcquire());
+  }
+
+  @Test
+  public void testTokensAreRefilledUpToCapacity() throws Exception {
+    RetryBudget budget = new RetryBudget(2, 10);
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertFalse(budget.tryAcquire());
+
+    // 10 per second, both refilled after 200ms
+    Thread.sleep(300);
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertTrue(budget.tryAcquire());
+    Assert.assertFalse("Refill is capped at the capacity", budget.tryAcquire());
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.v3;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.voicebase.sdk.util.HttpClientSettings;
+
+public class ConnectionPoolTest {
+
+  private ServerSocket server;
+  private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void startServer() throws IOException {
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(() -> {
+      try {
+        while (true) {
+          accepted.add(server.accept());
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @After
+  public void stopServer() throws IOException {
+    server.close();
+    for (Socket socket : accepted) {
+      socket.close();
+    }
+  }
+
+  private String endpoint() {
+    return "http://127.0.0.1:" + server.getLocalPort() + "/v3";
+  }
+
+  private void awaitAccepted(int connections) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+    while (accepted.size() < connections && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testPrewarmOpensConnectionsOnce() throws Exception {
+    HttpClientSettings settings = new HttpClientSettings().withPrewarmConnections(3);
+    ConnectionPool pool = ServiceFactory.voicebaseClient(endpoint(), "NONE", settings)
+        .getConnectionPool();
+    awaitAccepted(3);
+    Assert.assertEquals(3, accepted.size());
+    Assert.assertEquals(3, pool.getConnectionManager().getTotalStats().getAvailable());
+
+    // idle connections are reused
+    Assert.assertEquals(3, pool.prewarm());
+    Assert.assertEquals(3, accepted.size());
+
+    pool.closeIdleConnections();
+    Assert.assertEquals(0, pool.getConnectionManager().getTotalStats().getAvailable());
+    Assert.assertEquals(3, pool.prewarm());
+    awaitAccepted(6);
+    Assert.assertEquals(6, accepted.size());
+  }
+
+  @Test
+  public void testPrewarmIsCappedPerRoute() throws Exception {
+    HttpClientSettings settings =
+        new HttpClientSettings().withPrewarmConnections(10).withMaxConnectionsPerRoute(2);
+    ServiceFactory.voicebaseClient(endpoint(), "NONE", settings);
+    awaitAccepted(2);
+    Assert.assertEquals(2, accepted.size());
+  }
+
+  @Test
+  public void testPrewarmFailuresAreIgnored() throws Exception {
+    HttpClientSettings settings = new HttpClientSettings().withPrewarmConnections(2);
+    // nothing listens there
+    ConnectionPool pool =
+        ServiceFactory.voicebaseClient("http://127.0.0.1:9/v3", "NONE", settings)
+            .getConnectionPool();
+    Assert.assertEquals(0, pool.prewarm());
+  }
+
+  @Test
+  public void testClientsShareThePoolOfTheirSettings() throws Exception {
+    HttpClientSettings settings = new HttpClientSettings();
+    VoiceBaseClient first = ServiceFactory.voicebaseClient(endpoint(), "NONE", settings);
+    VoiceBaseClient second = ServiceFactory.voicebaseClient(endpoint(), "NONE", settings);
+    VoiceBaseClient other =
+        ServiceFactory.voicebaseClient(endpoint(), "NONE", new HttpClientSettings());
+
+    Assert.assertSame(first.getConnectionPool().getConnectionManager(),
+        second.getConnectionPool().getConnectionManager());
+    Assert.assertNotSame(first.getConnectionPool().getConnectionManager(),
+        other.getConnectionPool().getConnectionManager());
+    Assert.assertSame(ServiceFactory.sharedClient(settings).client,
+        ServiceFactory.sharedClient(settings).client);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016-2018 Amazon.com, Inc. or its affiliates. All Rights Reserved. Licensed under the
+ * Apache License, Version 2.0 (the "License"). You may not use this file except in compliance with
+ * the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.voicebase.sdk.v3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.voicebase.sdk.util.ApiErrorType;
+import com.voicebase.sdk.util.ApiException;
+import com.voicebase.sdk.util.ApiUnavailableException;
+import com.voicebase.sdk.util.CircuitBreaker;
+import com.voicebase.sdk.util.CircuitBreakerSettings;
+import com.voicebase.sdk.util.FixedDelayRetryPolicy;
+import com.voicebase.v3client.datamodel.VbConfiguration;
+
+public class VoiceBaseClientTest {
+
+  private HttpServer api;
+  private final AtomicInteger calls = new AtomicInteger();
+  // status codes of the next responses, 200 once used up
+  private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+  private VoiceBaseClient client;
+
+  @Before
+  public void startApi() throws IOException {
+    api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    api.createContext("/", exchange -> {
+      calls.incrementAndGet();
+      Integer status = statuses.poll();
+      if (status == null) {
+        status = 200;
+      }
+      byte[] response = (status == 200 ? "{\"mediaId\":\"m1\"}"
+          : "{\"errors\":[{\"error\":\"status " + status + "\"}]}")
+              .getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, response.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(response);
+      }
+    });
+    api.start();
+    client = ServiceFactory.voicebaseClient(
+        "http://127.0.0.1:" + api.getAddress().getPort() + "/v3", "NONE");
+  }
+
+  @After
+  public void stopApi() {
+    api.stop(0);
+  }
+
+  private static MediaProcessingRequest request() {
+    MediaProcessingRequest request =
+        new MediaProcessingRequest().withConfiguration(new VbConfiguration());
+    request.setMediaUrl("https://example.com/media.wav");
+    return request;
+  }
+
+  @Test
+  public void testAsyncUpload() throws Exception {
+    Assert.assertEquals("m1",
+        client.uploadMediaAsync("token", request()).get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testAsyncUploadRetriesServerErrors() throws Exception {
+    statuses.add(503);
+    statuses.add(500);
+    Assert.assertEquals("m1", client
+        .uploadMediaAsync("token", request(), new FixedDelayRetryPolicy(2, 10))
+        .get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testAsyncUploadFailsOnceRetriesAreUsedUp() throws Exception {
+    statuses.add(503);
+    statuses.add(503);
+    try {
+      client.uploadMediaAsync("token", request(), new FixedDelayRetryPolicy(1, 10)).get(5,
+          TimeUnit.SECONDS);
+      Assert.fail("Expected failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    Assert.assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testAsyncUploadDoesNotRetryValidationErrors() throws Exception {
+    statuses.add(400);
+    try {
+      client.uploadMediaAsync("token", request(), new FixedDelayRetryPolicy(3, 10)).get(5,
+          TimeUnit.SECONDS);
+      Assert.fail("Expected failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof ApiException);
+      Assert.assertEquals(ApiErrorType.VALIDATION, ((ApiException) e.getCause()).getErrorType());
+      Assert.assertEquals(400, ((ApiException) e.getCause()).getStatusCode());
+    }
+    Assert.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testAsyncUploadWithoutMedia() throws Exception {
+    try {
+      client.uploadMediaAsync("token", new MediaProcessingRequest()).get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    Assert.assertEquals(0, calls.get());
+  }
+
+  @Test
+  public void testAsyncUpdateIsGuardedByCircuitBreaker() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", new CircuitBreakerSettings()
+        .withWindowSize(2).withMinimumCalls(2).withFailureRateThreshold(50)
+        .withOpenDuration(60000));
+    client.setCircuitBreaker(breaker);
+    statuses.add(503);
+    statuses.add(503);
+    for (int i = 0; i < 2; i++) {
+      try {
+        client.updateMediaAsync("token", "m1", request()).get(5, TimeUnit.SECONDS);
+        Assert.fail("Expected failure");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof ApiException);
+      }
+    }
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    try {
+      client.updateMediaAsync("token", "m1", request()).get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof ApiUnavailableException);
+    }
+    Assert.assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testPrimingIsAnsweredLocally() throws Exception {
+    Assert.assertEquals("priming", client.prime(request()));
+    Assert.assertEquals(0, calls.get());
+
+    // the real service is unaffected
+    Assert.assertEquals("m1", client.uploadMedia("token", request()));
+    Assert.assertEquals(1, calls.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPrimingNeedsPrimingService() throws Exception {
+    VoiceBaseClient unprimed = new VoiceBaseClient();
+    unprimed.setMediaService(ServiceFactory.mediaService(
+        "http://127.0.0.1:" + api.getAddress().getPort() + "/v3", "NONE"));
+    unprimed.prime(request());
+  }
+}
@@ -145,7 +145,7 @@ public class LambdaVoicebaseApiTokenValidator extends LambdaHandler
 
 
   protected void configure(Map<String, String> env) {
-    objectMapper = BeanFactory.objectMapper();
+    objectMapper = BeanFactory.sharedObjectMapper();
     vbApiToken = getStringSetting(env, Lambda.ENV_API_TOKEN, null);
 
     String vbApiUrl = getStringSetting(env, Lambda.ENV_API_URL, Lambda.DEFAULT_V3_API_URL);